@@ -0,0 +1,500 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Runs the points of a sweep with random packet losses
+ * (see {@link SimulationConfig#setLossRate(double)}) with as many seeds as
+ * each point needs. Every point first runs {@link #getMinSeeds()} seeds; then
+ * more seeds are run until the 95% confidence intervals of the mean throughput,
+ * retransmission ratio and number of timeouts are all narrower than the target,
+ * relative to the mean. The next seed always goes to the point whose widest
+ * interval is the furthest from the target, so the processors are spent on the
+ * noisiest points, and the points that converge early stop early.</p>
+ *
+ * <p>A point stops when it reaches {@link #getMaxSeeds()} seeds, and the whole
+ * sampling stops when it has used {@link #getMaxRuns()} runs; the intervals of
+ * the points that did not converge are reported as they are. The seeds of a
+ * point are 0, 1, 2, ..., so the runs can be taken from a {@link ResultsCache}.</p>
+ *
+ * @see SweepRunner
+ */
+public class AdaptiveSampler {
+	/** The columns of the means and confidence intervals, following {@link SweepRunner#POINT_HEADER}. */
+	public static final String[] HEADER = {
+		"Number of Iterations",
+		"Number of Senders",
+		"Number of Routers",
+		"Congestion Avoidance Algorithm",
+		"Seeds",
+		"Throughput (MB/RTTs)",
+		"Throughput CI (MB/RTTs)",
+		"Retransmission Ratio (% per MB)",
+		"Retransmission Ratio CI (% per MB)",
+		"Timeouts",
+		"Timeouts CI"
+	};
+
+	/** The name of the file the statistics are written to by default. */
+	public static final String SAMPLES_FILENAME = "statisticsAdaptive.csv";
+
+	/** The two-sided 95% quantiles of Student's t distribution for 1 to 30 degrees of freedom. */
+	private static final double[] T_95 = {
+		12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+		2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+		2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+	};
+
+	/** The two-sided 95% quantile of the normal distribution, for more than 30 degrees of freedom. */
+	private static final double Z_95 = 1.960;
+
+	/** The number of metrics whose confidence intervals are watched. */
+	private static final int METRICS = 3;
+
+	/** The points of the sweep. */
+	private final List<SweepPoint> points;
+
+	/** The configuration that every run gets a copy of, with its own seed. */
+	private final SimulationConfig config;
+
+	/** The largest acceptable half-width of the confidence intervals, relative to the mean. */
+	private final double targetWidth;
+
+	/** The number of runs at the same time. */
+	private final int threads;
+
+	/** The number of seeds every point runs before its intervals are considered. */
+	private int minSeeds = 3;
+
+	/** The largest number of seeds of a point. */
+	private int maxSeeds = 50;
+
+	/** The largest number of runs of the whole sampling. */
+	private int maxRuns = Integer.MAX_VALUE;
+
+	/** The cache of the runs, or <code>null</code> to simulate every run. */
+	private ResultsCache cache = null;
+
+	/** The samples collected for each point. */
+	private final Samples[] samples;
+
+	/**
+	 * Constructor.
+	 * @param points_ the points of the sweep
+	 * @param config_ the configuration that every run gets a copy of, with its own seed;
+	 * it should have a non-zero loss rate, or all seeds give the same results
+	 * @param targetWidth_ the largest acceptable half-width of the 95% confidence intervals,
+	 * relative to the mean, e.g. <code>0.05</code> for &plusmn;5%
+	 * @param threads_ the number of runs at the same time
+	 * @throws IllegalArgumentException if the target width or the number of threads is not positive
+	 */
+	public AdaptiveSampler(List<SweepPoint> points_, SimulationConfig config_, double targetWidth_, int threads_)
+		throws IllegalArgumentException {
+		if (!(targetWidth_ > 0.0)) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  The target width must be positive."
+			);
+		}
+		if (threads_ < 1) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  The number of threads must be positive."
+			);
+		}
+		this.points = new ArrayList<SweepPoint>(points_);
+		this.config = new SimulationConfig(config_);
+		this.config.setStatisticsWritten(false);
+		this.targetWidth = targetWidth_;
+		this.threads = threads_;
+		this.samples = new Samples[points.size()];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = new Samples();
+		}
+	}
+
+	/**
+	 * @return the number of seeds every point runs before its intervals are considered
+	 */
+	public int getMinSeeds() {
+		return minSeeds;
+	}
+
+	/**
+	 * @param minSeeds_ the number of seeds every point runs before its intervals are considered
+	 * @throws IllegalArgumentException if there are fewer than two
+	 */
+	public void setMinSeeds(int minSeeds_) throws IllegalArgumentException {
+		if (minSeeds_ < 2) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".setMinSeeds():  A confidence interval takes at least two seeds."
+			);
+		}
+		this.minSeeds = minSeeds_;
+	}
+
+	/**
+	 * @return the largest number of seeds of a point
+	 */
+	public int getMaxSeeds() {
+		return maxSeeds;
+	}
+
+	/**
+	 * @param maxSeeds_ the largest number of seeds of a point
+	 */
+	public void setMaxSeeds(int maxSeeds_) {
+		this.maxSeeds = maxSeeds_;
+	}
+
+	/**
+	 * @return the largest number of runs of the whole sampling
+	 */
+	public int getMaxRuns() {
+		return maxRuns;
+	}
+
+	/**
+	 * @param maxRuns_ the largest number of runs of the whole sampling
+	 */
+	public void setMaxRuns(int maxRuns_) {
+		this.maxRuns = maxRuns_;
+	}
+
+	/**
+	 * @param cache_ the cache to take the runs from, and to store the simulated
+	 * runs in, or <code>null</code> to simulate every run
+	 */
+	public void setCache(ResultsCache cache_) {
+		this.cache = cache_;
+	}
+
+	/**
+	 * Runs the seeds of all points until their confidence intervals are narrow
+	 * enough, or the seeds or runs are used up. A run that fails is reported on
+	 * the standard error and not counted.
+	 * @throws IllegalStateException if a run ends with an error, or the sampling is interrupted
+	 */
+	public void run() throws IllegalStateException {
+		ExecutorService pool_ = Executors.newFixedThreadPool(threads);
+		CompletionService<Object[]> completion_ = new ExecutorCompletionService<Object[]>(pool_);
+		int runs_ = 0;
+		int running_ = 0;
+		try {
+			while (true) {
+				// Keep all threads busy with the noisiest points:
+				while (running_ < threads && runs_ < maxRuns) {
+					int next_ = noisiestPoint();
+					if (next_ < 0) {
+						break;
+					}
+					final int index_ = next_;
+					final SweepPoint point_ = points.get(index_);
+					final SimulationConfig config_ = new SimulationConfig(config);
+					config_.setSeed(samples[index_].seeds++);
+					samples[index_].pending++;
+					completion_.submit(new Callable<Object[]>() {
+						public Object[] call() {
+							SimulationStatistics statistics_ = null;
+							try {
+								statistics_ = runSeed(point_, config_);
+							} catch (RuntimeException ex) {
+								System.err.println(
+									"The point " + point_ + " failed with the seed " + config_.getSeed() + ": " + ex.toString()
+								);
+							}
+							return new Object[] { index_, statistics_ };
+						}
+					});
+					runs_++;
+					running_++;
+				}
+				if (running_ == 0) {
+					break;
+				}
+
+				Object[] result_;
+				try {
+					result_ = completion_.take().get();
+				} catch (ExecutionException ex) {
+					throw new IllegalStateException(
+						this.getClass().getName() + ":  A run failed: " + ex.getCause().toString()
+					);
+				}
+				running_--;
+				Samples samples_ = samples[(Integer) result_[0]];
+				samples_.pending--;
+				if (result_[1] != null) {
+					samples_.add((SimulationStatistics) result_[1]);
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+				this.getClass().getName() + ":  Interrupted while sampling."
+			);
+		} finally {
+			pool_.shutdownNow();
+		}
+	}
+
+	/**
+	 * Helper method to run one seed of a point, or take it from the cache.
+	 */
+	private SimulationStatistics runSeed(SweepPoint point_, SimulationConfig config_) {
+		SimulationStatistics statistics_ = (cache != null) ? cache.get(point_, config_) : null;
+		if (statistics_ == null) {
+			statistics_ = point_.run(config_);
+			if (cache != null) {
+				try {
+					cache.put(point_, config_, statistics_);
+				} catch (IOException ex) {
+					System.err.println("Unable to cache the statistics of " + point_ + ": " + ex.toString());
+				}
+			}
+		}
+		return statistics_;
+	}
+
+	/**
+	 * Helper method to choose the point that gets the next seed: any point that has not
+	 * run its minimum number of seeds yet, or else the point whose widest confidence
+	 * interval exceeds the target the most. The intervals of a point with runs still
+	 * pending are expected to shrink with the square root of its number of seeds.
+	 * @return the index of the point, or <code>-1</code> if no point needs more seeds
+	 */
+	private int noisiestPoint() {
+		int noisiest_ = -1;
+		double noisiestExcess_ = 1.0;
+		for (int i = 0; i < samples.length; i++) {
+			Samples samples_ = samples[i];
+			if (samples_.seeds >= maxSeeds) {
+				continue;
+			}
+			if (samples_.seeds < minSeeds) {
+				return i;
+			}
+			if (samples_.count < 2) {
+				continue;	// wait for the pending runs of the point
+			}
+			double excess_ = samples_.relativeWidth() / targetWidth *
+				Math.sqrt((double) samples_.count / (samples_.count + samples_.pending));
+			if (excess_ > noisiestExcess_) {
+				noisiest_ = i;
+				noisiestExcess_ = excess_;
+			}
+		}
+		return noisiest_;
+	}
+
+	/**
+	 * Writes the means and the confidence intervals of all points to a CSV file,
+	 * one row per point with at least one run. Any existing file is overwritten.
+	 * @param file_ the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(File file_) throws IOException {
+		CSVWriter writer_ = new CSVWriter(
+			new FileWriter(file_), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_ESCAPE_CHARACTER
+		);
+		try {
+			String[] header_ = new String[SweepRunner.POINT_HEADER.length + HEADER.length];
+			System.arraycopy(SweepRunner.POINT_HEADER, 0, header_, 0, SweepRunner.POINT_HEADER.length);
+			System.arraycopy(HEADER, 0, header_, SweepRunner.POINT_HEADER.length, HEADER.length);
+			writer_.writeNext(header_);
+
+			for (int i = 0; i < points.size(); i++) {
+				Samples samples_ = samples[i];
+				if (samples_.count == 0) {
+					continue;
+				}
+				SweepPoint point_ = points.get(i);
+				SimulationStatistics first_ = samples_.first;
+				writer_.writeNext(new String[] {
+					point_.getTopology(),
+					String.valueOf(point_.getBufferSize()),
+					String.valueOf(point_.getRcvWindow()),
+					String.valueOf(first_.getIterations()),
+					String.valueOf(first_.getSenders()),
+					String.valueOf(first_.getRouters()),
+					first_.getAlgorithm(),
+					String.valueOf(samples_.count),
+					format(samples_.mean[0]), format(samples_.halfWidth(0)),
+					format(samples_.mean[1]), format(samples_.halfWidth(1)),
+					format(samples_.mean[2]), format(samples_.halfWidth(2))
+				});
+			}
+		} finally {
+			writer_.close();
+		}
+	}
+
+	/**
+	 * Helper method to format a number like the statistics file does.
+	 */
+	private static String format(double value_) {
+		if (Double.isNaN(value_) || Double.isInfinite(value_)) {
+			return "-";
+		}
+		return BigDecimal.valueOf(value_).toPlainString();
+	}
+
+	/**
+	 * The running means and variances of the metrics of one point,
+	 * accumulated with Welford's method.
+	 */
+	private static class Samples {
+		/** The number of seeds started. */
+		int seeds = 0;
+
+		/** The number of runs started but not finished. */
+		int pending = 0;
+
+		/** The number of runs finished. */
+		int count = 0;
+
+		/** The statistics of the first run, for the columns that do not depend on the seed. */
+		SimulationStatistics first = null;
+
+		/** The means of the throughput, the retransmission ratio and the timeouts. */
+		final double[] mean = new double[METRICS];
+
+		/** The sums of the squared deviations from the means. */
+		final double[] m2 = new double[METRICS];
+
+		void add(SimulationStatistics statistics_) {
+			if (first == null) {
+				first = statistics_;
+			}
+			count++;
+			double[] values_ = {
+				statistics_.getThroughput(), statistics_.getRetransmissionRatio(), statistics_.getTimeouts()
+			};
+			for (int m = 0; m < METRICS; m++) {
+				double delta_ = values_[m] - mean[m];
+				mean[m] += delta_ / count;
+				m2[m] += delta_ * (values_[m] - mean[m]);
+			}
+		}
+
+		/**
+		 * @return the half-width of the 95% confidence interval of the mean of the given metric,
+		 * or NaN with fewer than two runs
+		 */
+		double halfWidth(int metric_) {
+			if (count < 2) {
+				return Double.NaN;
+			}
+			double t_ = (count - 1 <= T_95.length) ? T_95[count - 2] : Z_95;
+			return t_ * Math.sqrt(m2[metric_] / (count - 1) / count);
+		}
+
+		/**
+		 * @return the largest half-width of the confidence intervals relative to the means;
+		 * an interval of a zero mean counts only if it is not empty
+		 */
+		double relativeWidth() {
+			double widest_ = 0.0;
+			for (int m = 0; m < METRICS; m++) {
+				double halfWidth_ = halfWidth(m);
+				if (halfWidth_ == 0.0) {
+					continue;
+				}
+				double mean_ = Math.abs(mean[m]);
+				widest_ = Math.max(widest_, (mean_ > 0.0) ? halfWidth_ / mean_ : Double.POSITIVE_INFINITY);
+			}
+			return widest_;
+		}
+	}
+
+	/**
+	 * Runs adaptive sampling from the command line and writes the means and confidence
+	 * intervals to one CSV file. The arguments are:
+	 * <pre>
+	 * TCP-sender-versions number-of-iterations topology buffer-sizes receive-windows client-counts router-counts
+	 *     loss-rate target-width [max-seeds] [threads] [Rounds|Events] [Fixed|Completion] [output-file] [cache-directory]
+	 * </pre>
+	 * where the lists are as for {@link SweepRunner#main(String[])}, the loss rate is the
+	 * probability that a link loses a packet, and the target width is the largest acceptable
+	 * half-width of the confidence intervals relative to the mean, e.g.
+	 * <code>Reno 100 Cloud 6244 65536 2:20:2 1 0.01 0.05 30</code>.
+	 * The number of threads defaults to the number of processors, and the output file
+	 * to {@link #SAMPLES_FILENAME}.
+	 *
+	 * @param argv_ the command line arguments
+	 */
+	public static void main(String[] argv_) {
+		if (argv_.length < 9) {
+			System.err.println(
+				"Please specify the TCP sender versions, the number of iterations, the topology, the lists of " +
+				"buffer sizes, receive windows, client counts and router counts, the loss rate and the target width!"
+			);
+			System.exit(1);
+		}
+		List<SweepPoint> points_ = null;
+		SimulationConfig config_ = new SimulationConfig();
+		config_.setReportingLevel(0);
+		double targetWidth_ = 0.0;
+		int maxSeeds_ = 50;
+		int threads_ = Runtime.getRuntime().availableProcessors();
+		try {
+			points_ = SweepRunner.grid(
+				argv_[0].split(","), Integer.parseInt(argv_[1]), argv_[2],
+				SweepRunner.parseList(argv_[3]), SweepRunner.parseList(argv_[4]),
+				SweepRunner.parseList(argv_[5]), SweepRunner.parseList(argv_[6]),
+				argv_.length > 11 && argv_[11].equalsIgnoreCase("events"),
+				argv_.length > 12 && argv_[12].equalsIgnoreCase("completion")
+			);
+			config_.setLossRate(Double.parseDouble(argv_[7]));
+			targetWidth_ = Double.parseDouble(argv_[8]);
+			if (argv_.length > 9) {
+				maxSeeds_ = Integer.parseInt(argv_[9]);
+			}
+			if (argv_.length > 10) {
+				threads_ = Integer.parseInt(argv_[10]);
+			}
+		} catch (NumberFormatException ex) {
+			System.err.println("The number of iterations, the parameter lists, the rates and the counts must be numbers.");
+			System.exit(1);
+		}
+		File file_ = new File((argv_.length > 13) ? argv_[13] : SAMPLES_FILENAME);
+
+		AdaptiveSampler sampler_ = new AdaptiveSampler(points_, config_, targetWidth_, threads_);
+		sampler_.setMaxSeeds(maxSeeds_);
+		if (argv_.length > 14) {
+			try {
+				sampler_.setCache(new ResultsCache(new File(argv_[14])));
+			} catch (IOException ex) {
+				System.err.println(ex.getMessage());
+				System.exit(1);
+			}
+		}
+		long start_ = System.currentTimeMillis();
+		sampler_.run();
+		try {
+			sampler_.write(file_);
+		} catch (IOException ex) {
+			System.err.println("Unable to write statistics to " + file_ + ": " + ex.toString());
+			System.exit(1);
+		}
+		System.out.println(
+			"Sampled " + points_.size() + " points on " + threads_ + " threads in " +
+			(System.currentTimeMillis() - start_) + " ms; statistics written to " + file_
+		);
+	}
+}
@@ -0,0 +1,748 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import simulation.network.Link;
+import simulation.network.NetworkElement;
+import simulation.network.Packet;
+import simulation.network.Router;
+import simulation.tcp.Receiver;
+import simulation.tcp.Segment;
+import simulation.tcp.Sender;
+import simulation.tcp.SenderState;
+
+/**
+ * A {@link Tracer} that writes the trace events to a stream on a background
+ * thread, so that the simulation is not slowed down by the output.
+ * The simulation thread encodes each event into a compact binary record
+ * in a batch buffer; full batches are handed over through a bounded queue to
+ * the writer thread, which writes them out either as they are, or converted
+ * to CSV text. If the writer falls behind by more than the capacity of the queue,
+ * the simulation waits for it, so the memory used by the trace stays bounded
+ * and no event is lost.</p>
+ *
+ * <p>A binary trace starts with a header of the magic number, the format version
+ * and the number of simulator time units per clock tick. Every record starts with
+ * its type and the time elapsed since the previous record; the first time an
+ * element, such as a link or a sender, appears in the trace, a {@link #NAME}
+ * record gives its name. Integers are written in the variable-length encoding of
+ * the {@link EventJournal}. A binary trace can be converted to CSV with
+ * {@link #convert(InputStream, Writer)}.</p>
+ *
+ * <p>The trace is complete only after {@link #close()}.</p>
+ *
+ * @see Simulator#setTracer(Tracer)
+ */
+public class AsyncTraceWriter implements Tracer {
+	/** Output format: the binary records. */
+	public static final int BINARY = 0;
+
+	/** Output format: one line of comma-separated values per event. */
+	public static final int CSV = 1;
+
+	/** The first four bytes of a binary trace. */
+	public static final int MAGIC = 0x54524345;	// "TRCE"
+
+	/** Version of the binary trace format. */
+	public static final int VERSION = 2;
+
+	/** Record type: the end of the trace. */
+	public static final int END = 0;
+
+	/** Record type: the name of an element that appears in the trace for the first time. */
+	public static final int NAME = 1;
+
+	/** Record type: the start of a transmission round. */
+	public static final int TICK = 2;
+
+	/** Record type: the congestion control parameters of a sender about to send. */
+	public static final int WINDOW = 3;
+
+	/** Record type: a sender with no full segment left to send. */
+	public static final int EXHAUSTED = 4;
+
+	/** Record type: a packet handed to a link. */
+	public static final int LINK_SEND = 5;
+
+	/** Record type: a packet dropped by a router. */
+	public static final int ROUTER_DROP = 6;
+
+	/** Record type: a sender switched to another state. */
+	public static final int STATE = 7;
+
+	/** Record type: a new retransmission timeout of a sender. */
+	public static final int TIMEOUT = 8;
+
+	/** Record type: a fast retransmission after three duplicate acknowledgments. */
+	public static final int FAST_RETRANSMIT = 9;
+
+	/** Record type: a timer of a sender started or moved. */
+	public static final int TIMER_START = 10;
+
+	/** Record type: a timer of a sender expired. */
+	public static final int TIMER_EXPIRE = 11;
+
+	/** Record type: the parameters of a receiver after it handled data segments. */
+	public static final int RECEIVER = 12;
+
+	/** The header line of a CSV trace. */
+	public static final String CSV_HEADER = "Time,Event,Element,Peer,Value1,Value2,Value3,Value4";
+
+	/** Flags of the packet descriptors. */
+	private static final int PACKET_SEGMENT = 1;
+	private static final int PACKET_ACK = 2;
+	private static final int PACKET_ERROR = 4;
+
+	/** Size of a batch; a batch is handed over when it is almost full. */
+	private static final int BATCH_SIZE = 1 << 16;
+
+	/** The default number of full batches that may wait for the writer thread. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	/** The simulator whose events are traced. */
+	private final Simulator simulator;
+
+	/** The output format, {@link #BINARY} or {@link #CSV}. */
+	private final int format;
+
+	/** The stream the trace is written to; used by the writer thread only. */
+	private final OutputStream out;
+
+	/** The full batches waiting for the writer thread. */
+	private final BlockingQueue<Batch> full;
+
+	/** The batches the writer thread is done with, for reuse. */
+	private final BlockingQueue<Batch> free;
+
+	/** The thread that writes the batches out. */
+	private final Thread writer;
+
+	/** The batch being filled by the simulation. */
+	private Batch batch;
+
+	/** The identifiers of the elements that appeared in the trace so far. */
+	private final IdentityHashMap<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+
+	/** The time of the previous record. */
+	private long lastTime = 0;
+
+	/** <code>true</code> after {@link #close()}. */
+	private boolean closed = false;
+
+	/** The first error of the writer thread, or <code>null</code>. */
+	private volatile IOException failure = null;
+
+	/**
+	 * Constructor. Starts the writer thread, with the default capacity of the queue.
+	 * @param simulator_ the simulator whose events are traced
+	 * @param out_ the stream to write the trace to; it is closed by {@link #close()}
+	 * @param format_ the output format, {@link #BINARY} or {@link #CSV}
+	 * @throws IllegalArgumentException if the format is unknown
+	 */
+	public AsyncTraceWriter(Simulator simulator_, OutputStream out_, int format_)
+	throws IllegalArgumentException {
+		this(simulator_, out_, format_, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Constructor. Starts the writer thread.
+	 * @param simulator_ the simulator whose events are traced
+	 * @param out_ the stream to write the trace to; it is closed by {@link #close()}
+	 * @param format_ the output format, {@link #BINARY} or {@link #CSV}
+	 * @param queueCapacity_ the number of full batches that may wait for the writer thread
+	 * @throws IllegalArgumentException if the format is unknown or the capacity is not positive
+	 */
+	public AsyncTraceWriter(Simulator simulator_, OutputStream out_, int format_, int queueCapacity_)
+	throws IllegalArgumentException {
+		if (format_ != BINARY && format_ != CSV) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  Unknown trace format " + format_ + "."
+			);
+		}
+		if (queueCapacity_ <= 0) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  The capacity of the queue must be positive."
+			);
+		}
+		this.simulator = simulator_;
+		this.format = format_;
+		this.out = out_;
+		this.full = new ArrayBlockingQueue<Batch>(queueCapacity_ + 1);
+		this.free = new ArrayBlockingQueue<Batch>(queueCapacity_ + 2);
+		this.batch = new Batch();
+		if (format_ == BINARY) {
+			writeFixedInt(MAGIC);
+			writeFixedInt(VERSION);
+			writeLong(simulator_.getTimeIncrement());
+		}
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				writeBatches();
+			}
+		}, "trace-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	public synchronized void tickStarted(long tick_) {
+		if (!beginRecord(TICK)) return;
+		writeLong(tick_);
+		endRecord();
+	}
+
+	public synchronized void windowSampled(Sender sender_, int congWindow_, int effectiveWindow_, int flightSize_, int ssThresh_) {
+		int senderId_ = idOf(sender_);
+		if (!beginRecord(WINDOW)) return;
+		writeLong(senderId_);
+		writeLong(congWindow_);
+		writeLong(effectiveWindow_);
+		writeLong(flightSize_);
+		writeLong(ssThresh_);
+		endRecord();
+	}
+
+	public synchronized void dataExhausted(Sender sender_, int remaining_) {
+		int senderId_ = idOf(sender_);
+		if (!beginRecord(EXHAUSTED)) return;
+		writeLong(senderId_);
+		writeLong(remaining_);
+		endRecord();
+	}
+
+	public synchronized void packetSent(Link link_, NetworkElement source_, Packet packet_) {
+		int linkId_ = idOf(link_);
+		int nodeId_ = idOf(source_);
+		if (!beginRecord(LINK_SEND)) return;
+		writeLong(linkId_);
+		writeLong(nodeId_);
+		writePacket(packet_);
+		endRecord();
+	}
+
+	public synchronized void packetDropped(Router router_, Packet packet_) {
+		int routerId_ = idOf(router_);
+		if (!beginRecord(ROUTER_DROP)) return;
+		writeLong(routerId_);
+		writePacket(packet_);
+		endRecord();
+	}
+
+	public synchronized void stateChanged(Sender sender_, SenderState state_) {
+		int senderId_ = idOf(sender_);
+		int stateId_ = idOf(state_);
+		if (!beginRecord(STATE)) return;
+		writeLong(senderId_);
+		writeLong(stateId_);
+		endRecord();
+	}
+
+	public synchronized void timeoutUpdated(Sender sender_, int estimatedRTT_, int devRTT_, double timeoutInterval_, int backoff_) {
+		int senderId_ = idOf(sender_);
+		if (!beginRecord(TIMEOUT)) return;
+		writeLong(senderId_);
+		writeLong(estimatedRTT_);
+		writeLong(devRTT_);
+		writeFixedLong(Double.doubleToLongBits(timeoutInterval_));
+		writeLong(backoff_);
+		endRecord();
+	}
+
+	public synchronized void fastRetransmit(Sender sender_) {
+		int senderId_ = idOf(sender_);
+		if (!beginRecord(FAST_RETRANSMIT)) return;
+		writeLong(senderId_);
+		endRecord();
+	}
+
+	public synchronized void timerStarted(Sender sender_, int timerType_, long time_) {
+		int senderId_ = idOf(sender_);
+		if (!beginRecord(TIMER_START)) return;
+		writeLong(senderId_);
+		writeLong(timerType_);
+		writeLong(time_ - lastTime);
+		endRecord();
+	}
+
+	public synchronized void timerExpired(Sender sender_, int timerType_) {
+		int senderId_ = idOf(sender_);
+		if (!beginRecord(TIMER_EXPIRE)) return;
+		writeLong(senderId_);
+		writeLong(timerType_);
+		endRecord();
+	}
+
+	public synchronized void receiverState(Receiver receiver_, int lastByteRecvd_, int nextByteExpected_, int rcvWindow_) {
+		int receiverId_ = idOf(receiver_);
+		if (!beginRecord(RECEIVER)) return;
+		writeLong(receiverId_);
+		writeLong(lastByteRecvd_);
+		writeLong(nextByteExpected_);
+		writeLong(rcvWindow_);
+		endRecord();
+	}
+
+	/**
+	 * Ends the trace: hands over the last batch, waits until the writer thread
+	 * has written everything, and closes the stream. Events reported afterwards
+	 * are ignored.
+	 * @throws IOException if the trace could not be written
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) return;
+		batch.bytes[batch.length++] = END;
+		handOver();
+		closed = true;
+		putFull(Batch.LAST);
+		boolean interrupted_ = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException ex) {
+				interrupted_ = true;
+			}
+		}
+		if (interrupted_) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Converts a binary trace to CSV text.
+	 * @param in_ the binary trace; it is not closed
+	 * @param out_ the writer of the CSV text; it is flushed but not closed
+	 * @throws IOException if the trace cannot be read or the text cannot be written
+	 */
+	public static void convert(InputStream in_, Writer out_) throws IOException {
+		if (Decoder.readFixedInt(in_) != MAGIC || Decoder.readFixedInt(in_) != VERSION) {
+			throw new IOException("Not a trace of this version of the simulator.");
+		}
+		Decoder decoder_ = new Decoder(Decoder.readLong(in_));
+		out_.write(CSV_HEADER);
+		out_.write('\n');
+		while (decoder_.decode(in_, out_)) {
+			// decode the next record
+		}
+		out_.flush();
+	}
+
+	/**
+	 * Prints a binary trace as CSV text (see {@link #convert(InputStream, Writer)}).
+	 * The argument is the name of the binary trace file.
+	 *
+	 * @param argv_ the command line arguments
+	 */
+	public static void main(String[] argv_) {
+		if (argv_.length != 1) {
+			System.err.println("Please specify the binary trace file to print!");
+			System.exit(1);
+		}
+		try {
+			InputStream in_ = new BufferedInputStream(new FileInputStream(argv_[0]));
+			try {
+				convert(in_, new OutputStreamWriter(System.out, "UTF-8"));
+			} finally {
+				in_.close();
+			}
+		} catch (IOException ex) {
+			System.err.println("Unable to read the trace " + argv_[0] + ": " + ex.toString());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Helper method to write the common part of all records of the given type:
+	 * the type and the time elapsed since the previous record.
+	 * @return <code>false</code> if the trace is already closed
+	 */
+	private boolean beginRecord(int type_) {
+		if (closed) return false;
+		long now_ = simulator.getCurrentTime();
+		batch.bytes[batch.length++] = (byte) type_;
+		writeLong(now_ - lastTime);
+		lastTime = now_;
+		return true;
+	}
+
+	/**
+	 * Helper method to finish a record: the batch is handed over
+	 * to the writer thread when it is almost full.
+	 */
+	private void endRecord() {
+		if (batch.length > BATCH_SIZE - 1024) {
+			handOver();
+		}
+	}
+
+	/**
+	 * Helper method to look up the identifier of an element of the trace.
+	 * When the element appears for the first time, its name is recorded.
+	 */
+	private int idOf(Object element_) {
+		if (element_ == null) {
+			return -1;
+		}
+		Integer id_ = ids.get(element_);
+		if (id_ != null) {
+			return id_.intValue();
+		}
+		int newId_ = ids.size();
+		ids.put(element_, Integer.valueOf(newId_));
+
+		String name_;
+		if (element_ instanceof NetworkElement) {
+			name_ = ((NetworkElement) element_).getName();
+		} else if (element_ instanceof Sender) {
+			name_ = ((Sender) element_).getLocalEndpoint().getName();
+		} else if (element_ instanceof Receiver) {
+			name_ = ((Receiver) element_).getLocalEndpoint().getName();
+		} else {
+			name_ = element_.getClass().getSimpleName();
+		}
+		byte[] bytes_;
+		try {
+			bytes_ = String.valueOf(name_).getBytes("UTF-8");
+		} catch (java.io.UnsupportedEncodingException ex) {
+			bytes_ = new byte[0];
+		}
+		if (!beginRecord(NAME)) return newId_;
+		writeLong(newId_);
+		writeLong(bytes_.length);
+		if (batch.length + bytes_.length + 1024 > batch.bytes.length) {
+			byte[] larger_ = new byte[batch.length + bytes_.length + BATCH_SIZE];
+			System.arraycopy(batch.bytes, 0, larger_, 0, batch.length);
+			batch.bytes = larger_;
+		}
+		System.arraycopy(bytes_, 0, batch.bytes, batch.length, bytes_.length);
+		batch.length += bytes_.length;
+		endRecord();
+		return newId_;
+	}
+
+	/** Helper method to write the descriptor of a packet: its kind, its sequence number and length. */
+	private void writePacket(Packet packet_) {
+		int flags_ = packet_.inError ? PACKET_ERROR : 0;
+		int number_ = 0;
+		if (packet_ instanceof Segment) {
+			Segment segment_ = (Segment) packet_;
+			flags_ |= PACKET_SEGMENT;
+			if (segment_.isAck) {
+				flags_ |= PACKET_ACK;
+				number_ = segment_.ackSequenceNumber;
+			} else {
+				number_ = segment_.dataSequenceNumber;
+			}
+		}
+		batch.bytes[batch.length++] = (byte) flags_;
+		writeLong(number_);
+		writeLong(packet_.length);
+	}
+
+	/** Helper method to write a variable-length long integer, in the zig-zag encoding. */
+	private void writeLong(long value_) {
+		long bits_ = (value_ << 1) ^ (value_ >> 63);
+		byte[] bytes_ = batch.bytes;
+		int position_ = batch.length;
+		while ((bits_ & ~0x7FL) != 0) {
+			bytes_[position_++] = (byte) ((bits_ & 0x7F) | 0x80);
+			bits_ >>>= 7;
+		}
+		bytes_[position_++] = (byte) bits_;
+		batch.length = position_;
+	}
+
+	/** Helper method to write a four-byte integer, most significant byte first. */
+	private void writeFixedInt(int value_) {
+		for (int shift_ = 24; shift_ >= 0; shift_ -= 8) {
+			batch.bytes[batch.length++] = (byte) (value_ >>> shift_);
+		}
+	}
+
+	/** Helper method to write an eight-byte integer, most significant byte first. */
+	private void writeFixedLong(long value_) {
+		for (int shift_ = 56; shift_ >= 0; shift_ -= 8) {
+			batch.bytes[batch.length++] = (byte) (value_ >>> shift_);
+		}
+	}
+
+	/**
+	 * Helper method to hand the current batch over to the writer thread
+	 * and to continue with an empty one.
+	 */
+	private void handOver() {
+		if (batch.length == 0) return;
+		putFull(batch);
+		Batch next_ = free.poll();
+		if (next_ == null) {
+			next_ = new Batch();
+		}
+		next_.length = 0;
+		batch = next_;
+	}
+
+	/**
+	 * Helper method to queue a batch for the writer thread,
+	 * waiting while the queue is full.
+	 */
+	private void putFull(Batch batch_) {
+		boolean interrupted_ = false;
+		while (true) {
+			try {
+				full.put(batch_);
+				break;
+			} catch (InterruptedException ex) {
+				interrupted_ = true;
+			}
+		}
+		if (interrupted_) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The body of the writer thread: writes out the batches until the last one.
+	 * After an error, the remaining batches are discarded, so that the
+	 * simulation never waits for a writer that cannot write.
+	 */
+	private void writeBatches() {
+		Decoder decoder_ = null;
+		Writer text_ = null;
+		try {
+			if (format == CSV) {
+				decoder_ = new Decoder(simulator.getTimeIncrement());
+				text_ = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), BATCH_SIZE);
+				text_.write(CSV_HEADER);
+				text_.write('\n');
+			}
+		} catch (IOException ex) {
+			failure = ex;
+		}
+
+		while (true) {
+			Batch batch_;
+			try {
+				batch_ = full.take();
+			} catch (InterruptedException ex) {
+				continue;	// only close() ends this thread
+			}
+			if (batch_ == Batch.LAST) break;
+
+			if (failure == null) {
+				try {
+					if (decoder_ == null) {
+						out.write(batch_.bytes, 0, batch_.length);
+					} else {
+						InputStream in_ = new ByteArrayInputStream(batch_.bytes, 0, batch_.length);
+						while (decoder_.decode(in_, text_)) {
+							// decode the next record
+						}
+					}
+				} catch (IOException ex) {
+					failure = ex;
+				}
+			}
+			free.offer(batch_);
+		}
+
+		try {
+			if (text_ != null) {
+				text_.close();
+			} else {
+				out.close();
+			}
+		} catch (IOException ex) {
+			if (failure == null) {
+				failure = ex;
+			}
+		}
+	}
+
+	/**
+	 * A buffer of encoded records.
+	 */
+	private static class Batch {
+		/** The batch that tells the writer thread to finish. */
+		static final Batch LAST = new Batch();
+
+		byte[] bytes = new byte[BATCH_SIZE];
+		int length = 0;
+	}
+
+	/**
+	 * Decodes the records of a trace into CSV text. Keeps the names of
+	 * the elements and the time of the previous record across the calls,
+	 * so the records can be decoded batch by batch.
+	 */
+	private static class Decoder {
+		private final long timeUnitsPerTick;
+		private final List<String> names = new ArrayList<String>();
+		private long time = 0;
+
+		Decoder(long timeUnitsPerTick_) {
+			this.timeUnitsPerTick = timeUnitsPerTick_;
+		}
+
+		/**
+		 * Decodes the next record and writes its line, if it has one.
+		 * @return <code>false</code> at the end of the input or of the trace
+		 */
+		boolean decode(InputStream in_, Writer out_) throws IOException {
+			int type_ = in_.read();
+			if (type_ < 0 || type_ == END) {
+				return false;
+			}
+			time += readLong(in_);
+			StringBuilder line_ = new StringBuilder(64);
+			line_.append((double) time / timeUnitsPerTick);
+			switch (type_) {
+			case NAME:
+				int id_ = (int) readLong(in_);
+				byte[] bytes_ = new byte[(int) readLong(in_)];
+				readFully(in_, bytes_);
+				while (names.size() <= id_) {
+					names.add(null);
+				}
+				names.set(id_, new String(bytes_, "UTF-8"));
+				return true;	// names are not events
+			case TICK:
+				row(line_, "tick", null, null).append(',').append(readLong(in_));
+				break;
+			case WINDOW:
+				row(line_, "window", nameOf(in_), null);
+				for (int i = 0; i < 4; i++) {
+					line_.append(',').append(readLong(in_));
+				}
+				break;
+			case EXHAUSTED:
+				row(line_, "exhausted", nameOf(in_), null).append(',').append(readLong(in_));
+				break;
+			case LINK_SEND:
+				row(line_, "send", nameOf(in_), nameOf(in_));
+				packet(line_, in_);
+				break;
+			case ROUTER_DROP:
+				row(line_, "drop", nameOf(in_), null);
+				packet(line_, in_);
+				break;
+			case STATE:
+				row(line_, "state", nameOf(in_), nameOf(in_));
+				break;
+			case TIMEOUT:
+				row(line_, "rto", nameOf(in_), null);
+				line_.append(',').append(readLong(in_));
+				line_.append(',').append(readLong(in_));
+				line_.append(',').append(Double.longBitsToDouble(readFixedLong(in_)));
+				line_.append(',').append(readLong(in_));
+				break;
+			case FAST_RETRANSMIT:
+				row(line_, "fast-retransmit", nameOf(in_), null);
+				break;
+			case TIMER_START:
+				row(line_, "timer-start", nameOf(in_), null);
+				line_.append(',').append(readLong(in_));
+				line_.append(',').append((double) (time + readLong(in_)) / timeUnitsPerTick);
+				break;
+			case TIMER_EXPIRE:
+				row(line_, "timer-expire", nameOf(in_), null).append(',').append(readLong(in_));
+				break;
+			case RECEIVER:
+				row(line_, "receiver", nameOf(in_), null);
+				for (int i = 0; i < 3; i++) {
+					line_.append(',').append(readLong(in_));
+				}
+				break;
+			default:
+				throw new IOException("Unknown trace record type " + type_ + ".");
+			}
+			line_.append('\n');
+			out_.write(line_.toString());
+			return true;
+		}
+
+		/** Helper method to append the event and the elements of a line. */
+		private static StringBuilder row(StringBuilder line_, String event_, String element_, String peer_) {
+			line_.append(',').append(event_);
+			line_.append(',').append(element_ == null ? "" : element_);
+			line_.append(',').append(peer_ == null ? "" : peer_);
+			return line_;
+		}
+
+		/** Helper method to append the kind, the sequence number and the length of a packet. */
+		private static void packet(StringBuilder line_, InputStream in_) throws IOException {
+			int flags_ = in_.read();
+			if (flags_ < 0) throw new EOFException();
+			String kind_ = ((flags_ & PACKET_SEGMENT) == 0) ? "packet" :
+				((flags_ & PACKET_ACK) != 0) ? "ack" : "data";
+			line_.append(',').append(kind_);
+			line_.append(',').append(readLong(in_));
+			line_.append(',').append(readLong(in_));
+			if ((flags_ & PACKET_ERROR) != 0) {
+				line_.append(",error");
+			}
+		}
+
+		/** Helper method to read the identifier of an element and look up its name. */
+		private String nameOf(InputStream in_) throws IOException {
+			int id_ = (int) readLong(in_);
+			return (id_ >= 0 && id_ < names.size()) ? names.get(id_) : String.valueOf(id_);
+		}
+
+		static long readLong(InputStream in_) throws IOException {
+			long bits_ = 0;
+			for (int shift_ = 0; ; shift_ += 7) {
+				int byte_ = in_.read();
+				if (byte_ < 0) throw new EOFException();
+				bits_ |= (long) (byte_ & 0x7F) << shift_;
+				if ((byte_ & 0x80) == 0) break;
+			}
+			return (bits_ >>> 1) ^ -(bits_ & 1);
+		}
+
+		static int readFixedInt(InputStream in_) throws IOException {
+			return (int) readFixed(in_, 4);
+		}
+
+		static long readFixedLong(InputStream in_) throws IOException {
+			return readFixed(in_, 8);
+		}
+
+		private static long readFixed(InputStream in_, int length_) throws IOException {
+			long value_ = 0;
+			for (int i = 0; i < length_; i++) {
+				int byte_ = in_.read();
+				if (byte_ < 0) throw new EOFException();
+				value_ = (value_ << 8) | byte_;
+			}
+			return value_;
+		}
+
+		private static void readFully(InputStream in_, byte[] bytes_) throws IOException {
+			int read_ = 0;
+			while (read_ < bytes_.length) {
+				int count_ = in_.read(bytes_, read_, bytes_.length - read_);
+				if (count_ < 0) throw new EOFException();
+				read_ += count_;
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.PrintStream;
+
+import simulation.network.Link;
+import simulation.network.NetworkElement;
+import simulation.network.Packet;
+import simulation.network.Router;
+import simulation.tcp.Receiver;
+import simulation.tcp.Sender;
+import simulation.tcp.SenderState;
+import simulation.tcp.SenderStateCongestionAvoidance;
+import simulation.tcp.SenderStateFastRecovery;
+import simulation.tcp.SenderStateSlowStart;
+
+/**
+ * Prints the trace events as the classic console report of the simulator.
+ * Which events are printed is controlled by the reporting level of the
+ * simulator's configuration ({@link SimulationConfig#getReportingLevel()});
+ * with none of the flags set,
+ * only the basic congestion parameters are printed for every iteration.</p>
+ *
+ * <p>Printing every event makes the simulation as slow as the console,
+ * so this tracer is meant for short runs and for debugging.</p>
+ *
+ * @see Simulator#setTracer(Tracer)
+ */
+public class ConsoleTracer implements Tracer {
+	/** The configuration whose reporting level selects the events to print. */
+	private final SimulationConfig config;
+
+	/** The stream the report is printed to. */
+	private final PrintStream out;
+
+	/**
+	 * Constructor. The report is printed to the standard output.
+	 * @param simulator_ the simulator whose events are printed
+	 */
+	public ConsoleTracer(Simulator simulator_) {
+		this(simulator_, System.out);
+	}
+
+	/**
+	 * Constructor.
+	 * @param simulator_ the simulator whose events are printed
+	 * @param out_ the stream to print the report to
+	 */
+	public ConsoleTracer(Simulator simulator_, PrintStream out_) {
+		this.config = simulator_.getConfig();
+		this.out = out_;
+	}
+
+	public void tickStarted(long tick_) {
+		if (!config.isReporting(Simulator.REPORTING_SIMULATOR)) {
+			// The iteration number starts each line of the default report:
+			out.print((double) tick_ + "\t");
+		}
+	}
+
+	public void windowSampled(Sender sender_, int congWindow_, int effectiveWindow_, int flightSize_, int ssThresh_) {
+		if (config.isReporting(Simulator.REPORTING_SENDERS)) {
+			out.println(
+				"SENDER:\t\tCongWin="+congWindow_ + "\t" + "EffectiveWin="+effectiveWindow_ +
+				"\t" + "FlightSize="+flightSize_ + "\t" + "SSThresh="+ssThresh_
+			);
+		} else {	// Default reporting, always printed out:
+			out.println(
+				congWindow_ + "\t\t" + effectiveWindow_ +
+				"\t\t" + flightSize_ + "\t\t" + ssThresh_
+			);
+		}
+	}
+
+	public void dataExhausted(Sender sender_, int remaining_) {
+		if (remaining_ == 0) {
+			out.println("tcp.Sender.send():  Input bytestream empty -- nothing left to send");
+		} else {
+			out.println("tcp.Sender.send():  Insufficient data to send");
+		}
+	}
+
+	public void packetSent(Link link_, NetworkElement source_, Packet packet_) {
+		if (config.isReporting(Simulator.REPORTING_LINKS)) {
+			out.println(
+				"\t " + packet_.toString(config.getMSS()) +
+				" received by " + link_.getName() + " from " + source_.getName()
+			);
+		}
+	}
+
+	public void packetDropped(Router router_, Packet packet_) {
+		if (config.isReporting(Simulator.REPORTING_ROUTERS)) {
+			out.println("\t  Router DROPS " + packet_.toString(config.getMSS()));
+		}
+	}
+
+	public void stateChanged(Sender sender_, SenderState state_) {
+		if (config.isReporting(Simulator.REPORTING_SENDERS)) {
+			if (state_ instanceof SenderStateSlowStart) {
+				out.println("############## Sender entering slow start.");
+			} else if (state_ instanceof SenderStateCongestionAvoidance) {
+				out.println("############## Sender entering congestion avoidance.");
+			} else if (state_ instanceof SenderStateFastRecovery) {
+				out.println("############## Sender entering fast recovery.");
+			}
+		}
+	}
+
+	public void timeoutUpdated(Sender sender_, int estimatedRTT_, int devRTT_, double timeoutInterval_, int backoff_) {
+		if (config.isReporting(Simulator.REPORTING_RTO_ESTIMATE)) {
+			out.println(
+				"RTO UPDATE:  (estimatedRTT=" + estimatedRTT_ + ", devRTT=" + devRTT_ +
+				", timeoutInterval=" + timeoutInterval_ + ", backoff=" + backoff_ + ")"
+			);
+		}
+	}
+
+	public void fastRetransmit(Sender sender_) {
+		if (config.isReporting(Simulator.REPORTING_SENDERS)) {
+			out.println(" ..... Three (or more) duplicate ACKs received! .....");
+		}
+	}
+
+	public void timerStarted(Sender sender_, int timerType_, long time_) {
+		if (
+			config.isReporting(Simulator.REPORTING_SENDERS)
+			&& timerType_ == 1
+		) {
+			out.println(
+				"\t^^^^^^^ RTO Timer started to fire at the _start_ of RTT #" +
+				(int) sender_.getLocalEndpoint().getSimulator().toTicks(time_)
+			);
+		}
+	}
+
+	public void timerExpired(Sender sender_, int timerType_) {
+		if (config.isReporting(Simulator.REPORTING_SENDERS)) {
+			if (timerType_ == 1) {
+				out.println(" ***** RTO timer timeout! *****");
+			} else if (timerType_ == 2) {
+				out.println(" %%%%% Idle-connection timer timeout! %%%%%");
+			}
+		}
+	}
+
+	public void receiverState(Receiver receiver_, int lastByteRecvd_, int nextByteExpected_, int rcvWindow_) {
+		if (config.isReporting(Simulator.REPORTING_RECEIVERS)) {
+			out.println(
+				"RECEIVER:\tlastByteRecvd="+lastByteRecvd_ + "\t" + "nextByteExpected="+nextByteExpected_ +
+				"\t" + "currentRcvWindow="+rcvWindow_
+			);
+		}
+	}
+}
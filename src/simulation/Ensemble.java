@@ -0,0 +1,1309 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * An ensemble of independent single-flow scenarios of the
+ * {@link simulation.network.topology.DirectTopology} that differ only in
+ * the router buffer size, the receive window and the number of routers.
+ * All scenarios run in one process and advance in lockstep, one clock tick
+ * at a time, so a whole grid of parameter points costs a single run of
+ * the program instead of one run per point.</p>
+ *
+ * <p>The ensemble does not build a network of objects for each scenario.
+ * The state of the sender, the receiver, the routers and the links of all
+ * scenarios is kept in primitive arrays indexed by scenario: the congestion
+ * window, slow start threshold, sequence numbers, retransmission timer
+ * and RTO estimate of every sender in one array each, and likewise the
+ * router occupancies and the queues of the links and the output ports.
+ * Every step of a clock tick runs over all scenarios before the next step
+ * begins, in the order in which {@link Simulator} processes the elements
+ * of the topology in a round (see
+ * {@link simulation.network.topology.Topology#compileSchedule()}).</p>
+ *
+ * <p>The steps reproduce the round-based engine of {@link Simulator}
+ * packet by packet: the segments are delayed by the links as in
+ * {@link simulation.network.Link}, queued and dropped by the routers as in
+ * {@link simulation.network.Router}, and the senders and the receiver follow
+ * {@link simulation.tcp.Sender}, its subclasses and {@link simulation.tcp.Receiver}.
+ * A scenario thus produces the same statistics as a separate run of the simulator
+ * with the same parameters; {@link #check(int)} runs one for comparison.
+ * Lossy links (see {@link SimulationConfig#getLossRate()}) and the event-driven engine
+ * are not reproduced, and nothing is reported while the scenarios run.</p>
+ *
+ * <p>In addition, the ensemble accumulates the per-scenario averages and peaks of
+ * the congestion window, slow start threshold, flight size and router occupancy
+ * over the ticks, in straight loops over the arrays without branches, which the
+ * JIT compiler can vectorize. Scenarios that are done drop out of the lockstep.</p>
+ *
+ * @see Simulator#runSimulation(int)
+ */
+public class Ensemble {
+	/** The TCP versions of the senders. */
+	private static final int TAHOE = 0;
+	private static final int RENO = 1;
+	private static final int NEW_RENO = 2;
+
+	/** The states of the senders (see {@link simulation.tcp.SenderState}). */
+	private static final int SLOW_START = 0;
+	private static final int CONGESTION_AVOIDANCE = 1;
+	private static final int FAST_RECOVERY = 2;
+
+	/** The directions of a link: towards the receiver, carrying the data
+	 * segments, and towards the sender, carrying the acknowledgments.
+	 * Each router has an output port for each direction. */
+	private static final int DOWN = 0;
+	private static final int UP = 1;
+
+	/** The length of a clock tick, in the simulator time units. */
+	private static final long TICK = Simulator.DEFAULT_TIME_UNITS_PER_TICK;
+
+	/** The transmission and propagation times of the links, in time units,
+	 * as set up by {@link simulation.network.topology.DirectTopology}: the link
+	 * to the receiver transmits ten times slower than the others. */
+	private static final long TRANSMISSION_TIME = toTimeUnits(0.001);
+	private static final long RECEIVER_TRANSMISSION_TIME = toTimeUnits(0.01);
+	private static final long PROPAGATION_TIME = toTimeUnits(0.001);
+
+	/** The duplicate ACKs that trigger a fast retransmit (see {@link simulation.tcp.Sender}). */
+	private static final int DUP_ACK_THRESHOLD = 3;
+
+	/** The initial and the largest retransmission timeout, and the initial
+	 * deviation of the round-trip time, in ticks (see {@link simulation.tcp.RTOEstimator}). */
+	private static final double INITIAL_TIMEOUT = 6.0;
+	private static final double MAX_TIMEOUT = 100000.0;
+	private static final int INITIAL_DEVIATION = 12;
+
+	/** The receive window a sender assumes until the first ACK arrives. */
+	private static final int INITIAL_RCV_WINDOW = 65536;
+
+	/** Marks a timer that is not running. */
+	private static final long INACTIVE = -1L;
+
+	/** Values of {@link #pendingTimer}: leave the RTO timer as it is, start (or move) it, or cancel it. */
+	private static final int RTO_UNCHANGED = 0, RTO_START = 1, RTO_CANCEL = 2;
+
+	/** The configuration shared by all scenarios. */
+	private final SimulationConfig config;
+
+	/** The TCP version of the senders, as given and as one of {@link #TAHOE}, {@link #RENO} and {@link #NEW_RENO}. */
+	private final String tcpVersion;
+	private final int version;
+
+	/** The maximum segment size, in bytes. */
+	private final int MSS;
+
+	/** The parameters of each scenario. */
+	private final int[] bufferSizes;
+	private final int[] rcvWindows;
+	private final int[] routerCounts;
+
+	/** The largest number of routers of any scenario. */
+	private int maxRouters = 0;
+
+	/** The state of the sender of each scenario (see {@link simulation.tcp.Sender}). */
+	private final int[] state;
+	private final int[] congWindow;
+	private final int[] ssThresh;
+	private final int[] unsentBytes;
+	private final int[] lastByteSent;
+	private final int[] lastByteAcked;
+	private final int[] lastByteSentBefore3xDupAcksRecvd;
+	private final int[] dupACKcount;
+	private final int[] rcvWindow;
+	private final int[] retransmittedBytes;
+	private final int[] timeouts;
+	private final long[] completionTime;
+
+	/** The RTO estimate of the sender of each scenario (see {@link simulation.tcp.RTOEstimator}). */
+	private final int[] estimatedRTT;
+	private final int[] devRTT;
+	private final double[] timeoutInterval;
+	private final int[] backoff;
+
+	/** The expiration times of the timers of each scenario, or {@link #INACTIVE}. */
+	private final long[] rtoTimer;
+	private final long[] idleConnectionTimer;
+	private final long[] delayedACKtimer;
+
+	/** Indicates that a batch of ACKs is being handled, and the last change to the RTO timer
+	 * requested meanwhile, which is made at the end of the batch (see {@link simulation.tcp.Sender#handleBatch}). */
+	private boolean handlingBatch = false;
+	private int pendingTimer = RTO_UNCHANGED;
+	private long pendingTime = 0L;
+
+	/** The state of the receiver of each scenario (see {@link simulation.tcp.Receiver}). */
+	private final int[] nextByteExpected;
+	private final int[] lastByteRecvd;
+	private final int[] currentRcvWindow;
+	private final int[][] rcvBuffer;
+	private final int[] rcvBufferLength;
+	private final boolean[] cumulativeACK;
+	private final int[] cumulativeACKnumber;
+	private final int[] cumulativeACKwindow;
+	private final long[] cumulativeACKtimestamp;
+
+	/** The packets in transit on each link of each scenario, by direction, and the last times
+	 * when each direction was processed (see {@link simulation.network.Link}). The link
+	 * <code>i</code> leads from router <code>i-1</code>, or the sender, to router <code>i</code>,
+	 * or the receiver. */
+	private final Queue[][][] linkQueues;
+	private final long[][][] linkProcessed;
+
+	/** The state of each router of each scenario (see {@link simulation.network.Router}):
+	 * its memory occupancy, the last time it was processed, and for each output port
+	 * the packet in transmission, the mismatch count and the queued packets. */
+	private final int[][] occupancy;
+	private final long[][] routerProcessed;
+	private final boolean[][][] inTransmission;
+	private final int[][][] transmittedNumber;
+	private final int[][][] transmittedWindow;
+	private final long[][][] transmittedTimestamp;
+	private final double[][][] mismatchCount;
+	private final Queue[][][] portQueues;
+
+	/** The mismatch ratios of each output port (see {@link simulation.network.Router.OutputPort}),
+	 * indexed by the number of routers, the router and the direction: the maximum ratio, the ratio
+	 * of the incoming link and the decrement of the mismatch count per arrival. */
+	private double[][][] maxMismatchRatio;
+	private double[][][] mismatchRatio;
+	private double[][][] mismatchDecrement;
+
+	/** The current time of all scenarios, in time units. */
+	private long currentTime = TICK;
+
+	/** The scenarios that take part in the current tick. */
+	private int[] active;
+	private int activeCount = 0;
+
+	/** <code>1</code> for the scenarios that took part in the last tick, <code>0</code> for the others. */
+	private final int[] running;
+
+	/** The flight size and the total router occupancy of each scenario after the last tick. */
+	private final int[] flightSize;
+	private final int[] queueOccupancy;
+
+	/** The statistics accumulated over the ticks of each scenario. */
+	private final long[] congWindowSum;
+	private final long[] ssThreshSum;
+	private final long[] flightSizeSum;
+	private final int[] peakQueueOccupancy;
+	private final int[] ticks;
+
+	/** Indicates that each scenario stops as soon as its transfer completes. */
+	private boolean runToCompletion = false;
+
+	/** The number of iterations of the last run, and the statistics of each scenario, once the run ended. */
+	private int iterations = -1;
+	private final SimulationStatistics[] statistics;
+
+	/**
+	 * Constructor. Creates one scenario for each combination of the given parameters.
+	 *
+	 * @param tcpVersion_ the TCP version of the senders&mdash;one of: "Tahoe", "Reno", or "NewReno"
+	 * @param bufferSizes_ the router buffer sizes to simulate
+	 * @param rcvWindows_ the receive windows to simulate
+	 * @param routerCounts_ the numbers of routers to simulate
+	 */
+	public Ensemble(String tcpVersion_, int[] bufferSizes_, int[] rcvWindows_, int[] routerCounts_) {
+		this(tcpVersion_, bufferSizes_, rcvWindows_, routerCounts_, new SimulationConfig());
+	}
+
+	/**
+	 * Constructor. Creates one scenario for each combination of the given parameters,
+	 * all with the given configuration.
+	 *
+	 * @param tcpVersion_ the TCP version of the senders&mdash;one of: "Tahoe", "Reno", or "NewReno"
+	 * @param bufferSizes_ the router buffer sizes to simulate
+	 * @param rcvWindows_ the receive windows to simulate
+	 * @param routerCounts_ the numbers of routers to simulate
+	 * @param config_ the configuration of the scenarios
+	 * @throws IllegalArgumentException if the TCP version is unknown, a number of routers is not
+	 * positive, or the configuration asks for lossy links
+	 */
+	public Ensemble(
+		String tcpVersion_, int[] bufferSizes_, int[] rcvWindows_, int[] routerCounts_, SimulationConfig config_
+	) throws IllegalArgumentException {
+		if (tcpVersion_.equals("Tahoe")) {
+			version = TAHOE;
+		} else if (tcpVersion_.equals("NewReno")) {
+			version = NEW_RENO;
+		} else if (tcpVersion_.equals("Reno")) {
+			version = RENO;
+		} else {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  Unknown TCP sender version " + tcpVersion_ + "."
+			);
+		}
+		if (config_.getLossRate() > 0.0) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  Lossy links are not supported."
+			);
+		}
+		config = config_;
+		tcpVersion = tcpVersion_;
+		MSS = config_.getMSS();
+
+		int size_ = bufferSizes_.length * rcvWindows_.length * routerCounts_.length;
+		bufferSizes = new int[size_];
+		rcvWindows = new int[size_];
+		routerCounts = new int[size_];
+		int i = 0;
+		for (int buffer_ = 0; buffer_ < bufferSizes_.length; buffer_++) {
+			for (int window_ = 0; window_ < rcvWindows_.length; window_++) {
+				for (int count_ = 0; count_ < routerCounts_.length; count_++, i++) {
+					if (routerCounts_[count_] <= 0) {
+						throw new IllegalArgumentException(
+							this.getClass().getName() + ":  The number of routers must be positive."
+						);
+					}
+					bufferSizes[i] = bufferSizes_[buffer_];
+					rcvWindows[i] = rcvWindows_[window_];
+					routerCounts[i] = routerCounts_[count_];
+					maxRouters = Math.max(maxRouters, routerCounts[i]);
+				}
+			}
+		}
+
+		state = new int[size_];
+		congWindow = new int[size_];
+		ssThresh = new int[size_];
+		unsentBytes = new int[size_];
+		lastByteSent = new int[size_];
+		lastByteAcked = new int[size_];
+		lastByteSentBefore3xDupAcksRecvd = new int[size_];
+		dupACKcount = new int[size_];
+		rcvWindow = new int[size_];
+		retransmittedBytes = new int[size_];
+		timeouts = new int[size_];
+		completionTime = new long[size_];
+		estimatedRTT = new int[size_];
+		devRTT = new int[size_];
+		timeoutInterval = new double[size_];
+		backoff = new int[size_];
+		rtoTimer = new long[size_];
+		idleConnectionTimer = new long[size_];
+		delayedACKtimer = new long[size_];
+		nextByteExpected = new int[size_];
+		lastByteRecvd = new int[size_];
+		currentRcvWindow = new int[size_];
+		rcvBuffer = new int[size_][];
+		rcvBufferLength = new int[size_];
+		cumulativeACK = new boolean[size_];
+		cumulativeACKnumber = new int[size_];
+		cumulativeACKwindow = new int[size_];
+		cumulativeACKtimestamp = new long[size_];
+		linkQueues = new Queue[size_][][];
+		linkProcessed = new long[size_][][];
+		occupancy = new int[size_][];
+		routerProcessed = new long[size_][];
+		inTransmission = new boolean[size_][][];
+		transmittedNumber = new int[size_][][];
+		transmittedWindow = new int[size_][][];
+		transmittedTimestamp = new long[size_][][];
+		mismatchCount = new double[size_][][];
+		portQueues = new Queue[size_][][];
+		active = new int[size_];
+		running = new int[size_];
+		flightSize = new int[size_];
+		queueOccupancy = new int[size_];
+		congWindowSum = new long[size_];
+		ssThreshSum = new long[size_];
+		flightSizeSum = new long[size_];
+		peakQueueOccupancy = new int[size_];
+		ticks = new int[size_];
+		statistics = new SimulationStatistics[size_];
+
+		calculateMismatchRatios();
+	}
+
+	/**
+	 * @return the number of scenarios in this ensemble
+	 */
+	public int size() {
+		return bufferSizes.length;
+	}
+
+	/**
+	 * Sets whether each scenario stops as soon as its transfer completes.
+	 * @param runToCompletion_ <code>true</code> to stop when the transfer completes
+	 * @see Simulator#setRunToCompletion(boolean)
+	 */
+	public void setRunToCompletion(boolean runToCompletion_) {
+		this.runToCompletion = runToCompletion_;
+	}
+
+	/**
+	 * Runs all scenarios in lockstep for the given number of iterations
+	 * and collects their statistics (see {@link #getStatistics(int)}).
+	 * If the configuration asks for it, the statistics are also
+	 * appended to the statistics file, as by {@link Simulator}.
+	 *
+	 * @param num_iter_ the number of iterations (transmission rounds) to run every scenario
+	 */
+	public void run(int num_iter_) {
+		int size_ = size();
+		currentTime = TICK;
+		activeCount = 0;
+		for (int s = 0; s < size_; s++) {
+			reset(s);
+			active[activeCount++] = s;
+			running[s] = 1;
+		}
+		Arrays.fill(congWindowSum, 0L);
+		Arrays.fill(ssThreshSum, 0L);
+		Arrays.fill(flightSizeSum, 0L);
+		Arrays.fill(peakQueueOccupancy, 0);
+		Arrays.fill(ticks, 0);
+
+		// The application hands all of its data to the senders at once:
+		long startTime_ = currentTime;
+		for (int s = 0; s < size_; s++) {
+			send(s, config.getTotalDataLength());
+		}
+
+		// One more round than the given number of iterations, as in the simulator:
+		for (int iteration_ = 0; iteration_ <= num_iter_ && activeCount > 0; iteration_++) {
+			tick();
+			currentTime += TICK;
+			sample();
+			accumulate();
+
+			int remaining_ = 0;
+			for (int k = 0; k < activeCount; k++) {
+				int s = active[k];
+				if (runToCompletion && isComplete(s)) {
+					finish(s, num_iter_, startTime_);
+				} else {
+					active[remaining_++] = s;
+				}
+			}
+			activeCount = remaining_;
+		}
+		for (int k = 0; k < activeCount; k++) {
+			finish(active[k], num_iter_, startTime_);
+		}
+		activeCount = 0;
+		iterations = num_iter_;
+	}
+
+	/**
+	 * Helper method to put a scenario into its initial state.
+	 */
+	private void reset(int s) {
+		int routers_ = routerCounts[s];
+		state[s] = SLOW_START;
+		congWindow[s] = MSS;
+		ssThresh[s] = 65535;
+		unsentBytes[s] = MSS;	// as in the constructor of the sender
+		lastByteSent[s] = -1;
+		lastByteAcked[s] = -1;
+		lastByteSentBefore3xDupAcksRecvd[s] = -1;
+		dupACKcount[s] = 0;
+		rcvWindow[s] = INITIAL_RCV_WINDOW;
+		retransmittedBytes[s] = 0;
+		timeouts[s] = 0;
+		completionTime[s] = -1L;
+		estimatedRTT[s] = 0;
+		devRTT[s] = INITIAL_DEVIATION;
+		timeoutInterval[s] = INITIAL_TIMEOUT;
+		backoff[s] = 1;
+		rtoTimer[s] = INACTIVE;
+		idleConnectionTimer[s] = INACTIVE;
+		delayedACKtimer[s] = INACTIVE;
+
+		nextByteExpected[s] = 0;
+		lastByteRecvd[s] = -1;
+		currentRcvWindow[s] = rcvWindows[s];
+		rcvBuffer[s] = new int[16];
+		rcvBufferLength[s] = 0;
+		cumulativeACK[s] = false;
+
+		linkQueues[s] = new Queue[routers_ + 1][2];
+		linkProcessed[s] = new long[routers_ + 1][2];
+		for (int i = 0; i <= routers_; i++) {
+			linkQueues[s][i][DOWN] = new Queue();
+			linkQueues[s][i][UP] = new Queue();
+		}
+		occupancy[s] = new int[routers_];
+		routerProcessed[s] = new long[routers_];
+		inTransmission[s] = new boolean[routers_][2];
+		transmittedNumber[s] = new int[routers_][2];
+		transmittedWindow[s] = new int[routers_][2];
+		transmittedTimestamp[s] = new long[routers_][2];
+		mismatchCount[s] = new double[routers_][2];
+		portQueues[s] = new Queue[routers_][2];
+		for (int r = 0; r < routers_; r++) {
+			portQueues[s][r][DOWN] = new Queue();
+			portQueues[s][r][UP] = new Queue();
+		}
+	}
+
+	/**
+	 * Helper method to run one clock tick of all active scenarios. The senders
+	 * handle the ACKs from the previous round and send more data, the routers relay
+	 * the data to the receivers, the receivers reply with ACKs, and the routers relay
+	 * the ACKs back to the senders, in the order of {@link simulation.network.topology.Topology#compileSchedule()}.
+	 */
+	private void tick() {
+		deliverLink(0, UP);
+		for (int k = 0; k < activeCount; k++) {
+			int s = active[k];
+			checkSenderTimers(s);
+			send(s, 0);
+		}
+		deliverLink(0, DOWN);
+
+		for (int r = 0; r < maxRouters; r++) {
+			for (int k = 0; k < activeCount; k++) {
+				int s = active[k];
+				if (r >= routerCounts[s]) continue;
+				if (r > 0) {
+					deliver(s, r, UP);
+				}
+				processRouter(s, r);
+				if (r > 0 && r < routerCounts[s] - 1) {
+					deliver(s, r, DOWN);
+				}
+			}
+		}
+
+		for (int k = 0; k < activeCount; k++) {
+			int s = active[k];
+			deliver(s, routerCounts[s], DOWN);
+		}
+		for (int k = 0; k < activeCount; k++) {
+			int s = active[k];
+			if (delayedACKtimer[s] != INACTIVE && delayedACKtimer[s] <= currentTime) {
+				sendCumulativeAcknowledgement(s);
+			}
+		}
+		for (int k = 0; k < activeCount; k++) {
+			int s = active[k];
+			deliver(s, routerCounts[s], UP);
+		}
+
+		for (int r = maxRouters - 1; r >= 0; r--) {
+			for (int k = 0; k < activeCount; k++) {
+				int s = active[k];
+				if (r >= routerCounts[s]) continue;
+				processRouter(s, r);
+				deliver(s, r, DOWN);
+			}
+		}
+	}
+
+	/**
+	 * Helper method to deliver the arrived packets on the same link of all active scenarios.
+	 */
+	private void deliverLink(int link_, int direction_) {
+		for (int k = 0; k < activeCount; k++) {
+			deliver(active[k], link_, direction_);
+		}
+	}
+
+	// ----------------------------------------------------------------------
+	// Links
+
+	/**
+	 * Helper method to hand a packet to a link of a scenario, stamped with the
+	 * time when it arrives at the other end (see {@link simulation.network.Link#send}).
+	 */
+	private void transmit(int s, int link_, int direction_, int number_, int window_, long timestamp_) {
+		Queue packets_ = linkQueues[s][link_][direction_];
+		long arrivalTime_ = linkProcessed[s][link_][direction_] + PROPAGATION_TIME +
+			((link_ == routerCounts[s]) ? RECEIVER_TRANSMISSION_TIME : TRANSMISSION_TIME);
+		if (packets_.size > 0 && packets_.tailTime() > arrivalTime_) {
+			// The packet arrives together with the packet before it:
+			arrivalTime_ = packets_.tailTime();
+		}
+		packets_.add(number_, window_, timestamp_, arrivalTime_);
+	}
+
+	/**
+	 * Helper method to deliver the packets that arrived at the other end of
+	 * a link of a scenario to the node there, all at once.
+	 */
+	private void deliver(int s, int link_, int direction_) {
+		Queue packets_ = linkQueues[s][link_][direction_];
+		linkProcessed[s][link_][direction_] = currentTime;
+		if (packets_.size == 0 || packets_.headTime() > currentTime) {
+			return;
+		}
+
+		if (direction_ == UP && link_ == 0) {
+			handlingBatch = true;
+			while (packets_.size > 0 && packets_.headTime() <= currentTime) {
+				int head_ = packets_.head;
+				packets_.remove();
+				handleACK(s, packets_.number[head_], packets_.window[head_], packets_.timestamp[head_]);
+			}
+			handlingBatch = false;
+			if (pendingTimer == RTO_START) {
+				rtoTimer[s] = pendingTime;
+			} else if (pendingTimer == RTO_CANCEL) {
+				rtoTimer[s] = INACTIVE;
+			}
+			pendingTimer = RTO_UNCHANGED;
+		} else {
+			// A router, or the receiver, never sends back into the same direction of the link:
+			while (packets_.size > 0 && packets_.headTime() <= currentTime) {
+				int head_ = packets_.head;
+				packets_.remove();
+				if (direction_ == DOWN && link_ == routerCounts[s]) {
+					handleSegment(s, packets_.number[head_], packets_.timestamp[head_]);
+				} else {
+					handleIncomingPacket(
+						s, (direction_ == DOWN) ? link_ : link_ - 1, direction_,
+						packets_.number[head_], packets_.window[head_], packets_.timestamp[head_]
+					);
+				}
+			}
+		}
+	}
+
+	// ----------------------------------------------------------------------
+	// Routers
+
+	/**
+	 * Helper method to calculate the mismatch ratios of the output ports of the routers
+	 * for every number of routers, as {@link simulation.network.Router} does on the first
+	 * arrival. Each router has two ports, each receiving from the link of the other.
+	 */
+	private void calculateMismatchRatios() {
+		maxMismatchRatio = new double[maxRouters + 1][][];
+		mismatchRatio = new double[maxRouters + 1][][];
+		mismatchDecrement = new double[maxRouters + 1][][];
+		for (int routers_ = 1; routers_ <= maxRouters; routers_++) {
+			maxMismatchRatio[routers_] = new double[routers_][2];
+			mismatchRatio[routers_] = new double[routers_][2];
+			mismatchDecrement[routers_] = new double[routers_][2];
+			for (int r = 0; r < routers_; r++) {
+				double upstream_ = TRANSMISSION_TIME;
+				double downstream_ = (r + 1 == routers_) ? RECEIVER_TRANSMISSION_TIME : TRANSMISSION_TIME;
+				setMismatchRatios(routers_, r, DOWN, downstream_, upstream_);
+				setMismatchRatios(routers_, r, UP, upstream_, downstream_);
+			}
+		}
+	}
+
+	/**
+	 * Helper method to set the mismatch ratios of an output port.
+	 */
+	private void setMismatchRatios(
+		int routers_, int r, int direction_, double outgoingTransmissionTime_, double incomingTransmissionTime_
+	) {
+		double max_ = 1.0;
+		double ratio_ = 1.0;
+		if (outgoingTransmissionTime_ != 0.0 && incomingTransmissionTime_ != 0.0) {
+			max_ = Math.max(1.0, outgoingTransmissionTime_ / incomingTransmissionTime_);
+			ratio_ = outgoingTransmissionTime_ / incomingTransmissionTime_;
+		}
+		maxMismatchRatio[routers_][r][direction_] = max_;
+		mismatchRatio[routers_][r][direction_] = ratio_;
+		mismatchDecrement[routers_][r][direction_] = max_ / ratio_;
+	}
+
+	/**
+	 * Helper method to hand a packet from an output port of a router to its outgoing link.
+	 */
+	private void forward(int s, int r, int direction_, int number_, int window_, long timestamp_) {
+		transmit(s, (direction_ == DOWN) ? r + 1 : r, direction_, number_, window_, timestamp_);
+	}
+
+	/**
+	 * Helper method to handle a packet arriving at an output port of a router
+	 * (see {@link simulation.network.Router.OutputPort#handleIncomingPacket}).
+	 */
+	private void handleIncomingPacket(int s, int r, int d, int number_, int window_, long timestamp_) {
+		int routers_ = routerCounts[s];
+		double decrement_ = mismatchDecrement[routers_][r][d];
+		if (!inTransmission[s][r][d]) {
+			if (mismatchRatio[routers_][r][d] <= 1.0) {
+				forward(s, r, d, number_, window_, timestamp_);
+			} else {
+				inTransmission[s][r][d] = true;
+				transmittedNumber[s][r][d] = number_;
+				transmittedWindow[s][r][d] = window_;
+				transmittedTimestamp[s][r][d] = timestamp_;
+				mismatchCount[s][r][d] = maxMismatchRatio[routers_][r][d] - decrement_;
+			}
+		} else {
+			Queue queue_ = portQueues[s][r][d];
+			int length_ = (d == DOWN) ? MSS : 0;
+			if (occupancy[s][r] + length_ <= bufferSizes[s]) {
+				queue_.add(number_, window_, timestamp_, currentTime);
+				occupancy[s][r] += length_;
+			}	// else dropped
+
+			if (mismatchCount[s][r][d] < 1.0) {
+				forward(s, r, d, transmittedNumber[s][r][d], transmittedWindow[s][r][d], transmittedTimestamp[s][r][d]);
+				if (queue_.size > 0) {
+					int head_ = queue_.head;
+					queue_.remove();
+					occupancy[s][r] -= length_;
+					transmittedNumber[s][r][d] = queue_.number[head_];
+					transmittedWindow[s][r][d] = queue_.window[head_];
+					transmittedTimestamp[s][r][d] = queue_.timestamp[head_];
+				}
+				mismatchCount[s][r][d] = maxMismatchRatio[routers_][r][d];
+			}
+			mismatchCount[s][r][d] -= decrement_;
+		}
+	}
+
+	/**
+	 * Helper method to let a router transmit the packets of its output ports
+	 * for which the time since it was last processed allows
+	 * (see {@link simulation.network.Router.OutputPort#transmitPackets()}).
+	 */
+	private void processRouter(int s, int r) {
+		long budget_ = currentTime - routerProcessed[s][r];
+		for (int d = DOWN; d <= UP; d++) {
+			if (!inTransmission[s][r][d]) continue;
+
+			long transmissionTime_ = (d == DOWN && r + 1 == routerCounts[s]) ?
+				RECEIVER_TRANSMISSION_TIME : TRANSMISSION_TIME;
+			long portBudget_ = budget_;
+			forward(s, r, d, transmittedNumber[s][r][d], transmittedWindow[s][r][d], transmittedTimestamp[s][r][d]);
+			inTransmission[s][r][d] = false;
+
+			Queue queue_ = portQueues[s][r][d];
+			int length_ = (d == DOWN) ? MSS : 0;
+			while (queue_.size > 0 && portBudget_ > 0) {
+				int head_ = queue_.head;
+				queue_.remove();
+				occupancy[s][r] -= length_;
+				forward(s, r, d, queue_.number[head_], queue_.window[head_], queue_.timestamp[head_]);
+				portBudget_ -= transmissionTime_;
+			}
+		}
+		routerProcessed[s][r] = currentTime;
+	}
+
+	// ----------------------------------------------------------------------
+	// Senders
+
+	/**
+	 * Helper method to let the sender of a scenario send as many segments as its
+	 * windows allow, after appending the given new data to its bytestream
+	 * (see {@link simulation.tcp.Sender#send(int)}).
+	 */
+	private void send(int s, int newBytes_) {
+		if (newBytes_ == 0 && unsentBytes[s] == 0) {
+			// Start the idle-connection timer, unless it is running or data are outstanding:
+			if (idleConnectionTimer[s] == INACTIVE && lastByteAcked[s] >= lastByteSent[s]) {
+				idleConnectionTimer[s] = currentTime + toTimeUnits(getTimeoutInterval(s));
+			}
+			return;
+		}
+		if (newBytes_ > 0) {
+			idleConnectionTimer[s] = INACTIVE;
+			unsentBytes[s] += newBytes_;
+		}
+		if (unsentBytes[s] < MSS) {
+			return;
+		}
+
+		int effectiveWindow_ = Math.min(congWindow[s], rcvWindow[s]) - (lastByteSent[s] - lastByteAcked[s]);
+		if (effectiveWindow_ < 0) {
+			effectiveWindow_ = 0;
+		}
+		int burst_size_ = Math.min(effectiveWindow_ / MSS, unsentBytes[s] / MSS);
+		for (int seg_ = 0; seg_ < burst_size_; seg_++) {
+			unsentBytes[s] -= MSS;
+			transmit(s, 0, DOWN, lastByteSent[s] + 1, 0, currentTime);
+			lastByteSent[s] += MSS;
+		}
+		if (burst_size_ > 0) {
+			startRTOtimer(s);
+		}
+	}
+
+	/**
+	 * Helper method to fire the expired timers of the sender of a scenario
+	 * (see {@link simulation.tcp.Sender#timerExpired(int)}).
+	 */
+	private void checkSenderTimers(int s) {
+		if (rtoTimer[s] != INACTIVE && rtoTimer[s] <= currentTime) {
+			rtoTimer[s] = INACTIVE;
+			timeouts[s]++;
+
+			// Assuming that all TCP senders react in the same way to an RTO timeout:
+			int flightSize_ = lastByteSent[s] - lastByteAcked[s];
+			ssThresh[s] = Math.max(((version == TAHOE) ? congWindow[s] : flightSize_) / 2, 2 * MSS);
+			if (timeoutInterval[s] < MAX_TIMEOUT) {
+				backoff[s] <<= 1;
+			}
+			startRTOtimer(s);
+			resetParametersToSlowStart(s);
+			transmit(s, 0, DOWN, lastByteAcked[s] + 1, 0, -1L);
+			state[s] = SLOW_START;
+		}
+		if (idleConnectionTimer[s] != INACTIVE && idleConnectionTimer[s] <= currentTime) {
+			idleConnectionTimer[s] = INACTIVE;
+			resetParametersToSlowStart(s);
+			state[s] = SLOW_START;
+		}
+	}
+
+	/**
+	 * Helper method to let the sender of a scenario process an ACK
+	 * (see {@link simulation.tcp.Sender#handle(simulation.tcp.Segment)}
+	 * and the states of the sender).
+	 */
+	private void handleACK(int s, int ackSequenceNumber_, int window_, long timestamp_) {
+		rcvWindow[s] = window_;
+
+		if (ackSequenceNumber_ > lastByteAcked[s] + 1) {
+			updateRTT(s, timestamp_);
+			int lastByteAckedPrevious_ = lastByteAcked[s];
+			lastByteAcked[s] = ackSequenceNumber_ - 1;
+
+			// Calculate the new congestion window, depending on the state:
+			if (state[s] == SLOW_START) {
+				if (lastByteSentBefore3xDupAcksRecvd[s] == -1) {
+					congWindow[s] += ackSequenceNumber_ - lastByteAckedPrevious_ - 1;
+				} else {
+					congWindow[s] += MSS;
+				}
+			} else if (state[s] == CONGESTION_AVOIDANCE) {
+				if ((ackSequenceNumber_ - lastByteAckedPrevious_) >= congWindow[s]) {
+					congWindow[s] += MSS;
+				} else {
+					congWindow[s] += (MSS * MSS) / congWindow[s];
+				}
+			} else if (lastByteSentBefore3xDupAcksRecvd[s] != -1) {
+				if (version == NEW_RENO && ackSequenceNumber_ < lastByteSentBefore3xDupAcksRecvd[s]) {
+					// A "partial ACK": retransmit the next unacknowledged segment
+					transmit(s, 0, DOWN, lastByteAcked[s] + 1, 0, -1L);
+					int newlyAcked_ = ackSequenceNumber_ - lastByteAckedPrevious_;
+					congWindow[s] -= newlyAcked_;
+					if (newlyAcked_ >= MSS) {
+						congWindow[s] += MSS;
+					}
+				} else {
+					lastByteSentBefore3xDupAcksRecvd[s] = -1;
+					congWindow[s] = ssThresh[s];
+				}
+			}
+
+			if (lastByteAcked[s] < lastByteSent[s]) {
+				startRTOtimer(s);
+			} else {
+				cancelRTOtimer(s);
+			}
+			dupACKcount[s] = 0;
+
+			// Look up the next state:
+			if (state[s] == SLOW_START) {
+				state[s] = (congWindow[s] < ssThresh[s]) ? SLOW_START : CONGESTION_AVOIDANCE;
+			} else if (state[s] == CONGESTION_AVOIDANCE) {
+				if (congWindow[s] < ssThresh[s]) {
+					resetParametersToSlowStart(s);
+					state[s] = SLOW_START;
+				}
+			} else if (!(version == NEW_RENO && lastByteAcked[s] < lastByteSentBefore3xDupAcksRecvd[s])) {
+				state[s] = CONGESTION_AVOIDANCE;
+			}
+
+			if (lastByteSentBefore3xDupAcksRecvd[s] <= lastByteAcked[s]) {
+				lastByteSentBefore3xDupAcksRecvd[s] = -1;
+			}
+			if (completionTime[s] < 0 && isComplete(s)) {
+				completionTime[s] = currentTime;
+			}
+		} else if (state[s] == FAST_RECOVERY) {
+			congWindow[s] += MSS;
+		} else {
+			dupACKcount[s]++;
+			if (dupACKcount[s] >= DUP_ACK_THRESHOLD) {
+				onThreeDuplicateACKs(s);
+				state[s] = (version == TAHOE) ? SLOW_START : FAST_RECOVERY;
+			}
+		}
+	}
+
+	/**
+	 * Helper method to retransmit the oldest unacknowledged segment of a scenario
+	 * on the threshold number of duplicate ACKs (see {@link simulation.tcp.SenderTahoe}
+	 * and {@link simulation.tcp.SenderReno}).
+	 */
+	private void onThreeDuplicateACKs(int s) {
+		int flightSize_ = lastByteSent[s] - lastByteAcked[s];
+		if (version == TAHOE) {
+			if (dupACKcount[s] != DUP_ACK_THRESHOLD) return;
+			ssThresh[s] = congWindow[s] / 2;
+		} else {
+			lastByteSentBefore3xDupAcksRecvd[s] = lastByteSent[s];
+			ssThresh[s] = flightSize_ / 2;
+		}
+		ssThresh[s] -= ssThresh[s] % MSS;
+		ssThresh[s] = Math.max(ssThresh[s], 2 * MSS);
+
+		retransmittedBytes[s] += MSS;
+		transmit(s, 0, DOWN, lastByteAcked[s] + 1, 0, -1L);
+
+		if (version == TAHOE) {
+			resetParametersToSlowStart(s);
+		} else {
+			congWindow[s] = Math.max(flightSize_ / 2, 2 * MSS) + 3 * MSS;
+		}
+	}
+
+	/**
+	 * Helper method to reset the congestion parameters of a scenario for the slow start.
+	 */
+	private void resetParametersToSlowStart(int s) {
+		congWindow[s] = MSS;
+		dupACKcount[s] = 0;
+		lastByteSentBefore3xDupAcksRecvd[s] = -1;
+	}
+
+	/**
+	 * Helper method to check whether the sender of a scenario has completed its transfer
+	 * (see {@link simulation.tcp.Sender#isComplete()}).
+	 */
+	private boolean isComplete(int s) {
+		return (lastByteSent[s] >= 0) && (lastByteAcked[s] >= lastByteSent[s]) && (unsentBytes[s] < MSS);
+	}
+
+	/**
+	 * Helper method to start (or move) the RTO timer of a scenario; while a batch
+	 * of ACKs is handled, only the last request counts, at the end of the batch.
+	 */
+	private void startRTOtimer(int s) {
+		long time_ = currentTime + toTimeUnits(getTimeoutInterval(s));
+		if (handlingBatch) {
+			pendingTimer = RTO_START;
+			pendingTime = time_;
+			return;
+		}
+		rtoTimer[s] = time_;
+	}
+
+	/**
+	 * Helper method to cancel the RTO timer of a scenario, at the end of the batch of ACKs.
+	 */
+	private void cancelRTOtimer(int s) {
+		if (handlingBatch) {
+			pendingTimer = RTO_CANCEL;
+			return;
+		}
+		rtoTimer[s] = INACTIVE;
+	}
+
+	/**
+	 * Helper method to update the RTO estimate of a scenario with a new sample
+	 * (see {@link simulation.tcp.RTOEstimator}); ACKs of retransmitted segments carry no timestamp.
+	 */
+	private void updateRTT(int s, long timestamp_) {
+		double timestampTicks_ = toTicks(timestamp_);
+		if (timestampTicks_ < 0) return;
+
+		backoff[s] = 1;
+		int sampleRTT_ = (int) ((toTicks(currentTime) - timestampTicks_) + 0.5);
+		if (sampleRTT_ < 1) sampleRTT_ = 1;
+		if (estimatedRTT[s] != 0) {
+			int err_ = sampleRTT_ - estimatedRTT[s];
+			estimatedRTT[s] += (err_ >> 3);
+			if (err_ < 0) err_ = -err_;
+			devRTT[s] += ((err_ - devRTT[s]) >> 2);
+		} else {
+			estimatedRTT[s] = sampleRTT_;
+			devRTT[s] = sampleRTT_ >> 1;
+		}
+		timeoutInterval[s] = estimatedRTT[s] + Math.max(1.0, (devRTT[s] << 2));
+		if (timeoutInterval[s] < 1.0) timeoutInterval[s] = 1.0;
+	}
+
+	/**
+	 * Helper method to calculate the current retransmission timeout of a scenario, in ticks.
+	 */
+	private double getTimeoutInterval(int s) {
+		double rto_ = timeoutInterval[s] * backoff[s];
+		if (rto_ < 1.0) {
+			return 1.0;
+		} else if (rto_ > MAX_TIMEOUT) {
+			return MAX_TIMEOUT;
+		}
+		return rto_;
+	}
+
+	// ----------------------------------------------------------------------
+	// Receivers
+
+	/**
+	 * Helper method to let the receiver of a scenario process a data segment
+	 * (see {@link simulation.tcp.Receiver#handle(simulation.tcp.Segment)}).
+	 */
+	private void handleSegment(int s, int sequenceNumber_, long timestamp_) {
+		if (sequenceNumber_ == nextByteExpected[s]) {
+			nextByteExpected[s] = sequenceNumber_ + MSS;
+			if (rcvBufferLength[s] == 0) {
+				lastByteRecvd[s] = sequenceNumber_ + MSS - 1;
+			} else {
+				checkBufferedSegments(s);
+			}
+
+			// Acknowledge cumulatively, when the delayed-ACK timer expires in this tick:
+			if (!cumulativeACK[s]) {
+				cumulativeACK[s] = true;
+				delayedACKtimer[s] = currentTime;
+			}
+			cumulativeACKnumber[s] = nextByteExpected[s];
+			cumulativeACKwindow[s] = currentRcvWindow[s];
+			cumulativeACKtimestamp[s] = timestamp_;
+		} else {
+			// Buffer the out-of-sequence segment and send a duplicate ACK right away,
+			// after the lingering cumulative ACK, if any:
+			sendCumulativeAcknowledgement(s);
+
+			if (rcvBufferLength[s] == rcvBuffer[s].length) {
+				rcvBuffer[s] = Arrays.copyOf(rcvBuffer[s], 2 * rcvBuffer[s].length);
+			}
+			rcvBuffer[s][rcvBufferLength[s]++] = sequenceNumber_;
+			lastByteRecvd[s] = Math.max(lastByteRecvd[s], sequenceNumber_ + MSS - 1);
+			currentRcvWindow[s] = rcvWindows[s] - (lastByteRecvd[s] - nextByteExpected[s]);
+			transmit(s, routerCounts[s], UP, nextByteExpected[s], currentRcvWindow[s], -1L);
+		}
+	}
+
+	/**
+	 * Helper method to remove from the receive buffer of a scenario the segments that
+	 * are now in sequence (see {@link simulation.tcp.Receiver#checkBufferedSegments()}).
+	 * As there, a stale segment at the head of the sorted buffer stops the check.
+	 */
+	private void checkBufferedSegments(int s) {
+		int[] buffer_ = rcvBuffer[s];
+		int length_ = rcvBufferLength[s];
+		Arrays.sort(buffer_, 0, length_);
+		int removed_ = 0;
+		while (removed_ < length_ && buffer_[removed_] == nextByteExpected[s]) {
+			nextByteExpected[s] = buffer_[removed_] + MSS;
+			currentRcvWindow[s] = rcvWindows[s] - (lastByteRecvd[s] - nextByteExpected[s]);
+			removed_++;
+		}
+		System.arraycopy(buffer_, removed_, buffer_, 0, length_ - removed_);
+		rcvBufferLength[s] = length_ - removed_;
+	}
+
+	/**
+	 * Helper method to send the cumulative ACK of a scenario, if any, and stop its delayed-ACK timer.
+	 */
+	private void sendCumulativeAcknowledgement(int s) {
+		delayedACKtimer[s] = INACTIVE;
+		if (cumulativeACK[s]) {
+			transmit(
+				s, routerCounts[s], UP,
+				cumulativeACKnumber[s], cumulativeACKwindow[s], cumulativeACKtimestamp[s]
+			);
+			cumulativeACK[s] = false;
+		}
+	}
+
+	// ----------------------------------------------------------------------
+	// Statistics
+
+	/**
+	 * Helper method to record the statistics of a scenario when it is done, and write them
+	 * to the statistics file, as {@link Simulator} does at the end of a session.
+	 */
+	private void finish(int s, int num_iter_, long startTime_) {
+		running[s] = 0;
+		double[] completionTimes_ = { -1.0 };
+		if (completionTime[s] >= 0) {
+			// An ACK handled in the round at time "t" arrived by the end of that round:
+			completionTimes_[0] = toTicks(completionTime[s] - startTime_ + TICK);
+		}
+		double elapsedTime_ = toTicks(currentTime - startTime_);
+		statistics[s] = new SimulationStatistics(
+			num_iter_, routerCounts[s], tcpVersion, lastByteAcked[s] + 1, retransmittedBytes[s],
+			runToCompletion ? elapsedTime_ : (double) num_iter_, timeouts[s], completionTimes_
+		);
+
+		if (config.isStatisticsWritten()) {
+			String fileName_ = config.getStatisticsFileName();
+			if (fileName_ == null) {
+				fileName_ = Simulator.STATISTICS_FILENAME + tcpVersion + "Direct" + Simulator.STATISTICS_FILE_EXTENSION;
+			}
+			Simulator.appendStatistics(fileName_, statistics[s].toRow());
+		}
+	}
+
+	/**
+	 * Helper method to copy the flight size and the total router occupancy
+	 * of the running scenarios after the last tick into the arrays of the ensemble.
+	 */
+	private void sample() {
+		for (int k = 0; k < activeCount; k++) {
+			int s = active[k];
+			flightSize[s] = lastByteSent[s] - lastByteAcked[s];
+			int occupancy_ = 0;
+			int[] occupancies_ = occupancy[s];
+			for (int r = 0; r < occupancies_.length; r++) {
+				occupancy_ += occupancies_[r];
+			}
+			queueOccupancy[s] = occupancy_;
+		}
+	}
+
+	/**
+	 * Helper method to add the state of the running scenarios after the last tick
+	 * to their statistics. The loops run over all scenarios; the ones that did not
+	 * take part in the tick are masked out by {@link #running} instead of a branch.
+	 */
+	private void accumulate() {
+		int size_ = size();
+		for (int i = 0; i < size_; i++) {
+			congWindowSum[i] += running[i] * congWindow[i];
+		}
+		for (int i = 0; i < size_; i++) {
+			ssThreshSum[i] += running[i] * ssThresh[i];
+		}
+		for (int i = 0; i < size_; i++) {
+			flightSizeSum[i] += running[i] * flightSize[i];
+		}
+		for (int i = 0; i < size_; i++) {
+			peakQueueOccupancy[i] = Math.max(peakQueueOccupancy[i], running[i] * queueOccupancy[i]);
+		}
+		for (int i = 0; i < size_; i++) {
+			ticks[i] += running[i];
+		}
+	}
+
+	/**
+	 * @param scenario_ the index of a scenario
+	 * @return the statistics of the scenario, or <code>null</code> if the ensemble has not run yet
+	 * @see Simulator#getStatistics()
+	 */
+	public SimulationStatistics getStatistics(int scenario_) {
+		return statistics[scenario_];
+	}
+
+	/**
+	 * Runs a scenario of the last run again in its own {@link Simulator}, in the round-based
+	 * mode, and compares the statistics. The statistics of the simulator are not written.
+	 *
+	 * @param scenario_ the index of a scenario
+	 * @return <code>true</code> if the simulator produced the same statistics as the ensemble
+	 * @throws IllegalStateException if the ensemble has not run yet
+	 */
+	public boolean check(int scenario_) throws IllegalStateException {
+		if (iterations < 0) {
+			throw new IllegalStateException(
+				this.getClass().getName() + ":  The ensemble has not run yet."
+			);
+		}
+		SimulationConfig config_ = new SimulationConfig(config);
+		config_.setStatisticsWritten(false);
+		Simulator simulator_ = new Simulator(
+			tcpVersion, bufferSizes[scenario_], rcvWindows[scenario_], "Direct", 1, routerCounts[scenario_],
+			Simulator.DEFAULT_TIME_UNITS_PER_TICK, config_
+		);
+		simulator_.setRunToCompletion(runToCompletion);
+		simulator_.runSimulation(iterations);
+		return Arrays.equals(simulator_.getStatistics().toRow(), statistics[scenario_].toRow());
+	}
+
+	/**
+	 * @param scenario_ the index of a scenario
+	 * @return the average congestion window of the scenario over its ticks, in bytes
+	 */
+	public double getMeanCongWindow(int scenario_) {
+		return mean(congWindowSum[scenario_], scenario_);
+	}
+
+	/**
+	 * @param scenario_ the index of a scenario
+	 * @return the average slow start threshold of the scenario over its ticks, in bytes
+	 */
+	public double getMeanSSThresh(int scenario_) {
+		return mean(ssThreshSum[scenario_], scenario_);
+	}
+
+	/**
+	 * @param scenario_ the index of a scenario
+	 * @return the average flight size of the scenario over its ticks, in bytes
+	 */
+	public double getMeanFlightSize(int scenario_) {
+		return mean(flightSizeSum[scenario_], scenario_);
+	}
+
+	/**
+	 * @param scenario_ the index of a scenario
+	 * @return the largest total occupancy of the scenario's routers at the end of a tick, in bytes
+	 */
+	public int getPeakQueueOccupancy(int scenario_) {
+		return peakQueueOccupancy[scenario_];
+	}
+
+	/** Helper method to average a sum over the ticks of a scenario. */
+	private double mean(long sum_, int scenario_) {
+		return (ticks[scenario_] == 0) ? 0.0 : (double) sum_ / ticks[scenario_];
+	}
+
+	/** Helper method to convert clock ticks into time units, as {@link Simulator#toTimeUnits(double)}. */
+	private static long toTimeUnits(double ticks_) {
+		return Math.round(ticks_ * TICK);
+	}
+
+	/** Helper method to convert time units into clock ticks, as {@link Simulator#toTicks(long)}. */
+	private static double toTicks(long timeUnits_) {
+		return (double) timeUnits_ / TICK;
+	}
+
+	/**
+	 * Helper method to parse a comma-separated list of integers.
+	 */
+	private static int[] parseList(String list_) {
+		String[] items_ = list_.split(",");
+		int[] values_ = new int[items_.length];
+		for (int i = 0; i < items_.length; i++) {
+			values_[i] = Integer.parseInt(items_[i].trim());
+		}
+		return values_;
+	}
+
+	/**
+	 * Runs an ensemble from the command line and prints a summary line for each scenario.
+	 * The arguments are:
+	 * <pre>
+	 * TCP-sender-version number-of-iterations buffer-sizes receive-windows router-counts [Fixed|Completion] [Check]
+	 * </pre>
+	 * where the buffer sizes, receive windows and router counts are comma-separated lists,
+	 * e.g. <code>Reno 100 6244,12388,24676 65536 1,2,3 Completion</code>.
+	 * With <code>Check</code>, every scenario is also run by its own {@link Simulator}
+	 * and the scenarios whose statistics differ are listed (see {@link #check(int)}).
+	 *
+	 * @param argv_ the command line arguments
+	 */
+	public static void main(String[] argv_) {
+		if (argv_.length < 5) {
+			System.err.println(
+				"Please specify the TCP sender version, the number of iterations, and the lists of " +
+				"buffer sizes, receive windows and router counts!"
+			);
+			System.exit(1);
+		}
+		Ensemble ensemble_ = null;
+		int numIter_ = 0;
+		try {
+			numIter_ = Integer.parseInt(argv_[1]);
+			SimulationConfig config_ = new SimulationConfig();
+			config_.setReportingLevel(0);
+			ensemble_ = new Ensemble(
+				argv_[0], parseList(argv_[2]), parseList(argv_[3]), parseList(argv_[4]), config_
+			);
+		} catch (NumberFormatException ex) {
+			System.err.println("The number of iterations and the parameter lists must be integers.");
+			System.exit(1);
+		}
+		ensemble_.setRunToCompletion(argv_.length > 5 && argv_[5].equalsIgnoreCase("completion"));
+
+		ensemble_.run(numIter_);
+
+		System.out.println(
+			"Buffer\tRcvWindow\tRouters\tThroughput\tTimeouts\tCompletionTime\t" +
+			"MeanCongWindow\tMeanSSThresh\tMeanFlightSize\tPeakQueue"
+		);
+		for (int i = 0; i < ensemble_.size(); i++) {
+			SimulationStatistics statistics_ = ensemble_.getStatistics(i);
+			System.out.println(
+				ensemble_.bufferSizes[i] + "\t" + ensemble_.rcvWindows[i] + "\t" + ensemble_.routerCounts[i] + "\t" +
+				statistics_.getThroughput() + "\t" + statistics_.getTimeouts() + "\t" +
+				statistics_.getAggregateCompletionTime() + "\t" +
+				ensemble_.getMeanCongWindow(i) + "\t" + ensemble_.getMeanSSThresh(i) + "\t" +
+				ensemble_.getMeanFlightSize(i) + "\t" + ensemble_.getPeakQueueOccupancy(i)
+			);
+		}
+
+		if (argv_.length > 6 && argv_[6].equalsIgnoreCase("check")) {
+			int agreeing_ = 0;
+			for (int i = 0; i < ensemble_.size(); i++) {
+				if (ensemble_.check(i)) {
+					agreeing_++;
+				} else {
+					System.out.println(
+						"Scenario " + ensemble_.bufferSizes[i] + "/" + ensemble_.rcvWindows[i] + "/" +
+						ensemble_.routerCounts[i] + " differs from its simulator."
+					);
+				}
+			}
+			System.out.println(agreeing_ + " of " + ensemble_.size() + " scenarios agree with their simulators.");
+		}
+	}
+
+
+	// ----------------------------------------------------------------------
+	/**
+	 * A first-in-first-out queue of packets, kept in parallel arrays: the sequence or
+	 * acknowledgment number, the advertised window, the timestamp and the arrival time
+	 * of each packet. The data segments carry no window; all have the same length.
+	 */
+	private static class Queue {
+		int[] number = new int[16];
+		int[] window = new int[16];
+		long[] timestamp = new long[16];
+		long[] arrival = new long[16];
+
+		/** The index of the first packet, and the number of packets. */
+		int head = 0;
+		int size = 0;
+
+		void add(int number_, int window_, long timestamp_, long arrival_) {
+			if (size == number.length) {
+				grow();
+			}
+			int tail_ = (head + size) & (number.length - 1);
+			number[tail_] = number_;
+			window[tail_] = window_;
+			timestamp[tail_] = timestamp_;
+			arrival[tail_] = arrival_;
+			size++;
+		}
+
+		/** Removes the first packet; its fields stay at the old {@link #head} until the next {@link #add}. */
+		void remove() {
+			head = (head + 1) & (number.length - 1);
+			size--;
+		}
+
+		long headTime() {
+			return arrival[head];
+		}
+
+		long tailTime() {
+			return arrival[(head + size - 1) & (number.length - 1)];
+		}
+
+		private void grow() {
+			int length_ = number.length;
+			number = unwrap(number, 2 * length_);
+			window = unwrap(window, 2 * length_);
+			timestamp = unwrap(timestamp, 2 * length_);
+			arrival = unwrap(arrival, 2 * length_);
+			head = 0;
+		}
+
+		private int[] unwrap(int[] values_, int length_) {
+			int[] larger_ = new int[length_];
+			int first_ = values_.length - head;
+			System.arraycopy(values_, head, larger_, 0, first_);
+			System.arraycopy(values_, 0, larger_, first_, head);
+			return larger_;
+		}
+
+		private long[] unwrap(long[] values_, int length_) {
+			long[] larger_ = new long[length_];
+			int first_ = values_.length - head;
+			System.arraycopy(values_, head, larger_, 0, first_);
+			System.arraycopy(values_, 0, larger_, first_, head);
+			return larger_;
+		}
+	}
+}
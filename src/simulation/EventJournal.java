@@ -0,0 +1,926 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import simulation.network.Link;
+import simulation.network.NetworkElement;
+import simulation.network.Packet;
+import simulation.tcp.Segment;
+
+/**
+ * A compact binary journal of everything that happens in a simulation:
+ * packets handed to the links or lost by them, packets dropped by the routers,
+ * timers started, cancelled and fired, and the state transitions of the senders.
+ * The deliveries at the other end of the links are not recorded, since each
+ * follows from the sending of the packet and the delay of the link.
+ * The journal is attached to a simulator with {@link Simulator#setJournal(EventJournal)}
+ * before the simulation session starts.</p>
+ *
+ * <p>A record takes only a few bytes: its type, the time elapsed since the
+ * previous record, and the identifiers of the elements involved, all as
+ * variable-length integers. A network element is identified by its own
+ * identifier (see {@link NetworkElement#getId()}), and its name is written
+ * only once, when the element first appears in the journal. The records are
+ * collected in a buffer that is written out in large blocks. With 1000 flows
+ * through two routers (Reno, "Events" engine), a journal of 50 MB adds about
+ * 0.4 s, or 15%, to a run of 2.8 s; with 200 flows it adds about 0.4 s to 1 s,
+ * a good part of it the fixed cost of saving the first keyframe.
+ * Each further keyframe costs about as much as a {@link Snapshot} of the simulator.</p>
+ *
+ * <p>At the start of the first clock tick, and then every given number of
+ * ticks, the journal also stores a <em>keyframe</em>: a snapshot of the whole
+ * simulator (see {@link Snapshot#save(Simulator, OutputStream)}). Because the
+ * simulation is deterministic, the run can be continued from any keyframe
+ * exactly as it originally went on. {@link #seek(File, long)} uses this to
+ * reach any clock tick of a journaled run without simulating it from the start,
+ * and checks on the way that the replay reproduces the journal record by record.
+ * {@link #print(InputStream, long, long, PrintStream)} lists the records
+ * in a readable form. Both can be run from the command line
+ * (see {@link #main(String[])}).</p>
+ *
+ * <p>The records are written in the order in which the simulator produces them,
+ * so a journal can be kept only when the simulation runs on a single thread.</p>
+ *
+ * @see Simulator#setJournal(EventJournal)
+ */
+public class EventJournal implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Identifies the journal format at the start of the stream. */
+	public static final int MAGIC = 0x54435046;
+
+	/** Format version of the journal. */
+	public static final int VERSION = 3;
+
+	/** Record type: end of the journal. */
+	public static final int END = 0;
+
+	/** Record type: start of a clock tick. */
+	public static final int TICK = 1;
+
+	/** Record type: the name of an element that appears in the journal for the first time. */
+	public static final int NAME = 2;
+
+	/** Record type: a snapshot of the simulator at the start of a clock tick. */
+	public static final int KEYFRAME = 3;
+
+	/** Record type: a packet handed to a link. */
+	public static final int LINK_SEND = 4;
+
+	/** Record type: a packet dropped by a router. */
+	public static final int ROUTER_DROP = 6;
+
+	/** Record type: a timer started or moved. */
+	public static final int TIMER_ARM = 7;
+
+	/** Record type: a running timer cancelled. */
+	public static final int TIMER_CANCEL = 8;
+
+	/** Record type: a timer fired. */
+	public static final int TIMER_FIRE = 9;
+
+	/** Record type: a component, such as a TCP sender, switched to another state. */
+	public static final int STATE = 10;
+
+	/** Record type: a packet lost by a lossy link. */
+	public static final int LINK_LOSS = 11;
+
+	/** Flags of the packet descriptors. */
+	private static final int PACKET_SEGMENT = 1;
+	private static final int PACKET_ACK = 2;
+	private static final int PACKET_ERROR = 4;
+
+	/** Size of the record buffer; the buffer is written out when it is almost full. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The simulator whose events are recorded. */
+	private final Simulator simulator;
+
+	/** The number of clock ticks between two keyframes;
+	 * zero writes only the keyframe at the start of the first tick. */
+	private final int keyframeInterval;
+
+	/** Indicates, by the identifier of a network element, whether its name is already recorded. */
+	private boolean[] named = new boolean[64];
+
+	/** The identifiers of the other components and states that appeared in the journal so far.
+	 * They are negative, starting from -2, so as not to collide with the identifiers
+	 * of the network elements; -1 stands for none. */
+	private IdentityHashMap<Object, Integer> otherIds = new IdentityHashMap<Object, Integer>();
+
+	/** The component or state looked up last, and its identifier; most records
+	 * of a sender follow one another, so this spares most of the map lookups. */
+	private transient Object lastOther = null;
+	private transient int lastOtherId = -1;
+
+	/** The time of the previous record. */
+	private long lastTime = 0;
+
+	/** The last clock tick recorded, or <code>Long.MIN_VALUE</code> before the first one. */
+	private long lastTick = Long.MIN_VALUE;
+
+	/** The clock tick of the last keyframe, or <code>Long.MIN_VALUE</code> before the first one. */
+	private long lastKeyframeTick = Long.MIN_VALUE;
+
+	/** The stream the journal is written to, while recording. */
+	private transient OutputStream out = null;
+
+	/** The journal that a replay is checked against, while replaying. */
+	private transient Reader expected = null;
+
+	/** The time at which the replay diverged from the checked journal,
+	 * or <code>Long.MIN_VALUE</code> if it did not. */
+	private transient long divergedAt = Long.MIN_VALUE;
+
+	/** The encoded records that have not been written out yet. */
+	private transient byte[] buffer = null;
+	private transient int position = 0;
+
+	/**
+	 * Constructor. Writes the header of the journal.
+	 * @param simulator_ the simulator whose events are recorded
+	 * @param out_ the stream to write the journal to; it is closed by {@link #close()}
+	 * @param keyframeInterval_ the number of clock ticks between two keyframes;
+	 * zero writes only the keyframe at the start of the first tick
+	 * @throws IOException if the header cannot be written
+	 * @throws IllegalArgumentException if the keyframe interval is negative
+	 */
+	public EventJournal(Simulator simulator_, OutputStream out_, int keyframeInterval_)
+	throws IOException, IllegalArgumentException {
+		if (keyframeInterval_ < 0) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  The keyframe interval must not be negative."
+			);
+		}
+		this.simulator = simulator_;
+		this.keyframeInterval = keyframeInterval_;
+		this.buffer = new byte[BUFFER_SIZE];
+		writeInt(MAGIC);
+		writeInt(VERSION);
+		writeLong(simulator_.getTimeIncrement());
+		out_.write(buffer, 0, position);
+		position = 0;
+		this.out = out_;
+	}
+
+	/**
+	 * Records a packet handed to a link.
+	 * @param link_ the link
+	 * @param source_ the node that sent the packet
+	 * @param packet_ the packet
+	 */
+	public void packetSent(Link link_, NetworkElement source_, Packet packet_) {
+		if (!isActive()) return;
+		int linkId_ = idOf(link_);
+		int nodeId_ = idOf(source_);
+		beginRecord(LINK_SEND);
+		writeInt(linkId_);
+		writeInt(nodeId_);
+		writePacket(packet_);
+		endRecord();
+	}
+
+	/**
+	 * Records a packet lost by a link, instead of {@link #packetSent(Link, NetworkElement, Packet)}.
+	 * @param link_ the link
+	 * @param source_ the node that sent the packet
+	 * @param packet_ the packet
+	 */
+	public void packetLost(Link link_, NetworkElement source_, Packet packet_) {
+		if (!isActive()) return;
+		int linkId_ = idOf(link_);
+		int nodeId_ = idOf(source_);
+		beginRecord(LINK_LOSS);
+		writeInt(linkId_);
+		writeInt(nodeId_);
+		writePacket(packet_);
+		endRecord();
+	}
+
+	/**
+	 * Records a packet dropped by a router.
+	 * @param router_ the router
+	 * @param packet_ the dropped packet
+	 */
+	public void packetDropped(NetworkElement router_, Packet packet_) {
+		if (!isActive()) return;
+		int routerId_ = idOf(router_);
+		beginRecord(ROUTER_DROP);
+		writeInt(routerId_);
+		writePacket(packet_);
+		endRecord();
+	}
+
+	/**
+	 * Records a transition of a component, such as a TCP sender, to another state.
+	 * @param component_ the component
+	 * @param state_ the component's new state
+	 */
+	public void stateChanged(Object component_, Object state_) {
+		if (!isActive()) return;
+		int componentId_ = idOf(component_);
+		int stateId_ = idOf(state_);
+		beginRecord(STATE);
+		writeInt(componentId_);
+		writeInt(stateId_);
+		endRecord();
+	}
+
+	/** Records a timer started or moved to the given expiration time. */
+	void timerArmed(TimerSimulated timer_, long time_) {
+		if (!isActive()) return;
+		int componentId_ = idOf(timer_.callback);
+		beginRecord(TIMER_ARM);
+		writeInt(componentId_);
+		writeInt(timer_.type);
+		writeLong(time_ - lastTime);
+		endRecord();
+	}
+
+	/** Records a running timer cancelled. */
+	void timerCancelled(TimerSimulated timer_) {
+		timerRecord(TIMER_CANCEL, timer_);
+	}
+
+	/** Records a timer fired. */
+	void timerFired(TimerSimulated timer_) {
+		timerRecord(TIMER_FIRE, timer_);
+	}
+
+	/**
+	 * Called by the simulator at the start of every clock tick in which something
+	 * happens. Records the tick and, if one is due, a keyframe. The simulator must be
+	 * in a consistent state, in which it could also be saved between two steps of
+	 * {@link Simulator#advanceSimulation(int)}.
+	 * @param tick_ the clock tick
+	 */
+	void startTick(long tick_) {
+		if (!isActive() || tick_ <= lastTick) return;
+		lastTick = tick_;
+		beginRecord(TICK);
+		endRecord();
+
+		if (out != null && (
+			lastKeyframeTick == Long.MIN_VALUE ||
+			(keyframeInterval > 0 && tick_ - lastKeyframeTick >= keyframeInterval)
+		)) {
+			lastKeyframeTick = tick_;
+			ByteArrayOutputStream snapshot_ = new ByteArrayOutputStream();
+			try {
+				Snapshot.save(simulator, snapshot_);
+			} catch (IOException ex) {
+				throw new IllegalStateException("Unable to save a keyframe: " + ex.toString(), ex);
+			}
+			byte[] bytes_ = snapshot_.toByteArray();
+			flush();
+			beginRecord(KEYFRAME);
+			writeInt(bytes_.length);
+			flush();
+			try {
+				out.write(bytes_);
+			} catch (IOException ex) {
+				fail(ex);
+			}
+		}
+	}
+
+	/** @return the last clock tick recorded */
+	long getLastTick() {
+		return lastTick;
+	}
+
+	/**
+	 * Writes out the buffered records.
+	 */
+	public void flush() {
+		if (out == null || position == 0) return;
+		try {
+			out.write(buffer, 0, position);
+			out.flush();
+		} catch (IOException ex) {
+			fail(ex);
+		}
+		position = 0;
+	}
+
+	/**
+	 * Ends the journal and closes its stream. The simulator records nothing
+	 * more afterwards.
+	 * @throws IOException if the journal cannot be written
+	 */
+	public void close() throws IOException {
+		if (out == null) return;
+		buffer[position++] = END;
+		flush();
+		OutputStream out_ = out;
+		out = null;
+		out_.close();
+	}
+
+	/**
+	 * @return <code>true</code> if this journal currently records or checks the events
+	 */
+	public boolean isActive() {
+		return out != null || expected != null;
+	}
+
+	/**
+	 * Helper method to write the common part of all records of the given type:
+	 * the type and the time elapsed since the previous record.
+	 */
+	private void beginRecord(int type_) {
+		long now_;
+		if (type_ == TICK) {
+			now_ = lastTick * simulator.getTimeIncrement();
+		} else if (type_ == KEYFRAME) {
+			now_ = lastTime;	// right after the tick that it belongs to
+		} else {
+			now_ = simulator.getCurrentTime();
+		}
+		buffer[position++] = (byte) type_;
+		writeLong(now_ - lastTime);
+		lastTime = now_;
+	}
+
+	/**
+	 * Helper method to finish a record: while recording, the buffer is written
+	 * out when it gets full; while replaying, the record is checked against the journal.
+	 */
+	private void endRecord() {
+		if (expected != null) {
+			check();
+		} else if (position > BUFFER_SIZE - 1024) {
+			flush();
+		}
+	}
+
+	/** Helper method to write a timer record of the given type. */
+	private void timerRecord(int type_, TimerSimulated timer_) {
+		if (!isActive()) return;
+		int componentId_ = idOf(timer_.callback);
+		beginRecord(type_);
+		writeInt(componentId_);
+		writeInt(timer_.type);
+		endRecord();
+	}
+
+	/**
+	 * Helper method to look up the identifier of a network element, which is
+	 * the element's own identifier. When the element appears for the first time,
+	 * its name is recorded.
+	 */
+	private int idOf(NetworkElement element_) {
+		if (element_ == null) {
+			return -1;
+		}
+		int id_ = element_.getId();
+		if (id_ >= named.length) {
+			boolean[] named_ = new boolean[Math.max(id_ + 1, named.length << 1)];
+			System.arraycopy(named, 0, named_, 0, named.length);
+			named = named_;
+		}
+		if (!named[id_]) {
+			named[id_] = true;
+			writeName(id_, element_.getName());
+		}
+		return id_;
+	}
+
+	/**
+	 * Helper method to look up the identifier of a component or a state that is
+	 * not a network element. When it appears for the first time, its name is recorded.
+	 */
+	private int idOf(Object other_) {
+		if (other_ == null) {
+			return -1;
+		}
+		if (other_ == lastOther) {
+			return lastOtherId;
+		}
+		int id_;
+		Integer known_ = otherIds.get(other_);
+		if (known_ != null) {
+			id_ = known_.intValue();
+		} else {
+			id_ = -2 - otherIds.size();
+			otherIds.put(other_, Integer.valueOf(id_));
+			writeName(id_, other_.getClass().getSimpleName());
+		}
+		lastOther = other_;
+		lastOtherId = id_;
+		return id_;
+	}
+
+	/** Helper method to write the record that names an element of the journal. */
+	private void writeName(int id_, String name_) {
+		byte[] bytes_;
+		try {
+			bytes_ = String.valueOf(name_).getBytes("UTF-8");
+		} catch (java.io.UnsupportedEncodingException ex) {
+			bytes_ = new byte[0];
+		}
+		beginRecord(NAME);
+		writeInt(id_);
+		writeInt(bytes_.length);
+		if (position + bytes_.length > buffer.length) {
+			byte[] larger_ = new byte[position + bytes_.length + BUFFER_SIZE];
+			System.arraycopy(buffer, 0, larger_, 0, position);
+			buffer = larger_;
+		}
+		System.arraycopy(bytes_, 0, buffer, position, bytes_.length);
+		position += bytes_.length;
+		endRecord();
+	}
+
+	/** Helper method to write the descriptor of a packet: its kind, its sequence number and length. */
+	private void writePacket(Packet packet_) {
+		int flags_ = packet_.inError ? PACKET_ERROR : 0;
+		int number_ = 0;
+		if (packet_ instanceof Segment) {
+			Segment segment_ = (Segment) packet_;
+			flags_ |= PACKET_SEGMENT;
+			if (segment_.isAck) {
+				flags_ |= PACKET_ACK;
+				number_ = segment_.ackSequenceNumber;
+			} else {
+				number_ = segment_.dataSequenceNumber;
+			}
+		}
+		buffer[position++] = (byte) flags_;
+		writeInt(number_);
+		writeInt(packet_.length);
+	}
+
+	/** Helper method to write a variable-length integer. */
+	private void writeInt(int value_) {
+		writeLong(value_);
+	}
+
+	/** Helper method to write a variable-length long integer, in the zig-zag encoding
+	 * so that small negative values are short, too. */
+	private void writeLong(long value_) {
+		long bits_ = (value_ << 1) ^ (value_ >> 63);
+		while ((bits_ & ~0x7FL) != 0) {
+			buffer[position++] = (byte) ((bits_ & 0x7F) | 0x80);
+			bits_ >>>= 7;
+		}
+		buffer[position++] = (byte) bits_;
+	}
+
+	/**
+	 * Helper method to compare the record just encoded with the next record
+	 * of the journal that the replay is checked against. The keyframes of the
+	 * checked journal are skipped, since the replay does not write any.
+	 */
+	private void check() {
+		try {
+			expected.skipKeyframes();
+			for (int i = 0; i < position; i++) {
+				int byte_ = expected.read();
+				if (byte_ == -1 || (byte_ == END && i == 0)) {
+					expected = null;	// the end of the checked journal
+					break;
+				}
+				if (byte_ != (buffer[i] & 0xFF)) {
+					divergedAt = lastTime;
+					expected = null;
+					break;
+				}
+			}
+		} catch (IOException ex) {
+			divergedAt = lastTime;
+			expected = null;
+		}
+		position = 0;
+	}
+
+	/** Helper method to stop recording after the journal could not be written. */
+	private void fail(IOException ex_) {
+		System.err.println("Unable to write the event journal: " + ex_.toString());
+		out = null;
+		position = 0;
+	}
+
+	/**
+	 * Restores the fields that are not part of a snapshot. A restored journal
+	 * records nothing until a replay checks it against the original journal.
+	 */
+	private void readObject(java.io.ObjectInputStream in_) throws IOException, ClassNotFoundException {
+		in_.defaultReadObject();
+		buffer = new byte[BUFFER_SIZE];
+		divergedAt = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Restores the simulator from the last keyframe of a journal at or before
+	 * the given clock tick, and simulates from there up to the start of that tick.
+	 * On the way, the replay is checked against the rest of the journal.
+	 * The simulation session of the journaled run is still in progress in the
+	 * returned simulator; it can be saved, forked, or continued.
+	 *
+	 * @param journalFile_ the journal
+	 * @param tick_ the clock tick to go to
+	 * @return the simulator at the start of the given tick
+	 * @throws IOException if the journal cannot be read, has no keyframe
+	 * before the tick, or does not match the replay
+	 */
+	public static Simulator seek(File journalFile_, long tick_) throws IOException {
+		// Find the last suitable keyframe:
+		long offset_ = -1;
+		long start_ = 0;
+		Reader reader_ = new Reader(new FileInputStream(journalFile_));
+		try {
+			while (reader_.next() && reader_.getTick() <= tick_) {
+				if (reader_.getType() == KEYFRAME) {
+					offset_ = reader_.getRecordOffset();
+					start_ = reader_.getTick();
+				}
+			}
+		} finally {
+			reader_.close();
+		}
+		if (offset_ < 0) {
+			throw new IOException("The journal " + journalFile_ + " has no keyframe before RTT #" + tick_);
+		}
+
+		// Restore the simulator from the keyframe and replay the rest:
+		reader_ = new Reader(new FileInputStream(journalFile_));
+		try {
+			reader_.skipTo(offset_);
+			reader_.next();
+			Simulator simulator_ = Snapshot.load(new ByteArrayInputStream(reader_.getKeyframe()));
+			EventJournal journal_ = simulator_.getJournal();
+			if (journal_ == null) {
+				throw new IOException("The keyframe at RTT #" + start_ + " does not belong to a journaled run");
+			}
+			journal_.expected = reader_;
+			if (tick_ > start_) {
+				simulator_.advanceSimulation((int) Math.min(Integer.MAX_VALUE, tick_ - start_));
+			}
+			journal_.expected = null;
+			if (journal_.divergedAt != Long.MIN_VALUE) {
+				throw new IOException(
+					"The replay diverged from the journal at RTT #" +
+					simulator_.toTicks(journal_.divergedAt)
+				);
+			}
+			return simulator_;
+		} finally {
+			reader_.close();
+		}
+	}
+
+	/**
+	 * Lists the records of the given clock ticks of a journal, one per line.
+	 * @param in_ the journal
+	 * @param fromTick_ the first tick to list
+	 * @param toTick_ the last tick to list
+	 * @param out_ the stream to print to
+	 * @throws IOException if the journal cannot be read
+	 */
+	public static void print(InputStream in_, long fromTick_, long toTick_, PrintStream out_)
+	throws IOException {
+		Reader reader_ = new Reader(in_);
+		while (reader_.next() && reader_.getTick() <= toTick_) {
+			if (reader_.getTick() >= fromTick_ && reader_.getType() != NAME) {
+				out_.println(reader_.toString());
+			}
+		}
+	}
+
+	/**
+	 * Lists or replays a journal from the command line. The arguments
+	 * <pre>
+	 * Replay journal-file [first-iteration [last-iteration]]
+	 * </pre>
+	 * list the journaled events of the given iterations (by default all of them), and
+	 * <pre>
+	 * Seek journal-file iteration
+	 * </pre>
+	 * replay the run from the nearest keyframe up to the given iteration, and save the
+	 * simulator to the file "checkpoint.bin", from which the run can be resumed
+	 * (see {@link Snapshot#main(String[])}).
+	 *
+	 * @param argv_ the command line arguments
+	 */
+	public static void main(String[] argv_) {
+		if (argv_.length >= 2 && argv_[0].equalsIgnoreCase("replay")) {
+			// List the events of a journaled run:
+			try {
+				long fromTick_ = (argv_.length > 2) ? Long.parseLong(argv_[2]) : Long.MIN_VALUE;
+				long toTick_ = (argv_.length > 3) ? Long.parseLong(argv_[3]) : Long.MAX_VALUE;
+				FileInputStream in_ = new FileInputStream(argv_[1]);
+				try {
+					print(in_, fromTick_, toTick_, System.out);
+				} finally {
+					in_.close();
+				}
+			} catch (Exception ex) {
+				System.err.println("Unable to read the journal " + argv_[1] + ": " + ex.toString());
+				System.exit(1);
+			}
+		} else if (argv_.length == 3 && argv_[0].equalsIgnoreCase("seek")) {
+			// Go to the given iteration of a journaled run and save it for resuming:
+			try {
+				Simulator simulator_ = seek(new File(argv_[1]), Long.parseLong(argv_[2]));
+				Snapshot.writeCheckpoint(
+					simulator_, new File(Snapshot.CHECKPOINT_FILENAME + Snapshot.CHECKPOINT_FILE_EXTENSION)
+				);
+			} catch (Exception ex) {
+				System.err.println("Unable to replay the journal " + argv_[1] + ": " + ex.toString());
+				System.exit(1);
+			}
+		} else {
+			System.err.println(
+				"Please specify Replay and the journal file, optionally with the first and the last iteration, " +
+				"or Seek, the journal file and the iteration!"
+			);
+			System.exit(1);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------
+	/**
+	 * Sequential reader of a journal. The names of the elements are collected
+	 * while reading, so that the records can be presented in a readable form.
+	 */
+	public static class Reader {
+		/** The journal stream. */
+		private InputStream in;
+
+		/** The number of bytes read so far. */
+		private long offset = 0;
+
+		/** Number of time units per clock tick of the journaled simulator. */
+		private long timeUnitsPerTick = 1;
+
+		/** The names of the elements read so far, by their identifiers. */
+		private HashMap<Integer, String> names = new HashMap<Integer, String>();
+
+		/** The fields of the current record. */
+		private long recordOffset = 0;
+		private int type = END;
+		private long time = 0;
+		private int element = 0;
+		private int other = 0;
+		private int flags = 0;
+		private long number = 0;
+		private int length = 0;
+		private byte[] keyframe = null;
+
+		/**
+		 * Constructor. Reads the header of the journal.
+		 * @param in_ the journal stream
+		 * @throws IOException if the stream is not a journal
+		 */
+		public Reader(InputStream in_) throws IOException {
+			this.in = new BufferedInputStream(in_, BUFFER_SIZE);
+			if (readInt() != MAGIC || readInt() != VERSION) {
+				throw new IOException("Not an event journal of a supported version");
+			}
+			timeUnitsPerTick = readLong();
+		}
+
+		/**
+		 * Reads the next record. The keyframe snapshots are read only if
+		 * asked for, via {@link #getKeyframe()}.
+		 * @return <code>false</code> at the end of the journal
+		 * @throws IOException if the journal cannot be read
+		 */
+		public boolean next() throws IOException {
+			if (keyframe == null && type == KEYFRAME) {
+				skip(length);	// the snapshot that nobody asked for
+			}
+			keyframe = null;
+			recordOffset = offset;
+			int type_ = read();
+			if (type_ == -1 || type_ == END) {
+				type = END;
+				return false;
+			}
+			type = type_;
+			time += readLong();
+			switch (type) {
+				case NAME:
+					element = readInt();
+					byte[] bytes_ = new byte[readInt()];
+					readFully(bytes_);
+					names.put(Integer.valueOf(element), new String(bytes_, "UTF-8"));
+					break;
+				case KEYFRAME:
+					length = readInt();
+					break;
+				case LINK_SEND:
+				case LINK_LOSS:
+					element = readInt();
+					other = readInt();
+					readPacket();
+					break;
+				case ROUTER_DROP:
+					element = readInt();
+					readPacket();
+					break;
+				case TIMER_ARM:
+					element = readInt();
+					other = readInt();
+					number = time + readLong();
+					break;
+				case TIMER_CANCEL:
+				case TIMER_FIRE:
+				case STATE:
+					element = readInt();
+					other = readInt();
+					break;
+				case TICK:
+					break;
+				default:
+					throw new IOException("Invalid journal record type " + type);
+			}
+			return true;
+		}
+
+		/** @return the type of the current record */
+		public int getType() {
+			return type;
+		}
+
+		/** @return the time of the current record, in the simulator time units */
+		public long getTime() {
+			return time;
+		}
+
+		/** @return the clock tick of the current record */
+		public long getTick() {
+			return time / timeUnitsPerTick;
+		}
+
+		/** @return the offset of the current record from the start of the journal */
+		public long getRecordOffset() {
+			return recordOffset;
+		}
+
+		/**
+		 * Reads the snapshot of the current record, which must be a keyframe.
+		 * @return the snapshot, as written by {@link Snapshot#save(Simulator, OutputStream)}
+		 * @throws IOException if the journal cannot be read
+		 */
+		public byte[] getKeyframe() throws IOException {
+			if (type != KEYFRAME) {
+				throw new IllegalStateException("The current record is not a keyframe.");
+			}
+			if (keyframe == null) {
+				keyframe = new byte[length];
+				readFully(keyframe);
+			}
+			return keyframe;
+		}
+
+		/**
+		 * Closes the journal stream.
+		 * @throws IOException if the stream cannot be closed
+		 */
+		public void close() throws IOException {
+			in.close();
+		}
+
+		/**
+		 * Presents the current record in a readable form.
+		 */
+		@Override
+		public String toString() {
+			String time_ = String.valueOf((double) time / timeUnitsPerTick);
+			switch (type) {
+				case TICK:
+					return time_ + "\tRTT #" + getTick();
+				case NAME:
+					return time_ + "\t" + nameOf(element) + " is #" + element;
+				case KEYFRAME:
+					return time_ + "\tkeyframe (" + length + " bytes)";
+				case LINK_SEND:
+					return time_ + "\t" + nameOf(element) + " accepts " + packet() + " from " + nameOf(other);
+				case ROUTER_DROP:
+					return time_ + "\t" + nameOf(element) + " drops " + packet();
+				case LINK_LOSS:
+					return time_ + "\t" + nameOf(element) + " loses " + packet() + " from " + nameOf(other);
+				case TIMER_ARM:
+					return time_ + "\t" + nameOf(element) + " starts timer " + other +
+						" to fire at " + ((double) number / timeUnitsPerTick);
+				case TIMER_CANCEL:
+					return time_ + "\t" + nameOf(element) + " cancels timer " + other;
+				case TIMER_FIRE:
+					return time_ + "\t" + nameOf(element) + " timer " + other + " fires";
+				case STATE:
+					return time_ + "\t" + nameOf(element) + " enters " + nameOf(other);
+				default:
+					return time_ + "\tend of journal";
+			}
+		}
+
+		/** Helper method to present the packet descriptor of the current record. */
+		private String packet() {
+			String packet_;
+			if ((flags & PACKET_SEGMENT) == 0) {
+				packet_ = "packet";
+			} else if ((flags & PACKET_ACK) != 0) {
+				packet_ = "ack " + number;
+			} else {
+				packet_ = "seg " + number;
+			}
+			packet_ += " (" + length + " bytes" + ((flags & PACKET_ERROR) != 0 ? ", in error)" : ")");
+			return packet_;
+		}
+
+		/** Helper method to find the name of an element. */
+		private String nameOf(int id_) {
+			String name_ = names.get(Integer.valueOf(id_));
+			return (name_ != null) ? name_ + "#" + id_ : "#" + id_;
+		}
+
+		/** Helper method to read a packet descriptor. */
+		private void readPacket() throws IOException {
+			flags = read();
+			number = readInt();
+			length = readInt();
+		}
+
+		/** Skips the keyframes at the current position, without reading the snapshots. */
+		void skipKeyframes() throws IOException {
+			while (true) {
+				in.mark(1);
+				int type_ = in.read();
+				in.reset();
+				if (type_ != KEYFRAME) return;
+				read();
+				readLong();
+				skip(readInt());
+			}
+		}
+
+		/** Skips ahead to the given offset from the start of the journal. */
+		void skipTo(long offset_) throws IOException {
+			skip(offset_ - offset);
+		}
+
+		/** Reads one byte, or <code>-1</code> at the end of the stream. */
+		int read() throws IOException {
+			int byte_ = in.read();
+			if (byte_ != -1) offset++;
+			return byte_;
+		}
+
+		private void readFully(byte[] bytes_) throws IOException {
+			int done_ = 0;
+			while (done_ < bytes_.length) {
+				int count_ = in.read(bytes_, done_, bytes_.length - done_);
+				if (count_ < 0) throw new EOFException("Truncated event journal");
+				done_ += count_;
+			}
+			offset += bytes_.length;
+		}
+
+		private void skip(long count_) throws IOException {
+			long left_ = count_;
+			while (left_ > 0) {
+				long skipped_ = in.skip(left_);
+				if (skipped_ <= 0) {
+					if (in.read() < 0) throw new EOFException("Truncated event journal");
+					skipped_ = 1;
+				}
+				left_ -= skipped_;
+			}
+			offset += count_;
+		}
+
+		private int readInt() throws IOException {
+			return (int) readLong();
+		}
+
+		private long readLong() throws IOException {
+			long bits_ = 0;
+			for (int shift_ = 0; ; shift_ += 7) {
+				int byte_ = read();
+				if (byte_ < 0) throw new EOFException("Truncated event journal");
+				bits_ |= (long) (byte_ & 0x7F) << shift_;
+				if ((byte_ & 0x80) == 0) break;
+			}
+			return (bits_ >>> 1) ^ -(bits_ & 1);
+		}
+	}
+}
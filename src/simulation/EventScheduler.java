@@ -0,0 +1,157 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.Serializable;
+
+/**
+ * Pending-event set of the discrete-event engine.
+ * The events are kept in a binary min-heap ordered by their
+ * time and, for the events that fire at the same time,
+ * by the order in which they were scheduled (in the partitioned engine,
+ * by the order in which the sequential engine would have scheduled them).</p>
+ *
+ * <p>Each event remembers its own position in the heap
+ * ({@link SimulationEvent#heapIndex}), so a scheduled event can
+ * be cancelled or moved to another time in logarithmic time,
+ * without searching the heap.</p>
+ *
+ * @see SimulationEvent
+ */
+public class EventScheduler implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The heap of scheduled events; grown as needed. */
+	private SimulationEvent[] heap = new SimulationEvent[256];
+
+	/** Number of events currently in the heap. */
+	private int size = 0;
+
+	/** Counter for assigning {@link SimulationEvent#sequence}. */
+	private long nextSequence = 0;
+
+	/**
+	 * @return <code>true</code> if no events are waiting to fire
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the number of events waiting to fire
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the time of the next event to fire, or
+	 * {@link Long#MAX_VALUE} if there are no events
+	 */
+	public long peekTime() {
+		return (size == 0) ? Long.MAX_VALUE : heap[0].time;
+	}
+
+	/**
+	 * Schedules an event to fire at the given time. If the event
+	 * is already scheduled, it is moved to the new time.
+	 *
+	 * @param event_ the event to schedule
+	 * @param time_ the simulation time at which the event fires
+	 */
+	public void schedule(SimulationEvent event_, long time_) {
+		if (event_.heapIndex >= 0) {
+			remove(event_.heapIndex);
+		}
+		event_.time = time_;
+		event_.sequence = nextSequence++;
+
+		if (size == heap.length) {
+			SimulationEvent[] larger_ = new SimulationEvent[heap.length << 1];
+			System.arraycopy(heap, 0, larger_, 0, size);
+			heap = larger_;
+		}
+		event_.heapIndex = size;
+		heap[size++] = event_;
+		siftUp(event_.heapIndex);
+	}
+
+	/**
+	 * Cancels a scheduled event. Does nothing if the event is not scheduled.
+	 * @param event_ the event to cancel
+	 */
+	public void cancel(SimulationEvent event_) {
+		if (event_.heapIndex >= 0) {
+			remove(event_.heapIndex);
+		}
+	}
+
+	/**
+	 * Removes and returns the next event to fire.
+	 * @return the event with the earliest time, or <code>null</code> if there are none
+	 */
+	public SimulationEvent pollNext() {
+		if (size == 0) return null;
+		SimulationEvent event_ = heap[0];
+		remove(0);
+		return event_;
+	}
+
+	/** Removes the event at the given heap position. */
+	private void remove(int index_) {
+		SimulationEvent removed_ = heap[index_];
+		size--;
+		if (index_ != size) {
+			heap[index_] = heap[size];
+			heap[index_].heapIndex = index_;
+			heap[size] = null;
+			siftDown(index_);
+			siftUp(index_);
+		} else {
+			heap[size] = null;
+		}
+		removed_.heapIndex = -1;
+	}
+
+	private void siftUp(int index_) {
+		SimulationEvent event_ = heap[index_];
+		while (index_ > 0) {
+			int parent_ = (index_ - 1) >>> 1;
+			if (!before(event_, heap[parent_])) break;
+			heap[index_] = heap[parent_];
+			heap[index_].heapIndex = index_;
+			index_ = parent_;
+		}
+		heap[index_] = event_;
+		event_.heapIndex = index_;
+	}
+
+	private void siftDown(int index_) {
+		SimulationEvent event_ = heap[index_];
+		int half_ = size >>> 1;
+		while (index_ < half_) {
+			int child_ = (index_ << 1) + 1;
+			int right_ = child_ + 1;
+			if (right_ < size && before(heap[right_], heap[child_])) {
+				child_ = right_;
+			}
+			if (!before(heap[child_], event_)) break;
+			heap[index_] = heap[child_];
+			heap[index_].heapIndex = index_;
+			index_ = child_;
+		}
+		heap[index_] = event_;
+		event_.heapIndex = index_;
+	}
+
+	/** Returns <code>true</code> if event <code>a_</code> fires before event <code>b_</code>. */
+	private static boolean before(SimulationEvent a_, SimulationEvent b_) {
+		if (a_.time != b_.time) return a_.time < b_.time;
+		if (a_.origin != null && b_.origin != null) {
+			return LogicalProcess.precedes(a_.origin, a_.originIndex, b_.origin, b_.originIndex);
+		}
+		return a_.sequence < b_.sequence;
+	}
+}
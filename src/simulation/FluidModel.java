@@ -0,0 +1,938 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import simulation.network.Endpoint;
+import simulation.network.Link;
+import simulation.network.NetworkElement;
+import simulation.network.Router;
+import simulation.tcp.Sender;
+import simulation.tcp.SenderNewReno;
+import simulation.tcp.SenderTahoe;
+
+/**
+ * A fluid-model approximation of a simulation, for topologies with far more
+ * flows than the packet-level engines can handle. Instead of moving individual
+ * segments through links and routers, the model treats the congestion window
+ * of each flow and the queue of each router output port as continuous quantities
+ * and integrates the differential equations of AIMD with a fixed-step (forward
+ * Euler) integrator.</p>
+ *
+ * <p>The model is derived from the same {@link simulation.network.topology.Topology}
+ * that the packet-level engines run: each sending endpoint is a flow, whose path
+ * follows the forwarding tables of the routers to its remote endpoint. Every link
+ * on the path is a queue served at one segment per transmission time. The queues of
+ * the routers share the router's memory and drop the excess arrivals when the
+ * memory is full (drop-tail); the queue of the sending endpoint is never full.
+ * The round-trip time of a flow is the sum of the transmission and propagation
+ * times on its path in both directions plus the queuing delays of its data;
+ * the time is thus that of the event-driven engine
+ * (see {@link Simulator#setEventDriven(boolean)}).</p>
+ *
+ * <p>The window of a flow grows by one segment per acknowledged segment in slow
+ * start and by one segment per window in congestion avoidance. The segments lost in
+ * one round trip form a loss episode, which the flow detects one round trip later and
+ * which holds its growth until then. A Reno sender repairs each lost segment by a fast
+ * retransmit, halving the window each time, NewReno repairs the whole episode with one,
+ * and Tahoe resets the window to one segment, its drop-tail losses coming in pairs.
+ * A repair falls to a timeout instead when fewer than three segments follow the loss
+ * in the window, with the probability <code>(3/W)^5</code> for <code>W</code> such
+ * segments; a Reno or Tahoe timeout is then followed by one for each further hole,
+ * doubling the retransmission timeout each time, while a NewReno timeout repairs the
+ * episode at once. The flows that time out leave the window dynamics: they are kept
+ * as the idle fraction of their class, which sends nothing, leaves its private queues
+ * empty and returns with a window of one segment after the mean wait. A flow that
+ * returns while the router memory is full to the fraction <code>f</code> loses its
+ * retransmission again with the probability <code>f^6</code> and waits twice as long.
+ * Delayed ACKs and the burstiness of the senders are not modelled.</p>
+ *
+ * <p>Flows whose paths consist of the same shared queues and of private queues
+ * with the same parameters behave identically in the model, so they are integrated
+ * once, as a class with a multiplicity; the cost of a step is proportional to the
+ * number of such classes and queues, not to the number of flows. Since the flows of a
+ * class share one completion time, the statistics do not report the times of
+ * individual flows, and they are written to a file of their own
+ * (see {@link Simulator#FLUID_STATISTICS_SUFFIX}).</p>
+ *
+ * <p>In a hybrid simulation (see {@link Simulator#setBackgroundFlows(int)}), the model
+ * represents only the background flows, while the foreground flows run in the
+ * event-driven engine. The model then advances in the events of the engine and
+ * exchanges its state with the routers after every step: the fluid queues occupy
+ * router memory and a share of the capacity of the links they transmit on
+ * (see {@link Router#setFluidShare(Link, double)}), and the packets queued in a router
+ * and offered to a link reduce the memory and the capacity left to the fluid. When
+ * both kinds of traffic overload a link, they share it in proportion to their offered loads.</p>
+ *
+ * <p>The model has been checked against the event-driven engine on the direct and
+ * cloud topologies with 1 to 32 flows over 1 or 2 routers, router memories from
+ * 6244 bytes to 1 MB, and Tahoe, Reno and NewReno senders in the completion mode.
+ * While the router memory holds the windows of all flows, so that no segment is lost,
+ * the completion times agree within one percent. The exponents of the timeout terms
+ * were calibrated on the lossy cloud runs with 4, 8 and 16 flows, 1 or 2 routers and
+ * router memories of 6244, 12488 and 25000 bytes: there the total timeouts agree within
+ * 5 percent for Reno and NewReno, and the mean completion time is within a factor of
+ * 1.5 of that of the event-driven engine in 25 and within a factor of 2 in 30 of the
+ * 34 runs in which every flow completes. The exceptions are runs in which the engine
+ * leaves one flow behind through many consecutive timeouts, a tail that the mean
+ * behaviour of the model does not reproduce. Tahoe senders complete 1.2 to 2.4 times
+ * faster in the model, as the engine keeps them in lockstep, timing out every few
+ * round trips.</p>
+ *
+ * @see Simulator#setEventDriven(boolean)
+ */
+public class FluidModel implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The TCP versions of the flow classes. */
+	private static final int TAHOE = 0;
+	private static final int RENO = 1;
+	private static final int NEW_RENO = 2;
+
+	/** The smallest deviation term of the retransmission timeout, in ticks
+	 * (see {@link simulation.tcp.RTOEstimator}): the timeout of a sender is its
+	 * round-trip time, rounded to whole ticks but at least one tick, plus at least this. */
+	private static final double MIN_RTO = 1.0;
+
+	/** The exponent of the probability <code>(3/W)^k</code> that a loss followed by
+	 * <code>W</code> more segments of the window is repaired by a timeout rather than
+	 * a fast retransmit; calibrated against the event-driven engine. */
+	private static final double TIMEOUT_EXPONENT = 5.0;
+
+	/** The exponent of the probability <code>f^k</code> that a flow resuming after a
+	 * timeout into a router buffer that is full to the fraction <code>f</code> loses
+	 * its retransmission and times out again; calibrated against the event-driven engine. */
+	private static final double RETRY_EXPONENT = 6.0;
+
+	/** The simulator whose topology is modelled. */
+	private final Simulator simulator;
+
+	/** The maximum segment size of the senders, in bytes (see {@link SimulationConfig#getMSS()}). */
+	private final double mss;
+
+	/** The sending endpoints of the modelled flows, in order. */
+	private final Endpoint[] flows;
+
+	/** The class of each modelled flow. */
+	private final int[] classOf;
+
+	/** The number of flows in each class. */
+	private final int[] flowCount;
+
+	/** The TCP version of each class. */
+	private final int[] version;
+
+	/** The receive window of the flows of each class, in bytes. */
+	private final double[] rcvWindow;
+
+	/** The round-trip time of the flows of each class without queuing, in ticks. */
+	private final double[] baseRTT;
+
+	/** The path of each class: the queues of class <code>c</code> are
+	 * <code>pathQueues[pathStart[c]]</code> to <code>pathQueues[pathStart[c + 1] - 1]</code>. */
+	private final int[] pathStart;
+	private final int[] pathQueues;
+
+	/** The state of each class: the window and the slow start threshold
+	 * of a flow, and the bytes acknowledged and lost per flow so far. */
+	private final double[] congWindow;
+	private final double[] ssThresh;
+	private final double[] acknowledged;
+	private final double[] lost;
+
+	/** The segments lost per flow of each class since the start of the current loss
+	 * episode, which the flows have not reacted to yet. */
+	private final double[] episodeLoss;
+
+	/** The time when the flows of each class detect the current loss episode, a round
+	 * trip after its first loss, in ticks, or a negative value if there is none. */
+	private final double[] detectionTime;
+
+	/** The fraction of the flows of each class that wait for retransmission timeouts,
+	 * and the mean time they still wait, in ticks. */
+	private final double[] idle;
+	private final double[] idleWait;
+
+	/** The number of timeouts per flow of each class so far. */
+	private final double[] timeouts;
+
+	/** The time when the flows of each class completed, in ticks, or a negative value. */
+	private final double[] completionTime;
+
+	/** The sending rate of a flow of each class in the current step, in bytes per tick. */
+	private final double[] rate;
+
+	/** The service rate of each queue, in bytes per tick. */
+	private final double[] capacity;
+
+	/** The router whose memory holds each queue, or <code>-1</code> for an endpoint. */
+	private final int[] routerOf;
+
+	/** For each queue that is a single output port of a router, the router and the link
+	 * of the port, with which the queue exchanges its state in a hybrid simulation;
+	 * <code>null</code> for the other queues. */
+	private final Router[] portRouter;
+	private final Link[] portLink;
+
+	/** The number of identical copies of each queue, one for each flow of a class
+	 * if the queue is private to the flows of a class, otherwise <code>1</code>. */
+	private final int[] copies;
+
+	/** The class of the flows whose private queue each queue is, or <code>-1</code> for a shared queue.
+	 * The copies of the flows that wait for a timeout are empty, while each of the other
+	 * copies carries the traffic of an active flow. */
+	private final int[] ownerOf;
+
+	/** The length of each queue (of each of its copies), in bytes. */
+	private final double[] queue;
+
+	/** The arrival rate into each queue (into each of its copies) in the current step, in bytes per tick. */
+	private final double[] arrival;
+
+	/** The rate at which each queue (each of its copies) is served in the current step, in bytes per tick. */
+	private final double[] service;
+
+	/** The rate of the packets offered to each port queue in a hybrid simulation, in bytes per tick. */
+	private final double[] foreground;
+
+	/** The total length of the packets offered to each port queue up to the last step, in bytes. */
+	private final long[] arrivedBefore;
+
+	/** The change of each queue in the current step, in bytes. */
+	private final double[] change;
+
+	/** The fraction of the arrivals into each queue that is dropped in the current step. */
+	private final double[] dropRatio;
+
+	/** The memory capacity of each router, and the memory occupied in the current step, in bytes. */
+	private final double[] bufferCapacity;
+	private final double[] occupancy;
+
+	/** The growth of the queues of each router in the current step, before drops, in bytes. */
+	private final double[] growth;
+
+	/** The routers of the topology, and the memory occupied by packets in each of them, in bytes. */
+	private final Router[] routers;
+	private final double[] packetOccupancy;
+
+	/** The number of integration steps per clock tick, or <code>0</code> to derive it from the round-trip times. */
+	private int stepsPerTick = 0;
+
+	/** The simulated time, in ticks. */
+	private double time = 0.0;
+
+	/**
+	 * Constructor. Derives the flows and the queues of the model
+	 * from the topology of the given simulator.
+	 *
+	 * @param simulator_ the simulator whose topology is to be modelled;
+	 * it must not have been started
+	 * @throws IllegalStateException if a path from a sender to its receiver cannot be found
+	 */
+	public FluidModel(Simulator simulator_) throws IllegalStateException {
+		this(simulator_, simulator_.getTopology().getSenderEndpoints());
+	}
+
+	/**
+	 * Constructor. Derives the queues of the model for the given flows
+	 * from the topology of the given simulator. The queues that the
+	 * flows share with the other flows of the topology are never
+	 * aggregated, so that they can exchange their state with the routers.
+	 *
+	 * @param simulator_ the simulator whose topology is to be modelled
+	 * @param senders_ the sending endpoints of the flows to model
+	 * @throws IllegalStateException if a path from a sender to its receiver cannot be found
+	 */
+	public FluidModel(Simulator simulator_, List<Endpoint> senders_) throws IllegalStateException {
+		this.simulator = simulator_;
+		this.mss = simulator_.getConfig().getMSS();
+		this.flows = senders_.toArray(new Endpoint[senders_.size()]);
+		List<Router> routers_ = simulator_.getTopology().getRouters();
+		IdentityHashMap<Router, Integer> routerIndex_ = new IdentityHashMap<Router, Integer>();
+		for (int r = 0; r < routers_.size(); r++) {
+			routerIndex_.put(routers_.get(r), r);
+		}
+
+		// Trace the path of every flow. A queue is identified by the transmitting node
+		// and the link on which it transmits; for each queue, keep the number of flows
+		// that use it, and later the queue's number in the signatures and in the model:
+		List<List<Object[]>> paths_ = new ArrayList<List<Object[]>>();
+		IdentityHashMap<NetworkElement, IdentityHashMap<Link, int[]>> queueUsers_ =
+			new IdentityHashMap<NetworkElement, IdentityHashMap<Link, int[]>>();
+		double[] reverseDelay_ = new double[senders_.size()];
+		for (int i = 0; i < senders_.size(); i++) {
+			Endpoint sender_ = senders_.get(i);
+			Endpoint receiver_ = sender_.getRemoteTCPendpoint();
+			List<Object[]> path_ = tracePath(sender_, receiver_);
+			for (int h = 0; h < path_.size(); h++) {
+				IdentityHashMap<Link, int[]> links_ = queueUsers_.get((NetworkElement) path_.get(h)[0]);
+				if (links_ == null) {
+					links_ = new IdentityHashMap<Link, int[]>();
+					queueUsers_.put((NetworkElement) path_.get(h)[0], links_);
+				}
+				int[] users_ = links_.get((Link) path_.get(h)[1]);
+				if (users_ == null) {
+					links_.put((Link) path_.get(h)[1], new int[] {1, -1, -1});
+				} else {
+					users_[0]++;
+				}
+			}
+			paths_.add(path_);
+
+			List<Object[]> reversePath_ = tracePath(receiver_, sender_);
+			for (int h = 0; h < reversePath_.size(); h++) {
+				reverseDelay_[i] += linkDelay((Link) reversePath_.get(h)[1]);
+			}
+		}
+
+		// The queues that other flows use, too, are shared:
+		IdentityHashMap<Endpoint, Boolean> modelled_ = new IdentityHashMap<Endpoint, Boolean>();
+		for (int i = 0; i < flows.length; i++) {
+			modelled_.put(flows[i], Boolean.TRUE);
+		}
+		List<Endpoint> allSenders_ = simulator_.getTopology().getSenderEndpoints();
+		for (int i = 0; i < allSenders_.size(); i++) {
+			if (modelled_.containsKey(allSenders_.get(i))) continue;
+			List<Object[]> path_ = tracePath(allSenders_.get(i), allSenders_.get(i).getRemoteTCPendpoint());
+			for (int h = 0; h < path_.size(); h++) {
+				IdentityHashMap<Link, int[]> links_ = queueUsers_.get((NetworkElement) path_.get(h)[0]);
+				int[] users_ = (links_ == null) ? null : links_.get((Link) path_.get(h)[1]);
+				if (users_ != null) {
+					users_[0]++;
+				}
+			}
+		}
+
+		// Group the flows into classes. The signature of a flow lists its shared queues
+		// by identity and its private queues by their parameters and router:
+		LinkedHashMap<String, Integer> classes_ = new LinkedHashMap<String, Integer>();
+		List<Integer> representatives_ = new ArrayList<Integer>();
+		List<Integer> counts_ = new ArrayList<Integer>();
+		int sharedIds_ = 0;
+		classOf = new int[senders_.size()];
+		for (int i = 0; i < senders_.size(); i++) {
+			Sender sender_ = senders_.get(i).getSender();
+			StringBuilder signature_ = new StringBuilder();
+			signature_.append(versionOf(sender_)).append(' ')
+				.append(sender_.getCongWindow()).append(' ')
+				.append(sender_.getSSThresh()).append(' ')
+				.append(senders_.get(i).getRemoteTCPendpoint().getLocalRcvWindow()).append(' ')
+				.append(reverseDelay_[i]);
+			List<Object[]> path_ = paths_.get(i);
+			for (int h = 0; h < path_.size(); h++) {
+				NetworkElement node_ = (NetworkElement) path_.get(h)[0];
+				Link link_ = (Link) path_.get(h)[1];
+				Integer router_ = (node_ instanceof Router) ? routerIndex_.get(node_) : Integer.valueOf(-1);
+				int[] users_ = queueUsers_.get(node_).get(link_);
+				if (users_[0] == 1) {
+					signature_.append(" P").append(router_).append('/')
+						.append(link_.getTransmissionTime()).append('/').append(link_.getPropagationTime());
+				} else {
+					if (users_[1] < 0) {
+						users_[1] = sharedIds_++;
+					}
+					signature_.append(" S").append(users_[1]);
+				}
+			}
+			Integer class_ = classes_.get(signature_.toString());
+			if (class_ == null) {
+				class_ = classes_.size();
+				classes_.put(signature_.toString(), class_);
+				representatives_.add(i);
+				counts_.add(0);
+			}
+			counts_.set(class_, counts_.get(class_) + 1);
+			classOf[i] = class_;
+		}
+
+		int numClasses_ = classes_.size();
+		flowCount = new int[numClasses_];
+		version = new int[numClasses_];
+		rcvWindow = new double[numClasses_];
+		baseRTT = new double[numClasses_];
+		pathStart = new int[numClasses_ + 1];
+		congWindow = new double[numClasses_];
+		ssThresh = new double[numClasses_];
+		acknowledged = new double[numClasses_];
+		lost = new double[numClasses_];
+		episodeLoss = new double[numClasses_];
+		detectionTime = new double[numClasses_];
+		idle = new double[numClasses_];
+		idleWait = new double[numClasses_];
+		timeouts = new double[numClasses_];
+		completionTime = new double[numClasses_];
+		rate = new double[numClasses_];
+
+		// Create the queues: one for each shared link, and one for each private link of a class:
+		List<Integer> pathQueues_ = new ArrayList<Integer>();
+		List<double[]> queueParameters_ = new ArrayList<double[]>();	// capacity, router, copies, owner
+		List<Object[]> queuePorts_ = new ArrayList<Object[]>();
+		for (int c = 0; c < numClasses_; c++) {
+			int i = representatives_.get(c);
+			Endpoint endpoint_ = senders_.get(i);
+			Sender sender_ = endpoint_.getSender();
+			flowCount[c] = counts_.get(c);
+			version[c] = versionOf(sender_);
+			rcvWindow[c] = endpoint_.getRemoteTCPendpoint().getLocalRcvWindow();
+			congWindow[c] = sender_.getCongWindow();
+			ssThresh[c] = sender_.getSSThresh();
+			completionTime[c] = -1.0;
+			detectionTime[c] = -1.0;
+			baseRTT[c] = reverseDelay_[i];
+
+			pathStart[c] = pathQueues_.size();
+			List<Object[]> path_ = paths_.get(i);
+			for (int h = 0; h < path_.size(); h++) {
+				NetworkElement node_ = (NetworkElement) path_.get(h)[0];
+				Link link_ = (Link) path_.get(h)[1];
+				baseRTT[c] += linkDelay(link_);
+				int[] users_ = queueUsers_.get(node_).get(link_);
+				boolean shared_ = users_[0] > 1;
+				int queue_ = shared_ ? users_[2] : -1;
+				if (queue_ < 0) {
+					queue_ = queueParameters_.size();
+					double transmissionTime_ = simulator_.toTicks(link_.getTransmissionTime());
+					queueParameters_.add(new double[] {
+						(transmissionTime_ > 0.0) ? mss / transmissionTime_ : Double.POSITIVE_INFINITY,
+						(node_ instanceof Router) ? routerIndex_.get(node_) : -1,
+						shared_ ? 1 : flowCount[c],
+						shared_ ? -1 : c
+					});
+					if (shared_) {
+						users_[2] = queue_;
+					}
+					boolean port_ = (node_ instanceof Router) && (shared_ || flowCount[c] == 1);
+					queuePorts_.add(port_ ? new Object[] {node_, link_} : null);
+				}
+				pathQueues_.add(queue_);
+			}
+		}
+		pathStart[numClasses_] = pathQueues_.size();
+		pathQueues = new int[pathQueues_.size()];
+		for (int j = 0; j < pathQueues.length; j++) {
+			pathQueues[j] = pathQueues_.get(j);
+		}
+
+		int numQueues_ = queueParameters_.size();
+		capacity = new double[numQueues_];
+		routerOf = new int[numQueues_];
+		copies = new int[numQueues_];
+		ownerOf = new int[numQueues_];
+		queue = new double[numQueues_];
+		arrival = new double[numQueues_];
+		change = new double[numQueues_];
+		dropRatio = new double[numQueues_];
+		service = new double[numQueues_];
+		foreground = new double[numQueues_];
+		arrivedBefore = new long[numQueues_];
+		portRouter = new Router[numQueues_];
+		portLink = new Link[numQueues_];
+		for (int k = 0; k < numQueues_; k++) {
+			double[] parameters_ = queueParameters_.get(k);
+			capacity[k] = parameters_[0];
+			routerOf[k] = (int) parameters_[1];
+			copies[k] = (int) parameters_[2];
+			ownerOf[k] = (int) parameters_[3];
+			if (queuePorts_.get(k) != null) {
+				portRouter[k] = (Router) queuePorts_.get(k)[0];
+				portLink[k] = (Link) queuePorts_.get(k)[1];
+			}
+		}
+
+		routers = routers_.toArray(new Router[routers_.size()]);
+		bufferCapacity = new double[routers_.size()];
+		occupancy = new double[routers_.size()];
+		growth = new double[routers_.size()];
+		packetOccupancy = new double[routers_.size()];
+		for (int r = 0; r < routers_.size(); r++) {
+			bufferCapacity[r] = routers_.get(r).getMaxBufferSize();
+		}
+	}
+
+	/**
+	 * Helper method to find the queues on the path from one endpoint to another
+	 * by following the forwarding tables of the routers.
+	 * @return the transmitting node and the link of each hop, in order
+	 * @throws IllegalStateException if the path cannot be found
+	 */
+	private static List<Object[]> tracePath(Endpoint from_, Endpoint to_) throws IllegalStateException {
+		List<Object[]> path_ = new ArrayList<Object[]>();
+		NetworkElement node_ = from_;
+		Link link_ = from_.getLink();
+		while (link_ != null) {
+			path_.add(new Object[] {node_, link_});
+			node_ = (link_.getNode1() == node_) ? link_.getNode2() : link_.getNode1();
+			if (node_ == to_) {
+				return path_;
+			}
+			link_ = (node_ instanceof Router) ? ((Router) node_).getOutgoingLink(to_) : null;
+			if (path_.size() > 1024) break;	// a forwarding loop
+		}
+		throw new IllegalStateException(
+			FluidModel.class.getName() + ".tracePath():  No route from " + from_.getName() + " to " + to_.getName() + "."
+		);
+	}
+
+	/** Helper method to return the delay of a segment on a link, in ticks. */
+	private double linkDelay(Link link_) {
+		return simulator.toTicks(link_.getTransmissionTime() + link_.getPropagationTime());
+	}
+
+	/** Helper method to return the TCP version of a sender. */
+	private static int versionOf(Sender sender_) {
+		if (sender_ instanceof SenderTahoe) return TAHOE;
+		if (sender_ instanceof SenderNewReno) return NEW_RENO;
+		return RENO;
+	}
+
+	/**
+	 * @return the number of flow classes that the model integrates
+	 */
+	public int getClassCount() {
+		return flowCount.length;
+	}
+
+	/**
+	 * @return the number of queues that the model integrates
+	 */
+	public int getQueueCount() {
+		return queue.length;
+	}
+
+	/**
+	 * Sets the number of integration steps per clock tick.
+	 * By default, a step is one eighth of the shortest round-trip time without queuing.
+	 * @param stepsPerTick_ the number of steps per tick, or <code>0</code> for the default
+	 * @throws IllegalArgumentException if the number of steps is negative
+	 */
+	public void setStepsPerTick(int stepsPerTick_) throws IllegalArgumentException {
+		if (stepsPerTick_ < 0) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".setStepsPerTick():  The number of steps must not be negative."
+			);
+		}
+		this.stepsPerTick = stepsPerTick_;
+	}
+
+	/**
+	 * Integrates the model for the given number of clock ticks, or until all flows complete
+	 * if the simulator is set to run to completion (see {@link Simulator#setRunToCompletion(boolean)}),
+	 * and reports the outcomes in the same way as the packet-level engines.
+	 *
+	 * @param num_iter_ the number of clock ticks to simulate
+	 */
+	public void run(int num_iter_) {
+		int steps_ = getStepsPerTick();
+		double step_ = 1.0 / steps_;
+		double dataLength_ = simulator.getConfig().getTotalDataLength();
+		boolean runToCompletion_ = simulator.isRunToCompletion();
+
+		boolean complete_ = false;
+		for (int tick_ = 0; tick_ < num_iter_ && !complete_; tick_++) {
+			for (int s = 0; s < steps_ && !complete_; s++) {
+				step(step_, dataLength_);
+				complete_ = runToCompletion_ && allComplete();
+			}
+			if (simulator.getConfig().isReporting(Simulator.REPORTING_SIMULATOR)) {
+				reportState();
+			}
+		}
+
+		finish(num_iter_);
+	}
+
+	/**
+	 * Helper method to return the number of integration steps per clock tick.
+	 */
+	private int getStepsPerTick() {
+		if (stepsPerTick > 0) {
+			return stepsPerTick;
+		}
+		double shortestRTT_ = Double.POSITIVE_INFINITY;
+		for (int c = 0; c < baseRTT.length; c++) {
+			shortestRTT_ = Math.min(shortestRTT_, baseRTT[c]);
+		}
+		return (shortestRTT_ > 0.0 && shortestRTT_ < 1.0) ? (int) Math.ceil(8.0 / shortestRTT_) : 8;
+	}
+
+	/**
+	 * Starts to advance the model along with the event-driven engine of the
+	 * simulator, for a hybrid simulation: from now on, an event integrates
+	 * the model by one step at a time and exchanges its state with the routers.
+	 * The simulator must be in the event-driven mode, and its session must have started.
+	 */
+	void start() {
+		long interval_ = Math.max(1L, simulator.getTimeIncrement() / getStepsPerTick());
+		for (int k = 0; k < queue.length; k++) {
+			if (portRouter[k] != null) {
+				arrivedBefore[k] = portRouter[k].getArrivedBytes(portLink[k]);
+			}
+		}
+		simulator.scheduleEvent(new Step(interval_), simulator.getCurrentTime() + interval_);
+	}
+
+	/**
+	 * Helper method to take over the packet traffic from the routers before a step of a hybrid simulation.
+	 * @param step_ the time since the last step, in ticks
+	 */
+	private void takePacketTraffic(double step_) {
+		for (int r = 0; r < routers.length; r++) {
+			packetOccupancy[r] = routers[r].getCurrentBufferOccupancy();
+		}
+		for (int k = 0; k < queue.length; k++) {
+			if (portRouter[k] != null) {
+				long arrived_ = portRouter[k].getArrivedBytes(portLink[k]);
+				foreground[k] = (arrived_ - arrivedBefore[k]) / step_;
+				arrivedBefore[k] = arrived_;
+			}
+		}
+	}
+
+	/**
+	 * Helper method to hand over the fluid traffic to the routers after a step of a hybrid simulation.
+	 */
+	private void giveFluidTraffic() {
+		for (int r = 0; r < routers.length; r++) {
+			growth[r] = 0.0;	// reused to sum up the fluid occupancy
+		}
+		for (int k = 0; k < queue.length; k++) {
+			if (routerOf[k] >= 0) {
+				growth[routerOf[k]] += activeCopies(k) * queue[k];
+			}
+			if (portRouter[k] != null) {
+				// A backlogged queue is served at its full service rate:
+				double served_ = (queue[k] > 0.0 || arrival[k] > service[k]) ? service[k] : arrival[k];
+				double active_ = (ownerOf[k] < 0) ? 1.0 : 1.0 - idle[ownerOf[k]];
+				portRouter[k].setFluidShare(portLink[k], active_ * served_ / capacity[k]);
+			}
+		}
+		for (int r = 0; r < routers.length; r++) {
+			routers[r].setFluidBufferOccupancy((int) Math.round(growth[r]));
+		}
+	}
+
+	/**
+	 * Helper method to advance the model by one integration step.
+	 * @param step_ the length of the step, in ticks
+	 * @param dataLength_ the number of bytes that each flow transfers
+	 */
+	private void step(double step_, double dataLength_) {
+		int numClasses_ = flowCount.length;
+		int numQueues_ = queue.length;
+
+		// The sending rate of an active flow is its usable window per round-trip time,
+		// and that of the average flow is smaller by the flows waiting for a timeout:
+		for (int k = 0; k < numQueues_; k++) {
+			arrival[k] = 0.0;
+		}
+		for (int c = 0; c < numClasses_; c++) {
+			double rtt_ = baseRTT[c];
+			for (int j = pathStart[c]; j < pathStart[c + 1]; j++) {
+				rtt_ += queue[pathQueues[j]] / capacity[pathQueues[j]];
+			}
+			double activeRate_ = 0.0;
+			if (completionTime[c] < 0.0 && rtt_ > 0.0) {
+				activeRate_ = Math.min(congWindow[c], rcvWindow[c]) / rtt_;
+			}
+			rate[c] = (1.0 - idle[c]) * activeRate_;
+			for (int j = pathStart[c]; j < pathStart[c + 1]; j++) {
+				int k = pathQueues[j];
+				arrival[k] += (ownerOf[k] < 0) ? rate[c] * flowCount[c] : activeRate_;
+			}
+		}
+
+		// The queues grow by the excess of the arrivals over the service rate,
+		// as far as the memory of their router allows; the rest is dropped:
+		for (int r = 0; r < occupancy.length; r++) {
+			occupancy[r] = packetOccupancy[r];
+			growth[r] = 0.0;
+		}
+		for (int k = 0; k < numQueues_; k++) {
+			if (routerOf[k] >= 0) {
+				occupancy[routerOf[k]] += activeCopies(k) * queue[k];
+			}
+		}
+		for (int k = 0; k < numQueues_; k++) {
+			// Fluid and packets share an overloaded link in proportion to their offered loads:
+			double offered_ = arrival[k] + foreground[k];
+			service[k] = (offered_ <= capacity[k]) ? capacity[k] - foreground[k] : capacity[k] * arrival[k] / offered_;
+			change[k] = Math.max((arrival[k] - service[k]) * step_, -queue[k]);
+			if (routerOf[k] >= 0) {
+				if (change[k] > 0.0) {
+					growth[routerOf[k]] += activeCopies(k) * change[k];
+				} else {	// the memory drained in this step is available to the other queues
+					occupancy[routerOf[k]] += activeCopies(k) * change[k];
+				}
+			}
+		}
+		for (int k = 0; k < numQueues_; k++) {
+			dropRatio[k] = 0.0;
+			if (routerOf[k] >= 0 && change[k] > 0.0) {
+				int r = routerOf[k];
+				double free_ = Math.max(bufferCapacity[r] - occupancy[r], 0.0);
+				double admitted_ = (growth[r] <= free_) ? 1.0 : free_ / growth[r];
+				dropRatio[k] = (change[k] * (1.0 - admitted_)) / (arrival[k] * step_);
+				change[k] *= admitted_;
+			}
+			queue[k] += change[k];
+		}
+
+		// Each flow reacts to the segments acknowledged and lost along its path:
+		for (int c = 0; c < numClasses_; c++) {
+			if (completionTime[c] >= 0.0) continue;
+			double delivered_ = 1.0;
+			double rtt_ = baseRTT[c];
+			for (int j = pathStart[c]; j < pathStart[c + 1]; j++) {
+				delivered_ *= 1.0 - dropRatio[pathQueues[j]];
+				rtt_ += queue[pathQueues[j]] / capacity[pathQueues[j]];
+			}
+			double acked_ = rate[c] * delivered_ * step_;
+			double lost_ = rate[c] * (1.0 - delivered_) * step_;
+			if (acknowledged[c] + acked_ >= dataLength_) {
+				// The last segment is sent now and acknowledged a round trip later:
+				completionTime[c] = time + step_ * (dataLength_ - acknowledged[c]) / acked_ + rtt_;
+				acked_ = dataLength_ - acknowledged[c];
+			}
+			acknowledged[c] += acked_;
+			lost[c] += lost_;
+
+			// The window of the active flows grows with the segments they get acknowledged,
+			// except that of the flows which lost a segment, as the segments after it bring
+			// only duplicate ACKs; the flows detect a loss a round trip after the first one:
+			double active_ = 1.0 - idle[c];
+			double window_ = congWindow[c];
+			if (acked_ > 0.0) {
+				double growing_ = 1.0 - Math.min(episodeLoss[c], 1.0);
+				congWindow[c] += growing_ * ((window_ < ssThresh[c]) ? acked_ / active_ : mss * acked_ / (active_ * window_));
+			}
+			if (lost_ > 0.0) {
+				if (detectionTime[c] < 0.0) {
+					detectionTime[c] = time + rtt_;
+				}
+				episodeLoss[c] += lost_ / (active_ * mss);
+			}
+			if (detectionTime[c] >= 0.0 && time + step_ >= detectionTime[c]) {
+				reactToLosses(c, rtt_);
+			}
+
+			// The flows whose timeouts expire resume with a window of one segment, unless
+			// they retransmit into a full buffer and time out again, with a doubled timeout:
+			if (idle[c] > 0.0) {
+				double resumed_ = idle[c] * Math.min(step_ / Math.max(idleWait[c], step_), 1.0);
+				double fill_ = 0.0;
+				for (int j = pathStart[c]; j < pathStart[c + 1]; j++) {
+					int r = routerOf[pathQueues[j]];
+					if (r >= 0) {
+						fill_ = Math.max(fill_, Math.min(occupancy[r] / bufferCapacity[r], 1.0));
+					}
+				}
+				double again_ = resumed_ * Math.pow(fill_, RETRY_EXPONENT);
+				timeouts[c] += again_;
+				resumed_ -= again_;
+				idleWait[c] = (idleWait[c] * (idle[c] - again_) + 2.0 * idleWait[c] * again_) / idle[c];
+				active_ = 1.0 - idle[c];
+				if (resumed_ > 0.0) {
+					congWindow[c] = (active_ * congWindow[c] + resumed_ * mss) / (active_ + resumed_);
+					idle[c] -= resumed_;
+				}
+			}
+		}
+		time += step_;
+	}
+
+	/**
+	 * Helper method to let the flows of a class react to the segments lost in a loss episode.
+	 * A loss is repaired by a fast retransmit if enough segments of the window get through
+	 * after it, and otherwise by a retransmission timeout. The senders retransmit only the
+	 * oldest unacknowledged segment, so that each further segment lost in the same window
+	 * costs a Tahoe or Reno sender another timeout, and a NewReno sender only after a timeout;
+	 * as a retransmitted segment gives no sample of the round-trip time, the timeouts of an
+	 * episode back off one after the other (see {@link simulation.tcp.RTOEstimator}).
+	 * A Tahoe sender, which restarts in slow start after every loss, loses its segments
+	 * in pairs. Less than one lost segment (pair) per flow stands for an episode of only
+	 * that fraction of the flows, and the class reacts in proportion: the flows that time out
+	 * join those that wait, and the others halve their windows or, with Tahoe, reset them.
+	 * @param c the class
+	 * @param rtt_ the current round-trip time of the flows, in ticks
+	 */
+	private void reactToLosses(int c, double rtt_) {
+		double burst_ = (version[c] == TAHOE) ? 2.0 : 1.0;
+		double share_ = Math.min(episodeLoss[c] / burst_, 1.0);
+		double holes_ = Math.max(episodeLoss[c], burst_);
+		episodeLoss[c] = 0.0;
+		detectionTime[c] = -1.0;
+
+		double window_ = Math.min(congWindow[c], rcvWindow[c]);
+		double following_ = window_ / mss - holes_;
+		double timeoutProbability_ = (following_ > 3.0) ? Math.pow(3.0 / following_, TIMEOUT_EXPONENT) : 1.0;
+		double fastTimeouts_ = (version[c] == NEW_RENO) ? 0.0 : holes_ - 1.0;
+		double slowTimeouts_ = (version[c] == NEW_RENO) ? 1.0 : holes_;
+		double timeouts_ = timeoutProbability_ * slowTimeouts_ + (1.0 - timeoutProbability_) * fastTimeouts_;
+		double rto_ = Math.max(Math.rint(rtt_), 1.0) + Math.max(MIN_RTO, rtt_);
+		double wait_ = rto_ * (
+			timeoutProbability_ * (Math.pow(2.0, slowTimeouts_) - 1.0) +
+			(1.0 - timeoutProbability_) * (Math.pow(2.0, fastTimeouts_) - 1.0)
+		);
+		double active_ = 1.0 - idle[c];
+		timeouts[c] += active_ * share_ * timeouts_;
+
+		// A flow that times out waits with a window of one segment, a fast retransmit
+		// halves the window (Reno, NewReno) or resets it to one segment (Tahoe):
+		double timedOut_ = share_ * Math.min(timeouts_, 1.0);
+		double halved_ = share_ - timedOut_;
+		double target_ = (version[c] == TAHOE) ? mss : window_ / 2.0;
+		ssThresh[c] += share_ * (Math.max(window_ / 2.0, 2.0 * mss) - ssThresh[c]);
+		congWindow[c] = (timedOut_ < 1.0) ?
+			Math.max((congWindow[c] * (1.0 - share_) + halved_ * target_) / (1.0 - timedOut_), mss) : mss;
+		if (timedOut_ > 0.0) {
+			double entering_ = active_ * timedOut_;
+			idleWait[c] = (idle[c] * idleWait[c] + entering_ * wait_ / Math.min(timeouts_, 1.0)) / (idle[c] + entering_);
+			idle[c] += entering_;
+		}
+	}
+
+	/** Helper method to return the number of copies of a queue that carry traffic,
+	 * which is at least one while any flow of the class is active. */
+	private double activeCopies(int k) {
+		return (ownerOf[k] < 0) ? copies[k] : Math.max(copies[k] * (1.0 - idle[ownerOf[k]]), Math.min(copies[k], 1.0));
+	}
+
+	/** Helper method to check whether the flows of all classes have completed. */
+	private boolean allComplete() {
+		for (int c = 0; c < completionTime.length; c++) {
+			if (completionTime[c] < 0.0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method to print the average window and the router occupancies at the end of a tick.
+	 */
+	private void reportState() {
+		double windows_ = 0.0;
+		int flows_ = 0;
+		for (int c = 0; c < flowCount.length; c++) {
+			windows_ += flowCount[c] * congWindow[c];
+			flows_ += flowCount[c];
+		}
+		StringBuilder occupancies_ = new StringBuilder();
+		for (int r = 0; r < occupancy.length; r++) {
+			occupancies_.append(' ').append(Math.round(occupancy[r]));
+		}
+		System.out.println(
+			"Fluid RTT #" + Math.round(time) + ":\tmean CongWin=" + Math.round(windows_ / flows_) +
+			"\trouter occupancy [bytes]:" + occupancies_
+		);
+	}
+
+	/**
+	 * Prints a summary of the background flows at the end of a hybrid simulation.
+	 * Their outcomes do not enter the statistics file, which covers the foreground flows.
+	 */
+	void reportBackground() {
+		double transmitted_ = 0.0;
+		double retransmitted_ = 0.0;
+		double timeouts_ = 0.0;
+		int completed_ = 0;
+		for (int i = 0; i < flows.length; i++) {
+			int c = classOf[i];
+			transmitted_ += acknowledged[c];
+			retransmitted_ += lost[c];
+			timeouts_ += timeouts[c];
+			if (completionTime[c] >= 0.0) {
+				completed_++;
+			}
+		}
+		System.out.println(
+			"Background flows: " + flows.length + " in " + flowCount.length + " fluid classes, " +
+			completed_ + " completed; " + Math.round(transmitted_) + " bytes acknowledged, " +
+			Math.round(retransmitted_) + " bytes lost, " + Math.round(timeouts_) + " timeouts"
+		);
+	}
+
+	/**
+	 * Helper method to sum up the outcomes of all flows and report them.
+	 * @param num_iter_ the number of ticks the model was asked to run for
+	 */
+	private void finish(int num_iter_) {
+		boolean reporting_ = simulator.getConfig().isReporting(Simulator.REPORTING_SIMULATOR);
+		if (reporting_) {
+			System.out.println(
+				"     ====================  E N D   O F   S E S S I O N  ===================="
+			);
+		}
+		double transmitted_ = 0.0;
+		double retransmitted_ = 0.0;
+		double timeouts_ = 0.0;
+		double[] completionTimes_ = new double[flows.length];
+		for (int i = 0; i < flows.length; i++) {
+			int c = classOf[i];
+			transmitted_ += acknowledged[c];
+			retransmitted_ += lost[c];
+			timeouts_ += timeouts[c];
+			completionTimes_[i] = completionTime[c];
+			if (reporting_) {
+				System.out.println(
+					"Flow " + flows[i].getName() +
+					(completionTimes_[i] < 0.0 ?
+						" did not complete" :
+						" completed in " + completionTimes_[i] + " RTTs")
+				);
+			}
+		}
+
+		if (reporting_ && retransmitted_ > 0.0) {
+			System.out.println(
+				"Fluid model: the router buffers overflowed; the mean completion time " +
+				"is an estimate within a factor of about 1.5 of the packet-level engines"
+			);
+		}
+
+		// When all flows completed, the session ended with the last one:
+		double elapsedTime_ = time;
+		if (allComplete()) {
+			elapsedTime_ = 0.0;
+			for (int c = 0; c < completionTime.length; c++) {
+				elapsedTime_ = Math.max(elapsedTime_, completionTime[c]);
+			}
+		}
+
+		simulator.processStatistics(
+			Math.round(transmitted_), Math.round(retransmitted_), num_iter_, elapsedTime_,
+			(int) Math.round(timeouts_), completionTimes_, true
+		);
+	}
+
+
+	// ----------------------------------------------------------------------
+	/**
+	 * Event of a hybrid simulation: integrates the model by one step, in
+	 * exchange with the routers, and schedules itself for the next step.
+	 */
+	private class Step extends SimulationEvent {
+		private static final long serialVersionUID = 1L;
+
+		/** The length of a step, in the simulator time units. */
+		private final long interval;
+
+		Step(long interval_) {
+			this.interval = interval_;
+		}
+
+		@Override
+		public void fire() {
+			double step_ = simulator.toTicks(interval);
+			takePacketTraffic(step_);
+			step(step_, simulator.getConfig().getTotalDataLength());
+			giveFluidTraffic();
+			simulator.scheduleEvent(this, getTime() + interval);
+		}
+	}
+}
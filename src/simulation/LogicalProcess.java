@@ -0,0 +1,221 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * A logical process of the partitioned event-driven engine
+ * (see {@link Simulator#setParallelism(int)}). Each logical process
+ * owns a part of the topology, keeps the pending events of that part
+ * in its own {@link EventScheduler}, and has its own clock.</p>
+ *
+ * <p>The processes are synchronized conservatively, in time windows.
+ * A window is never longer than the <em>lookahead</em>, i.e., the shortest
+ * delay of a link between two processes. An event that one process
+ * schedules for another one therefore always falls into a later window;
+ * it is kept in the {@link #outbox} until the barrier at the end of
+ * the window, and meanwhile all processes work in parallel.</p>
+ *
+ * <p>To obtain exactly the results of the sequential engine, the events
+ * that fire at the same time must fire in the order in which the sequential
+ * engine would have scheduled them. That order follows from the causality
+ * of the events: an event scheduled during an earlier firing comes first,
+ * and the events scheduled during the same firing keep their order. Every
+ * firing is therefore recorded as an {@link Origin}, and the scheduled events
+ * refer to the origin of their firing. During a window, the firings of
+ * a process are ranked locally; at the barrier, the firings of all processes
+ * are merged and ranked globally (see {@link #rankFirings(LogicalProcess[], long)}).</p>
+ *
+ * @see Simulator#runEventDrivenSimulation(int)
+ */
+class LogicalProcess implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The pending events of this process. */
+	final EventScheduler events = new EventScheduler();
+
+	/** The local simulation time of this process. */
+	long now = 0;
+
+	/** The firing that is currently in progress in this process. */
+	private Origin current;
+
+	/** The firings of this process in the current window, in order. */
+	private ArrayList<Origin> firings = new ArrayList<Origin>();
+
+	/** Counter for ranking the firings locally, within the current window. */
+	private long localRank = 0;
+
+	/** The end of the current window; nothing may be sent to
+	 * another process for an earlier time. */
+	private long windowEnd = Long.MIN_VALUE;
+
+	/** The events scheduled for other processes in the current window,
+	 * and the processes that they are scheduled for. */
+	private ArrayList<SimulationEvent> outbox = new ArrayList<SimulationEvent>();
+	private ArrayList<LogicalProcess> outboxTargets = new ArrayList<LogicalProcess>();
+
+	/**
+	 * Constructor.
+	 * @param root_ the origin of the events scheduled before the simulation starts,
+	 * shared by all processes of the simulation
+	 * @param startTime_ the simulation time at which the simulation starts
+	 */
+	LogicalProcess(Origin root_, long startTime_) {
+		this.current = root_;
+		this.now = startTime_;
+		this.windowEnd = startTime_;
+	}
+
+	/**
+	 * Schedules an event, scheduled during the current firing of this process,
+	 * to fire at the given time in the given process.
+	 *
+	 * @param event_ the event to schedule
+	 * @param time_ the simulation time at which the event fires
+	 * @param target_ the process in which the event fires
+	 * @throws IllegalStateException if the event would fire in another process
+	 * before the end of the current window
+	 */
+	void schedule(SimulationEvent event_, long time_, LogicalProcess target_)
+	throws IllegalStateException {
+		event_.origin = current;
+		event_.originIndex = current.children++;
+		if (target_ == this) {
+			events.schedule(event_, time_);
+		} else if (time_ < windowEnd) {
+			throw new IllegalStateException(
+				this.getClass().getName() + ".schedule():  An event for another process violates the lookahead."
+			);
+		} else {
+			event_.time = time_;
+			outbox.add(event_);
+			outboxTargets.add(target_);
+		}
+	}
+
+	/**
+	 * Fires, in order, all pending events of this process
+	 * that fire before the given time.
+	 * @param windowEnd_ the end of the current window
+	 */
+	void runWindow(long windowEnd_) {
+		this.windowEnd = windowEnd_;
+		while (events.peekTime() < windowEnd_) {
+			SimulationEvent event_ = events.pollNext();
+			now = event_.time;
+			current = new Origin(now, event_.origin, event_.originIndex, localRank++);
+			firings.add(current);
+			event_.fire();
+		}
+	}
+
+	/**
+	 * Hands over the events scheduled for other processes in the past window.
+	 * Must be called at the barrier, when no process is running.
+	 */
+	void deliverOutbox() {
+		for (int i = 0; i < outbox.size(); i++) {
+			SimulationEvent event_ = outbox.get(i);
+			outboxTargets.get(i).events.schedule(event_, event_.time);
+		}
+		outbox.clear();
+		outboxTargets.clear();
+	}
+
+	/**
+	 * Ranks the firings of all processes in the past window in the order
+	 * in which the sequential engine would have fired them. Each process fired
+	 * its own events in that order already, so the firings are simply merged.
+	 * Must be called at the barrier, when no process is running.
+	 *
+	 * @param processes_ all processes of the simulation
+	 * @param nextRank_ the first global rank to assign
+	 * @return the next global rank to assign, at the following barrier
+	 */
+	static long rankFirings(LogicalProcess[] processes_, long nextRank_) {
+		int[] heads_ = new int[processes_.length];
+		while (true) {
+			LogicalProcess earliest_ = null;
+			int earliestIndex_ = -1;
+			for (int p_ = 0; p_ < processes_.length; p_++) {
+				if (heads_[p_] == processes_[p_].firings.size()) continue;
+				Origin candidate_ = processes_[p_].firings.get(heads_[p_]);
+				if (earliest_ == null || firedBefore(candidate_, earliest_.firings.get(heads_[earliestIndex_]))) {
+					earliest_ = processes_[p_];
+					earliestIndex_ = p_;
+				}
+			}
+			if (earliest_ == null) break;
+			earliest_.firings.get(heads_[earliestIndex_]++).rank = nextRank_++;
+		}
+
+		// Now that their ranks are final, the firings no longer need their
+		// own origins, which lets the history of the simulation be collected:
+		for (int p_ = 0; p_ < processes_.length; p_++) {
+			ArrayList<Origin> firings_ = processes_[p_].firings;
+			for (int i = 0; i < firings_.size(); i++) {
+				firings_.get(i).parent = null;
+			}
+			firings_.clear();
+			processes_[p_].localRank = 0;
+		}
+		return nextRank_;
+	}
+
+	/**
+	 * Returns <code>true</code> if, of two events that fire at the same time,
+	 * the first one was scheduled before the second one.
+	 * Both events must have been scheduled in the partitioned engine.
+	 */
+	static boolean precedes(Origin a_, int aIndex_, Origin b_, int bIndex_) {
+		if (a_ != b_) {
+			if (a_.time != b_.time) return a_.time < b_.time;
+			return a_.rank < b_.rank;
+		}
+		return aIndex_ < bIndex_;
+	}
+
+	/** Returns <code>true</code> if firing <code>a_</code> precedes firing <code>b_</code>. */
+	private static boolean firedBefore(Origin a_, Origin b_) {
+		if (a_.time != b_.time) return a_.time < b_.time;
+		return precedes(a_.parent, a_.index, b_.parent, b_.index);
+	}
+
+
+	// ----------------------------------------------------------------------
+	/**
+	 * The record of one firing of an event, to which the events
+	 * scheduled during that firing refer.
+	 */
+	static final class Origin implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/** The time of the firing. */
+		final long time;
+
+		/** The origin of the fired event itself, until the firing is ranked globally. */
+		Origin parent;
+
+		/** The {@link SimulationEvent#originIndex} of the fired event. */
+		final int index;
+
+		/** The rank of this firing among the firings at the same time:
+		 * local to its process within the current window, global afterwards. */
+		long rank;
+
+		/** The number of events scheduled during this firing so far. */
+		int children = 0;
+
+		Origin(long time_, Origin parent_, int index_, long rank_) {
+			this.time = time_;
+			this.parent = parent_;
+			this.index = index_;
+			this.rank = rank_;
+		}
+	}
+}
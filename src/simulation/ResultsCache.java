@@ -0,0 +1,171 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A persistent store of the statistics of sweep points, so that a sweep
+ * run again only simulates the points that were not simulated before.
+ * The statistics of a point are stored under the hash of everything that
+ * determines them: the parameters of the point, the maximum segment size,
+ * data length, loss rate and seed of the configuration, the clock resolution
+ * and the {@link Simulator#MODEL_VERSION}. A change to any of these makes a
+ * new key, so the cache never returns stale results and needs no invalidation.</p>
+ *
+ * <p>Each entry is a file of its own, named after the hash and placed in a
+ * subdirectory named after the first two digits of the hash, so that a
+ * lookup opens a single file and no directory grows too large. An entry is
+ * written to a temporary file first and then renamed into place, so several
+ * processes can share the cache directory: a reader sees either the whole
+ * entry or none, and writers of the same entry simply replace each other's
+ * identical results.</p>
+ *
+ * @see SweepRunner
+ * @see SweepCoordinator
+ */
+public class ResultsCache {
+	/** The extension of the entry files. */
+	public static final String ENTRY_FILE_EXTENSION = ".stats";
+
+	/** The directory of the cache. */
+	private final File directory;
+
+	/**
+	 * Constructor. The directory is created if it does not exist.
+	 * @param directory_ the directory of the cache
+	 * @throws IOException if the directory cannot be created
+	 */
+	public ResultsCache(File directory_) throws IOException {
+		if (!directory_.isDirectory() && !directory_.mkdirs() && !directory_.isDirectory()) {
+			throw new IOException("Unable to create the results cache " + directory_);
+		}
+		this.directory = directory_;
+	}
+
+	/**
+	 * Looks up the statistics of a point.
+	 * An entry that cannot be read counts as missing.
+	 * @param point_ the point
+	 * @param config_ the configuration the point runs with
+	 * @return the cached statistics, or <code>null</code> if the point has not been simulated before
+	 */
+	public SimulationStatistics get(SweepPoint point_, SimulationConfig config_) {
+		String key_ = key(point_, config_);
+		File file_ = entryFile(hash(key_));
+		if (!file_.isFile()) {
+			return null;
+		}
+		try {
+			ObjectInputStream in_ = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file_)));
+			try {
+				// The key guards against the (unlikely) collision of hashes:
+				if (!key_.equals(in_.readUTF())) {
+					return null;
+				}
+				return (SimulationStatistics) in_.readObject();
+			} finally {
+				in_.close();
+			}
+		} catch (IOException ex) {
+			return null;
+		} catch (ClassNotFoundException ex) {
+			return null;
+		} catch (ClassCastException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the statistics of a point.
+	 * @param point_ the point
+	 * @param config_ the configuration the point ran with
+	 * @param statistics_ the statistics of the point
+	 * @throws IOException if the entry cannot be written
+	 */
+	public void put(SweepPoint point_, SimulationConfig config_, SimulationStatistics statistics_) throws IOException {
+		String key_ = key(point_, config_);
+		File file_ = entryFile(hash(key_));
+		File parent_ = file_.getParentFile();
+		if (!parent_.isDirectory() && !parent_.mkdirs() && !parent_.isDirectory()) {
+			throw new IOException("Unable to create the directory " + parent_);
+		}
+
+		File temporary_ = File.createTempFile(file_.getName(), ".tmp", parent_);
+		try {
+			ObjectOutputStream out_ = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temporary_)));
+			try {
+				out_.writeUTF(key_);
+				out_.writeObject(statistics_);
+			} finally {
+				out_.close();
+			}
+			try {
+				Files.move(
+					temporary_.toPath(), file_.toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING
+				);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temporary_.toPath(), file_.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			temporary_.delete();	// only left over if the entry was not moved into place
+		}
+	}
+
+	/**
+	 * Gets the description of everything that determines the statistics of a point.
+	 * @param point_ the point
+	 * @param config_ the configuration the point runs with
+	 * @return the key of the point in the cache
+	 */
+	public static String key(SweepPoint point_, SimulationConfig config_) {
+		return "model=" + Simulator.MODEL_VERSION +
+			" tick=" + Simulator.DEFAULT_TIME_UNITS_PER_TICK +
+			" mss=" + config_.getMSS() +
+			" data=" + config_.getTotalDataLength() +
+			" loss=" + config_.getLossRate() +
+			" seed=" + config_.getSeed() +
+			" point=" + point_.toString();
+	}
+
+	/**
+	 * Helper method to get the hexadecimal SHA-256 hash of a key.
+	 */
+	private static String hash(String key_) {
+		try {
+			byte[] digest_ = MessageDigest.getInstance("SHA-256").digest(key_.getBytes("UTF-8"));
+			StringBuilder hex_ = new StringBuilder(2 * digest_.length);
+			for (byte b : digest_) {
+				hex_.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex_.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("ResultsCache:  SHA-256 is not available: " + ex.toString());
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException("ResultsCache:  UTF-8 is not available: " + ex.toString());
+		}
+	}
+
+	/**
+	 * Helper method to get the file of the entry with the given hash.
+	 */
+	private File entryFile(String hash_) {
+		return new File(new File(directory, hash_.substring(0, 2)), hash_ + ENTRY_FILE_EXTENSION);
+	}
+}
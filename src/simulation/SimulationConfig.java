@@ -0,0 +1,210 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.Serializable;
+
+/**
+ * The configuration of one {@link Simulator}: the reporting level, the
+ * maximum segment size of the TCP senders, the amount of data each sender
+ * transfers, the random packet losses on the links, and the file to which
+ * the statistics of a run are appended.
+ * Every simulator has its own configuration, which its network elements reach
+ * through {@link Simulator#getConfig()}, so several simulators can run in one
+ * process, also on different threads, without interfering with each other.</p>
+ *
+ * <p>The maximum segment size, the data length, the loss rate and the seed
+ * must be set before the configuration is passed to a simulator; the reporting
+ * level and the statistics file may also be changed later.</p>
+ *
+ * @see Simulator#Simulator(String, int, int, String, int, int, long, SimulationConfig)
+ */
+public class SimulationConfig implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The default reporting level: the simulator, links, routers and senders. */
+	public static final int DEFAULT_REPORTING_LEVEL =
+//		0;	/* Reports only the most basic congestion parameters. */
+		(Simulator.REPORTING_SIMULATOR | Simulator.REPORTING_LINKS | Simulator.REPORTING_ROUTERS | Simulator.REPORTING_SENDERS);
+//		(Simulator.REPORTING_SIMULATOR | Simulator.REPORTING_LINKS | Simulator.REPORTING_ROUTERS | Simulator.REPORTING_SENDERS | Simulator.REPORTING_RECEIVERS);
+//		(Simulator.REPORTING_SIMULATOR | Simulator.REPORTING_LINKS | Simulator.REPORTING_ROUTERS | Simulator.REPORTING_SENDERS | Simulator.REPORTING_RTO_ESTIMATE);
+
+	/** The default maximum segment size of the TCP senders, in bytes. */
+	public static final int DEFAULT_MSS = 1024;
+
+	/** The default amount of data each sender transfers, in bytes. */
+	public static final int DEFAULT_TOTAL_DATA_LENGTH = 1000000;
+
+	/** The current reporting level(s) (see {@link Simulator#REPORTING_SIMULATOR} and the other flags).<BR>
+	 * The minimum possible reporting is obtained by setting the zero value. */
+	private int reportingLevel = DEFAULT_REPORTING_LEVEL;
+
+	/** The maximum segment size of the TCP senders, in bytes. */
+	private int mss = DEFAULT_MSS;
+
+	/** The amount of data each sender transfers, in bytes. */
+	private int totalDataLength = DEFAULT_TOTAL_DATA_LENGTH;
+
+	/** The name of the file to which the statistics are appended,
+	 * or <code>null</code> for a name derived from the TCP version and the topology. */
+	private String statisticsFileName = null;
+
+	/** The probability that a link loses a packet sent over it. */
+	private double lossRate = 0.0;
+
+	/** The seed of the random numbers of the simulator, such as the packet losses. */
+	private long seed = 0L;
+
+	/** Whether the statistics of a run are appended to the statistics file;
+	 * they are not when the caller collects them with {@link Simulator#getStatistics()}. */
+	private boolean statisticsWritten = true;
+
+	/**
+	 * Constructor. Creates the default configuration.
+	 */
+	public SimulationConfig() {
+	}
+
+	/**
+	 * Copy constructor.
+	 * @param other_ the configuration to copy
+	 */
+	public SimulationConfig(SimulationConfig other_) {
+		this.reportingLevel = other_.reportingLevel;
+		this.mss = other_.mss;
+		this.totalDataLength = other_.totalDataLength;
+		this.statisticsFileName = other_.statisticsFileName;
+		this.lossRate = other_.lossRate;
+		this.seed = other_.seed;
+		this.statisticsWritten = other_.statisticsWritten;
+	}
+
+	/**
+	 * @return the current reporting level(s)
+	 */
+	public int getReportingLevel() {
+		return reportingLevel;
+	}
+
+	/**
+	 * @param reportingLevel_ the reporting level(s) to set; zero gives the minimum reporting
+	 */
+	public void setReportingLevel(int reportingLevel_) {
+		this.reportingLevel = reportingLevel_;
+	}
+
+	/**
+	 * @param flag_ one of the reporting flags, such as {@link Simulator#REPORTING_SENDERS}
+	 * @return <code>true</code> if the given kind of reporting is turned on
+	 */
+	public boolean isReporting(int flag_) {
+		return (reportingLevel & flag_) != 0;
+	}
+
+	/**
+	 * @return the maximum segment size of the TCP senders, in bytes
+	 */
+	public int getMSS() {
+		return mss;
+	}
+
+	/**
+	 * @param mss_ the maximum segment size of the TCP senders, in bytes
+	 * @throws IllegalArgumentException if the size is not positive
+	 */
+	public void setMSS(int mss_) throws IllegalArgumentException {
+		if (mss_ <= 0) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".setMSS():  The maximum segment size must be positive."
+			);
+		}
+		this.mss = mss_;
+	}
+
+	/**
+	 * @return the amount of data each sender transfers, in bytes
+	 */
+	public int getTotalDataLength() {
+		return totalDataLength;
+	}
+
+	/**
+	 * @param totalDataLength_ the amount of data each sender transfers, in bytes
+	 * @throws IllegalArgumentException if the length is negative
+	 */
+	public void setTotalDataLength(int totalDataLength_) throws IllegalArgumentException {
+		if (totalDataLength_ < 0) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".setTotalDataLength():  The data length must not be negative."
+			);
+		}
+		this.totalDataLength = totalDataLength_;
+	}
+
+	/**
+	 * @return the name of the file to which the statistics are appended, or <code>null</code>
+	 * for the name derived from the TCP version and the topology
+	 */
+	public String getStatisticsFileName() {
+		return statisticsFileName;
+	}
+
+	/**
+	 * @param statisticsFileName_ the name of the file to which the statistics are appended,
+	 * or <code>null</code> for the name derived from the TCP version and the topology
+	 */
+	public void setStatisticsFileName(String statisticsFileName_) {
+		this.statisticsFileName = statisticsFileName_;
+	}
+
+	/**
+	 * @return the probability that a link loses a packet sent over it
+	 */
+	public double getLossRate() {
+		return lossRate;
+	}
+
+	/**
+	 * @param lossRate_ the probability that a link loses a packet sent over it
+	 * @throws IllegalArgumentException if the probability is not at least zero and less than one
+	 */
+	public void setLossRate(double lossRate_) throws IllegalArgumentException {
+		if (!(lossRate_ >= 0.0 && lossRate_ < 1.0)) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".setLossRate():  The loss rate must be at least zero and less than one."
+			);
+		}
+		this.lossRate = lossRate_;
+	}
+
+	/**
+	 * @return the seed of the random numbers of the simulator
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param seed_ the seed of the random numbers of the simulator;
+	 * runs with the same seed lose the same packets
+	 */
+	public void setSeed(long seed_) {
+		this.seed = seed_;
+	}
+
+	/**
+	 * @return <code>true</code> if the statistics of a run are appended to the statistics file
+	 */
+	public boolean isStatisticsWritten() {
+		return statisticsWritten;
+	}
+
+	/**
+	 * @param statisticsWritten_ whether the statistics of a run are appended to the statistics file
+	 */
+	public void setStatisticsWritten(boolean statisticsWritten_) {
+		this.statisticsWritten = statisticsWritten_;
+	}
+}
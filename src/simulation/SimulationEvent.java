@@ -0,0 +1,63 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.Serializable;
+
+/**
+ * An event of the discrete-event engine of the {@link Simulator}.
+ * The event fires at its scheduled simulation time, at which
+ * point the simulator calls its {@link #fire()} method.</p>
+ *
+ * <p>Events that fire at the same time are fired in the order
+ * in which they were scheduled. An event object can be
+ * scheduled again after it has fired, so components that
+ * generate the same kind of event over and over may keep
+ * reusing a single event object.</p>
+ *
+ * @see EventScheduler
+ * @see Simulator#scheduleEvent(SimulationEvent, long)
+ */
+public abstract class SimulationEvent implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The simulation time at which this event fires,
+	 * in the time units of the {@link Simulator}. */
+	long time = 0;
+
+	/** Scheduling order, used to break the ties between events
+	 * that fire at the same time. Assigned by the {@link EventScheduler}. */
+	long sequence = 0;
+
+	/** In the partitioned engine, the firing of an event during which this
+	 * event was scheduled; breaks the ties instead of {@link #sequence}
+	 * (see {@link LogicalProcess}). <code>null</code> in the sequential engine. */
+	LogicalProcess.Origin origin = null;
+
+	/** The number of events scheduled during the same firing before this one. */
+	int originIndex = 0;
+
+	/** Position of this event in the heap of the {@link EventScheduler},
+	 * or <code>-1</code> if the event is not scheduled. */
+	int heapIndex = -1;
+
+	/**
+	 * Performs the work of this event. Called by the simulator
+	 * when the simulation clock reaches the time of this event.
+	 */
+	public abstract void fire();
+
+	/** Returns the time when this event fires. */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return <code>true</code> if this event is currently waiting to fire
+	 */
+	public boolean isScheduled() {
+		return heapIndex >= 0;
+	}
+}
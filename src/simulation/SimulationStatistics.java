@@ -0,0 +1,235 @@
+package simulation;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * The outcome of one simulation session, as reported by
+ * {@link Simulator#endSimulation()}: the amount of data transferred,
+ * the timeouts, and the completion time of every flow.
+ * The statistics can be turned into a row of the statistics CSV file
+ * with {@link #toRow()}, whose columns are {@link #HEADER}.
+ *
+ * @author Tom Carroll
+ */
+public class SimulationStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The column headers of the statistics CSV file
+     */
+    public static final String[] HEADER = {
+        "Number of Iterations",
+        "Number of Senders",
+        "Number of Routers",
+        "Congestion Avoidance Algorithm",
+        "Throughput (MB/RTTs)",
+        "Retransmission Ratio (% per MB)",
+        "Timeouts",
+        "Completed Flows",
+        "Flow Completion Times (RTTs)",
+        "Aggregate Completion Time (RTTs)"
+    };
+
+    private final int iterations;
+    private final int routers;
+    private final String algorithm;
+    private final long bytesTransmitted;
+    private final long bytesRetransmitted;
+    private final double throughputTime;
+    private final int timeouts;
+    private final double[] completionTimes;
+    private final boolean flowTimesReported;
+
+    /**
+     * Constructor
+     * @param iterations The number of iterations the simulator was asked to run for
+     * @param routers The number of routers in the topology
+     * @param algorithm The congestion avoidance algorithm of the senders
+     * @param bytesTransmitted The number of bytes successfully transmitted
+     * @param bytesRetransmitted The number of bytes retransmitted
+     * @param throughputTime The time over which the throughput is measured, in RTTs
+     * @param timeouts The number of timeouts encountered in the simulation
+     * @param completionTimes The completion time of each flow in RTTs, or a negative value if the flow did not complete
+     */
+    public SimulationStatistics(
+            int iterations, int routers, String algorithm, long bytesTransmitted, long bytesRetransmitted,
+            double throughputTime, int timeouts, double[] completionTimes
+    ) {
+        this(
+                iterations, routers, algorithm, bytesTransmitted, bytesRetransmitted,
+                throughputTime, timeouts, completionTimes, true
+        );
+    }
+
+    /**
+     * Constructor for statistics whose flows were not simulated one by one, such as
+     * those of the fluid model, where the identical flows share one completion time.
+     * Such times are still counted as completed flows and in the aggregate completion
+     * time, but are not reported as the times of individual flows.
+     * @param iterations The number of iterations the simulator was asked to run for
+     * @param routers The number of routers in the topology
+     * @param algorithm The congestion avoidance algorithm of the senders
+     * @param bytesTransmitted The number of bytes successfully transmitted
+     * @param bytesRetransmitted The number of bytes retransmitted
+     * @param throughputTime The time over which the throughput is measured, in RTTs
+     * @param timeouts The number of timeouts encountered in the simulation
+     * @param completionTimes The completion time of each flow in RTTs, or a negative value if the flow did not complete
+     * @param flowTimesReported Whether the completion times are those of individual flows
+     */
+    public SimulationStatistics(
+            int iterations, int routers, String algorithm, long bytesTransmitted, long bytesRetransmitted,
+            double throughputTime, int timeouts, double[] completionTimes, boolean flowTimesReported
+    ) {
+        this.iterations = iterations;
+        this.routers = routers;
+        this.algorithm = algorithm;
+        this.bytesTransmitted = bytesTransmitted;
+        this.bytesRetransmitted = bytesRetransmitted;
+        this.throughputTime = throughputTime;
+        this.timeouts = timeouts;
+        this.completionTimes = completionTimes.clone();
+        this.flowTimesReported = flowTimesReported;
+    }
+
+    /**
+     * Gets the number of iterations the simulator was asked to run for
+     * @return The number of iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Gets the number of senders
+     * @return The number of senders
+     */
+    public int getSenders() {
+        return completionTimes.length;
+    }
+
+    /**
+     * Gets the number of routers in the topology
+     * @return The number of routers
+     */
+    public int getRouters() {
+        return routers;
+    }
+
+    /**
+     * Gets the congestion avoidance algorithm of the senders
+     * @return Tahoe, Reno or NewReno
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Gets the throughput of all senders together
+     * @return The throughput, in MB per RTT
+     */
+    public double getThroughput() {
+        return ((double) bytesTransmitted / 1048576) / throughputTime;
+    }
+
+    /**
+     * Gets the share of the transmitted bytes that were retransmissions
+     * @return The retransmission ratio, in percent
+     */
+    public double getRetransmissionRatio() {
+        if (bytesTransmitted == 0) {
+            return 0.0;
+        }
+        return ((double) bytesRetransmitted / (double) bytesTransmitted) * 100;
+    }
+
+    /**
+     * Gets the number of timeouts of all senders together
+     * @return The number of timeouts
+     */
+    public int getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Gets the number of flows that completed their transfer
+     * @return The number of completed flows
+     */
+    public int getCompletedFlows() {
+        int completed = 0;
+        for (double completionTime : completionTimes) {
+            if (completionTime >= 0.0) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Gets the completion time of each flow
+     * @return The completion times in RTTs, negative for the flows that did not complete
+     */
+    public double[] getCompletionTimes() {
+        return completionTimes.clone();
+    }
+
+    /**
+     * Tells whether the completion times are those of individual flows
+     * @return false if the flows were merged into classes that share a completion time
+     */
+    public boolean isFlowTimesReported() {
+        return flowTimesReported;
+    }
+
+    /**
+     * Gets the time when the last flow completed
+     * @return The aggregate completion time in RTTs, or a negative value if some flow did not complete
+     */
+    public double getAggregateCompletionTime() {
+        double aggregate = 0.0;
+        for (double completionTime : completionTimes) {
+            if (completionTime < 0.0) {
+                return -1.0;
+            }
+            aggregate = Math.max(aggregate, completionTime);
+        }
+        return aggregate;
+    }
+
+    /**
+     * Formats these statistics as a row of the statistics CSV file.
+     * The per-flow completion times are separated by spaces, with "-" for the
+     * flows that did not complete. The aggregate completion time is the time
+     * when the last flow completed, reported only if all of them did.
+     * If the completion times are not those of individual flows, a single "-"
+     * is written in place of the per-flow times.
+     * @return The cells of the row, in the order of {@link #HEADER}
+     */
+    public String[] toRow() {
+        StringBuilder flowCompletionTimes = new StringBuilder();
+        for (int i = 0; i < completionTimes.length; i++) {
+            if (i > 0) {
+                flowCompletionTimes.append(' ');
+            }
+            if (completionTimes[i] < 0.0) {
+                flowCompletionTimes.append('-');
+            } else {
+                flowCompletionTimes.append(BigDecimal.valueOf(completionTimes[i]).toPlainString());
+            }
+        }
+        double aggregateCompletionTime = getAggregateCompletionTime();
+
+        String[] cells = new String[HEADER.length];
+        cells[0] = String.valueOf(iterations);
+        cells[1] = String.valueOf(completionTimes.length);
+        cells[2] = String.valueOf(routers);
+        cells[3] = algorithm;
+        cells[4] = BigDecimal.valueOf(getThroughput()).toPlainString();
+        cells[5] = (bytesTransmitted == 0) ? "0" : BigDecimal.valueOf(getRetransmissionRatio()).toPlainString();
+        cells[6] = String.valueOf(timeouts);
+        cells[7] = String.valueOf(getCompletedFlows());
+        cells[8] = flowTimesReported ? flowCompletionTimes.toString() : "-";
+        cells[9] = (aggregateCompletionTime < 0.0) ? "-" : BigDecimal.valueOf(aggregateCompletionTime).toPlainString();
+        return cells;
+    }
+}
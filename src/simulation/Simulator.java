@@ -7,19 +7,33 @@
 package simulation;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.math.BigDecimal;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.CSVWriter;
 import simulation.network.Endpoint;
 import simulation.network.Link;
+import simulation.network.NetworkElement;
 import simulation.network.Packet;
 import simulation.network.Router;
 import simulation.network.topology.CloudTopology;
 import simulation.network.topology.DirectTopology;
+import simulation.network.topology.ProcessingSchedule;
 import simulation.network.topology.Topology;
 import simulation.tcp.Sender;
 
@@ -39,7 +53,8 @@ import simulation.tcp.Sender;
  * only replies with acknowledgments.  In other words, for simplicity
  * we assume <i>unidirectional transmission</i>.</p>
  * 
- * <p>By default, the simulator reports the values of the congestion
+ * <p>With a {@link ConsoleTracer} (see {@link #setTracer(Tracer)}),
+ * the simulator reports the values of the congestion
  * control parameters for every iteration:
  * <ol>
  * <li> Iteration number (starting value 1), which is also the simulation
@@ -53,7 +68,11 @@ import simulation.tcp.Sender;
  * is reported.</p>
  * 
  * <p>You can turn ON or OFF different levels of reporting by modifying
- * the variable {@link #currentReportingLevel}.</p>
+ * the reporting level of the simulator's configuration
+ * ({@link SimulationConfig#setReportingLevel(int)}). By default, no tracer is
+ * set, so the senders, links and routers report nothing while the
+ * simulation runs; an {@link AsyncTraceWriter} records their events
+ * to a file without slowing the simulation down.</p>
  * 
  * <p>Only a few parameters can be controlled in this simulator.
  * Rather than have a flexible, multifunctional network simulator
@@ -64,9 +83,15 @@ import simulation.tcp.Sender;
  * interesting simulation scenarios described in the
  * <a href="http://www.ece.rutgers.edu/~marsic/books/CN/projects/tcp/" target="_top">design documentation</a>.</p>
  * 
+ * <p>The complete state of a simulation session can be saved in a snapshot
+ * and restored later, or copied in memory (see {@link Snapshot}), so that a common
+ * warm-up period needs to be simulated only once for many variants of the rest of a run.</p>
+ * 
  * @author Ivan Marsic
  */
-public class Simulator {
+public class Simulator implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Simulator's reporting flag: <br>
 	 * Reports the activities of the simulator runtime environment. */
 	public static final int REPORTING_SIMULATOR = 1 << 1;
@@ -91,21 +116,34 @@ public class Simulator {
 	 * Reports the activities of {@link simulation.tcp.RTOEstimator}. */
 	public static final int REPORTING_RTO_ESTIMATE = 1 << 6;
 
-	/** This field specifies the current reporting level(s)
-	 * for this simulator.<BR>
-	 * The minimum possible reporting is obtained by setting the zero value. */
-	public static int currentReportingLevel =
-//		0;	/* Reports only the most basic congestion parameters. */
-		(REPORTING_SIMULATOR | REPORTING_LINKS | REPORTING_ROUTERS | REPORTING_SENDERS);
-//		(REPORTING_SIMULATOR | REPORTING_LINKS | REPORTING_ROUTERS | REPORTING_SENDERS | REPORTING_RECEIVERS);
-//		(REPORTING_SIMULATOR | REPORTING_LINKS | REPORTING_ROUTERS | REPORTING_SENDERS | REPORTING_RTO_ESTIMATE);
-
     public static final String STATISTICS_FILENAME = "statistics";
     public static final String STATISTICS_FILE_EXTENSION = ".csv";
+    public static final String FLUID_STATISTICS_SUFFIX = "Fluid";
+
+    public static final String JOURNAL_FILENAME = "journal";
+    public static final String JOURNAL_FILE_EXTENSION = ".bin";
+
+	/** Version of the simulation model. It must be incremented with every change
+	 * that alters the statistics of a run, so that the results cached by
+	 * {@link ResultsCache} for the previous version are no longer used. */
+	public static final int MODEL_VERSION = 4;
+
+	/** Default number of simulator time units per clock tick
+	 * (see {@link #getTimeIncrement()}). */
+	public static final long DEFAULT_TIME_UNITS_PER_TICK = 1000000L;
+
+	/** The lock that serializes the appends to the statistics files
+	 * of the simulators running in this process. */
+	private static final Object STATISTICS_LOCK = new Object();
+
+	/** The configuration of this simulator. */
+	private final SimulationConfig config;
 
-	/** Total data length to send (in bytes).
-	 * In reality, this data should be read from a file or another input stream. */
-	public static final int TOTAL_DATA_LENGTH = 1000000;
+	/** The random numbers of this simulator, seeded from the configuration. */
+	private final Random random;
+
+	/** The statistics of the last session, or <code>null</code> before the session ends. */
+	private transient SimulationStatistics statistics = null;
 
     /**
      * The topology for this simulation. See {@link simulation.network.topology} for choices
@@ -117,18 +155,134 @@ public class Simulator {
      */
     private String congestionAvoidanceAlgorithm;
 
+	/** Number of simulator time units per clock tick.
+	 * All simulation times are integer multiples of the time unit,
+	 * so the time arithmetic and the ordering of events are exact. */
+	private final long timeUnitsPerTick;
+
 	/** Simulation iterations represent the clock ticks for the simulation.
 	 * Each iteration is a transmission round, which is one RTT cycle long.
-	 * The initial value by default equals "<tt>1.0</tt>". */
-	private double currentTime = 1.0;
+	 * The time is kept in the time units (see {@link #timeUnitsPerTick}),
+	 * and the initial value corresponds to the clock tick "<tt>1</tt>". */
+	private long currentTime;
 
-	/** An array of timers that the simulator has currently registered,
-	 * which are associated with {@link TimedComponent}.<BR>
+	/** The timers that the simulator has currently registered,
+	 * kept in a single wheel shared by all {@link TimedComponent}s.<BR>
 	 * To deal with concurrent events, it is recommended that
 	 * timers are fired (if expired) after the component's
 	 * functional operation is called. See the design documentation for more details.
-	 * @see TimedComponent */
-	private	ArrayList<TimerSimulated> timers = new ArrayList<TimerSimulated>();
+	 * @see TimedComponent
+	 * @see TimingWheel */
+	private TimingWheel timers;
+
+	/** The wheels of the individual flows, for each component of a flow, once the
+	 * rounds have been replayed by several threads (see {@link #setParallelism(int)});
+	 * otherwise <code>null</code>. The timers of the components of different flows
+	 * are then started, cancelled and fired from different threads, so each flow
+	 * keeps its timers apart from the other flows, instead of in {@link #timers}. */
+	private IdentityHashMap<TimedComponent, TimingWheel> flowTimers = null;
+
+	/** The distinct wheels of {@link #flowTimers}, one for each flow. */
+	private TimingWheel[] flowWheels = null;
+
+	/** Indicates whether this simulator runs as a true discrete-event
+	 * engine (see {@link #runEventDrivenSimulation(int)}),
+	 * instead of advancing the clock one RTT round at a time.
+	 * In the event-driven mode, the timers are kept in {@link #events}
+	 * rather than in {@link #timers}. */
+	private boolean eventDriven = false;
+
+	/** The pending events of the event-driven mode, including the running timers. */
+	private EventScheduler events = new EventScheduler();
+
+	/** The logical processes of the partitioned event-driven engine, while it runs;
+	 * otherwise <code>null</code>. Each process keeps its own pending events,
+	 * instead of {@link #events}, and its own clock, instead of {@link #currentTime}. */
+	private LogicalProcess[] processes = null;
+
+	/** The logical process that owns each endpoint and router, while the partitioned engine runs. */
+	private IdentityHashMap<NetworkElement, LogicalProcess> processOf = null;
+
+	/** The logical process running on the current thread, if any. */
+	private transient ThreadLocal<LogicalProcess> currentProcess = new ThreadLocal<LogicalProcess>();
+
+	/** The threads that run the flows of the rounds, or the logical processes,
+	 * of the current session if the parallelism is greater than one
+	 * (see {@link #threadPool()}); otherwise <code>null</code>. */
+	private transient ForkJoinPool pool = null;
+
+	/** The shortest delay of a link between two logical processes, in time units;
+	 * no window of the partitioned engine is longer than this. */
+	private long lookahead = 0;
+
+	/** Indicates whether the simulation stops as soon as every
+	 * {@link Sender} has completed its transfer (see {@link Sender#isComplete()}).
+	 * The number of iterations given to the run methods then serves only as a cap.
+	 * By default, the simulation always runs for the given number of iterations. */
+	private boolean runToCompletion = false;
+
+	/** The number of threads that process the independent flows
+	 * of the round-based engine in parallel (see {@link ProcessingSchedule#replay(ForkJoinPool)}),
+	 * or the parts of the topology in the event-driven engine (see {@link LogicalProcess}).
+	 * By default, the simulation runs on the calling thread only. */
+	private int parallelism = 1;
+
+	/** The number of sending endpoints, at the end of the list of the
+	 * topology's senders, that run as fluid background flows in a hybrid simulation
+	 * (see {@link #setBackgroundFlows(int)}). By default, all flows are foreground flows. */
+	private int backgroundFlows = 0;
+
+	/** The fluid model of the background flows while a hybrid simulation session
+	 * is in progress, or <code>null</code>. */
+	private FluidModel background = null;
+
+	/** The compiled processing schedule of the round-based engine,
+	 * while a simulation session is in progress. */
+	private ProcessingSchedule schedule = null;
+
+	/** The time at which the current simulation session started. */
+	private long sessionStartTime = 0;
+
+	/** The number of iterations of the current simulation session,
+	 * or <code>-1</code> if no session is in progress. */
+	private int sessionIterations = -1;
+
+	/** The next iteration of the round-based engine in the current session. */
+	private int sessionIteration = 0;
+
+	/** The time at which the current session of the event-driven engine ends. */
+	private long sessionEndTime = 0;
+
+	/** The last clock tick announced by the event-driven engine. */
+	private long reportedTick = 0;
+
+	/** The next global rank of the firings in the partitioned event-driven engine
+	 * (see {@link LogicalProcess#rankFirings(LogicalProcess[], long)}). */
+	private long nextRank = 1;
+
+	/** The number of iterations between two checkpoints,
+	 * or zero if no checkpoints are written (see {@link #setCheckpoints(int, File)}). */
+	private int checkpointInterval = 0;
+
+	/** The file to which the checkpoints are written. */
+	private File checkpointFile = null;
+
+	/** The journal of the simulation events, if one is kept
+	 * (see {@link #setJournal(EventJournal)}); otherwise <code>null</code>. */
+	private EventJournal journal = null;
+
+	/** The tracer to which the senders, links and routers report their events
+	 * (see {@link #setTracer(Tracer)}). */
+	private transient Tracer tracer = Tracer.NONE;
+
+	/** The number of senders that have completed their transfers so far
+	 * (see {@link #senderCompleted()}); the senders of the partitioned
+	 * engine may complete on several threads at once. */
+	private final AtomicInteger completedSenders = new AtomicInteger();
+
+	/** The number of network elements created in this simulator so far,
+	 * which is also the identifier of the next one (see {@link #newNetworkElementId()}). */
+	private int networkElementCount = 0;
 
 	/**
 	 * Constructor of  the simple TCP congestion control simulator.
@@ -144,12 +298,69 @@ public class Simulator {
      * @param numRouters The number of intermediate router nodes between the senders and the receivers
 	 */
 	public Simulator(String tcpVersion_, int bufferSize_, int rcvWindow_, String topology, int numClients, int numRouters) {
-		String tcpReceiverVersion_ = "Tahoe";	// irrelevant, since our receiver endpoint sends only ACKs, not data
-		System.out.println(
-			"================================================================\n" +
-			"          Running TCP " + tcpVersion_ + " sender  (and " +
-			tcpReceiverVersion_ + " receiver).\n"
+		this(tcpVersion_, bufferSize_, rcvWindow_, topology, numClients, numRouters, DEFAULT_TIME_UNITS_PER_TICK);
+	}
+
+	/**
+	 * Constructor of  the simple TCP congestion control simulator
+	 * with the given resolution of the simulation clock.
+	 * 
+	 * @param tcpVersion_ the TCP version of the sending endpoint&mdash;one of: "Tahoe", "Reno", or "NewReno")
+	 * @param bufferSize_ the memory size for the {@link Router} to queue incoming packets
+	 * @param rcvWindow_ the size of the receive buffer for the {@link simulation.tcp.Receiver}
+     * @param topology The topology to use in this simulator
+     * @param numClients The number of clients to use in the topology, if applicable
+     * @param numRouters The number of intermediate router nodes between the senders and the receivers
+	 * @param timeUnitsPerTick_ the number of simulator time units per clock tick
+	 * @throws IllegalArgumentException if the number of time units per tick is not positive
+	 */
+	public Simulator(
+		String tcpVersion_, int bufferSize_, int rcvWindow_, String topology, int numClients, int numRouters,
+		long timeUnitsPerTick_
+	) throws IllegalArgumentException {
+		this(
+			tcpVersion_, bufferSize_, rcvWindow_, topology, numClients, numRouters,
+			timeUnitsPerTick_, new SimulationConfig()
 		);
+	}
+
+	/**
+	 * Constructor of  the simple TCP congestion control simulator
+	 * with the given resolution of the simulation clock and configuration.
+	 * 
+	 * @param tcpVersion_ the TCP version of the sending endpoint&mdash;one of: "Tahoe", "Reno", or "NewReno")
+	 * @param bufferSize_ the memory size for the {@link Router} to queue incoming packets
+	 * @param rcvWindow_ the size of the receive buffer for the {@link simulation.tcp.Receiver}
+     * @param topology The topology to use in this simulator
+     * @param numClients The number of clients to use in the topology, if applicable
+     * @param numRouters The number of intermediate router nodes between the senders and the receivers
+	 * @param timeUnitsPerTick_ the number of simulator time units per clock tick
+	 * @param config_ the configuration of this simulator; it is not copied
+	 * @throws IllegalArgumentException if the number of time units per tick is not positive
+	 */
+	public Simulator(
+		String tcpVersion_, int bufferSize_, int rcvWindow_, String topology, int numClients, int numRouters,
+		long timeUnitsPerTick_, SimulationConfig config_
+	) throws IllegalArgumentException {
+		if (timeUnitsPerTick_ <= 0) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  The number of time units per tick must be positive."
+			);
+		}
+		this.config = config_;
+		this.random = new Random(config_.getSeed());
+		this.timeUnitsPerTick = timeUnitsPerTick_;
+		this.currentTime = timeUnitsPerTick_;
+		this.timers = new TimingWheel(timeUnitsPerTick_);
+
+		String tcpReceiverVersion_ = "Tahoe";	// irrelevant, since our receiver endpoint sends only ACKs, not data
+		if (config.isReporting(REPORTING_SIMULATOR)) {
+			System.out.println(
+				"================================================================\n" +
+				"          Running TCP " + tcpVersion_ + " sender  (and " +
+				tcpReceiverVersion_ + " receiver).\n"
+			);
+		}
 
         // Keep track of the congestion avoidance algorithm
         this.congestionAvoidanceAlgorithm = tcpVersion_;
@@ -170,412 +381,837 @@ public class Simulator {
 	 * Reports the outcomes of the individual transmissions.
 	 * At the end, reports the overall sender utilization.</p>
 	 * 
-	 * <p><b>Note:</b> The router is invoked to relay only the packets
-	 * (and it may drop some of them).  For the sake
-	 * of simplicity, the acknowledgment segments simply
-	 * bypass the router, so they are never dropped.
+	 * <p>The order in which the network elements are processed within
+	 * a round does not depend on the kind of topology; it is compiled
+	 * once from the topology (see {@link Topology#compileSchedule()})
+	 * and then replayed in every round. If the parallelism is greater than one,
+	 * the independent per-flow phases of each round run on a pool of threads,
+	 * while the routers shared by the flows are processed sequentially.
+	 * The outcome is the same as with a single thread; only the order of
+	 * the reports printed by different flows within a phase may differ.</p>
+	 * 
+	 * <p>This method is a shortcut for {@link #startSimulation(int)}
+	 * followed by {@link #completeSimulation()}.</p>
 	 * 
-	 * @param inputBuffer_ the input bytestream to be transported to the receiving endpoint
 	 * @param num_iter_ the number of iterations (transmission rounds) to run the simulator
 	 */
-	public void runDirectTopologySimulation(java.nio.ByteBuffer inputBuffer_, int num_iter_) {
+	public void runSimulation(int num_iter_) {
+		if (eventDriven) {
+			throw new IllegalStateException("The simulator is in the event-driven mode.");
+		}
+		startSimulation(num_iter_);
+		completeSimulation();
+	} //end the function runSimulation()
+
+	/**
+	 * Starts a simulation session of the given number of iterations
+	 * (transmission rounds, or clock ticks in the event-driven mode):
+	 * prints the headline and hands over the input data to the senders
+	 * (see {@link SimulationConfig#getTotalDataLength()}).
+	 * The session then proceeds in steps of {@link #advanceSimulation(int)},
+	 * between which the simulator can be saved or copied (see {@link Snapshot}),
+	 * and ends with {@link #endSimulation()}.
+	 * 
+	 * @param num_iter_ the number of iterations to run the simulator
+	 * @throws IllegalStateException if a session is already in progress
+	 */
+	public void startSimulation(int num_iter_)
+	throws IllegalStateException {
+		if (sessionIterations >= 0) {
+			throw new IllegalStateException("A simulation session is already in progress.");
+		}
+		if (journal != null && parallelism > 1) {
+			throw new IllegalStateException("The event journal can be kept only by a single thread.");
+		}
+		if (backgroundFlows > 0 && (!eventDriven || parallelism > 1)) {
+			throw new IllegalStateException(
+				"Background flows can be simulated only by the single-threaded event-driven engine."
+			);
+		}
+		if (!eventDriven) {
+			schedule = topology.compileSchedule();
+		} else if (parallelism > 1) {
+			partitionTopology();
+		}
 
 		// Print the headline for the output columns.
 		// Note that the "time" is given as the integer number of RTTs
 		// and represents the current iteration through the main loop.
-		System.out.println(
-			"Time\tCongWindow\tEffctWindow\tFlightSize\tSSThresh"
-		);
-		System.out.println(
-			"================================================================"
-		);
-
-        // The Simulator also plays the role of an Application
-        // that is using services of the TCP protocol.
-        // Here we provide the input data stream only in the first iteration
-        // and in the remaining iterations the system clocks itself
-        // -- based on the received ACKs, the sender will keep
-        // sending any remaining data.
-        //
-        // The sender will not transmit the entire input stream at once.
-        // Rather, it sends burst-by-burst of segments, as allowed by
-        // its congestion window and other parameters,
-        // which are set based on the received ACKs.
-        Iterator<Router> routerIterator;
-        Packet tmpPkt_ = new Packet(((DirectTopology) topology).getReceiverEndpoint(), inputBuffer_.array());
-        ((DirectTopology) topology).getSenderEndpoint().send(null, tmpPkt_);
-
-        // Iterate for the given number of transmission rounds.
-        // Note that an iteration represents a clock tick for the simulation.
-        // Each iteration is a transmission round, which is one RTT cycle long.
-        for (int iter_ = 0; iter_ <= num_iter_; iter_++) {
-            if (
-                (Simulator.currentReportingLevel  & Simulator.REPORTING_SIMULATOR) != 0
-            ) {
-                System.out.println(	//TODO prints incorrectly for the first iteration!
-                    "Start of RTT #" + (int)currentTime +
-                    " ................................................"
-                );
-            } else {
-                System.out.print(currentTime + "\t");
-            }
-
-            // Let the first link move any packets:
-            ((DirectTopology) topology).getLinkWithName("link0").process(2);
-            // Our main goal is that the sending endpoint handles acknowledgments
-            // received via the router in the previous transmission round, if any.
-
-            ((DirectTopology) topology).getSenderEndpoint().process(1);
+		printHeadline();
+
+		// The Simulator also plays the role of an Application
+		// that is using services of the TCP protocol.
+		// Here we provide the input data stream only in the first iteration
+		// and in the remaining iterations the system clocks itself
+		// -- based on the received ACKs, the sender will keep
+		// sending any remaining data.
+		//
+		// The sender will not transmit the entire input stream at once.
+		// Rather, it sends burst-by-burst of segments, as allowed by
+		// its congestion window and other parameters,
+		// which are set based on the received ACKs.
+		sessionStartTime = currentTime;
+		sessionIterations = num_iter_;
+		sessionIteration = 0;
+		sessionEndTime = currentTime + (num_iter_ + 1) * timeUnitsPerTick;
+		reportedTick = currentTime / timeUnitsPerTick - 1;
+		nextRank = 1;
+		startSenders(config.getTotalDataLength());
+		if (backgroundFlows > 0) {
+			List<Endpoint> senders_ = topology.getSenderEndpoints();
+			background = new FluidModel(this, senders_.subList(senders_.size() - backgroundFlows, senders_.size()));
+			background.start();
+		}
+		if (processes != null) {
+			for (LogicalProcess process_ : processes) {
+				process_.deliverOutbox();
+			}
+		}
+		threadPool();
+	}
 
-            // Let the first link again move any packets:
-            ((DirectTopology) topology).getLinkWithName("link0").process(1);
-            // This time our main goal is that link transports any new
-            // data packets from sender to the router.
+	/**
+	 * Runs the rest of the current simulation session, and reports its outcome.
+	 * If checkpoints are requested ({@link #setCheckpoints(int, File)}), the
+	 * simulator is saved after every given number of iterations, so that a long run
+	 * can be resumed by calling this method on the restored simulator.
+	 */
+	public void completeSimulation() {
+		int step_ = (checkpointInterval > 0) ? checkpointInterval : Integer.MAX_VALUE;
+		while (advanceSimulation(step_)) {
+			if (checkpointInterval > 0) {
+				Snapshot.writeCheckpoint(this, checkpointFile);
+			}
+		}
+		endSimulation();
+	}
 
-            // Let the router relay any packets:
-            for (int i = 0; i < topology.getRouters().size(); i++) {
-                if (i > 0) {
-                    ((DirectTopology) topology).getLinkWithName("link" + i).process(2);
-                }
+	/**
+	 * Continues the current simulation session for up to the given number of iterations.
+	 * 
+	 * @param ticks_ the number of iterations (transmission rounds,
+	 * or clock ticks in the event-driven mode) to run
+	 * @return <code>true</code> if the session is not over yet
+	 * @throws IllegalStateException if no session is in progress
+	 */
+	public boolean advanceSimulation(int ticks_) throws IllegalStateException {
+		if (sessionIterations < 0) {
+			throw new IllegalStateException("No simulation session is in progress.");
+		}
+		if (eventDriven) {
+			return advanceEvents(ticks_);
+		}
 
-                topology.getRouters().get(i).process(0);
+		ForkJoinPool pool_ = threadPool();
+		long lastIteration_ = Math.min((long) sessionIterations, (long) sessionIteration + ticks_ - 1);
+		// Iterate for the given number of transmission rounds.
+		// Note that an iteration represents a clock tick for the simulation.
+		// Each iteration is a transmission round, which is one RTT cycle long.
+		while (sessionIteration <= lastIteration_) {
+			if (journal != null) {
+				journal.startTick(currentTime / timeUnitsPerTick);
+			}
 
-                if (i > 0 && i < topology.getRouters().size() - 1) {
-                    ((DirectTopology) topology).getLinkWithName("link" + i).process(1);
-                }
-            }
-            // As a result, the router may have transmitted some packets
-            // to its adjoining links.
+			if (
+				config.isReporting(REPORTING_SIMULATOR)
+			) {
+				System.out.println(	//TODO prints incorrectly for the first iteration!
+					"Start of RTT #" + (currentTime / timeUnitsPerTick) +
+					" ................................................"
+				);
+			}
+			tracer.tickStarted(currentTime / timeUnitsPerTick);
+
+			// Let the senders handle the ACKs from the previous round and send
+			// more data, the routers relay the data to the receivers, the receivers
+			// reply with ACKs, and the routers relay the ACKs back to the senders:
+			if (pool_ == null) {
+				schedule.replay();
+			} else {
+				schedule.replay(pool_);
+			}
 
-            // Let the second link move any packets:
-            ((DirectTopology) topology).getLinkWithName("link" + topology.getRouters().size()).process(2);
-            // Our main goal is that the receiver processes the received
-            // data segments and generates ACKs. The ACKs will be ready
-            // for the trip back to the sending endpoint.
+			if (
+				config.isReporting(REPORTING_SIMULATOR)
+			) {
+				System.out.println(
+					"End of RTT #" + (currentTime / timeUnitsPerTick) +
+					"   ------------------------------------------------\n"
+				);
+			}
 
-            ((DirectTopology) topology).getReceiverEndpoint().process(2);
+			// At the end of an iteration, increment the simulation clock by one tick:
+			currentTime += timeUnitsPerTick;
 
-            // Let the second link move any packets:
-            ((DirectTopology) topology).getLinkWithName("link" + topology.getRouters().size()).process(1);
-            // Our main goal is to deliver the ACKs from the receiver to the router.
+			// Stop early if all transfers are done, as requested:
+			if (runToCompletion && allSendersComplete()) {
+				sessionIteration = sessionIterations + 1;
+				break;
+			}
 
-            // Let the router relay any packets:
-            for (int i = topology.getRouters().size() - 1; i >= 0; i--) {
-                topology.getRouters().get(i).process(0);
+			// If the network went quiet, skip the rounds in which nothing can happen:
+			sessionIteration += 1 + fastForwardIdleTicks((int) (lastIteration_ - sessionIteration));
+		} //end while() loop
+		return sessionIteration <= sessionIterations;
+	}
 
-                ((DirectTopology) topology).getLinkWithName("link" + i).process(1);
-            }
-            // As a result, the router may have transmitted some packets
-            // to its adjoining links.
+	/**
+	 * Ends the current simulation session and reports its outcome,
+	 * even if the session did not run for all of its iterations.
+	 * @throws IllegalStateException if no session is in progress
+	 */
+	public void endSimulation() throws IllegalStateException {
+		if (sessionIterations < 0) {
+			throw new IllegalStateException("No simulation session is in progress.");
+		}
+		processes = null;
+		processOf = null;
+		schedule = null;
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		if (journal != null) {
+			journal.flush();
+		}
+		finishSimulation(sessionIterations, sessionStartTime);
+		if (background != null) {
+			background.reportBackground();
+			background = null;
+		}
+		sessionIterations = -1;
+	}
 
-            if (
-                (Simulator.currentReportingLevel  & Simulator.REPORTING_SIMULATOR) != 0
-            ) {
-                System.out.println(
-                    "End of RTT #" + (int)currentTime +
-                    "   ------------------------------------------------\n"
-                );
-            }
+	/**
+	 * Helper method to fast-forward the simulation clock over the idle
+	 * clock ticks. If the topology is quiescent (see {@link Topology#isQuiescent()}),
+	 * nothing can happen until the next running timer expires, so the clock
+	 * jumps straight to the first tick at or after that timer's expiration
+	 * (or to the end of the simulation, if no timer is running).
+	 * 
+	 * @param ticksLeft_ the number of clock ticks remaining in the simulation
+	 * @return the number of clock ticks skipped
+	 */
+	private int fastForwardIdleTicks(int ticksLeft_) {
+		if (ticksLeft_ <= 0 || !topology.isQuiescent()) {
+			return 0;
+		}
 
-            // At the end of an iteration, increment the simulation clock by one tick:
-            currentTime += 1.0;
-        } //end for() loop
+		int skipped_ = ticksLeft_;
+		long nextTimer_ = timers.nextExpiry();
+		if (flowTimers != null) {
+			for (TimingWheel wheel_ : flowWheels) {
+				nextTimer_ = Math.min(nextTimer_, wheel_.nextExpiry());
+			}
+		}
+		if (nextTimer_ != Long.MAX_VALUE) {
+			long wait_ = nextTimer_ - currentTime;
+			if (wait_ <= 0) {
+				return 0;
+			}
+			// Round up to the tick at or after the timer expiration:
+			skipped_ = (int) Math.min(
+				ticksLeft_, (wait_ + timeUnitsPerTick - 1) / timeUnitsPerTick
+			);
+		}
 
-        System.out.println(
-            "     ====================  E N D   O F   S E S S I O N  ===================="
-        );
-        // How many bytes were transmitted:
-        int actualTotalTransmitted_ = ((DirectTopology) topology).getSenderEndpoint().getSender().getTotalBytesTransmitted();
-        int actualTotalRetransmitted_ = ((DirectTopology) topology).getSenderEndpoint().getSender().getTotalBytesRetransmitted();
-        int numTimeouts = ((DirectTopology) topology).getSenderEndpoint().getSender().getTimeoutCounter();
+		long from_ = currentTime;
+		currentTime += skipped_ * timeUnitsPerTick;
+		topology.skipIdleTime(currentTime - timeUnitsPerTick);
 
-        // Process the statistics
-        processStatistics(actualTotalTransmitted_, actualTotalRetransmitted_, num_iter_, numTimeouts);
-	} //end the function runDirectTopologySimulation()
+		if (
+			config.isReporting(REPORTING_SIMULATOR)
+		) {
+			System.out.println(
+				"Network idle -- skipping from RTT #" + (from_ / timeUnitsPerTick) +
+				" to RTT #" + (currentTime / timeUnitsPerTick)
+			);
+		}
+		return skipped_;
+	}
 
     /**
-     * Runs the simulator for the given number of transmission rounds
-     * (iterations), starting with the current iteration stored in
-     * the parameter {@link #currentTime}.<BR>
-     * Reports the outcomes of the individual transmissions.
-     * At the end, reports the overall sender utilization.</p>
+     * Runs the simulator as a discrete-event engine for the given number of
+     * clock ticks, starting with the current time stored in
+     * the parameter {@link #currentTime}.</p>
+     *
+     * <p>Unlike {@link #runSimulation(int)}, this method does not
+     * poll the network elements in rounds. Instead, a {@link simulation.network.Link} schedules
+     * the delivery of every packet at its actual arrival time,
+     * a {@link Router} schedules the end of each packet's transmission
+     * on its outgoing links, and the timers fire as ordinary events.
+     * The main loop simply fires the next pending event, so idle elements
+     * cost nothing and the fractional link delays are honored exactly.</p>
      *
-     * <p><b>Note:</b> The router is invoked to relay only the packets
-     * (and it may drop some of them).  For the sake
-     * of simplicity, the acknowledgment segments simply
-     * bypass the router, so they are never dropped.
+     * <p>If the parallelism is greater than one (see {@link #setParallelism(int)}),
+     * the topology is partitioned into as many logical processes, which fire their
+     * events on separate threads and synchronize conservatively, using the link delays
+     * as the lookahead (see {@link LogicalProcess}). The outcome is the same
+     * as that of the sequential engine, except that the reports of different processes
+     * are interleaved and, in the run-to-completion mode, the processes may still
+     * fire events up to the end of the window in which the last transfer completed.</p>
      *
-     * @param inputBuffer_ the input bytestream to be transported to the receiving endpoint
-     * @param num_iter_ the number of iterations (transmission rounds) to run the simulator
+     * <p>The simulator must be switched to the event-driven mode
+     * ({@link #setEventDriven(boolean)}) before this method is called.</p>
+     *
+     * @param num_iter_ the number of clock ticks (RTTs) to run the simulator
      */
-    public void runCloudTopologySimulation(java.nio.ByteBuffer inputBuffer_, int num_iter_) {
+    public void runEventDrivenSimulation(int num_iter_) {
+        if (!eventDriven) {
+            throw new IllegalStateException("The simulator is not in the event-driven mode.");
+        }
 
-        // Print the headline for the output columns.
-        // Note that the "time" is given as the integer number of RTTs
-        // and represents the current iteration through the main loop.
-        System.out.println(
-                "Time\tCongWindow\tEffctWindow\tFlightSize\tSSThresh"
-        );
-        System.out.println(
-                "================================================================"
-        );
+        // The Simulator plays the role of the Application,
+        // which provides the input data stream at the start.
+        // From then on, the senders are clocked by the arriving ACKs.
+        startSimulation(num_iter_);
+        completeSimulation();
+    } //end the function runEventDrivenSimulation()
 
-        // The Simulator also plays the role of an Application
-        // that is using services of the TCP protocol.
-        // Here we provide the input data stream only in the first iteration
-        // and in the remaining iterations the system clocks itself
-        // -- based on the received ACKs, the sender will keep
-        // sending any remaining data.
-        //
-        // The sender will not transmit the entire input stream at once.
-        // Rather, it sends burst-by-burst of segments, as allowed by
-        // its congestion window and other parameters,
-        // which are set based on the received ACKs.
-
-        Endpoint client, server;
-        Packet tmpPkt_;
-        Iterator<Endpoint> clientIterator = ((CloudTopology) topology).getClientEndpoints().iterator();
-        Iterator<Endpoint> serverIterator;
-        while (clientIterator.hasNext()) {
-            client = clientIterator.next();
-            tmpPkt_ = new Packet(topology.getEndpointWithName(topology.getEndpointNameMappings().get(client.getName())), inputBuffer_.array());
-            client.send(null, tmpPkt_);
-        }
-
-        // Iterate for the given number of transmission rounds.
-        // Note that an iteration represents a clock tick for the simulation.
-        // Each iteration is a transmission round, which is one RTT cycle long.
-        for (int iter_ = 0; iter_ <= num_iter_; iter_++) {
-            if (
-                    (Simulator.currentReportingLevel  & Simulator.REPORTING_SIMULATOR) != 0
-                    ) {
-                System.out.println(	//TODO prints incorrectly for the first iteration!
-                        "Start of RTT #" + (int)currentTime +
-                                " ................................................"
-                );
-            } else {
-                System.out.print(currentTime + "\t");
+    /**
+     * Helper method to continue the event-driven session for up to the given number
+     * of clock ticks, but not beyond the end of the session, which spans the
+     * same simulated time as the round-based loop covers.
+     * @param ticks_ the number of clock ticks to run
+     * @return <code>true</code> if the session is not over yet
+     */
+    private boolean advanceEvents(int ticks_) {
+        long stopTime_ = Math.min(sessionEndTime, currentTime + ticks_ * timeUnitsPerTick);
+        boolean completed_ = (processes == null) ? fireEvents(stopTime_) : runPartitions(stopTime_);
+        if (completed_) {
+            // The clock stops at the last ACK:
+            currentTime = Long.MIN_VALUE;
+            List<Endpoint> senders_ = getForegroundSenders();
+            for (int i = 0; i < senders_.size(); i++) {
+                currentTime = Math.max(currentTime, senders_.get(i).getSender().getCompletionTime());
             }
+            sessionEndTime = currentTime;
+        } else {
+            currentTime = stopTime_;
+        }
+        return currentTime < sessionEndTime;
+    }
 
-            // Let the first link move any packets:
-            Link clientLink;
-            Iterator<Link> clientLinkIterator = ((CloudTopology) topology).getLinksContainingName("client").iterator();
-            while (clientLinkIterator.hasNext()) {
-                clientLink = clientLinkIterator.next();
-                clientLink.process(2);
+    /**
+     * Helper method to fire the events in the order of their time, up to the given time.
+     * @param stopTime_ the time before which the events are fired
+     * @return <code>true</code> if the simulation stopped because all transfers completed
+     */
+    private boolean fireEvents(long stopTime_) {
+        while (events.peekTime() < stopTime_) {
+            // Stop right after the last ACK, if so requested:
+            if (runToCompletion && allSendersComplete()) {
+                return true;
             }
 
-            clientIterator = ((CloudTopology) topology).getClientEndpoints().iterator();
-            while (clientIterator.hasNext()) {
-                client = clientIterator.next();
-                client.process(1);
+            if (journal != null) {
+                // A new clock tick starts with the next event; nothing happens
+                // between the previous event and the start of the tick:
+                long tick_ = events.peekTime() / timeUnitsPerTick;
+                if (tick_ > journal.getLastTick()) {
+                    currentTime = tick_ * timeUnitsPerTick;
+                    journal.startTick(tick_);
+                }
             }
 
-            // Let the first links again move any packets:
-            // Let the first links move any packets:
-            clientLinkIterator = ((CloudTopology) topology).getLinksContainingName("client").iterator();
-            while (clientLinkIterator.hasNext()) {
-                clientLink = clientLinkIterator.next();
-                clientLink.process(1);
-            }
+            SimulationEvent event_ = events.pollNext();
+            currentTime = event_.getTime();
 
-            // This time our main goal is that link transports any new
-            // data packets from sender to the router.
+            if (
+                config.isReporting(REPORTING_SIMULATOR) &&
+                currentTime / timeUnitsPerTick > reportedTick
+            ) {
+                reportedTick = currentTime / timeUnitsPerTick;
+                System.out.println(
+                    "Time " + reportedTick +
+                    " ................................................"
+                );
+            }
 
-            // Let the routers relay any packets:
-            for (int i = 0; i < topology.getRouters().size(); i++) {
-                if (i > 0) {
-                    ((CloudTopology) topology).getLinkWithName("link" + i).process(2);
-                }
+            if (journal != null && event_ instanceof TimerSimulated) {
+                journal.timerFired((TimerSimulated) event_);
+            }
+            event_.fire();
+        }
+        return runToCompletion && allSendersComplete();
+    }
 
-                topology.getRouters().get(i).process(0);
+    /**
+     * Helper method to partition the topology into logical processes
+     * for the partitioned event-driven engine, and to determine the lookahead.
+     * @return <code>false</code> if the topology cannot be partitioned, so the
+     * sequential engine must be used
+     */
+    private boolean partitionTopology() {
+        List<List<NetworkElement>> parts_ = topology.partition(parallelism);
+        if (parts_.size() < 2) {
+            return false;
+        }
 
-                if (i > 0 && i < topology.getRouters().size() - 1) {
-                    ((CloudTopology) topology).getLinkWithName("link" + i).process(1);
-                }
+        LogicalProcess.Origin root_ = new LogicalProcess.Origin(Long.MIN_VALUE, null, 0, 0);
+        LogicalProcess[] processes_ = new LogicalProcess[parts_.size()];
+        IdentityHashMap<NetworkElement, LogicalProcess> processOf_ =
+            new IdentityHashMap<NetworkElement, LogicalProcess>();
+        for (int i = 0; i < parts_.size(); i++) {
+            processes_[i] = new LogicalProcess(root_, currentTime);
+            for (NetworkElement element_ : parts_.get(i)) {
+                processOf_.put(element_, processes_[i]);
             }
-            // As a result, the router may have transmitted some packets
-            // to its adjoining links.
+        }
 
-            // Let the second link move any packets:
-            Link serverLink;
-            Iterator<Link> serverLinkIterator = ((CloudTopology) topology).getLinksContainingName("server").iterator();
-            while (serverLinkIterator.hasNext()) {
-                serverLink = serverLinkIterator.next();
-                serverLink.process(2);
+        // A packet sent on a link between two processes arrives at least
+        // the link's transmission plus propagation time later:
+        long lookahead_ = Long.MAX_VALUE;
+        Iterator<Link> links_ = topology.getLinks().iterator();
+        while (links_.hasNext()) {
+            Link link_ = links_.next();
+            LogicalProcess process1_ = processOf_.get(link_.getNode1());
+            LogicalProcess process2_ = processOf_.get(link_.getNode2());
+            if (process1_ == null || process2_ == null) {
+                return false;	// a part of the topology that the partition does not cover
             }
-            // Our main goal is that the receiver processes the received
-            // data segments and generates ACKs. The ACKs will be ready
-            // for the trip back to the sending endpoint.
-            serverIterator = ((CloudTopology) topology).getServerEndpoints().iterator();
-            while (serverIterator.hasNext()) {
-                server = serverIterator.next();
-                server.process(2);
+            if (process1_ != process2_) {
+                lookahead_ = Math.min(lookahead_, link_.getTransmissionTime() + link_.getPropagationTime());
             }
+        }
+        if (lookahead_ <= 0) {
+            return false;
+        }
 
-            // Let the second link move any packets:
-            serverLinkIterator = ((CloudTopology) topology).getLinksContainingName("server").iterator();
-            while (serverLinkIterator.hasNext()) {
-                serverLink = serverLinkIterator.next();
-                serverLink.process(1);
-            }
-            // Our main goal is to deliver the ACKs from the receiver to the router.
-
-            // Let the router relay any packets:
-            for (int i = topology.getRouters().size() - 1; i >= 1; i--) {
-                topology.getRouters().get(i).process(0);
+        this.processes = processes_;
+        this.processOf = processOf_;
+        this.lookahead = lookahead_;
+        return true;
+    }
 
-                ((CloudTopology) topology).getLinkWithName("link" + i).process(1);
+    /**
+     * Helper method to run the partitioned event-driven engine up to the given time.
+     * In every window, all logical processes fire their events in parallel;
+     * at the barrier after the window, the events that they scheduled for each other
+     * are exchanged. A window starts at the earliest pending event and is
+     * as long as the lookahead, so no event can arrive from another
+     * process for a time within the window.
+     * 
+     * @param stopTime_ the time before which the events are fired
+     * @return <code>true</code> if the simulation stopped because all transfers completed
+     */
+    private boolean runPartitions(long stopTime_) {
+        ForkJoinPool pool_ = threadPool();
+        while (true) {
+            long windowStart_ = Long.MAX_VALUE;
+            for (LogicalProcess process_ : processes) {
+                windowStart_ = Math.min(windowStart_, process_.events.peekTime());
+            }
+            // Stop after the last ACK, if so requested:
+            if (runToCompletion && allSendersComplete()) {
+                return true;
+            }
+            if (windowStart_ >= stopTime_) {
+                return false;
             }
-
-            ((CloudTopology) topology).getLinkWithName("clientLink0").process(1);
-            // As a result, the router may have transmitted some packets
-            // to its adjoining links.
 
             if (
-                    (Simulator.currentReportingLevel  & Simulator.REPORTING_SIMULATOR) != 0
-                    ) {
+                config.isReporting(REPORTING_SIMULATOR) &&
+                windowStart_ / timeUnitsPerTick > reportedTick
+            ) {
+                reportedTick = windowStart_ / timeUnitsPerTick;
                 System.out.println(
-                        "End of RTT #" + (int)currentTime +
-                                "   ------------------------------------------------\n"
+                    "Time " + reportedTick +
+                    " ................................................"
                 );
             }
 
-            // At the end of an iteration, increment the simulation clock by one tick:
-            currentTime += 1.0;
-        } //end for() loop
+            pool_.invoke(new Window(Math.min(stopTime_, windowStart_ + lookahead)));
 
+            nextRank = LogicalProcess.rankFirings(processes, nextRank);
+            for (LogicalProcess process_ : processes) {
+                process_.deliverOutbox();
+            }
+        }
+    }
+
+    /**
+     * Helper method to get the threads of the current session, which are started
+     * with the session, or on its first step after the simulator was restored
+     * or its parallelism changed. Before the flows of the rounds are first
+     * replayed by several threads, their timers are partitioned by flows.
+     * 
+     * @return the pool of threads, or <code>null</code> if the session runs on a single thread
+     */
+    private ForkJoinPool threadPool() {
+        if (pool == null && parallelism > 1) {
+            if (!eventDriven) {
+                if (flowTimers == null) {
+                    partitionTimers();
+                }
+                pool = new ForkJoinPool(parallelism);
+            } else if (processes != null) {
+                pool = new ForkJoinPool(Math.min(parallelism, processes.length));
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Helper method to print the headline for the output columns.
+     */
+    private void printHeadline() {
+        if (!config.isReporting(REPORTING_SIMULATOR)) {
+            return;
+        }
         System.out.println(
-                "     ====================  E N D   O F   S E S S I O N  ===================="
+            "Time\tCongWindow\tEffctWindow\tFlightSize\tSSThresh"
+        );
+        System.out.println(
+            "================================================================"
         );
+    }
+
+    /**
+     * Helper method to provide the input data stream to every sending endpoint
+     * of the topology, addressed to its remote endpoint. The data are virtual,
+     * so only their length is handed over.
+     * @param dataLength_ the length of the input bytestream to be transported to each receiving endpoint
+     */
+    private void startSenders(int dataLength_) {
+        List<Endpoint> senders_ = getForegroundSenders();
+        for (int i = 0; i < senders_.size(); i++) {
+            Endpoint sender_ = senders_.get(i);
+            if (processes != null) {
+                // The sender's first segments and timers belong to its logical process:
+                currentProcess.set(processOf.get(sender_));
+            }
+            sender_.send(null, new Packet(sender_.getRemoteTCPendpoint().getId(), dataLength_));
+        }
+        currentProcess.remove();
+    }
+
+    /**
+     * Helper method to list the sending endpoints simulated packet by packet,
+     * i.e., all but the background flows of a hybrid simulation.
+     * @return the foreground senders, in the order of the topology
+     */
+    private List<Endpoint> getForegroundSenders() {
+        List<Endpoint> senders_ = topology.getSenderEndpoints();
+        return senders_.subList(0, senders_.size() - backgroundFlows);
+    }
+
+    /**
+     * Helper method to check whether every sending endpoint has completed its transfer.
+     * @return <code>true</code> if all senders are done
+     * @see Sender#isComplete()
+     */
+    private boolean allSendersComplete() {
+        // Only the foreground senders ever receive ACKs, so only they complete:
+        return completedSenders.get() >= topology.getSenderEndpoints().size() - backgroundFlows;
+    }
+
+    /**
+     * Called by a sender once, when all of its data have been acknowledged,
+     * so that the simulator need not poll every sender to find out
+     * whether the simulation is complete.
+     * @see Sender#getCompletionTime()
+     */
+    public void senderCompleted() {
+        completedSenders.incrementAndGet();
+    }
+
+    /**
+     * Helper method to end the simulation session by summing up
+     * the statistics of all sending endpoints and processing them.
+     * @param num_iter_ the number of iterations the simulator was asked to run for
+     * @param startTime_ the simulation time when the senders were started
+     */
+    private void finishSimulation(int num_iter_, long startTime_) {
+        if (config.isReporting(REPORTING_SIMULATOR)) {
+            System.out.println(
+                "     ====================  E N D   O F   S E S S I O N  ===================="
+            );
+        }
         // How many bytes were transmitted:
-        int actualTotalTransmitted_ = 0;
-        int actualTotalRetransmitted_ = 0;
+        long actualTotalTransmitted_ = 0;
+        long actualTotalRetransmitted_ = 0;
         int numTimeouts = 0;
-        clientIterator = ((CloudTopology) topology).getClientEndpoints().iterator();
-        while (clientIterator.hasNext()) {
-            client = clientIterator.next();
-            actualTotalTransmitted_ += client.getSender().getTotalBytesTransmitted();
-            actualTotalRetransmitted_ += client.getSender().getTotalBytesRetransmitted();
-            numTimeouts += client.getSender().getTimeoutCounter();
+        List<Endpoint> senders_ = getForegroundSenders();
+        double[] completionTimes_ = new double[senders_.size()];
+        for (int i = 0; i < senders_.size(); i++) {
+            Sender sender_ = senders_.get(i).getSender();
+            actualTotalTransmitted_ += sender_.getTotalBytesTransmitted();
+            actualTotalRetransmitted_ += sender_.getTotalBytesRetransmitted();
+            numTimeouts += sender_.getTimeoutCounter();
+
+            // How long each flow took, if it completed. In the round-based mode,
+            // an ACK handled in the round at time "t" arrived by the end of that round.
+            completionTimes_[i] = -1.0;
+            if (sender_.getCompletionTime() >= 0) {
+                long completionTime_ = sender_.getCompletionTime() - startTime_;
+                if (!eventDriven) {
+                    completionTime_ += timeUnitsPerTick;
+                }
+                completionTimes_[i] = toTicks(completionTime_);
+            }
+            if (
+                config.isReporting(REPORTING_SIMULATOR)
+            ) {
+                System.out.println(
+                    "Flow " + senders_.get(i).getName() +
+                    (completionTimes_[i] < 0.0 ?
+                        " did not complete" :
+                        " completed in " + completionTimes_[i] + " RTTs")
+                );
+            }
         }
 
         // Process the statistics
-        processStatistics(actualTotalTransmitted_, actualTotalRetransmitted_, num_iter_, numTimeouts);
-    } //end the function runCloudTopologySimulation()
+        processStatistics(
+            actualTotalTransmitted_, actualTotalRetransmitted_, num_iter_,
+            toTicks(currentTime - startTime_), numTimeouts, completionTimes_
+        );
+    }
 
     /**
-     * Processes the statistics for the simulation by printing them to the console
-     * and saving them to a CSV file named statistics.csv. If the CSV file does not exist
-     * one will be created in the directory where the simulation is running. If the CSV
-     * file does exist then the statistics will be appended to the file.
+     * Processes the statistics for the simulation by keeping them for {@link #getStatistics()},
+     * printing them to the console and saving them to a CSV file named statistics.csv.
+     * If the CSV file does not exist one will be created in the directory where the
+     * simulation is running. If the CSV file does exist then the statistics will be
+     * appended to the file.
      *
      * @param actualTotalTransmitted_ The number of bytes successfully transmitted
      * @param actualTotalRetransmitted_ The number of bytes retransmitted
      * @param num_iter_ The number of iterations for the simulator
+     * @param elapsedTime_ The simulated time actually elapsed, in RTTs
      * @param numTimeouts The number of timeouts encountered in the simulation
+     * @param completionTimes_ The completion time of each flow in RTTs, or a negative value if the flow did not complete
      */
-    private void processStatistics(int actualTotalTransmitted_, int actualTotalRetransmitted_, int num_iter_, int numTimeouts) {
-        // Calculate the statistics
-        String numberOfIterations = String.valueOf(num_iter_);
-        String numberOfSenders = "1";
-        if (this.topology instanceof CloudTopology) {
-            numberOfSenders = String.valueOf(topology.getEndpointNameMappings().keySet().size());
-        }
-        String numberOfRouters = String.valueOf(topology.getRouters().size());
-        String throughput = BigDecimal.valueOf(((double)actualTotalTransmitted_ / 1048576) / (double)num_iter_).toPlainString();
-        String retransmissionRatio = "0";
-        if (actualTotalTransmitted_ != 0) {
-            retransmissionRatio = BigDecimal.valueOf(((double)actualTotalRetransmitted_ / (double)actualTotalTransmitted_) * 100).toPlainString();
-        }
-        String numberOfTimeouts = String.valueOf(numTimeouts);
-
-        // Print them to the console
-        System.out.println(
-                "Number of Iterations: " + numberOfIterations
-        );
-
-        System.out.println(
-                "Number of Senders: " + numberOfSenders
-        );
-
-        System.out.println(
-                "Number of Routers: " + numberOfRouters
-        );
-
-        // Report the throughput:
-        System.out.println(
-                "Throughput (MB/RTTs): " + throughput
+    void processStatistics(
+            long actualTotalTransmitted_, long actualTotalRetransmitted_, int num_iter_,
+            double elapsedTime_, int numTimeouts, double[] completionTimes_
+    ) {
+        processStatistics(
+                actualTotalTransmitted_, actualTotalRetransmitted_, num_iter_,
+                elapsedTime_, numTimeouts, completionTimes_, false
         );
+    }
 
-        // Report the retransmission ratio:
-        System.out.println(
-                "Retransmission Ratio (% per MB): " + retransmissionRatio + "%"
+    /**
+     * Processes the statistics for the simulation as {@link #processStatistics(long, long, int, double, int, double[])}
+     * does, for either the packet-level engines or the fluid model (see {@link FluidModel}).
+     * The fluid model merges identical flows into classes, so its per-flow completion times
+     * are written as "-", and its rows go to a file of their own, whose default name ends with
+     * "Fluid" (e.g. statisticsRenoCloudFluid.csv), so that they are never mixed with those
+     * of the packet-level engines. An explicit statistics file name is used as given.
+     *
+     * @param actualTotalTransmitted_ The number of bytes successfully transmitted
+     * @param actualTotalRetransmitted_ The number of bytes retransmitted
+     * @param num_iter_ The number of iterations for the simulator
+     * @param elapsedTime_ The simulated time actually elapsed, in RTTs
+     * @param numTimeouts The number of timeouts encountered in the simulation
+     * @param completionTimes_ The completion time of each flow in RTTs, or a negative value if the flow did not complete
+     * @param fluid_ Whether the statistics are those of the fluid model
+     */
+    void processStatistics(
+            long actualTotalTransmitted_, long actualTotalRetransmitted_, int num_iter_,
+            double elapsedTime_, int numTimeouts, double[] completionTimes_, boolean fluid_
+    ) {
+        // Calculate the statistics
+        // When running to completion, the throughput is measured over the time actually simulated:
+        double throughputTime_ = runToCompletion ? elapsedTime_ : (double)num_iter_;
+        statistics = new SimulationStatistics(
+                num_iter_, topology.getRouters().size(), congestionAvoidanceAlgorithm,
+                actualTotalTransmitted_, actualTotalRetransmitted_, throughputTime_, numTimeouts, completionTimes_,
+                !fluid_
         );
+        String[] cells = statistics.toRow();
+        String numberOfIterations = cells[0];
+        String numberOfSenders = cells[1];
+        String numberOfRouters = cells[2];
+        String throughput = cells[4];
+        String retransmissionRatio = cells[5];
+        String numberOfTimeouts = cells[6];
+        String completedFlows = cells[7];
+        String flowCompletionTimes = cells[8];
+        String aggregateCompletionTime = cells[9];
 
-        // Report the number of timeouts:
-        System.out.println(
-                "Timeouts: " + numberOfTimeouts
-        );
+        // Print them to the console
+        if (config.isReporting(REPORTING_SIMULATOR)) {
+            System.out.println(
+                    "Number of Iterations: " + numberOfIterations
+            );
+
+            System.out.println(
+                    "Number of Senders: " + numberOfSenders
+            );
+
+            System.out.println(
+                    "Number of Routers: " + numberOfRouters
+            );
+
+            // Report the throughput:
+            System.out.println(
+                    "Throughput (MB/RTTs): " + throughput
+            );
+
+            // Report the retransmission ratio:
+            System.out.println(
+                    "Retransmission Ratio (% per MB): " + retransmissionRatio + "%"
+            );
+
+            // Report the number of timeouts:
+            System.out.println(
+                    "Timeouts: " + numberOfTimeouts
+            );
+
+            // Report the flow completion times:
+            System.out.println(
+                    "Completed Flows: " + completedFlows
+            );
+
+            System.out.println(
+                    "Flow Completion Times (RTTs): " + flowCompletionTimes
+            );
+
+            System.out.println(
+                    "Aggregate Completion Time (RTTs): " + aggregateCompletionTime
+            );
+        }
 
+        // Report how many packets the links delivered at once, in the round-based mode:
+        double averageBatchSize = topology.getAverageBatchSize();
+        if (config.isReporting(REPORTING_LINKS) && averageBatchSize > 0.0) {
+            System.out.println(
+                    "Average Link Batch Size (packets): " + String.format("%.2f", averageBatchSize)
+            );
+        }
 
-        // Write the statistics to a CSV file
-        CSVWriter writer = null;
-        boolean fileExists = true;
+        // Write the statistics to a CSV file, unless they are collected elsewhere
+        if (!config.isStatisticsWritten()) {
+            return;
+        }
         String topologyFilename = "";
         if (topology instanceof CloudTopology) {
             topologyFilename = "Cloud";
         } else if (topology instanceof DirectTopology) {
             topologyFilename = "Direct";
         }
-        String fileName = STATISTICS_FILENAME + congestionAvoidanceAlgorithm + topologyFilename +  STATISTICS_FILE_EXTENSION;
-
-        try {
-            File statisticsFile = new File(fileName);
-            String[] cells =  new String[7];
-            if (!(statisticsFile.exists())){ // Add column headers when the writer is available
-                fileExists = false;
-            }
-
-            writer = new CSVWriter(new FileWriter(statisticsFile, true), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_ESCAPE_CHARACTER);
-
-            if (!fileExists){ // Add column headers if this is a new file
-                cells[0] = "Number of Iterations";
-                cells[1] = "Number of Senders";
-                cells[2] = "Number of Routers";
-                cells[3] = "Congestion Avoidance Algorithm";
-                cells[4] = "Throughput (MB/RTTs)";
-                cells[5] = "Retransmission Ratio (% per MB)";
-                cells[6] = "Timeouts";
-                writer.writeNext(cells);
-            }
-
-            cells[0] = numberOfIterations;
-            cells[1] = numberOfSenders;
-            cells[2] = numberOfRouters;
-            cells[3] = congestionAvoidanceAlgorithm;
-            cells[4] = throughput;
-            cells[5] = retransmissionRatio;
-            cells[6] = numberOfTimeouts;
-            writer.writeNext(cells);
-            writer.close();
-        } catch (Exception exception) {
-            System.out.println("Unable to write statistics to " + fileName);
+        String fileName = config.getStatisticsFileName();
+        if (fileName == null) {
+            fileName = STATISTICS_FILENAME + congestionAvoidanceAlgorithm + topologyFilename +
+                    (fluid_ ? FLUID_STATISTICS_SUFFIX : "") + STATISTICS_FILE_EXTENSION;
         }
+        appendStatistics(fileName, cells);
     }
 
-	/** The main method. Takes the number of iterations as
-	 * the input and runs the simulator. To run this program,
-	 * two arguments must be entered:
-	 * <pre>
-	 * TCP-sender-version (one of Tahoe/Reno/NewReno) AND number-of-iterations
-	 * </pre>
-	 * @param argv_ Input argument(s) should contain the version of the
-	 * TCP sender (Tahoe/Reno/NewReno), the number of iterations to run, and the topology to use for the simulation.
+    /**
+     * Helper method to append a row of statistics to a CSV file, with the column headers
+     * if the file is new. A file with the columns of an older version is set aside first.
+     * @param fileName the name of the statistics file
+     * @param cells the row of statistics (see {@link SimulationStatistics#toRow()})
+     */
+    static void appendStatistics(String fileName, String[] cells) {
+        CSVWriter writer = null;
+        boolean fileExists = true;
+
+        // Simulators on other threads may append to the same file:
+        synchronized (STATISTICS_LOCK) {
+            try {
+                File statisticsFile = new File(fileName);
+                if (statisticsFile.exists() && !hasCurrentHeader(statisticsFile)) {
+                    // Written with other columns by an older version; keep it, but start a new file:
+                    File oldFile = setAside(statisticsFile);
+                    System.out.println("The columns of " + fileName + " changed; the old file was renamed to " + oldFile);
+                }
+                if (!(statisticsFile.exists())){ // Add column headers when the writer is available
+                    fileExists = false;
+                }
+
+                writer = new CSVWriter(new FileWriter(statisticsFile, true), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_ESCAPE_CHARACTER);
+
+                if (!fileExists){ // Add column headers if this is a new file
+                    writer.writeNext(SimulationStatistics.HEADER);
+                }
+
+                writer.writeNext(cells);
+                writer.close();
+            } catch (Exception exception) {
+                System.out.println("Unable to write statistics to " + fileName);
+            }
+        }
+    }
+
+    /**
+     * Helper method to check whether a statistics file starts with the column headers
+     * of the current {@link SimulationStatistics#HEADER}, so that new rows may be appended to it.
+     * @param statisticsFile_ the existing statistics file
+     * @return true if the file has the current column headers
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean hasCurrentHeader(File statisticsFile_) throws IOException {
+        CSVReader reader_ = new CSVReader(new FileReader(statisticsFile_));
+        try {
+            return Arrays.equals(SimulationStatistics.HEADER, reader_.readNext());
+        } finally {
+            reader_.close();
+        }
+    }
+
+    /**
+     * Helper method to rename a statistics file out of the way, to the first free name
+     * of the form <code>statistics...-old<i>N</i>.csv</code>.
+     * @param statisticsFile_ the statistics file to rename
+     * @return the new name of the file
+     * @throws IOException if the file cannot be renamed
+     */
+    private static File setAside(File statisticsFile_) throws IOException {
+        String name_ = statisticsFile_.getPath();
+        if (name_.endsWith(STATISTICS_FILE_EXTENSION)) {
+            name_ = name_.substring(0, name_.length() - STATISTICS_FILE_EXTENSION.length());
+        }
+        for (int i = 1; ; i++) {
+            File oldFile_ = new File(name_ + "-old" + i + STATISTICS_FILE_EXTENSION);
+            if (!oldFile_.exists()) {
+                if (!statisticsFile_.renameTo(oldFile_)) {
+                    throw new IOException("Unable to rename " + statisticsFile_ + " to " + oldFile_);
+                }
+                return oldFile_;
+            }
+        }
+    }
+
+	/** The main method. Takes the number of iterations as
+	 * the input and runs the simulator. To run this program,
+	 * two arguments must be entered:
+	 * <pre>
+	 * TCP-sender-version (one of Tahoe/Reno/NewReno) AND number-of-iterations
+	 * </pre>
+	 * @param argv_ Input argument(s) should contain the version of the
+	 * TCP sender (Tahoe/Reno/NewReno), the number of iterations to run, and the topology to use for the simulation.
      * Optionally, the buffer size and size of the receiving window may be specified
      * as the fourth and fifth arguments, respectively.
      * The sixth parameter may optionally specify the number of clients in the topology. 1 is the default.
      * The seventh parameter may optionally specify the number of routers in the topology. 1 is the default.
+     * The eighth parameter may optionally specify the simulation engine: "Rounds" (the default) advances
+     * the clock one RTT at a time, "Events" runs the discrete-event engine, and "Fluid" approximates
+     * the discrete-event engine with the fluid model of {@link FluidModel}, for very many clients.
+     * The ninth parameter may optionally specify when to stop: "Fixed" (the default) runs for the given
+     * number of iterations, and "Completion" stops as soon as every sender's data were acknowledged,
+     * using the number of iterations only as a cap.
+     * The tenth parameter may optionally specify the number of threads that process
+     * the independent flows of the round-based engine in parallel. 1 is the default.
+     * The eleventh parameter may optionally specify the number of iterations between two
+     * checkpoints, which are written to the file "checkpoint.bin". 0 (the default) writes none.
+     * An interrupted run is resumed by {@link Snapshot#main(String[])}.
+     * The twelfth parameter may optionally request a journal of the simulation events, written
+     * to the file "journal.bin", with a keyframe every given number of iterations; 0 writes only the
+     * keyframe at the start. By default, no journal is kept. A journal is listed and replayed
+     * by {@link EventJournal#main(String[])}.
+     * The thirteenth parameter may optionally specify the number of clients that run as fluid
+     * background flows of a hybrid simulation (see {@link #setBackgroundFlows(int)}), which requires
+     * the "Events" engine; a negative twelfth parameter then keeps no journal. 0 is the default.
+     * The fourteenth parameter may optionally request a trace of the events of the senders, links
+     * and routers: "Console" prints the classic console report (see {@link ConsoleTracer}), and
+     * the name of a file writes the trace to that file on a background thread (see {@link AsyncTraceWriter}),
+     * as CSV text if the name ends with ".csv" and as binary records otherwise. By default, there is no trace.
+     * A binary trace is converted to CSV text by {@link AsyncTraceWriter#main(String[])}.
      * Example argv_:
      *              [0]: Tahoe
      *              [1]: 500
@@ -584,6 +1220,13 @@ public class Simulator {
      *              [4]: 65536
      *              [5]: 4
      *              [6]: 2
+     *              [7]: Events
+     *              [8]: Completion
+     *              [9]: 4
+     *              [10]: 100
+     *              [11]: 50
+     *              [12]: 0
+     *              [13]: trace.csv
 	 */
 	public static void main(String[] argv_) {
 		if (argv_.length < 3) {
@@ -594,7 +1237,7 @@ public class Simulator {
 		}
 
         // Defaults: For router buffer, six plus one packet currently in transmission:
-        int bufferSize_ = 6*Sender.MSS + 100;	// plus little more for ACKs
+        int bufferSize_ = 6*SimulationConfig.DEFAULT_MSS + 100;	// plus little more for ACKs
         int rcvWindow_ = 65536;	// default 64KBytes
         int numClients_ = 1; // One sender client in the topology by default
         int numRouters_ = 1; // One router in the topology by default
@@ -644,48 +1287,499 @@ public class Simulator {
             }
         }
 
+        boolean eventDriven_ = false;	// round-based engine by default
+        boolean fluid_ = false;
+        if (argv_.length > 7) {
+            if (argv_[7].equalsIgnoreCase("events")) {
+                eventDriven_ = true;
+            } else if (argv_[7].equalsIgnoreCase("fluid")) {
+                fluid_ = true;
+            } else if (!argv_[7].equalsIgnoreCase("rounds")) {
+                System.err.println(
+                        "The eighth argument must be the simulation engine (Rounds, Events or Fluid)."
+                );
+                System.exit(1);
+            }
+        }
+
+        boolean runToCompletion_ = false;	// fixed number of iterations by default
+        if (argv_.length > 8) {
+            if (argv_[8].equalsIgnoreCase("completion")) {
+                runToCompletion_ = true;
+            } else if (!argv_[8].equalsIgnoreCase("fixed")) {
+                System.err.println(
+                        "The ninth argument must be the stopping rule (Fixed or Completion)."
+                );
+                System.exit(1);
+            }
+        }
+
+        int parallelism_ = 1;	// single-threaded by default
+        if (argv_.length > 9) {
+            try {
+                parallelism_ = Integer.valueOf(argv_[9]);
+            } catch (Exception e) {
+                System.err.println(
+                        "The tenth argument must be the number of threads as an Integer."
+                );
+                System.exit(1);
+            }
+        }
+
+        int checkpointInterval_ = 0;	// no checkpoints by default
+        if (argv_.length > 10) {
+            try {
+                checkpointInterval_ = Integer.valueOf(argv_[10]);
+            } catch (Exception e) {
+                System.err.println(
+                        "The eleventh argument must be the number of iterations between checkpoints as an Integer."
+                );
+                System.exit(1);
+            }
+        }
+
+        int keyframeInterval_ = -1;	// no journal by default
+        if (argv_.length > 11) {
+            try {
+                keyframeInterval_ = Integer.valueOf(argv_[11]);
+            } catch (Exception e) {
+                System.err.println(
+                        "The twelfth argument must be the number of iterations between journal keyframes as an Integer."
+                );
+                System.exit(1);
+            }
+        }
+
+        int backgroundFlows_ = 0;	// no background flows by default
+        if (argv_.length > 12) {
+            try {
+                backgroundFlows_ = Integer.valueOf(argv_[12]);
+            } catch (Exception e) {
+                System.err.println(
+                        "The thirteenth argument must be the number of background flows as an Integer."
+                );
+                System.exit(1);
+            }
+        }
+
+        String trace_ = (argv_.length > 13) ? argv_[13] : null;	// no trace by default
+
 		// Create the simulator.
 		Simulator simulator = new Simulator(
 			argv_[0], bufferSize_ /* in number of packets */, rcvWindow_ /* in bytes */,
                 argv_[2] /* topology */, numClients_ /* # of clients*/, numRouters_ /* # of routers */
 		);
+        simulator.setEventDriven(eventDriven_);
+        simulator.setRunToCompletion(runToCompletion_);
+        simulator.setParallelism(parallelism_);
+        simulator.setBackgroundFlows(backgroundFlows_);
+        simulator.setCheckpoints(checkpointInterval_, new File(Snapshot.CHECKPOINT_FILENAME + Snapshot.CHECKPOINT_FILE_EXTENSION));
 
 		// Extract the number of iterations (transmission rounds) to run
 		// from the command line argument.
 		Integer numIter_ = new Integer(argv_[1]);
 
-		// Create the input buffer that will be sent to the receiver.
-		// In reality, the data should be read from a file or another input stream.
-		java.nio.ByteBuffer inputBuffer_ = ByteBuffer.allocate(TOTAL_DATA_LENGTH);
+        if (fluid_) {
+            if (parallelism_ > 1 || checkpointInterval_ > 0 || keyframeInterval_ >= 0) {
+                System.err.println(
+                        "The fluid engine runs in a single thread, without checkpoints or a journal."
+                );
+                System.exit(1);
+            }
+            new FluidModel(simulator).run(numIter_.intValue());
+            return;
+        }
+
+        EventJournal journal_ = null;
+        if (keyframeInterval_ >= 0) {
+            try {
+                journal_ = new EventJournal(
+                    simulator, new FileOutputStream(JOURNAL_FILENAME + JOURNAL_FILE_EXTENSION), keyframeInterval_
+                );
+            } catch (IOException ex) {
+                System.err.println("Unable to create the journal: " + ex.toString());
+                System.exit(1);
+            }
+            simulator.setJournal(journal_);
+        }
+
+        AsyncTraceWriter traceWriter_ = null;
+        if (trace_ != null && trace_.equalsIgnoreCase("console")) {
+            simulator.setTracer(new ConsoleTracer(simulator));
+        } else if (trace_ != null) {
+            try {
+                traceWriter_ = new AsyncTraceWriter(
+                    simulator, new FileOutputStream(trace_),
+                    trace_.toLowerCase().endsWith(".csv") ? AsyncTraceWriter.CSV : AsyncTraceWriter.BINARY
+                );
+            } catch (IOException ex) {
+                System.err.println("Unable to create the trace: " + ex.toString());
+                System.exit(1);
+            }
+            simulator.setTracer(traceWriter_);
+        }
 
 		// Run the simulator for the given number of transmission rounds.
-        if (simulator.topology instanceof DirectTopology) {
-		    simulator.runDirectTopologySimulation(inputBuffer_, numIter_.intValue());
-        } else if (simulator.topology instanceof CloudTopology) {
-            simulator.runCloudTopologySimulation(inputBuffer_, numIter_.intValue());
+        if (simulator.isEventDriven()) {
+            simulator.runEventDrivenSimulation(numIter_.intValue());
         } else {
-            throw new IllegalStateException("Unknown topology encountered while trying to run the simulation.");
+            simulator.runSimulation(numIter_.intValue());
+        }
+
+        if (journal_ != null) {
+            try {
+                journal_.close();
+            } catch (IOException ex) {
+                System.err.println("Unable to write the journal: " + ex.toString());
+            }
+        }
+
+        if (traceWriter_ != null) {
+            try {
+                traceWriter_.close();
+            } catch (IOException ex) {
+                System.err.println("Unable to write the trace: " + ex.toString());
+            }
         }
 	}
 
 	/**
 	 * Returns the current "time" since the start of the simulation.
-	 * The time is currently measured in the integer multiples of
-	 * the simulation clock "ticks".
+	 * The time is measured in the integer simulator time units;
+	 * one simulation clock "tick" equals {@link #getTimeIncrement()} units.
 	 * 
-	 * @return Returns the current iteration of this simulation session.
+	 * @return Returns the current time of this simulation session, in time units.
 	 */
-	public double getCurrentTime() {
+	public long getCurrentTime() {
+		if (processes != null) {
+			// Each logical process of the partitioned engine has its own clock:
+			LogicalProcess process_ = currentProcess.get();
+			if (process_ != null) {
+				return process_.now;
+			}
+		}
 		return currentTime;
 	}
 
+	/**
+	 * Allocates the identifier of a new network element. The identifiers
+	 * are dense, starting from zero in the order in which the topology
+	 * creates the elements, so they can index plain arrays.
+	 * @return the identifier of the new network element
+	 * @see NetworkElement#getId()
+	 */
+	public int newNetworkElementId() {
+		return networkElementCount++;
+	}
+
+	/**
+	 * @return the number of network elements created in this simulator,
+	 * which is one more than the largest identifier
+	 */
+	public int getNetworkElementCount() {
+		return networkElementCount;
+	}
+
+	/**
+	 * @return the topology of the simulated network
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+
 	/**
 	 * Time increment ("tick") for the simulation clock. Right now
 	 * we simply assume that each round takes 1 RTT (and lasts unspecified number of seconds).
-	 * @return the time increment (in ticks) for a round of simulation.
+	 * @return the time increment for a round of simulation, in time units.
+	 */
+	public long getTimeIncrement() {
+		return timeUnitsPerTick;
+	}
+
+	/**
+	 * Converts a duration given in clock ticks, such as a link delay,
+	 * into the simulator time units, rounded to the nearest unit.
+	 * @param ticks_ the duration in clock ticks
+	 * @return the duration in time units
+	 */
+	public long toTimeUnits(double ticks_) {
+		return Math.round(ticks_ * timeUnitsPerTick);
+	}
+
+	/**
+	 * Converts a time given in the simulator time units into clock ticks,
+	 * mainly for reporting purposes.
+	 * @param timeUnits_ the time in time units
+	 * @return the time in clock ticks
+	 */
+	public double toTicks(long timeUnits_) {
+		return (double) timeUnits_ / timeUnitsPerTick;
+	}
+
+	/**
+	 * @return <code>true</code> if this simulator runs as a discrete-event engine
+	 * @see #runEventDrivenSimulation(int)
+	 */
+	public boolean isEventDriven() {
+		return eventDriven;
+	}
+
+	/**
+	 * Switches this simulator between the round-based and the event-driven mode.
+	 * Must be called before the simulation starts, because
+	 * the running timers are not moved between the modes.
+	 * 
+	 * @param eventDriven_ <code>true</code> for the discrete-event engine
+	 */
+	public void setEventDriven(boolean eventDriven_) {
+		this.eventDriven = eventDriven_;
+	}
+
+	/**
+	 * @return <code>true</code> if the simulation stops as soon as all transfers complete
+	 * @see #runToCompletion
+	 */
+	public boolean isRunToCompletion() {
+		return runToCompletion;
+	}
+
+	/**
+	 * Sets whether the simulation stops as soon as every sender
+	 * has completed its transfer, rather than after the given number of iterations.
+	 * 
+	 * @param runToCompletion_ <code>true</code> to stop when all transfers complete
+	 */
+	public void setRunToCompletion(boolean runToCompletion_) {
+		this.runToCompletion = runToCompletion_;
+	}
+
+	/**
+	 * @return the number of threads that process the flows of the round-based engine
+	 * @see #setParallelism(int)
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads that process the independent flows
+	 * of the round-based engine in parallel. The event-driven engine
+	 * partitions the topology into as many logical processes
+	 * (see {@link Topology#partition(int)}), each running on its own thread.
+	 * 
+	 * @param parallelism_ the number of threads; <code>1</code> runs the flows sequentially
+	 * @throws IllegalArgumentException if the number of threads is not positive
+	 */
+	public void setParallelism(int parallelism_) throws IllegalArgumentException {
+		if (parallelism_ <= 0) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".setParallelism():  The number of threads must be positive."
+			);
+		}
+		if (pool != null && parallelism_ != parallelism) {
+			pool.shutdown();
+			pool = null;
+		}
+		this.parallelism = parallelism_;
+	}
+
+	/**
+	 * Designates the last given number of the topology's sending endpoints
+	 * (see {@link Topology#getSenderEndpoints()}) as background flows of a hybrid
+	 * simulation. The background flows are not simulated packet by packet but as
+	 * fluid (see {@link FluidModel}), which occupies router memory and link capacity
+	 * alongside the packets of the foreground flows, so the cost of the simulation
+	 * grows with the packets of the foreground flows only. Only the foreground flows
+	 * are reported in the statistics file. Requires the single-threaded event-driven engine.
+	 * 
+	 * @param backgroundFlows_ the number of background flows; <code>0</code> for none
+	 * @throws IllegalArgumentException if the number is negative, or if it leaves no foreground flow
+	 */
+	public void setBackgroundFlows(int backgroundFlows_) throws IllegalArgumentException {
+		if (backgroundFlows_ < 0 || backgroundFlows_ >= topology.getSenderEndpoints().size()) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".setBackgroundFlows():  At least one foreground flow must remain."
+			);
+		}
+		this.backgroundFlows = backgroundFlows_;
+	}
+
+	/**
+	 * @return the number of background flows of a hybrid simulation
+	 * @see #setBackgroundFlows(int)
+	 */
+	public int getBackgroundFlows() {
+		return backgroundFlows;
+	}
+
+	/**
+	 * Requests that the simulator is saved periodically while it completes
+	 * a simulation session (see {@link #completeSimulation()}). Each checkpoint
+	 * replaces the previous one in the given file.
+	 * 
+	 * @param interval_ the number of iterations between two checkpoints; zero for none
+	 * @param file_ the file to write the checkpoints to
+	 * @throws IllegalArgumentException if the interval is negative
+	 */
+	public void setCheckpoints(int interval_, File file_) throws IllegalArgumentException {
+		if (interval_ < 0) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".setCheckpoints():  The checkpoint interval must not be negative."
+			);
+		}
+		this.checkpointInterval = interval_;
+		this.checkpointFile = file_;
+	}
+
+	/**
+	 * @return the journal of the simulation events, or <code>null</code> if none is kept
+	 * @see #setJournal(EventJournal)
+	 */
+	public EventJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Requests that the events of the simulation are recorded in the given journal.
+	 * Must be called before the simulation session starts. The journal can be kept
+	 * only if the simulation runs on a single thread (see {@link #setParallelism(int)}).
+	 * A simulator restored from a snapshot records nothing into the journal
+	 * of the original simulator.
+	 * 
+	 * @param journal_ the journal, or <code>null</code> to keep none
+	 */
+	public void setJournal(EventJournal journal_) {
+		this.journal = journal_;
+	}
+
+	/**
+	 * @return the configuration of this simulator
+	 */
+	public SimulationConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Returns the random numbers of this simulator. They are seeded with
+	 * {@link SimulationConfig#getSeed()}, so a run is repeated exactly by the
+	 * same seed, as long as the round-based engine runs in a single thread.
+	 * @return the random number generator of this simulator
+	 */
+	public Random getRandom() {
+		return random;
+	}
+
+	/**
+	 * Creates one stream of random numbers of a network element, seeded with
+	 * {@link SimulationConfig#getSeed()}, the element's identifier and the stream number.
+	 * Unlike the numbers from {@link #getRandom()}, those of each stream
+	 * do not depend on the order in which the elements are processed,
+	 * so a run is repeated exactly by the same seed also on several threads,
+	 * as long as each stream is drawn from by a single thread.
+	 * @param element_ the network element that draws the numbers
+	 * @param stream_ the number of the element's stream, between 0 and 255
+	 * @return a new random number generator for the element
+	 */
+	public Random newRandom(NetworkElement element_, int stream_) {
+		// Scramble the seed, so that the elements with consecutive
+		// identifiers do not draw similar numbers:
+		long seed_ = config.getSeed() + ((((long) element_.getId()) << 8 | stream_) + 1) * 0x9E3779B97F4A7C15L;
+		seed_ = (seed_ ^ (seed_ >>> 30)) * 0xBF58476D1CE4E5B9L;
+		seed_ = (seed_ ^ (seed_ >>> 27)) * 0x94D049BB133111EBL;
+		return new Random(seed_ ^ (seed_ >>> 31));
+	}
+
+	/**
+	 * @return the statistics of the simulation session, or <code>null</code>
+	 * if the session has not ended yet
+	 * @see #endSimulation()
+	 */
+	public SimulationStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * @return the tracer to which the events of the simulation are reported
+	 * @see #setTracer(Tracer)
+	 */
+	public Tracer getTracer() {
+		return tracer;
+	}
+
+	/**
+	 * Sets the tracer to which the senders, links and routers of this simulator
+	 * report their events. A simulator restored from a snapshot or forked
+	 * reports to {@link Tracer#NONE} until another tracer is set.
+	 * 
+	 * @param tracer_ the tracer, or <code>null</code> to report to {@link Tracer#NONE}
+	 */
+	public void setTracer(Tracer tracer_) {
+		this.tracer = (tracer_ == null) ? Tracer.NONE : tracer_;
+	}
+
+	/**
+	 * Restores the fields that are not part of a snapshot.
+	 */
+	private void readObject(ObjectInputStream in_) throws IOException, ClassNotFoundException {
+		in_.defaultReadObject();
+		currentProcess = new ThreadLocal<LogicalProcess>();
+		tracer = Tracer.NONE;
+	}
+
+	/**
+	 * Schedules an event of the event-driven mode to fire at the given time.
+	 * If the event is already scheduled, it is moved to the new time.
+	 * 
+	 * @param event_ the event to schedule
+	 * @param time_ the simulation time at which the event fires
+	 */
+	public void scheduleEvent(SimulationEvent event_, long time_) {
+		LogicalProcess process_ = currentProcess();
+		if (process_ == null) {
+			events.schedule(event_, time_);
+		} else {
+			process_.schedule(event_, time_, process_);
+		}
+	}
+
+	/**
+	 * Schedules an event of the event-driven mode to fire at the given time
+	 * at the given network element, such as the arrival of a packet
+	 * at the other end of a link. If the event is already scheduled,
+	 * it is moved to the new time.
+	 * 
+	 * @param event_ the event to schedule
+	 * @param time_ the simulation time at which the event fires
+	 * @param destination_ the endpoint or router at which the event fires
 	 */
-	public double getTimeIncrement() {
-		return 1.0;
+	public void scheduleEvent(SimulationEvent event_, long time_, NetworkElement destination_) {
+		LogicalProcess process_ = currentProcess();
+		if (process_ == null) {
+			events.schedule(event_, time_);
+		} else {
+			process_.schedule(event_, time_, processOf.get(destination_));
+		}
+	}
+
+	/**
+	 * Cancels a scheduled event. Does nothing if the event is not scheduled.
+	 * @param event_ the event to cancel
+	 */
+	public void cancelEvent(SimulationEvent event_) {
+		LogicalProcess process_ = currentProcess();
+		if (process_ == null) {
+			events.cancel(event_);
+		} else {
+			process_.events.cancel(event_);
+		}
+	}
+
+	/**
+	 * Helper method to find the logical process running on the current thread.
+	 * @return the logical process, or <code>null</code> outside the partitioned engine
+	 */
+	private LogicalProcess currentProcess() {
+		return (processes == null) ? null : currentProcess.get();
 	}
 
 	/**
@@ -695,8 +1789,10 @@ public class Simulator {
 	 * method {@link #cancelTimeout(TimerSimulated)}.</p>
 	 * 
 	 * <p>Note that the timer object is cloned here,
-	 * because the caller may keep reusing the original timer object,
-	 * as is done in, e.g., {@link Sender#startRTOtimer()}.<p>
+	 * because the caller may keep reusing the original timer object.
+	 * Components that restart the same timer over and over should
+	 * rather use {@link #reschedule(TimerSimulated, long)},
+	 * which does not allocate anything.<p>
 	 * 
 	 * @param timer_ a timer to start counting down on the simulated time.
 	 * @throws NullPointerException
@@ -706,10 +1802,13 @@ public class Simulator {
 	public TimerSimulated setTimeoutAt(TimerSimulated timer_)
 	throws NullPointerException, IllegalArgumentException {
 		TimerSimulated timerCopy_ = (TimerSimulated) timer_.clone();
-		if (!timers.add(timerCopy_)) {
-			throw new IllegalArgumentException(
-				this.getClass().getName() + ".setTimeoutAt():  Attempting to add an existing timer."
-			);
+		if (journal != null) {
+			journal.timerArmed(timerCopy_, timerCopy_.getTime());
+		}
+		if (eventDriven) {
+			scheduleEvent(timerCopy_, timerCopy_.getTime());
+		} else {
+			timersOf(timerCopy_.callback).add(timerCopy_);
 		}
 		return timerCopy_;
 	}
@@ -722,13 +1821,67 @@ public class Simulator {
 	 */
 	public void cancelTimeout(TimerSimulated timer_)
 	throws NullPointerException, IllegalArgumentException {
-		if (!timers.remove(timer_)) {
+		if (!cancel(timer_)) {
 			throw new IllegalArgumentException(
 				this.getClass().getName() + ".cancelTimeout():  Attempting to cancel a non-existing timer."
 			);
 		}
 	}
 
+	/**
+	 * Starts a timer, or moves it to a new expiration time if it is
+	 * already running. Unlike {@link #setTimeoutAt(TimerSimulated)},
+	 * the timer object itself is registered with the simulator, so it
+	 * serves as its own handle and is never copied. Restarting a timer
+	 * in this way allocates nothing and takes constant time
+	 * (logarithmic in the event-driven mode).</p>
+	 * 
+	 * <p>While the timer is running, its time must be changed
+	 * only through this method, never by {@link TimerSimulated#setTime(long)}.
+	 * 
+	 * @param timer_ the timer to start or restart
+	 * @param time_ the new expiration time of the timer
+	 * @return the timer itself, which is the handle for {@link #cancel(TimerSimulated)}
+	 */
+	public TimerSimulated reschedule(TimerSimulated timer_, long time_) {
+		if (journal != null) {
+			journal.timerArmed(timer_, time_);
+		}
+		if (eventDriven) {
+			scheduleEvent(timer_, time_);
+		} else {
+			TimingWheel wheel_ = timersOf(timer_.callback);
+			if (timer_.owner != null) {
+				wheel_.remove(timer_);
+			}
+			timer_.time = time_;
+			wheel_.add(timer_);
+		}
+		return timer_;
+	}
+
+	/**
+	 * Stops a running timer. Does nothing if the timer is not running,
+	 * e.g., because it has already fired.
+	 * 
+	 * @param timer_ the timer to stop
+	 * @return <code>true</code> if the timer was running
+	 * @see #reschedule(TimerSimulated, long)
+	 */
+	public boolean cancel(TimerSimulated timer_) {
+		if (journal != null && timer_.isRunning()) {
+			journal.timerCancelled(timer_);
+		}
+		if (timer_.isScheduled()) {
+			cancelEvent(timer_);
+			return true;
+		} else if (timer_.owner != null) {
+			timersOf(timer_.callback).remove(timer_);
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * The simulator checks if any running timers
 	 * expired because the simulation clock has ticked.
@@ -743,25 +1896,103 @@ public class Simulator {
 	 * @param component_ the timed component for which to check the expired timers
 	 */
 	public void checkExpiredTimers(TimedComponent component_) {
-		// Make a copy of the list for thread-safe traversal
-		@SuppressWarnings("unchecked")
-		ArrayList<TimerSimulated> timersCopy = (ArrayList<TimerSimulated>) timers.clone();
-		ArrayList<TimerSimulated> expiredTimers = new ArrayList<TimerSimulated>();
-		// For each timer that is running,
-		// if the timer's time arrived (equals the current time),
-		// call the callback function of the associated Component.
-		Iterator<TimerSimulated> timerItems_ = timersCopy.iterator();
-		while (timerItems_.hasNext()) {
-			TimerSimulated timer_ = timerItems_.next();
-			// If the timeout occurred, call the callback method:
-			if (timer_.callback.equals(component_) && timer_.getTime() <= getCurrentTime()) {
-				timer_.callback.timerExpired(timer_.type);
-
-				// Mark the timer for removal
-				expiredTimers.add(timer_);
+		// Move the timers whose time arrived to their components' lists
+		// of expired timers; this is a no-op if the clock did not tick
+		// since the previous call.
+		TimingWheel wheel_ = timersOf(component_);
+		wheel_.advanceTo(getCurrentTime());
+
+		// For each expired timer of this component, call its callback
+		// method. The fired timers are released, since they have
+		// accomplished their mission.
+		wheel_.fireExpired(component_, getCurrentTime(), journal);
+	}
+
+	/**
+	 * Helper method to find the wheel that keeps the timers of
+	 * the given component: its flow's wheel, if the timers are
+	 * partitioned by flows, or else the shared wheel.
+	 * 
+	 * @param component_ the timed component
+	 * @return the component's timing wheel
+	 */
+	private TimingWheel timersOf(TimedComponent component_) {
+		if (flowTimers != null) {
+			TimingWheel wheel_ = flowTimers.get(component_);
+			if (wheel_ != null) {
+				return wheel_;
+			}
+		}
+		return timers;
+	}
+
+	/**
+	 * Helper method to give each flow of the compiled round schedule its own timing wheel,
+	 * before the flows are first replayed by several threads. A flow consists of the
+	 * sending and the receiving endpoint of the same index in the schedule
+	 * (see {@link Topology#compileSchedule()}), and the timers that are already
+	 * running are moved from the shared wheel to the wheels of their flows.
+	 * The map is only read afterwards, so the threads can share it.
+	 */
+	private void partitionTimers() {
+		List<Endpoint> senders_ = topology.getSenderEndpoints();
+		List<Endpoint> receivers_ = topology.getReceiverEndpoints();
+		int flows_ = Math.max(senders_.size(), receivers_.size());
+		flowTimers = new IdentityHashMap<TimedComponent, TimingWheel>();
+		flowWheels = new TimingWheel[flows_];
+		for (int i = 0; i < flows_; i++) {
+			flowWheels[i] = new TimingWheel(timeUnitsPerTick);
+			if (i < senders_.size()) {
+				flowTimers.put(senders_.get(i).getSender(), flowWheels[i]);
+				flowTimers.put(senders_.get(i).getReceiver(), flowWheels[i]);
+			}
+			if (i < receivers_.size()) {
+				flowTimers.put(receivers_.get(i).getSender(), flowWheels[i]);
+				flowTimers.put(receivers_.get(i).getReceiver(), flowWheels[i]);
+			}
+		}
+
+		List<TimerSimulated> running_ = new ArrayList<TimerSimulated>();
+		timers.removeAll(running_);
+		for (TimerSimulated timer_ : running_) {
+			timersOf(timer_.callback).add(timer_);
+		}
+	}
+
+	// ----------------------------------------------------------------------
+	/**
+	 * One window of the partitioned event-driven engine: every logical process
+	 * that has an event before the end of the window fires its events on a thread
+	 * of the pool. The window is over when all processes are done.
+	 */
+	private class Window extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** The end of this window. */
+		private final long windowEnd;
+
+		Window(long windowEnd_) {
+			this.windowEnd = windowEnd_;
+		}
+
+		@Override
+		protected void compute() {
+			List<RecursiveAction> tasks_ = new ArrayList<RecursiveAction>();
+			for (final LogicalProcess process_ : processes) {
+				if (process_.events.peekTime() >= windowEnd) continue;
+				tasks_.add(new RecursiveAction() {
+					@Override
+					protected void compute() {
+						currentProcess.set(process_);
+						try {
+							process_.runWindow(windowEnd);
+						} finally {
+							currentProcess.remove();
+						}
+					}
+				});
 			}
+			invokeAll(tasks_);
 		}
-		// Release the expired timers since they have accomplished their mission.
-		timers.removeAll(expiredTimers);
 	}
 }
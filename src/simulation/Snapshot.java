@@ -0,0 +1,192 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves and restores the complete state of a {@link Simulator}: the clock,
+ * the timers and pending events, the state of every sender, receiver, link
+ * and router, and the progress of the current simulation session.
+ * A simulation session can thus be saved ({@link #save(Simulator, OutputStream)})
+ * and restored later ({@link #load(InputStream)}), or copied in memory
+ * ({@link #fork(Simulator)}), so that a common warm-up period needs
+ * to be simulated only once for many variants of the rest of a run.</p>
+ *
+ * <p>A long run can also save itself periodically to a checkpoint file
+ * (see {@link Simulator#setCheckpoints(int, File)}), from which it is
+ * resumed after an interruption by running this class:
+ * <pre>
+ * java simulation.Snapshot checkpoint-file
+ * </pre></p>
+ *
+ * <p>A snapshot is a compressed stream of the serialized simulator.
+ * It can be restored only by the same version of the simulator that saved it.</p>
+ *
+ * @see Simulator#completeSimulation()
+ */
+public final class Snapshot {
+	/** Format version of the snapshots written by {@link #save(Simulator, OutputStream)}.
+	 * The serializable classes declare fixed serial version numbers, so it is this
+	 * version alone that decides whether a snapshot can be restored; it must be
+	 * incremented with every change to the serialized fields of any of them. */
+	public static final int VERSION = 8;
+
+	public static final String CHECKPOINT_FILENAME = "checkpoint";
+	public static final String CHECKPOINT_FILE_EXTENSION = ".bin";
+
+	/** This class has only static methods. */
+	private Snapshot() {
+	}
+
+	/**
+	 * Saves the complete state of a simulator.
+	 * Must not be called while the simulation is advancing.
+	 *
+	 * @param simulator_ the simulator to save
+	 * @param out_ the stream to write the snapshot to; it is not closed
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public static void save(Simulator simulator_, OutputStream out_) throws IOException {
+		GZIPOutputStream zip_ = new GZIPOutputStream(out_);
+		writeState(simulator_, zip_);
+		zip_.finish();
+	}
+
+	/**
+	 * Restores a simulator from a snapshot written by {@link #save(Simulator, OutputStream)}.
+	 * A simulation session that was in progress when the snapshot was taken
+	 * can be continued with {@link Simulator#advanceSimulation(int)} or
+	 * {@link Simulator#completeSimulation()}.
+	 *
+	 * @param in_ the stream to read the snapshot from; it is not closed
+	 * @return the restored simulator
+	 * @throws IOException if the snapshot cannot be read or is not valid
+	 */
+	public static Simulator load(InputStream in_) throws IOException {
+		return readState(new GZIPInputStream(in_));
+	}
+
+	/**
+	 * Creates an independent copy of a simulator in its current state.
+	 * Each copy can then continue with different parameters, e.g., to study
+	 * several variants of a run that share a common beginning.
+	 * Must not be called while the simulation is advancing.
+	 *
+	 * @param simulator_ the simulator to copy
+	 * @return the copy of the simulator
+	 */
+	public static Simulator fork(Simulator simulator_) {
+		try {
+			ByteArrayOutputStream state_ = new ByteArrayOutputStream();
+			writeState(simulator_, state_);
+			return readState(new ByteArrayInputStream(state_.toByteArray()));
+		} catch (IOException ex) {
+			throw new IllegalStateException("Unable to copy the simulator: " + ex.toString(), ex);
+		}
+	}
+
+	/**
+	 * Saves a simulator to a checkpoint file.
+	 * The snapshot is first written to a temporary file, so that a crash
+	 * while writing does not destroy the previous checkpoint.
+	 *
+	 * @param simulator_ the simulator to save
+	 * @param checkpointFile_ the checkpoint file, which is replaced
+	 */
+	public static void writeCheckpoint(Simulator simulator_, File checkpointFile_) {
+		File temporary_ = new File(checkpointFile_.getPath() + ".tmp");
+		try {
+			FileOutputStream out_ = new FileOutputStream(temporary_);
+			try {
+				save(simulator_, out_);
+			} finally {
+				out_.close();
+			}
+			if ((checkpointFile_.exists() && !checkpointFile_.delete()) || !temporary_.renameTo(checkpointFile_)) {
+				throw new IOException("cannot replace " + checkpointFile_);
+			}
+			if (simulator_.getConfig().isReporting(Simulator.REPORTING_SIMULATOR)) {
+				System.out.println(
+					"Checkpoint saved at RTT #" + (simulator_.getCurrentTime() / simulator_.getTimeIncrement()) +
+					" to " + checkpointFile_
+				);
+			}
+		} catch (IOException ex) {
+			System.err.println("Unable to write checkpoint to " + checkpointFile_ + ": " + ex.toString());
+		}
+	}
+
+	/**
+	 * Helper method to write the state of a simulator, preceded by the format version.
+	 * @param simulator_ the simulator
+	 * @param out_ the stream to write to
+	 * @throws IOException if the state cannot be written
+	 */
+	private static void writeState(Simulator simulator_, OutputStream out_) throws IOException {
+		ObjectOutputStream objects_ = new ObjectOutputStream(out_);
+		objects_.writeInt(VERSION);
+		objects_.writeObject(simulator_);
+		objects_.flush();
+	}
+
+	/**
+	 * Helper method to read the state of a simulator written by {@link #writeState(Simulator, OutputStream)}.
+	 * @param in_ the stream to read from
+	 * @return the restored simulator
+	 * @throws IOException if the state cannot be read or is not valid
+	 */
+	private static Simulator readState(InputStream in_) throws IOException {
+		ObjectInputStream objects_ = new ObjectInputStream(in_);
+		int version_ = objects_.readInt();
+		if (version_ != VERSION) {
+			throw new IOException("Unsupported snapshot version " + version_);
+		}
+		try {
+			return (Simulator) objects_.readObject();
+		} catch (ClassNotFoundException ex) {
+			throw new IOException("Invalid snapshot: " + ex.toString(), ex);
+		} catch (ClassCastException ex) {
+			throw new IOException("Invalid snapshot: " + ex.toString(), ex);
+		}
+	}
+
+	/**
+	 * Resumes an interrupted run from its last checkpoint and completes it.
+	 * The argument is the name of the checkpoint file.
+	 *
+	 * @param argv_ the command line arguments
+	 */
+	public static void main(String[] argv_) {
+		if (argv_.length != 1) {
+			System.err.println("Please specify the checkpoint file to resume from!");
+			System.exit(1);
+		}
+		Simulator simulator_ = null;
+		try {
+			FileInputStream in_ = new FileInputStream(argv_[0]);
+			try {
+				simulator_ = load(in_);
+			} finally {
+				in_.close();
+			}
+		} catch (IOException ex) {
+			System.err.println("Unable to read the checkpoint " + argv_[0] + ": " + ex.toString());
+			System.exit(1);
+		}
+		simulator_.completeSimulation();
+	}
+}
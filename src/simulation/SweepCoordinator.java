@@ -0,0 +1,373 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a parameter sweep on several worker processes on the local host.
+ * Unlike the {@link SweepRunner}, whose points share the heap and the garbage
+ * collector of one Java virtual machine, every worker is a Java virtual
+ * machine of its own, so a sweep of large topologies can use all the memory
+ * and processors of the host.</p>
+ *
+ * <p>The coordinator starts the {@link SweepWorker} processes and talks to each
+ * over its standard input and output. The points wait in one queue; a worker
+ * takes the next point from it whenever it is idle, so a worker that gets
+ * short points simply runs more of them. If a worker process dies, the point
+ * it was running goes back to the queue and a new worker takes its place; a
+ * point that kills {@link #MAX_ATTEMPTS} workers is given up as failed. The
+ * statistics of all points come back to the coordinator, which keeps them in
+ * the order of the points and writes them to one CSV file.</p>
+ *
+ * @see SweepWorker
+ */
+public class SweepCoordinator {
+	/** The number of times a point is tried before it is given up. */
+	public static final int MAX_ATTEMPTS = 3;
+
+	/** The points of the sweep. */
+	private final List<SweepPoint> points;
+
+	/** The configuration that every point gets a copy of. */
+	private final SimulationConfig config;
+
+	/** The number of worker processes. */
+	private final int workers;
+
+	/** The options of the worker virtual machines, such as the heap size. */
+	private final List<String> jvmOptions;
+
+	/** The indexes of the points that wait for a worker. */
+	private final BlockingDeque<Integer> queue = new LinkedBlockingDeque<Integer>();
+
+	/** The statistics of each point, <code>null</code> until the point has finished. */
+	private final SimulationStatistics[] results;
+
+	/** The number of times each point has been started. */
+	private final int[] attempts;
+
+	/** The number of points that have neither finished nor been given up. */
+	private int remaining;
+
+	/** The cache of the statistics of the points, or <code>null</code> to simulate every point. */
+	private ResultsCache cache = null;
+
+	/**
+	 * Constructor.
+	 * @param points_ the points of the sweep
+	 * @param config_ the configuration that every point gets a copy of;
+	 * the copies have the statistics file turned off
+	 * @param workers_ the number of worker processes
+	 * @param jvmOptions_ the options of the worker virtual machines, such as <code>-Xmx2g</code>
+	 * @throws IllegalArgumentException if the number of workers is not positive
+	 */
+	public SweepCoordinator(List<SweepPoint> points_, SimulationConfig config_, int workers_, List<String> jvmOptions_)
+		throws IllegalArgumentException {
+		if (workers_ < 1) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  The number of workers must be positive."
+			);
+		}
+		this.points = new ArrayList<SweepPoint>(points_);
+		this.config = new SimulationConfig(config_);
+		this.config.setStatisticsWritten(false);
+		this.workers = workers_;
+		this.jvmOptions = new ArrayList<String>(jvmOptions_);
+		this.results = new SimulationStatistics[points.size()];
+		this.attempts = new int[points.size()];
+	}
+
+	/**
+	 * @param cache_ the cache to take the statistics of the points from, and to store
+	 * the statistics of the simulated points in, or <code>null</code> to simulate every point
+	 */
+	public void setCache(ResultsCache cache_) {
+		this.cache = cache_;
+	}
+
+	/**
+	 * Runs all points of the sweep on the worker processes and waits for them to finish.
+	 * The points found in the cache (see {@link #setCache(ResultsCache)}) are not simulated again.
+	 * A point that fails is reported on the standard error and
+	 * leaves a <code>null</code> in the results.
+	 * @return the statistics of each point, in the order of the points
+	 * @throws IllegalStateException if the worker processes cannot be started
+	 */
+	public List<SimulationStatistics> run() throws IllegalStateException {
+		synchronized (this) {
+			for (int i = 0; i < points.size(); i++) {
+				results[i] = (cache != null) ? cache.get(points.get(i), config) : null;
+				if (results[i] == null) {
+					queue.add(i);
+				}
+			}
+			remaining = queue.size();
+		}
+
+		Thread[] threads_ = new Thread[Math.min(workers, Math.max(queue.size(), 1))];
+		final IOException[] failures_ = new IOException[threads_.length];
+		for (int w = 0; w < threads_.length; w++) {
+			final int worker_ = w;
+			threads_[w] = new Thread("sweep-worker-" + w) {
+				public void run() {
+					try {
+						serveWorker();
+					} catch (IOException ex) {
+						failures_[worker_] = ex;
+					}
+				}
+			};
+			threads_[w].start();
+		}
+		for (int w = 0; w < threads_.length; w++) {
+			try {
+				threads_[w].join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(
+					this.getClass().getName() + ":  Interrupted while waiting for the sweep."
+				);
+			}
+		}
+		for (IOException failure_ : failures_) {
+			if (failure_ != null) {
+				throw new IllegalStateException(
+					this.getClass().getName() + ":  Unable to run a sweep worker: " + failure_.toString()
+				);
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Writes the statistics of the sweep to a CSV file, one row per point
+	 * that did not fail. Any existing file is overwritten.
+	 * @param results_ the statistics of each point, as returned by {@link #run()}
+	 * @param file_ the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(List<SimulationStatistics> results_, File file_) throws IOException {
+		SweepRunner.write(points, results_, file_);
+	}
+
+	/**
+	 * Helper method to keep one worker process busy until all points are done,
+	 * starting a new process whenever the previous one dies.
+	 * @throws IOException if a worker process cannot be started
+	 */
+	private void serveWorker() throws IOException {
+		while (!isDone()) {
+			Process process_ = startWorker();
+			int index_ = SweepWorker.NO_POINT;
+			boolean started_ = false;
+			try {
+				ObjectOutputStream out_ = new ObjectOutputStream(new BufferedOutputStream(process_.getOutputStream()));
+				out_.writeObject(config);
+				out_.flush();
+				ObjectInputStream in_ = new ObjectInputStream(new BufferedInputStream(process_.getInputStream()));
+
+				while (true) {
+					// Every message of the worker asks for the next point:
+					int finished_ = in_.readInt();
+					started_ = true;
+					if (finished_ != SweepWorker.NO_POINT) {
+						finish(finished_, in_.readObject());
+						index_ = SweepWorker.NO_POINT;
+					}
+					index_ = takePoint();
+					out_.writeInt(index_);
+					if (index_ == SweepWorker.NO_POINT) {
+						out_.close();
+						break;
+					}
+					out_.writeObject(points.get(index_));
+					out_.reset();
+					out_.flush();
+				}
+				process_.waitFor();
+				return;
+			} catch (IOException ex) {
+				if (!started_) {
+					throw ex;	// the worker cannot even start, so a new one would not either
+				}
+				// The worker died; its point goes back to the queue
+				retry(index_);
+			} catch (ClassNotFoundException ex) {
+				retry(index_);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				process_.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Helper method to start a worker process with the class path of this process.
+	 */
+	private Process startWorker() throws IOException {
+		List<String> command_ = new ArrayList<String>();
+		command_.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command_.addAll(jvmOptions);
+		command_.add("-cp");
+		command_.add(System.getProperty("java.class.path"));
+		command_.add(SweepWorker.class.getName());
+		ProcessBuilder builder_ = new ProcessBuilder(command_);
+		builder_.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder_.start();
+	}
+
+	/**
+	 * Helper method to take the next point from the queue. If the queue is empty
+	 * while other workers are still running points, waits in case one of them dies.
+	 * @return the index of the point, or {@link SweepWorker#NO_POINT} if all points are done
+	 */
+	private int takePoint() throws InterruptedException {
+		while (true) {
+			Integer index_ = queue.poll(100, TimeUnit.MILLISECONDS);
+			if (index_ != null) {
+				synchronized (this) {
+					attempts[index_]++;
+				}
+				return index_;
+			}
+			if (isDone()) {
+				return SweepWorker.NO_POINT;
+			}
+		}
+	}
+
+	/**
+	 * Helper method to record the result of a point.
+	 * @param result_ the statistics of the point, or the message of its failure
+	 */
+	private synchronized void finish(int index_, Object result_) {
+		if (result_ instanceof SimulationStatistics) {
+			results[index_] = (SimulationStatistics) result_;
+			if (cache != null) {
+				try {
+					cache.put(points.get(index_), config, results[index_]);
+				} catch (IOException ex) {
+					System.err.println("Unable to cache the statistics of " + points.get(index_) + ": " + ex.toString());
+				}
+			}
+		} else {
+			System.err.println("The point " + points.get(index_) + " failed: " + result_);
+		}
+		remaining--;
+	}
+
+	/**
+	 * Helper method to put the point of a dead worker back to the queue,
+	 * or to give it up after {@link #MAX_ATTEMPTS} attempts.
+	 */
+	private synchronized void retry(int index_) {
+		if (index_ == SweepWorker.NO_POINT) {
+			return;
+		}
+		if (attempts[index_] < MAX_ATTEMPTS) {
+			queue.addFirst(index_);
+		} else {
+			System.err.println(
+				"The point " + points.get(index_) + " failed: the worker died " + MAX_ATTEMPTS + " times."
+			);
+			remaining--;
+		}
+	}
+
+	/**
+	 * Helper method to tell whether all points have finished or been given up.
+	 */
+	private synchronized boolean isDone() {
+		return remaining == 0;
+	}
+
+	/**
+	 * Runs a sweep on worker processes from the command line and writes its statistics to one CSV file.
+	 * The arguments are those of {@link SweepRunner#main(String[])}, except that the number
+	 * of threads is the number of worker processes, and that the cache directory may be
+	 * accompanied by options of the worker virtual machines, which start with a dash:
+	 * <pre>
+	 * TCP-sender-versions number-of-iterations topology buffer-sizes receive-windows client-counts router-counts
+	 *     [workers] [Rounds|Events] [Fixed|Completion] [output-file] [cache-directory] [JVM-options...]
+	 * </pre>
+	 * For example, <code>Tahoe 100 Cloud 6244 65536 2:200:2 1 8 Rounds Fixed statisticsSweep.csv -Xmx1g</code>.
+	 *
+	 * @param argv_ the command line arguments
+	 */
+	public static void main(String[] argv_) {
+		if (argv_.length < 7) {
+			System.err.println(
+				"Please specify the TCP sender versions, the number of iterations, the topology, and the lists of " +
+				"buffer sizes, receive windows, client counts and router counts!"
+			);
+			System.exit(1);
+		}
+		List<SweepPoint> points_ = null;
+		int workers_ = Runtime.getRuntime().availableProcessors();
+		try {
+			if (argv_.length > 7) {
+				workers_ = Integer.parseInt(argv_[7]);
+			}
+			points_ = SweepRunner.grid(
+				argv_[0].split(","), Integer.parseInt(argv_[1]), argv_[2],
+				SweepRunner.parseList(argv_[3]), SweepRunner.parseList(argv_[4]),
+				SweepRunner.parseList(argv_[5]), SweepRunner.parseList(argv_[6]),
+				argv_.length > 8 && argv_[8].equalsIgnoreCase("events"),
+				argv_.length > 9 && argv_[9].equalsIgnoreCase("completion")
+			);
+		} catch (NumberFormatException ex) {
+			System.err.println("The number of iterations, the parameter lists and the number of workers must be integers.");
+			System.exit(1);
+		}
+		File file_ = new File((argv_.length > 10) ? argv_[10] : SweepRunner.SWEEP_FILENAME);
+		List<String> jvmOptions_ = new ArrayList<String>();
+		String cacheDirectory_ = null;
+		for (int i = 11; i < argv_.length; i++) {
+			if (argv_[i].startsWith("-")) {
+				jvmOptions_.add(argv_[i]);
+			} else {
+				cacheDirectory_ = argv_[i];
+			}
+		}
+
+		SimulationConfig config_ = new SimulationConfig();
+		config_.setReportingLevel(0);
+		SweepCoordinator coordinator_ = new SweepCoordinator(points_, config_, workers_, jvmOptions_);
+		if (cacheDirectory_ != null) {
+			try {
+				coordinator_.setCache(new ResultsCache(new File(cacheDirectory_)));
+			} catch (IOException ex) {
+				System.err.println(ex.getMessage());
+				System.exit(1);
+			}
+		}
+		long start_ = System.currentTimeMillis();
+		List<SimulationStatistics> results_ = coordinator_.run();
+		try {
+			coordinator_.write(results_, file_);
+		} catch (IOException ex) {
+			System.err.println("Unable to write statistics to " + file_ + ": " + ex.toString());
+			System.exit(1);
+		}
+		System.out.println(
+			"Ran " + points_.size() + " points on " + workers_ + " worker processes in " +
+			(System.currentTimeMillis() - start_) + " ms; statistics written to " + file_
+		);
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.Serializable;
+
+/**
+ * One point of a parameter sweep: the parameters of a single run of the
+ * simulator, as given on its command line (see {@link Simulator#main(String[])}).
+ * A point is immutable, so it can be handed to any thread, or to another
+ * process, and run there with {@link #run(SimulationConfig)}.
+ *
+ * @see SweepRunner
+ */
+public class SweepPoint implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The TCP version of the senders&mdash;one of: "Tahoe", "Reno", or "NewReno". */
+	private final String tcpVersion;
+
+	/** The number of iterations to run for. */
+	private final int iterations;
+
+	/** The topology&mdash;"Direct" or "Cloud". */
+	private final String topology;
+
+	/** The router buffer size, in bytes. */
+	private final int bufferSize;
+
+	/** The receive window of the receivers, in bytes. */
+	private final int rcvWindow;
+
+	/** The number of clients. */
+	private final int clients;
+
+	/** The number of routers. */
+	private final int routers;
+
+	/** Whether the point runs on the event-driven engine instead of the round-based one. */
+	private final boolean eventDriven;
+
+	/** Whether the point runs until all flows complete instead of for a fixed number of iterations. */
+	private final boolean runToCompletion;
+
+	/**
+	 * Constructor.
+	 * @param tcpVersion_ the TCP version of the senders&mdash;one of: "Tahoe", "Reno", or "NewReno"
+	 * @param iterations_ the number of iterations to run for
+	 * @param topology_ the topology&mdash;"Direct" or "Cloud"
+	 * @param bufferSize_ the router buffer size, in bytes
+	 * @param rcvWindow_ the receive window of the receivers, in bytes
+	 * @param clients_ the number of clients
+	 * @param routers_ the number of routers
+	 * @param eventDriven_ <code>true</code> for the event-driven engine, <code>false</code> for the round-based one
+	 * @param runToCompletion_ <code>true</code> to run until all flows complete
+	 */
+	public SweepPoint(
+		String tcpVersion_, int iterations_, String topology_, int bufferSize_, int rcvWindow_,
+		int clients_, int routers_, boolean eventDriven_, boolean runToCompletion_
+	) {
+		this.tcpVersion = tcpVersion_;
+		this.iterations = iterations_;
+		this.topology = topology_;
+		this.bufferSize = bufferSize_;
+		this.rcvWindow = rcvWindow_;
+		this.clients = clients_;
+		this.routers = routers_;
+		this.eventDriven = eventDriven_;
+		this.runToCompletion = runToCompletion_;
+	}
+
+	/**
+	 * Runs the simulation of this point to the end.
+	 * Nothing is written to the statistics file unless the given
+	 * configuration asks for it; the statistics are returned instead.
+	 * @param config_ the configuration of the simulator
+	 * @return the statistics of the run
+	 */
+	public SimulationStatistics run(SimulationConfig config_) {
+		Simulator simulator_ = new Simulator(
+			tcpVersion, bufferSize, rcvWindow, topology, clients, routers,
+			Simulator.DEFAULT_TIME_UNITS_PER_TICK, config_
+		);
+		simulator_.setEventDriven(eventDriven);
+		simulator_.setRunToCompletion(runToCompletion);
+
+		if (eventDriven) {
+			simulator_.runEventDrivenSimulation(iterations);
+		} else {
+			simulator_.runSimulation(iterations);
+		}
+		return simulator_.getStatistics();
+	}
+
+	/**
+	 * @return the TCP version of the senders
+	 */
+	public String getTcpVersion() {
+		return tcpVersion;
+	}
+
+	/**
+	 * @return the number of iterations to run for
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return the topology&mdash;"Direct" or "Cloud"
+	 */
+	public String getTopology() {
+		return topology;
+	}
+
+	/**
+	 * @return the router buffer size, in bytes
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return the receive window of the receivers, in bytes
+	 */
+	public int getRcvWindow() {
+		return rcvWindow;
+	}
+
+	/**
+	 * @return the number of clients
+	 */
+	public int getClients() {
+		return clients;
+	}
+
+	/**
+	 * @return the number of routers
+	 */
+	public int getRouters() {
+		return routers;
+	}
+
+	/**
+	 * @return <code>true</code> if the point runs on the event-driven engine
+	 */
+	public boolean isEventDriven() {
+		return eventDriven;
+	}
+
+	/**
+	 * @return <code>true</code> if the point runs until all flows complete
+	 */
+	public boolean isRunToCompletion() {
+		return runToCompletion;
+	}
+
+	/**
+	 * @return the command line arguments of {@link Simulator#main(String[])} for this point
+	 */
+	public String toString() {
+		return tcpVersion + " " + iterations + " " + topology + " " + bufferSize + " " + rcvWindow + " " +
+			clients + " " + routers + " " + (eventDriven ? "Events" : "Rounds") + " " +
+			(runToCompletion ? "Completion" : "Fixed");
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Runs a parameter sweep&mdash;every combination of TCP versions, buffer
+ * sizes, receive windows, client counts and router counts&mdash;in one
+ * process, on a bounded pool of threads. This replaces the batch files
+ * that start a new Java process for every point: the classes are loaded
+ * and compiled once, the points run concurrently on all processors, and
+ * the statistics are collected in memory and written to one CSV file at
+ * the end, in the order of the points, instead of being appended by
+ * every run.</p>
+ *
+ * <p>Each point runs on its own {@link Simulator} with its own copy of the
+ * configuration, so the points do not interfere with each other and produce
+ * the same statistics as separate runs of the program.</p>
+ *
+ * @see SweepPoint
+ */
+public class SweepRunner {
+	/** The name of the file the statistics of a sweep are written to by default. */
+	public static final String SWEEP_FILENAME = "statisticsSweep.csv";
+
+	/** The columns that identify the point of a row, ahead of {@link SimulationStatistics#HEADER}. */
+	public static final String[] POINT_HEADER = { "Topology", "Buffer Size", "Receive Window" };
+
+	/** The points of the sweep. */
+	private final List<SweepPoint> points;
+
+	/** The configuration that every point gets a copy of. */
+	private final SimulationConfig config;
+
+	/** The number of points run at the same time. */
+	private final int threads;
+
+	/** The cache of the statistics of the points, or <code>null</code> to simulate every point. */
+	private ResultsCache cache = null;
+
+	/**
+	 * Constructor.
+	 * @param points_ the points of the sweep
+	 * @param config_ the configuration that every point gets a copy of;
+	 * the copies have the statistics file turned off
+	 * @param threads_ the number of points to run at the same time
+	 * @throws IllegalArgumentException if the number of threads is not positive
+	 */
+	public SweepRunner(List<SweepPoint> points_, SimulationConfig config_, int threads_)
+		throws IllegalArgumentException {
+		if (threads_ < 1) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ":  The number of threads must be positive."
+			);
+		}
+		this.points = new ArrayList<SweepPoint>(points_);
+		this.config = config_;
+		this.threads = threads_;
+	}
+
+	/**
+	 * Creates the points for every combination of the given parameters.
+	 * The router counts vary fastest and the TCP versions slowest.
+	 *
+	 * @param tcpVersions_ the TCP versions of the senders
+	 * @param iterations_ the number of iterations of every point
+	 * @param topology_ the topology&mdash;"Direct" or "Cloud"
+	 * @param bufferSizes_ the router buffer sizes
+	 * @param rcvWindows_ the receive windows
+	 * @param clientCounts_ the numbers of clients
+	 * @param routerCounts_ the numbers of routers
+	 * @param eventDriven_ <code>true</code> for the event-driven engine
+	 * @param runToCompletion_ <code>true</code> to run every point until all flows complete
+	 * @return the points, in the order they are reported
+	 */
+	public static List<SweepPoint> grid(
+		String[] tcpVersions_, int iterations_, String topology_, int[] bufferSizes_, int[] rcvWindows_,
+		int[] clientCounts_, int[] routerCounts_, boolean eventDriven_, boolean runToCompletion_
+	) {
+		List<SweepPoint> points_ = new ArrayList<SweepPoint>();
+		for (String tcpVersion_ : tcpVersions_) {
+			for (int bufferSize_ : bufferSizes_) {
+				for (int rcvWindow_ : rcvWindows_) {
+					for (int clients_ : clientCounts_) {
+						for (int routers_ : routerCounts_) {
+							points_.add(new SweepPoint(
+								tcpVersion_, iterations_, topology_, bufferSize_, rcvWindow_,
+								clients_, routers_, eventDriven_, runToCompletion_
+							));
+						}
+					}
+				}
+			}
+		}
+		return points_;
+	}
+
+	/**
+	 * @param cache_ the cache to take the statistics of the points from, and to store
+	 * the statistics of the simulated points in, or <code>null</code> to simulate every point
+	 */
+	public void setCache(ResultsCache cache_) {
+		this.cache = cache_;
+	}
+
+	/**
+	 * Runs all points of the sweep and waits for them to finish.
+	 * The points found in the cache (see {@link #setCache(ResultsCache)}) are not simulated again.
+	 * A point that fails is reported on the standard error and
+	 * leaves a <code>null</code> in the results.
+	 * @return the statistics of each point, in the order of the points
+	 */
+	public List<SimulationStatistics> run() {
+		ExecutorService pool_ = Executors.newFixedThreadPool(threads);
+		List<SimulationStatistics> results_ = new ArrayList<SimulationStatistics>();
+		List<Future<SimulationStatistics>> futures_ = new ArrayList<Future<SimulationStatistics>>();
+		for (final SweepPoint point_ : points) {
+			final SimulationConfig config_ = new SimulationConfig(config);
+			config_.setStatisticsWritten(false);
+			SimulationStatistics cached_ = (cache != null) ? cache.get(point_, config_) : null;
+			results_.add(cached_);
+			if (cached_ != null) {
+				futures_.add(null);
+				continue;
+			}
+			futures_.add(pool_.submit(new Callable<SimulationStatistics>() {
+				public SimulationStatistics call() {
+					SimulationStatistics statistics_ = point_.run(config_);
+					store(point_, config_, statistics_);
+					return statistics_;
+				}
+			}));
+		}
+		pool_.shutdown();
+
+		for (int i = 0; i < futures_.size(); i++) {
+			if (futures_.get(i) == null) {
+				continue;
+			}
+			try {
+				results_.set(i, futures_.get(i).get());
+			} catch (ExecutionException ex) {
+				System.err.println("The point " + points.get(i) + " failed: " + ex.getCause().toString());
+			} catch (InterruptedException ex) {
+				pool_.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(
+					this.getClass().getName() + ":  Interrupted while waiting for the sweep."
+				);
+			}
+		}
+		return results_;
+	}
+
+	/**
+	 * Helper method to store the statistics of a simulated point in the cache, if there is one.
+	 * The sweep goes on if the cache cannot be written.
+	 */
+	private void store(SweepPoint point_, SimulationConfig config_, SimulationStatistics statistics_) {
+		if (cache == null) {
+			return;
+		}
+		try {
+			cache.put(point_, config_, statistics_);
+		} catch (IOException ex) {
+			System.err.println("Unable to cache the statistics of " + point_ + ": " + ex.toString());
+		}
+	}
+
+	/**
+	 * Writes the statistics of the sweep to a CSV file, one row per point
+	 * that did not fail. Any existing file is overwritten.
+	 * @param results_ the statistics of each point, as returned by {@link #run()}
+	 * @param file_ the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(List<SimulationStatistics> results_, File file_) throws IOException {
+		write(points, results_, file_);
+	}
+
+	/**
+	 * Writes the statistics of a sweep to a CSV file, one row per point
+	 * that did not fail. Any existing file is overwritten.
+	 * @param points_ the points of the sweep
+	 * @param results_ the statistics of each point, or <code>null</code> for the points that failed
+	 * @param file_ the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	static void write(List<SweepPoint> points_, List<SimulationStatistics> results_, File file_) throws IOException {
+		CSVWriter writer_ = new CSVWriter(
+			new FileWriter(file_), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_ESCAPE_CHARACTER
+		);
+		try {
+			writer_.writeNext(row(POINT_HEADER, SimulationStatistics.HEADER));
+			for (int i = 0; i < results_.size(); i++) {
+				if (results_.get(i) == null) {
+					continue;
+				}
+				SweepPoint point_ = points_.get(i);
+				String[] pointCells_ = {
+					point_.getTopology(), String.valueOf(point_.getBufferSize()), String.valueOf(point_.getRcvWindow())
+				};
+				writer_.writeNext(row(pointCells_, results_.get(i).toRow()));
+			}
+		} finally {
+			writer_.close();
+		}
+	}
+
+	/**
+	 * Helper method to join the cells of a point and of its statistics into one row.
+	 */
+	private static String[] row(String[] pointCells_, String[] statisticsCells_) {
+		String[] row_ = new String[pointCells_.length + statisticsCells_.length];
+		System.arraycopy(pointCells_, 0, row_, 0, pointCells_.length);
+		System.arraycopy(statisticsCells_, 0, row_, pointCells_.length, statisticsCells_.length);
+		return row_;
+	}
+
+	/**
+	 * Helper method to parse a comma-separated list of integers, where each item
+	 * is either a single value or a range <code>from:to:step</code> (or <code>from:to</code>
+	 * with the step one), e.g. <code>2:200:2</code> for 2, 4, ..., 200.
+	 */
+	static int[] parseList(String list_) throws NumberFormatException {
+		List<Integer> values_ = new ArrayList<Integer>();
+		for (String item_ : list_.split(",")) {
+			String[] range_ = item_.trim().split(":");
+			if (range_.length == 1) {
+				values_.add(Integer.valueOf(range_[0].trim()));
+				continue;
+			}
+			int from_ = Integer.parseInt(range_[0].trim());
+			int to_ = Integer.parseInt(range_[1].trim());
+			int step_ = (range_.length > 2) ? Integer.parseInt(range_[2].trim()) : 1;
+			if (range_.length > 3 || step_ <= 0) {
+				throw new NumberFormatException("Invalid range: " + item_);
+			}
+			for (int value_ = from_; value_ <= to_; value_ += step_) {
+				values_.add(value_);
+			}
+		}
+		int[] array_ = new int[values_.size()];
+		for (int i = 0; i < array_.length; i++) {
+			array_[i] = values_.get(i);
+		}
+		return array_;
+	}
+
+	/**
+	 * Runs a sweep from the command line and writes its statistics to one CSV file.
+	 * The arguments are:
+	 * <pre>
+	 * TCP-sender-versions number-of-iterations topology buffer-sizes receive-windows client-counts router-counts
+	 *     [threads] [Rounds|Events] [Fixed|Completion] [output-file] [cache-directory]
+	 * </pre>
+	 * where the TCP versions are a comma-separated list, and the buffer sizes, receive windows,
+	 * client and router counts are comma-separated lists of values or <code>from:to:step</code> ranges.
+	 * For example, the client sweep of <code>runCloudSimulation.bat</code> for all TCP versions is
+	 * <code>Tahoe,Reno,NewReno 100 Cloud 6244 65536 2:200:2 1</code>.
+	 * The number of threads defaults to the number of processors, and the output file
+	 * to {@link #SWEEP_FILENAME}. If a cache directory is given, the points already simulated
+	 * with the same parameters are taken from the {@link ResultsCache} there, and the new
+	 * points are added to it. The detailed reports of the points are turned off.
+	 *
+	 * @param argv_ the command line arguments
+	 */
+	public static void main(String[] argv_) {
+		if (argv_.length < 7) {
+			System.err.println(
+				"Please specify the TCP sender versions, the number of iterations, the topology, and the lists of " +
+				"buffer sizes, receive windows, client counts and router counts!"
+			);
+			System.exit(1);
+		}
+		List<SweepPoint> points_ = null;
+		int threads_ = Runtime.getRuntime().availableProcessors();
+		try {
+			if (argv_.length > 7) {
+				threads_ = Integer.parseInt(argv_[7]);
+			}
+			points_ = grid(
+				argv_[0].split(","), Integer.parseInt(argv_[1]), argv_[2],
+				parseList(argv_[3]), parseList(argv_[4]), parseList(argv_[5]), parseList(argv_[6]),
+				argv_.length > 8 && argv_[8].equalsIgnoreCase("events"),
+				argv_.length > 9 && argv_[9].equalsIgnoreCase("completion")
+			);
+		} catch (NumberFormatException ex) {
+			System.err.println("The number of iterations, the parameter lists and the number of threads must be integers.");
+			System.exit(1);
+		}
+		File file_ = new File((argv_.length > 10) ? argv_[10] : SWEEP_FILENAME);
+
+		SimulationConfig config_ = new SimulationConfig();
+		config_.setReportingLevel(0);
+		SweepRunner runner_ = new SweepRunner(points_, config_, threads_);
+		if (argv_.length > 11) {
+			try {
+				runner_.setCache(new ResultsCache(new File(argv_[11])));
+			} catch (IOException ex) {
+				System.err.println(ex.getMessage());
+				System.exit(1);
+			}
+		}
+		long start_ = System.currentTimeMillis();
+		List<SimulationStatistics> results_ = runner_.run();
+		try {
+			runner_.write(results_, file_);
+		} catch (IOException ex) {
+			System.err.println("Unable to write statistics to " + file_ + ": " + ex.toString());
+			System.exit(1);
+		}
+		System.out.println(
+			"Ran " + points_.size() + " points on " + threads_ + " threads in " +
+			(System.currentTimeMillis() - start_) + " ms; statistics written to " + file_
+		);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * A worker process of a {@link SweepCoordinator}. The worker runs the points
+ * of a sweep that the coordinator hands it, one at a time, and sends back the
+ * statistics of each. It talks to the coordinator over its standard input and
+ * output with object streams:</p>
+ *
+ * <ol>
+ * <li>The coordinator sends the {@link SimulationConfig} of the points.</li>
+ * <li>The worker sends the index <code>-1</code> to ask for its first point.</li>
+ * <li>The coordinator sends the index and the {@link SweepPoint} to run,
+ * or the index <code>-1</code> when there is no more work.</li>
+ * <li>The worker runs the point and sends back its index followed by the
+ * {@link SimulationStatistics}, or by the error message if the point failed.
+ * This also asks for the next point, so the worker never waits for work
+ * that another worker could take.</li>
+ * </ol>
+ *
+ * <p>Whatever the simulators print to the standard output goes to the
+ * standard error instead, so that it does not corrupt the streams.</p>
+ */
+public class SweepWorker {
+	/** The index sent in place of a point index to ask for work, and to say that there is none. */
+	static final int NO_POINT = -1;
+
+	/** The stream the requests are read from. */
+	private final ObjectInputStream in;
+
+	/** The stream the results are written to. */
+	private final ObjectOutputStream out;
+
+	/**
+	 * Constructor. Opens the object streams; the output stream header is
+	 * sent before the input stream header is read, as on the other side.
+	 * @param in_ the stream from the coordinator
+	 * @param out_ the stream to the coordinator
+	 * @throws IOException if the streams cannot be opened
+	 */
+	SweepWorker(InputStream in_, OutputStream out_) throws IOException {
+		this.out = new ObjectOutputStream(new BufferedOutputStream(out_));
+		this.out.flush();
+		this.in = new ObjectInputStream(new BufferedInputStream(in_));
+	}
+
+	/**
+	 * Runs points until the coordinator has no more of them.
+	 * @throws IOException if the connection to the coordinator fails
+	 * @throws ClassNotFoundException if the coordinator sends an unknown class
+	 */
+	void serve() throws IOException, ClassNotFoundException {
+		SimulationConfig config_ = (SimulationConfig) in.readObject();
+		out.writeInt(NO_POINT);
+		out.flush();
+
+		while (true) {
+			int index_ = in.readInt();
+			if (index_ == NO_POINT) {
+				break;
+			}
+			SweepPoint point_ = (SweepPoint) in.readObject();
+			Object result_;
+			try {
+				result_ = point_.run(new SimulationConfig(config_));
+			} catch (RuntimeException ex) {
+				result_ = ex.toString();
+			}
+			out.writeInt(index_);
+			out.writeObject(result_);
+			out.reset();	// the written objects need not be remembered
+			out.flush();
+		}
+		out.close();
+	}
+
+	/**
+	 * Runs a worker on the standard input and output of the process.
+	 * This is started by the {@link SweepCoordinator}, not by the user.
+	 * @param argv_ the command line arguments, which are ignored
+	 */
+	public static void main(String[] argv_) {
+		OutputStream stdout_ = new FileOutputStream(FileDescriptor.out);
+		System.setOut(System.err);
+		try {
+			new SweepWorker(System.in, stdout_).serve();
+		} catch (Exception ex) {
+			System.err.println("Sweep worker failed: " + ex.toString());
+			System.exit(1);
+		}
+	}
+}
@@ -10,20 +10,33 @@ package simulation;
  * The simulator components cannot use actual system timers
  * because the timers must run on simulated time.</p>
  * 
- * <p>The time units for the timer are the <em>simulator clock
- * ticks</em>, instead of actual time units, such as seconds.</p>
+ * <p>The time of the timer is given in the integer <em>time units</em>
+ * of the simulator clock (see {@link Simulator#getTimeIncrement()}),
+ * instead of actual time units, such as seconds.</p>
+ * 
+ * <p>When the simulator runs in the event-driven mode, a running
+ * timer is simply an event scheduled at its expiration time
+ * (see {@link SimulationEvent}).</p>
  * 
  * @author Ivan Marsic
  */
-public class TimerSimulated implements Cloneable {
+public class TimerSimulated extends SimulationEvent implements Cloneable {
+	private static final long serialVersionUID = 1L;
+
 	/** The callback object that will be called when this timer expires. */
 	public TimedComponent callback;
 	
 	/** Type of the timer, to help the component distinguish between multiple running timers. */
 	public int type;
 
-	/** The future time when this timer will expire. */
-	private double time;
+	/** Links to the neighboring timers in the {@link TimingWheel} list
+	 * that currently holds this timer, if the timer is running. */
+	TimerSimulated prev = null;
+	TimerSimulated next = null;
+
+	/** The {@link TimingWheel} list that currently holds this timer,
+	 * or <code>null</code> if the timer is not running. */
+	TimingWheel.TimerList owner = null;
 
 	/**
 	 * <p><b>Note:</b> The constructor should check that <code>time_</code>
@@ -33,7 +46,7 @@ public class TimerSimulated implements Cloneable {
 	 * @param type_ timer type, in case the component is running multiple timers
 	 * @param time_ future time when this timer will fire
 	 */
-	public TimerSimulated(TimedComponent callback_, int type_, double time_) {
+	public TimerSimulated(TimedComponent callback_, int type_, long time_) {
 		callback = callback_;
 		type = type_;
 		setTime(time_); //TODO: should check that the time is in the future!
@@ -41,25 +54,51 @@ public class TimerSimulated implements Cloneable {
 
 	/**
 	 * This method is part of the java.lang.Cloneable interface.
+	 * The clone is never linked into a {@link TimingWheel},
+	 * even if this timer is currently running.
 	 */
 	public Object clone() {
         try {
-            return super.clone();
+        	TimerSimulated copy_ = (TimerSimulated) super.clone();
+        	copy_.prev = null;
+        	copy_.next = null;
+        	copy_.owner = null;
+        	copy_.heapIndex = -1;
+            return copy_;
         } catch(CloneNotSupportedException ex) {
         	System.out.print("TimerSimulated.clone():\t" + ex.toString());
             return null;
         }
     }
 
-	/** Returns the time when this timer expires. */
-	public double getTime() {
-		return time;
+	/**
+	 * @return <code>true</code> if this timer is currently registered
+	 * with the simulator and has not yet fired or been cancelled
+	 */
+	public boolean isRunning() {
+		return owner != null || isScheduled();
+	}
+
+	/**
+	 * Fires this timer in the event-driven mode, by calling the callback.
+	 * @see SimulationEvent#fire()
+	 */
+	@Override
+	public void fire() {
+		callback.timerExpired(type);
 	}
 
 	/**
 	 * @param time the time to set
+	 * @throws IllegalStateException if this timer is running; use
+	 * {@link Simulator#reschedule(TimerSimulated, long)} to move a running timer
 	 */
-	public void setTime(double time) {
+	public void setTime(long time) {
+		if (isRunning()) {
+			throw new IllegalStateException(
+				this.getClass().getName() + ".setTime():  Attempting to change a running timer."
+			);
+		}
 		this.time = time;
 	}
 }
\ No newline at end of file
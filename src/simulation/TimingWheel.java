@@ -0,0 +1,428 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import java.io.Serializable;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel that stores the timers registered
+ * with the {@link Simulator}.</p>
+ *
+ * <p>Each running timer is linked directly into a slot list
+ * (see {@link TimerSimulated#next}), so starting and cancelling
+ * a timer are constant-time operations that do not copy or
+ * search any container. The wheel has {@link #LEVELS} levels
+ * of {@link #SLOTS} slots each; a slot on level <code>L</code>
+ * spans <code>SLOTS<sup>L</sup></code> clock ticks. As the clock
+ * advances, the timers from a coarse slot are "cascaded" down
+ * to the finer levels, until they reach level zero and expire.</p>
+ *
+ * <p>Expired timers are not fired by the wheel itself. They are moved
+ * to a list kept for their {@link TimedComponent}, and fired only when
+ * the component asks for it, via {@link #fireExpired(TimedComponent, long)}.
+ * This preserves the contract of {@link Simulator#checkExpiredTimers(TimedComponent)},
+ * where the caller decides which component's timers are checked when.</p>
+ *
+ * @see Simulator#setTimeoutAt(TimerSimulated)
+ * @see Simulator#cancelTimeout(TimerSimulated)
+ * @see Simulator#reschedule(TimerSimulated, long)
+ */
+public class TimingWheel implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Binary logarithm of the number of slots per level. */
+	static final int SLOT_BITS = 6;
+
+	/** Number of slots on each level of the wheel ({@value}). */
+	static final int SLOTS = 1 << SLOT_BITS;
+
+	/** Mask for extracting the slot index from a tick number. */
+	static final int SLOT_MASK = SLOTS - 1;
+
+	/** Number of levels of the wheel. With 64 slots per level,
+	 * the wheel covers 2<sup>24</sup> ticks ahead of the current time;
+	 * timers that are even further in the future are kept in {@link #overflow}. */
+	static final int LEVELS = 4;
+
+	/** Duration of one slot on the finest level, in simulator time units. */
+	private long resolution = 1;
+
+	/** Slot lists for all levels, indexed as <code>[level][slot]</code>. */
+	private TimerList[][] slots = new TimerList[LEVELS][SLOTS];
+
+	/** Number of timers currently stored on each level. */
+	private int[] levelCounts = new int[LEVELS];
+
+	/** Timers that expire beyond the range covered by the wheel. */
+	private TimerList overflow = new TimerList(-1);
+
+	/** The last tick of the wheel that has been processed.
+	 * Every timer that expires at or before this tick has been moved
+	 * to its component's list in {@link #expired}. */
+	private long wheelTick = Long.MIN_VALUE;
+
+	/** Expired timers, waiting to be fired, for each timed component. */
+	private IdentityHashMap<TimedComponent, TimerList> expired =
+		new IdentityHashMap<TimedComponent, TimerList>();
+
+	/** Total number of running timers, expired or not. */
+	private int size = 0;
+
+	/**
+	 * Constructor.
+	 * @param resolution_ the duration of one slot on the finest level
+	 * of the wheel, in simulator time units
+	 */
+	public TimingWheel(long resolution_) {
+		this.resolution = resolution_;
+		for (int level_ = 0; level_ < LEVELS; level_++) {
+			for (int slot_ = 0; slot_ < SLOTS; slot_++) {
+				slots[level_][slot_] = new TimerList(level_);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of timers currently running (expired but not yet fired included)
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Starts a timer. The timer must not be already running.
+	 *
+	 * @param timer_ the timer to insert, expiring at {@link TimerSimulated#getTime()}
+	 * @throws IllegalArgumentException if the timer is already running
+	 */
+	public void add(TimerSimulated timer_) throws IllegalArgumentException {
+		if (timer_.owner != null) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".add():  Attempting to add an existing timer."
+			);
+		}
+		size++;
+		place(timer_);
+	}
+
+	/**
+	 * Stops a running timer.
+	 *
+	 * @param timer_ the timer to remove
+	 * @throws IllegalArgumentException if the timer is not running
+	 */
+	public void remove(TimerSimulated timer_) throws IllegalArgumentException {
+		if (timer_.owner == null) {
+			throw new IllegalArgumentException(
+				this.getClass().getName() + ".remove():  Attempting to remove a non-existing timer."
+			);
+		}
+		unlink(timer_);
+		size--;
+	}
+
+	/**
+	 * Advances the wheel up to the given time. All timers that
+	 * expire within the clock tick of <code>currentTime_</code> or earlier
+	 * are moved to the lists of expired timers of their components.
+	 *
+	 * @param currentTime_ the current simulation time
+	 */
+	public void advanceTo(long currentTime_) {
+		long targetTick_ = tickOf(currentTime_);
+		if (wheelTick == Long.MIN_VALUE || size == 0) {
+			// Nothing to cascade, simply jump ahead:
+			wheelTick = targetTick_;
+			return;
+		}
+
+		while (wheelTick < targetTick_) {
+			if (levelCounts[0] == 0 && (wheelTick & SLOT_MASK) != SLOT_MASK) {
+				// The finest level is empty, so skip to the end of its
+				// current rotation, where the coarser levels will cascade.
+				wheelTick = Math.min(targetTick_, wheelTick | SLOT_MASK);
+				continue;
+			}
+			wheelTick++;
+
+			// Cascade the coarser levels whose slot boundary we just crossed,
+			// starting from the coarsest, so that everything ends up on level zero:
+			for (int level_ = LEVELS; level_ >= 1; level_--) {
+				long mask_ = (1L << (SLOT_BITS * level_)) - 1;
+				if ((wheelTick & mask_) != 0) continue;
+
+				if (level_ == LEVELS) {
+					cascade(overflow);
+				} else {
+					cascade(slots[level_][slotIndex(wheelTick, level_)]);
+				}
+			}
+
+			// Move the timers expiring in this tick to their components:
+			TimerList slot_ = slots[0][slotIndex(wheelTick, 0)];
+			TimerSimulated timer_ = slot_.head;
+			while (timer_ != null) {
+				TimerSimulated next_ = timer_.next;
+				unlink(timer_);
+				expiredList(timer_.callback).append(timer_);
+				timer_ = next_;
+			}
+		}
+	}
+
+	/**
+	 * Fires the expired timers of the given component,
+	 * by calling its {@link TimedComponent#timerExpired(int)} callback.
+	 * The wheel must have been advanced ({@link #advanceTo(long)})
+	 * to the current time before calling this method.
+	 *
+	 * @param component_ the timed component for which to fire the expired timers
+	 * @param currentTime_ the current simulation time
+	 */
+	public void fireExpired(TimedComponent component_, long currentTime_) {
+		fireExpired(component_, currentTime_, null);
+	}
+
+	/**
+	 * Fires the expired timers of the given component, as {@link #fireExpired(TimedComponent, long)}
+	 * does, and records every fired timer in the given journal.
+	 *
+	 * @param component_ the timed component for which to fire the expired timers
+	 * @param currentTime_ the current simulation time
+	 * @param journal_ the journal of the simulation events, or <code>null</code> if none is kept
+	 */
+	void fireExpired(TimedComponent component_, long currentTime_, EventJournal journal_) {
+		TimerList list_ = expired.get(component_);
+		if (list_ == null) return;
+
+		TimerSimulated timer_ = list_.head;
+		while (timer_ != null) {
+			if (timer_.getTime() <= currentTime_) {
+				list_.remove(timer_);
+				size--;
+				if (journal_ != null) {
+					journal_.timerFired(timer_);
+				}
+				timer_.callback.timerExpired(timer_.type);
+				// The callback may have started or cancelled
+				// other timers, so start over from the head:
+				timer_ = list_.head;
+			} else {
+				timer_ = timer_.next;
+			}
+		}
+	}
+
+	/**
+	 * Stops all running timers, expired or not, and appends them to the given list,
+	 * so that they can be started again on another wheel.
+	 *
+	 * @param timers_ the list to receive the timers of this wheel
+	 */
+	void removeAll(List<TimerSimulated> timers_) {
+		for (TimerList list_ : expired.values()) {
+			drain(list_, timers_);
+		}
+		expired.clear();
+		for (int level_ = 0; level_ < LEVELS; level_++) {
+			for (int slot_ = 0; slot_ < SLOTS; slot_++) {
+				drain(slots[level_][slot_], timers_);
+			}
+			levelCounts[level_] = 0;
+		}
+		drain(overflow, timers_);
+		size = 0;
+	}
+
+	/** Detaches all timers from the given list and appends them to the given list of timers. */
+	private static void drain(TimerList list_, List<TimerSimulated> timers_) {
+		TimerSimulated timer_ = list_.head;
+		list_.head = null;
+		list_.tail = null;
+		while (timer_ != null) {
+			TimerSimulated next_ = timer_.next;
+			timer_.prev = null;
+			timer_.next = null;
+			timer_.owner = null;
+			timers_.add(timer_);
+			timer_ = next_;
+		}
+	}
+
+	/**
+	 * Finds the earliest expiration time among the running timers,
+	 * including the expired timers that have not been fired yet.
+	 * Used by the simulator to fast-forward its clock over idle periods.
+	 *
+	 * @return the earliest expiration time, or
+	 * <code>Long.MAX_VALUE</code> if no timer is running
+	 */
+	public long nextExpiry() {
+		long earliest_ = Long.MAX_VALUE;
+		if (size == 0) return earliest_;
+
+		for (TimerList list_ : expired.values()) {
+			earliest_ = Math.min(earliest_, earliestIn(list_));
+		}
+		for (int level_ = 0; level_ < LEVELS; level_++) {
+			if (levelCounts[level_] == 0) continue;
+			for (int slot_ = 0; slot_ < SLOTS; slot_++) {
+				earliest_ = Math.min(earliest_, earliestIn(slots[level_][slot_]));
+			}
+		}
+		return Math.min(earliest_, earliestIn(overflow));
+	}
+
+	/** Returns the earliest expiration time in the given list. */
+	private static long earliestIn(TimerList list_) {
+		long earliest_ = Long.MAX_VALUE;
+		for (TimerSimulated timer_ = list_.head; timer_ != null; timer_ = timer_.next) {
+			earliest_ = Math.min(earliest_, timer_.getTime());
+		}
+		return earliest_;
+	}
+
+	/**
+	 * Helper method to put a timer into the slot appropriate
+	 * for its expiration time, relative to {@link #wheelTick}.
+	 */
+	private void place(TimerSimulated timer_) {
+		long tick_ = tickOf(timer_.getTime());
+		if (wheelTick == Long.MIN_VALUE) {
+			// The wheel starts at the first time it sees:
+			wheelTick = tick_ - 1;
+		}
+
+		long delta_ = tick_ - wheelTick;
+		if (delta_ <= 0) {
+			// Already expired; ready to be fired
+			expiredList(timer_.callback).append(timer_);
+			return;
+		}
+		for (int level_ = 0; level_ < LEVELS; level_++) {
+			if (delta_ < (1L << (SLOT_BITS * (level_ + 1)))) {
+				slots[level_][slotIndex(tick_, level_)].append(timer_);
+				levelCounts[level_]++;
+				return;
+			}
+		}
+		overflow.append(timer_);
+	}
+
+	/**
+	 * Helper method to re-insert all timers from a coarse slot
+	 * into the finer levels of the wheel.
+	 * The list is detached first, because the timers that are still
+	 * beyond the wheel go back onto the same {@link #overflow} list.
+	 */
+	private void cascade(TimerList list_) {
+		TimerSimulated timer_ = list_.head;
+		list_.head = null;
+		list_.tail = null;
+		while (timer_ != null) {
+			TimerSimulated next_ = timer_.next;
+			timer_.prev = null;
+			timer_.next = null;
+			timer_.owner = null;
+			if (list_.level >= 0) {
+				levelCounts[list_.level]--;
+			}
+			place(timer_);
+			timer_ = next_;
+		}
+	}
+
+	/**
+	 * Helper method to unlink a timer from whatever list holds it,
+	 * and to keep the per-level counts up to date.
+	 */
+	private void unlink(TimerSimulated timer_) {
+		TimerList list_ = timer_.owner;
+		if (list_.level >= 0) {
+			levelCounts[list_.level]--;
+		}
+		list_.remove(timer_);
+	}
+
+	/** Returns the list of expired timers for the given component, creating it on first use. */
+	private TimerList expiredList(TimedComponent component_) {
+		TimerList list_ = expired.get(component_);
+		if (list_ == null) {
+			list_ = new TimerList(-1);
+			expired.put(component_, list_);
+		}
+		return list_;
+	}
+
+	/** Converts a simulation time into the number of the wheel tick that contains it. */
+	private long tickOf(long time_) {
+		long tick_ = time_ / resolution;
+		// Round towards negative infinity, also for negative times:
+		return (time_ < 0 && tick_ * resolution != time_) ? tick_ - 1 : tick_;
+	}
+
+	/** Returns the index of the slot on the given level for the given tick. */
+	private static int slotIndex(long tick_, int level_) {
+		return (int) ((tick_ >> (SLOT_BITS * level_)) & SLOT_MASK);
+	}
+
+
+	// ----------------------------------------------------------------------
+	/**
+	 * Intrusive doubly-linked list of timers.
+	 * Timers link to each other through their own fields,
+	 * so no list nodes are ever allocated.
+	 */
+	static class TimerList implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/** First and last timer in this list. */
+		TimerSimulated head = null;
+		TimerSimulated tail = null;
+
+		/** The wheel level of this list, or <code>-1</code>
+		 * if the list is not a slot of the wheel. */
+		int level = -1;
+
+		/**
+		 * @param level_ the wheel level of this list, or <code>-1</code> if none
+		 */
+		TimerList(int level_) {
+			this.level = level_;
+		}
+
+		/** Appends a timer at the end of this list. */
+		void append(TimerSimulated timer_) {
+			timer_.owner = this;
+			timer_.prev = tail;
+			timer_.next = null;
+			if (tail == null) {
+				head = timer_;
+			} else {
+				tail.next = timer_;
+			}
+			tail = timer_;
+		}
+
+		/** Removes a timer that belongs to this list. */
+		void remove(TimerSimulated timer_) {
+			if (timer_.prev == null) {
+				head = timer_.next;
+			} else {
+				timer_.prev.next = timer_.next;
+			}
+			if (timer_.next == null) {
+				tail = timer_.prev;
+			} else {
+				timer_.next.prev = timer_.prev;
+			}
+			timer_.prev = null;
+			timer_.next = null;
+			timer_.owner = null;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation;
+
+import simulation.network.Link;
+import simulation.network.NetworkElement;
+import simulation.network.Packet;
+import simulation.network.Router;
+import simulation.tcp.Receiver;
+import simulation.tcp.Sender;
+import simulation.tcp.SenderState;
+
+/**
+ * Receives the typed trace events of a simulation, such as the segments
+ * sent by the TCP senders, the packets sent on the links and dropped
+ * by the routers, and the changes of the senders' congestion state.
+ * The time of an event is the current time of the simulator that
+ * reports it.</p>
+ *
+ * <p>Each {@link Simulator} reports its events to one tracer
+ * (see {@link Simulator#setTracer(Tracer)}). By default, this is
+ * {@link #NONE}, whose methods are empty, so the JIT compiler removes
+ * the calls from the hot paths altogether. {@link ConsoleTracer} prints
+ * the events as the classic console report, and {@link AsyncTraceWriter}
+ * writes them to a file on a background thread.</p>
+ *
+ * <p>In the round-based engine with several threads
+ * (see {@link Simulator#setParallelism(int)}), the senders of different
+ * flows report their events concurrently.</p>
+ *
+ * @see EventJournal
+ */
+public interface Tracer {
+	/** The tracer that ignores all events. */
+	Tracer NONE = new None();
+
+	/**
+	 * Reports the start of a transmission round of the round-based engine.
+	 * @param tick_ the clock tick of the round
+	 */
+	void tickStarted(long tick_);
+
+	/**
+	 * Reports the congestion control parameters of a sender
+	 * each time it is about to send.
+	 * @param sender_ the sender
+	 * @param congWindow_ the congestion window, in bytes
+	 * @param effectiveWindow_ the usable window, in bytes
+	 * @param flightSize_ the number of unacknowledged bytes
+	 * @param ssThresh_ the slow start threshold, in bytes
+	 */
+	void windowSampled(Sender sender_, int congWindow_, int effectiveWindow_, int flightSize_, int ssThresh_);
+
+	/**
+	 * Reports that a sender has no full segment of data left to send.
+	 * @param sender_ the sender
+	 * @param remaining_ the number of bytes left in the sender's input bytestream
+	 */
+	void dataExhausted(Sender sender_, int remaining_);
+
+	/**
+	 * Reports a packet handed to a link.
+	 * @param link_ the link
+	 * @param source_ the node that sent the packet
+	 * @param packet_ the packet
+	 */
+	void packetSent(Link link_, NetworkElement source_, Packet packet_);
+
+	/**
+	 * Reports a packet dropped by a router for the lack of memory.
+	 * @param router_ the router
+	 * @param packet_ the dropped packet
+	 */
+	void packetDropped(Router router_, Packet packet_);
+
+	/**
+	 * Reports the transition of a sender to another congestion control state.
+	 * @param sender_ the sender
+	 * @param state_ the sender's new state
+	 */
+	void stateChanged(Sender sender_, SenderState state_);
+
+	/**
+	 * Reports a new value of the retransmission timeout of a sender,
+	 * after a new RTT sample or a timer backoff.
+	 * @param sender_ the sender
+	 * @param estimatedRTT_ the estimated round-trip time, in clock ticks
+	 * @param devRTT_ the deviation of the round-trip time, in clock ticks
+	 * @param timeoutInterval_ the base retransmission timeout, in clock ticks
+	 * @param backoff_ the current backoff multiplier of the timeout
+	 */
+	void timeoutUpdated(Sender sender_, int estimatedRTT_, int devRTT_, double timeoutInterval_, int backoff_);
+
+	/**
+	 * Reports that a sender received the third duplicate acknowledgment
+	 * and retransmits the oldest unacknowledged segment.
+	 * @param sender_ the sender
+	 */
+	void fastRetransmit(Sender sender_);
+
+	/**
+	 * Reports a timer of a sender started or moved.
+	 * @param sender_ the sender
+	 * @param timerType_ the type of the timer (see {@link Sender#timerExpired(int)})
+	 * @param time_ the simulation time at which the timer fires
+	 */
+	void timerStarted(Sender sender_, int timerType_, long time_);
+
+	/**
+	 * Reports an expired timer of a sender.
+	 * @param sender_ the sender
+	 * @param timerType_ the type of the timer (see {@link Sender#timerExpired(int)})
+	 */
+	void timerExpired(Sender sender_, int timerType_);
+
+	/**
+	 * Reports the parameters of a receiver after it has handled
+	 * a data segment, or a batch of segments that arrived together.
+	 * @param receiver_ the receiver
+	 * @param lastByteRecvd_ the sequence number of the last byte received
+	 * @param nextByteExpected_ the sequence number of the next byte expected in order
+	 * @param rcvWindow_ the receive window, in bytes
+	 */
+	void receiverState(Receiver receiver_, int lastByteRecvd_, int nextByteExpected_, int rcvWindow_);
+
+	/**
+	 * The tracer that ignores all events.
+	 */
+	final class None implements Tracer {
+		private None() {
+		}
+
+		public void tickStarted(long tick_) {
+		}
+
+		public void windowSampled(Sender sender_, int congWindow_, int effectiveWindow_, int flightSize_, int ssThresh_) {
+		}
+
+		public void dataExhausted(Sender sender_, int remaining_) {
+		}
+
+		public void packetSent(Link link_, NetworkElement source_, Packet packet_) {
+		}
+
+		public void packetDropped(Router router_, Packet packet_) {
+		}
+
+		public void stateChanged(Sender sender_, SenderState state_) {
+		}
+
+		public void timeoutUpdated(Sender sender_, int estimatedRTT_, int devRTT_, double timeoutInterval_, int backoff_) {
+		}
+
+		public void fastRetransmit(Sender sender_) {
+		}
+
+		public void timerStarted(Sender sender_, int timerType_, long time_) {
+		}
+
+		public void timerExpired(Sender sender_, int timerType_) {
+		}
+
+		public void receiverState(Receiver receiver_, int lastByteRecvd_, int nextByteExpected_, int rcvWindow_) {
+		}
+	}
+}
@@ -6,6 +6,8 @@
  */
 package simulation.network;
 
+import java.util.Arrays;
+
 import simulation.Simulator;
 import simulation.tcp.Segment;
 import simulation.tcp.SenderNewReno;
@@ -27,6 +29,8 @@ import simulation.tcp.SenderTahoe;
  * @author Ivan Marsic
  */
 public class Endpoint extends NetworkElement {
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Communication link adjoining this endpoint.
 	 * This object provides network-layer services, link-layer services, etc.
@@ -46,6 +50,11 @@ public class Endpoint extends NetworkElement {
 	/** Created in the constructor; we assume a universal TCP receiver. */
 	protected Receiver receiver = null;
 
+	/** The ACKs and the data segments of a batch being handled,
+	 * see {@link #handleBatch(NetworkElement, Packet[], int)}; reused from batch to batch. */
+	private transient Segment[] acks = null;
+	private transient Segment[] dataSegments = null;
+
 	/**
 	 * Constructor.
 	 * 
@@ -119,6 +128,13 @@ public class Endpoint extends NetworkElement {
 		return sender;
 	}
 
+	/**
+	 * @return the local TCP receiver component
+	 */
+	public Receiver getReceiver() {
+		return receiver;
+	}
+
 	/** Returns the receive window size for this endpoint (in bytes)
 	 * by getting it from the local Receiver component. */
 	public int getLocalRcvWindow() {
@@ -159,7 +175,7 @@ public class Endpoint extends NetworkElement {
 	
 	    	// As a result of received ACKs, the sender's window
 	    	// may have opened to send some more segments:
-			sender.send(null);
+			sender.send(0);
 		
 		} else if (mode_ == 2) {
 			// Check if any of the currently running timers expired
@@ -177,7 +193,7 @@ public class Endpoint extends NetworkElement {
  	 */
 	@Override
  	public void send(NetworkElement source_, Packet newDataPkt_) {
-		sender.send(newDataPkt_.dataPayload);
+		sender.send(newDataPkt_.length);
  	}
  
 	/**
@@ -200,8 +216,8 @@ public class Endpoint extends NetworkElement {
  		Segment segment_ = (Segment) packet_;
  		if (segment_ == null) {	// not a TCP segment ??
  			if (
- 				(Simulator.currentReportingLevel & Simulator.REPORTING_SENDERS) != 0 ||
- 				(Simulator.currentReportingLevel & Simulator.REPORTING_RECEIVERS) != 0
+ 				getSimulator().getConfig().isReporting(Simulator.REPORTING_SENDERS) ||
+ 				getSimulator().getConfig().isReporting(Simulator.REPORTING_RECEIVERS)
  			) {
  				System.out.print("Endpoint.handle(): unknown packet type");
  			}
@@ -210,6 +226,12 @@ public class Endpoint extends NetworkElement {
 
  		if (segment_.isAck) { // An acknowledgment received from a remote receiver.
  			sender.handle(segment_);
+
+ 			// In the event-driven mode nobody polls this endpoint, so
+ 			// send right away whatever the new ACK allowed to send:
+ 			if (simulator.isEventDriven()) {
+ 				sender.send(0);
+ 			}
  		}
  
  		if (segment_.length > 0) { // A data segment received from a remote sender.
@@ -217,6 +239,62 @@ public class Endpoint extends NetworkElement {
 		}
  	}
 
+	/**
+	 * Handles several segments that arrived together from the remote endpoint.
+	 * In the event-driven mode each segment is handled on its own, because
+	 * the sender transmits right after every ACK. Otherwise, the consecutive
+	 * ACKs are passed to the sender and the consecutive data segments to the
+	 * receiver as batches, in the same order in which {@link #handle(NetworkElement, Packet)}
+	 * would have passed them one by one.
+	 * 
+	 * @param source_ the immediate source of the segments
+	 * @param packets_ the received segments
+	 * @param count_ the number of segments, from the start of the array
+	 */
+	@Override
+	public void handleBatch(NetworkElement source_, Packet[] packets_, int count_) {
+		if (simulator.isEventDriven()) {
+			super.handleBatch(source_, packets_, count_);
+			return;
+		}
+		if (acks == null || acks.length < count_) {
+			acks = new Segment[Math.max(count_, 16)];
+			dataSegments = new Segment[acks.length];
+		}
+
+		int ackCount_ = 0;
+		int dataCount_ = 0;
+		for (int i = 0; i < count_; i++) {
+			Segment segment_ = (Segment) packets_[i];
+			if (segment_ == null) {	// not a TCP segment ??
+				handle(source_, segment_);
+				continue;
+			}
+			if (segment_.isAck) {
+				if (dataCount_ > 0) {
+					receiver.handleBatch(dataSegments, dataCount_);
+					dataCount_ = 0;
+				}
+				acks[ackCount_++] = segment_;
+			}
+			if (segment_.length > 0) {
+				if (ackCount_ > 0) {
+					sender.handleBatch(acks, ackCount_);
+					ackCount_ = 0;
+				}
+				dataSegments[dataCount_++] = segment_;
+			}
+		}
+		if (ackCount_ > 0) {
+			sender.handleBatch(acks, ackCount_);
+		}
+		if (dataCount_ > 0) {
+			receiver.handleBatch(dataSegments, dataCount_);
+		}
+		Arrays.fill(acks, 0, count_, null);	// let the segments be collected
+		Arrays.fill(dataSegments, 0, count_, null);
+	}
+
 	/**
 	 * @return the network layer protocol for this endpoint
 	 */
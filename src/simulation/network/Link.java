@@ -7,9 +7,11 @@
  */
 package simulation.network;
 
-import simulation.Simulator;
+import java.util.Random;
 
-import java.util.ArrayList;
+import simulation.EventJournal;
+import simulation.SimulationEvent;
+import simulation.Simulator;
 
 /**
  * A full-duplex communication link that connects two network nodes.
@@ -21,18 +23,20 @@ import java.util.ArrayList;
  * @see NetworkElement
  */
 public class Link extends NetworkElement {
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Transmission time for this communication link
 	 * (per packet, assuming all packets are of the same size!).
-	 * The time is measured in <em>ticks</em> of the simulator clock.
+	 * The time is measured in the integer <em>time units</em> of the simulator clock.
 	 */
-	protected double transmissionTime = 0.0;
+	protected long transmissionTime = 0;
 
 	/**
 	 * Propagation time for this communication link.
-	 * Measured in <em>ticks</em> of the simulator clock.
+	 * Measured in the integer <em>time units</em> of the simulator clock.
 	 */
-	protected double propagationTime = 0.0;
+	protected long propagationTime = 0;
 
 	/**
 	 * Nodes {@link #node1} and {@link #node2} connected by this link.
@@ -41,39 +45,57 @@ public class Link extends NetworkElement {
 	protected NetworkElement node2 = null;
 
 	/**
-	 * Container for packets in transit from {@link #node1} to {@link #node2}.<BR>
-	 * We never check whether this array overflows, because we
-	 * hope there will be never more than 100 packets in flight on a link?!?
-	 */
-	protected ArrayList<Packet> packetsFromN1toN2 = new ArrayList<Packet>(100);
-
-	/**
-	 * Delay times for packets stored in the list {@link #packetsFromN1toN2},
-	 * in simulation-clock ticks. The delay for each packet is calculated
-	 * when the packet is received in {@link #send(NetworkElement, Packet)}
-	 * and the delay is decremented in {@link #process(int)} until
-	 * it reaches zero. At this time, the packet is delivered to
-	 * {@link #node2}.
+	 * Packets in transit from {@link #node1} to {@link #node2}, each stamped
+	 * with the absolute simulation time when it arrives at {@link #node2}.
+	 * The arrival time is calculated when the packet is received in
+	 * {@link #send(NetworkElement, Packet)}, and the packet is delivered by
+	 * {@link #process(int)} once the simulation clock has reached it.
 	 */
-	protected double[] packetDelaysN1toN2 = new double[100];
+	protected PacketQueue packetsFromN1toN2 = new PacketQueue(true);
 
 	/**
-	 * Container for packets in transit from {@link #node2} to {@link #node1}.<BR>
+	 * Packets in transit from {@link #node2} to {@link #node1}.<BR>
 	 * Similar to {@link #packetsFromN1toN2}.
 	 */
-	protected ArrayList<Packet> packetsFromN2toN1 = new ArrayList<Packet>(100);
+	protected PacketQueue packetsFromN2toN1 = new PacketQueue(true);
 
 	/**
-	 * Similar to {@link #packetDelaysN1toN2}.
+	 * The packets delivered by the last call to {@link #deliverArrivedPackets(PacketQueue, NetworkElement, long)},
+	 * reused from call to call.
 	 */
-	protected double[] packetDelaysN2toN1 = new double[100];
+	protected transient Packet[] arrivedPackets = null;
+
+	/** The number of batches of packets delivered in the round-based mode. */
+	protected long batchesDelivered = 0;
+
+	/** The number of packets delivered in those batches. */
+	protected long packetsDelivered = 0;
 
 	/**
 	 * Parameters that override {@link NetworkElement#lastTimeProcessCalled}
 	 * because Link has different modes of processing.
 	 */
-	protected double lastTimeProcessCalledMode1 = 0.0;
-	protected double lastTimeProcessCalledMode2 = 0.0;
+	protected long lastTimeProcessCalledMode1 = 0;
+	protected long lastTimeProcessCalledMode2 = 0;
+
+	/**
+	 * In the event-driven mode, the times when the link becomes free
+	 * to start transmitting the next packet in each direction.
+	 * Packets handed to a busy link are serialized behind the
+	 * packets already in transmission.
+	 */
+	protected long transmitterFreeAtN1toN2 = 0;
+	protected long transmitterFreeAtN2toN1 = 0;
+
+	/**
+	 * The random numbers that decide which packets this link loses
+	 * (see {@link simulation.SimulationConfig#getLossRate()}) in each direction.
+	 * Each direction of each link draws its own, because the two ends of a link
+	 * may belong to different threads of a parallel run, so the losses do not
+	 * depend on the order in which the threads process the links.
+	 */
+	protected Random lossRandomN1toN2 = null;
+	protected Random lossRandomN2toN1 = null;
 
 	/**
 	 * Constructor.
@@ -104,37 +126,83 @@ public class Link extends NetworkElement {
 		// we don't want to directly connect a link to another link
 		this.node1 = node1_;
 		this.node2 = node2_;
-		this.transmissionTime = transmissionTime_;
-		this.propagationTime = propagationTime_;
+		// Convert the times from the clock ticks into the time units:
+		this.transmissionTime = simulator_.toTimeUnits(transmissionTime_);
+		this.propagationTime = simulator_.toTimeUnits(propagationTime_);
+		this.lossRandomN1toN2 = simulator_.newRandom(this, 1);
+		this.lossRandomN2toN1 = simulator_.newRandom(this, 2);
+	}
+
+	/**
+	 * @return the node connected to the first end of this link
+	 */
+	public NetworkElement getNode1() {
+		return node1;
+	}
+
+	/**
+	 * @return the node connected to the second end of this link
+	 */
+	public NetworkElement getNode2() {
+		return node2;
+	}
+
+	/**
+	 * Returns the processing mode for {@link #process(int)}
+	 * that delivers the packets travelling towards the given node.
+	 * @param node_ one of the nodes connected by this link
+	 * @return "1" if the node is {@link #node2}, or "2" if the node is {@link #node1}
+	 * @throws IllegalArgumentException if the node is not connected by this link
+	 */
+	public int getModeToward(NetworkElement node_) {
+		if (node2 == node_) {
+			return 1;
+		} else if (node1 == node_) {
+			return 2;
+		}
+		throw new IllegalArgumentException(
+			name + " does not connect " + node_.getName()
+		);
+	}
+
+	/**
+	 * Returns the processing mode for {@link #process(int)}
+	 * that delivers the packets sent by the given node.
+	 * @param node_ one of the nodes connected by this link
+	 * @return "1" if the node is {@link #node1}, or "2" if the node is {@link #node2}
+	 * @throws IllegalArgumentException if the node is not connected by this link
+	 */
+	public int getModeAwayFrom(NetworkElement node_) {
+		return 3 - getModeToward(node_);
 	}
 
 	/**
 	 * Parameter getter.
-	 * @return the transmission time (in simulator clock ticks)
+	 * @return the transmission time (in simulator time units)
 	 */
-	public double getTransmissionTime() {
+	public long getTransmissionTime() {
 		return transmissionTime;
 	}
 	/**
 	 * Parameter setter.
-	 * @param transmissionTime_ the transmission time to set (in simulator clock ticks)
+	 * @param transmissionTime_ the transmission time to set (in simulator time units)
 	 */
-	public void setTransmissionTime(double transmissionTime_) {
+	public void setTransmissionTime(long transmissionTime_) {
 		this.transmissionTime = transmissionTime_;
 	}
 
 	/**
 	 * Parameter getter.
-	 * @return the propagation time (in simulator clock ticks)
+	 * @return the propagation time (in simulator time units)
 	 */
-	public double getPropagationTime() {
+	public long getPropagationTime() {
 		return propagationTime;
 	}
 	/**
 	 * Parameter setter.
-	 * @param propagationTime_ the propagation time to set (in simulator clock ticks)
+	 * @param propagationTime_ the propagation time to set (in simulator time units)
 	 */
-	public void setPropagationTime(double propagationTime_) {
+	public void setPropagationTime(long propagationTime_) {
 		this.propagationTime = propagationTime_;
 	}
 
@@ -147,9 +215,9 @@ public class Link extends NetworkElement {
 	 * Parameter <code>source_</code> is used to
 	 * distinguish the nodes connected to the link's ends.</p>
 	 * 
-	 * <p>At the time when a packet is enqueued, its delay is also
-	 * calculated and stored in the corresponding array
-	 * ({@link #packetDelaysN1toN2} or {@link #packetDelaysN2toN1}).</p>
+	 * <p>At the time when a packet is enqueued, its arrival time is also
+	 * calculated and stored with it in the corresponding queue
+	 * ({@link #packetsFromN1toN2} or {@link #packetsFromN2toN1}).</p>
 	 * 
 	 * <p>Note: In the current implementation when calculating the
 	 * packet delay, we do not check the packet length.
@@ -165,24 +233,66 @@ public class Link extends NetworkElement {
 	 */
 	@Override
 	public void send(NetworkElement source_, Packet packet_) {
+		// A lossy link silently loses some of the packets:
+		EventJournal journal_ = getSimulator().getJournal();
+		double lossRate_ = getSimulator().getConfig().getLossRate();
+		if (
+			lossRate_ > 0.0 &&
+			(node1.equals(source_) ? lossRandomN1toN2 : lossRandomN2toN1).nextDouble() < lossRate_
+		) {
+			if (journal_ != null) {
+				journal_.packetLost(this, source_, packet_);
+			}
+			return;
+		}
+		if (journal_ != null) {
+			journal_.packetSent(this, source_, packet_);
+		}
+
+		if (getSimulator().isEventDriven()) {
+			schedulePacketArrival(source_, packet_);
+		}
 		// Simply enqueue the new packet behind any existing packets.
-		//TODO: should check that the arrays do not overflow!
-		if (node1.equals(source_)) { // packet from Node 1 to Node 2
-			enqueueNewPacket(packetsFromN1toN2, packetDelaysN1toN2, packet_);
+		else if (node1.equals(source_)) { // packet from Node 1 to Node 2
+			enqueueNewPacket(packetsFromN1toN2, lastTimeProcessCalledMode1, packet_);
 		} else if (node2.equals(source_)) { // packet from Node 2 to Node 1
-			enqueueNewPacket(packetsFromN2toN1, packetDelaysN2toN1, packet_);
+			enqueueNewPacket(packetsFromN2toN1, lastTimeProcessCalledMode2, packet_);
 		} else {
 			System.out.println("Link.send() --- PANIC --- impossible packet source!?");
 		}
-		// This reporting is for debugging purposes only:
-		if (
-			(Simulator.currentReportingLevel & Simulator.REPORTING_LINKS) != 0
-		) {
-			System.out.println(
-				"\t " + packet_.toString() +
-				" received by " + name + " from " + source_.getName()
-			);
+		getSimulator().getTracer().packetSent(this, source_, packet_);
+	}
+
+	/**
+	 * Helper method for the event-driven mode. Calculates the time when
+	 * the packet arrives at the other end of the link, and schedules
+	 * its delivery at that time. A packet starts its transmission when
+	 * the previous packet in the same direction has been transmitted,
+	 * and arrives after the transmission and propagation times.
+	 * 
+	 * @param source_ the source of the packet
+	 * @param packet_ the new packet in flight on this link
+	 */
+	protected void schedulePacketArrival(NetworkElement source_, Packet packet_) {
+		long now_ = getSimulator().getCurrentTime();
+		long start_;
+		NetworkElement destination_;
+		if (node1.equals(source_)) { // packet from Node 1 to Node 2
+			start_ = Math.max(now_, transmitterFreeAtN1toN2);
+			transmitterFreeAtN1toN2 = start_ + transmissionTime;
+			destination_ = node2;
+		} else if (node2.equals(source_)) { // packet from Node 2 to Node 1
+			start_ = Math.max(now_, transmitterFreeAtN2toN1);
+			transmitterFreeAtN2toN1 = start_ + transmissionTime;
+			destination_ = node1;
+		} else {
+			System.out.println("Link.send() --- PANIC --- impossible packet source!?");
+			return;
 		}
+		getSimulator().scheduleEvent(
+			new PacketArrival(destination_, packet_),
+			start_ + transmissionTime + propagationTime, destination_
+		);
 	}
 
 	/**
@@ -198,33 +308,59 @@ public class Link extends NetworkElement {
 	 */
 	@Override
 	public void process(int mode_) {
+		// In the event-driven mode the packets deliver themselves:
+		if (getSimulator().isEventDriven()) return;
+
+		long now_ = getSimulator().getCurrentTime();
 		switch (mode_) {
 			case 0:
 				if (!packetsFromN1toN2.isEmpty()) {
-					deliverArrivedPackets(packetsFromN1toN2, packetDelaysN1toN2, node2, lastTimeProcessCalled);
+					deliverArrivedPackets(packetsFromN1toN2, node2, now_);
 				}
 
 				if (!packetsFromN2toN1.isEmpty()) {
-					deliverArrivedPackets(packetsFromN2toN1, packetDelaysN2toN1, node1, lastTimeProcessCalled);
+					deliverArrivedPackets(packetsFromN2toN1, node1, now_);
 				}
-				// Update the last time this method was called, for future reference
-				lastTimeProcessCalled = getSimulator().getCurrentTime();
+				// Update the last time this method was called, for future reference;
+				// both directions have been processed
+				lastTimeProcessCalled = now_;
+				lastTimeProcessCalledMode1 = now_;
+				lastTimeProcessCalledMode2 = now_;
 				break;
 			case 1:
 				if (!packetsFromN1toN2.isEmpty()) {
-					deliverArrivedPackets(packetsFromN1toN2, packetDelaysN1toN2, node2, lastTimeProcessCalledMode1);
+					deliverArrivedPackets(packetsFromN1toN2, node2, now_);
 				}
-				lastTimeProcessCalledMode1 = getSimulator().getCurrentTime();
+				lastTimeProcessCalledMode1 = now_;
 				break;
 			case 2:
 				if (!packetsFromN2toN1.isEmpty()) {
-					deliverArrivedPackets(packetsFromN2toN1, packetDelaysN2toN1, node1, lastTimeProcessCalledMode2);
+					deliverArrivedPackets(packetsFromN2toN1, node1, now_);
 				}
-				lastTimeProcessCalledMode2 = getSimulator().getCurrentTime();
+				lastTimeProcessCalledMode2 = now_;
 				break;
 		}
 	}
 
+	/**
+	 * @return <code>true</code> if no packets are travelling
+	 * through this link in either direction
+	 */
+	public boolean isIdle() {
+		return packetsFromN1toN2.isEmpty() && packetsFromN2toN1.isEmpty();
+	}
+
+	/**
+	 * Updates the last processing times for all directions of this link.
+	 * @see NetworkElement#skipIdleTime(long)
+	 */
+	@Override
+	public void skipIdleTime(long time_) {
+		super.skipIdleTime(time_);
+		lastTimeProcessCalledMode1 = time_;
+		lastTimeProcessCalledMode2 = time_;
+	}
+
 	/**
 	 * Link does not "<em>handle</em>" incoming
 	 * packets, so this method does nothing.
@@ -241,74 +377,126 @@ public class Link extends NetworkElement {
 
 	/**
 	 * Helper method to enqueue a new packet into one
-	 * of the lists and calculate its delay on the link.
+	 * of the queues and calculate its arrival time at the other end of the link.
+	 * The packet's delay is counted from the last time the direction
+	 * was processed, because that is when the packets handed to the
+	 * link in the meantime start moving.
 	 * 
-	 * @param packets_ the list of packets
-	 * @param packetDelays_ the array of delays associated with packets
+	 * @param packets_ the queue of packets
+	 * @param lastTimeProcessCalled_ the last time the direction of the queue was processed
 	 * @param packet_ the new packet to enqueue
 	 */
 	protected void enqueueNewPacket(
-		ArrayList<Packet> packets_, double[] packetDelays_, Packet packet_
+		PacketQueue packets_, long lastTimeProcessCalled_, Packet packet_
 	) {
-		int idx_ = packets_.size();
-		packets_.add(packet_);
-
-		if ((idx_ == 0) || (packetDelays_[idx_-1] < propagationTime + transmissionTime) ) {
-			// This is the head-of-the-list _OR_
-			// the packet before this last packet has already
-			// propagated somewhat through the link
-			// so this packet's delay will be as if it's the head-of-the-line;
-			// although the previous pkt might have propagated just a little,
-			// this coarse graining is a good enough approximation ...
-			packetDelays_[idx_] = propagationTime + transmissionTime;
-		} else {
+		long arrivalTime_ = lastTimeProcessCalled_ + propagationTime + transmissionTime;
+		if (!packets_.isEmpty() && packets_.tailTime() > arrivalTime_) {
 			// This case should not be possible of a physical link, but
 			// we use this object also as "link-layer protocol module" ...
-			packetDelays_[idx_] = packetDelays_[idx_-1];
+			// The packet arrives together with the packet before it.
+			arrivalTime_ = packets_.tailTime();
 		}
+		// Otherwise, this is the head-of-the-list _OR_
+		// the packet before this last packet has already
+		// propagated somewhat through the link
+		// so this packet's delay will be as if it's the head-of-the-line;
+		// although the previous pkt might have propagated just a little,
+		// this coarse graining is a good enough approximation ...
+		packets_.add(packet_, arrivalTime_);
 	}
 
 	/**
 	 * Helper method to deliver the packets that propagated
 	 * through the link and arrived to the other end, if any.<BR>
 	 * Note that we assume that the packets are enqueued on the
-	 * first-come-first-served basis, so their delays are
-	 * sorted in an ascending order.
+	 * first-come-first-served basis, so their arrival times are
+	 * sorted in an ascending order, and the delivery stops at the
+	 * first packet that has not arrived yet. All arrived packets are
+	 * handed to the receiving node at once, with
+	 * {@link NetworkElement#handleBatch(NetworkElement, Packet[], int)};
+	 * packets that the node sends back into the same queue while it
+	 * handles them wait for the next call.
 	 * 
-	 * @param packets_ the list of packets
-	 * @param packetDelays_ the array of delays associated with packets
+	 * @param packets_ the queue of packets
 	 * @param node_ the node to which the arrived packets will be delivered
-	 * @param lastTimeProcessCalled_ 
+	 * @param now_ the current simulation time
 	 */
 	protected void deliverArrivedPackets(
-		ArrayList<Packet> packets_, double[] packetDelays_,
-		NetworkElement node_, double lastTimeProcessCalled_
+		PacketQueue packets_, NetworkElement node_, long now_
 	) {
-		int lastRemovedIdx_ = 0;
-		int lastIdx_ = packets_.size();
-		for (int idx_ = 0; idx_ < lastIdx_; idx_++) {
-			// decrement the delay by the amount of time elapsed since the last call
-			packetDelays_[idx_] -= (getSimulator().getCurrentTime() - lastTimeProcessCalled_);
-			if (packetDelays_[idx_] <= 0.0) { // if the delay completely elapsed,
-				// deliver this packet to the receiving node
-				//TODO: There may be a problem of concurrent access to the "packets_" list,
-				// because the called component may call back send()/enqueueNewPacket()
-				// to insert new items into the same list.
-				node_.handle(this, packets_.remove(0));
-				lastRemovedIdx_++;
-			}
+		if (arrivedPackets == null || arrivedPackets.length < packets_.size()) {
+			arrivedPackets = new Packet[Math.max(packets_.size(), 16)];
+		}
+		Packet[] arrived_ = arrivedPackets;
+		int count_ = 0;
+		while (count_ < arrived_.length && !packets_.isEmpty() && packets_.headTime() <= now_) {
+			// the delay completely elapsed,
+			// deliver this packet to the receiving node
+			arrived_[count_++] = packets_.remove();
 		}
+		if (count_ == 0) {
+			return;
+		}
+		batchesDelivered++;
+		packetsDelivered += count_;
 
-		// If some packets remained in the list, shift their delays
-		// to match the corresponding indices
-		if (packets_.size() > 0) {
-			lastIdx_ = lastRemovedIdx_ + packets_.size();
-			int newIdx_ = 0;
-			for (int idx_ = lastRemovedIdx_; idx_ < lastIdx_; idx_++, newIdx_++) {
-				// move the old corresponding delay to a new location
-				packetDelays_[newIdx_] = packetDelays_[idx_];
-				packetDelays_[idx_] = 0.0;	// reset the old corresponding delay
-			}
+		// Hand all arrived packets to the receiving node in one go:
+		arrivedPackets = null;	// in case the node sends more packets on this link meanwhile
+		node_.handleBatch(this, arrived_, count_);
+		for (int i = 0; i < count_; i++) {
+			arrived_[i] = null;	// let the packets be collected
+		}
+		arrivedPackets = arrived_;
+	}
+
+	/**
+	 * @return the number of batches of packets this link has delivered
+	 * in the round-based mode
+	 */
+	public long getBatchesDelivered() {
+		return batchesDelivered;
+	}
+
+	/**
+	 * @return the number of packets this link has delivered in the round-based mode
+	 */
+	public long getPacketsDelivered() {
+		return packetsDelivered;
+	}
+
+	/**
+	 * @return the average number of packets this link delivered at once
+	 * in the round-based mode, or zero if it delivered none
+	 */
+	public double getAverageBatchSize() {
+		return (batchesDelivered == 0) ? 0.0 : (double) packetsDelivered / batchesDelivered;
+	}
+
+	// ----------------------------------------------------------------------
+	/**
+	 * Event of the event-driven mode: a packet arrives
+	 * at the other end of this link.
+	 */
+	protected class PacketArrival extends SimulationEvent {
+		private static final long serialVersionUID = 1L;
+
+		/** The node to which the packet will be delivered. */
+		NetworkElement destination = null;
+
+		/** The packet in flight. */
+		Packet packet = null;
+
+		PacketArrival(NetworkElement destination_, Packet packet_) {
+			this.destination = destination_;
+			this.packet = packet_;
+		}
+
+		/**
+		 * Delivers the packet to the receiving node.
+		 */
+		@Override
+		public void fire() {
+			destination.handle(Link.this, packet);
 		}
 	}
-}
\ No newline at end of file
+}
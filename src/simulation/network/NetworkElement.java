@@ -6,6 +6,8 @@
  */
 package simulation.network;
 
+import java.io.Serializable;
+
 import simulation.Simulator;
 
 /**
@@ -17,7 +19,9 @@ import simulation.Simulator;
  * @author Ivan Marsic
  *
  */
-public abstract class NetworkElement {
+public abstract class NetworkElement implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Object that provides the runtime environment,
 	 * mainly stuff related to the simulation clock,
@@ -31,16 +35,34 @@ public abstract class NetworkElement {
 	 */
 	String name = null;
 
+	/**
+	 * The identifier of this network element, unique within its simulator.
+	 * The identifiers are dense integers, assigned in the order in which the
+	 * topology creates the elements (see {@link Simulator#newNetworkElementId()}),
+	 * so that routers can forward packets through plain arrays.
+	 */
+	final int id;
+
 	/**
 	 * Indicates when the last time the method {@link #process(int)}
 	 * was called, so that the Link knows how much time elapsed
 	 * since the last call.
 	 */
-	protected double lastTimeProcessCalled = 0.0;
+	protected long lastTimeProcessCalled = 0;
 
 	public NetworkElement(Simulator simulator_, String name_) {
 		this.simulator = simulator_;
 		this.name = name_;
+		this.id = simulator_.newNetworkElementId();
+	}
+
+	/**
+	 * Attribute getter.
+	 * @return the identifier of this network element
+	 * @see #id
+	 */
+	public int getId() {
+		return id;
 	}
 
 	/**
@@ -59,10 +81,23 @@ public abstract class NetworkElement {
 	 * since the previous call to this method ({@link #lastTimeProcessCalled}).
 	 * 
 	 * @param mode_ the processing mode, depends on the actual network element
-	 * @see simulation.Simulator#runDirectTopologySimulation(java.nio.ByteBuffer, int)
+	 * @see simulation.Simulator#runSimulation(int)
 	 */
 	public abstract void process(int mode_);
 
+	/**
+	 * Called by the simulator instead of {@link #process(int)} when
+	 * it fast-forwards its clock over a period in which the whole network
+	 * is idle. The element updates its bookkeeping as if {@link #process(int)}
+	 * had last been called at the given time, with nothing to do.
+	 * 
+	 * @param time_ the time of the last skipped clock tick, in time units
+	 * @see simulation.network.topology.Topology#isQuiescent()
+	 */
+	public void skipIdleTime(long time_) {
+		lastTimeProcessCalled = time_;
+	}
+
 	/**
 	 * The method to send data from an upper-layer protocol.<BR>
 	 * Note that parameter <code>source_</code> is usually ignored
@@ -84,6 +119,22 @@ public abstract class NetworkElement {
 	 */
 	public abstract void handle(NetworkElement source_, Packet packet_);
 
+	/**
+	 * The method to receive several packets at once from a lower-layer protocol,
+	 * such as all packets that arrived over a link in one clock tick.
+	 * The effect is the same as that of calling {@link #handle(NetworkElement, Packet)}
+	 * for each packet in turn, which is what this default implementation does;
+	 * elements override it to do their per-packet bookkeeping only once per batch.
+	 * @param source_ the <em>immediate</em> source network element that passes these packets
+	 * @param packets_ the packets to receive, in the order of their arrival
+	 * @param count_ the number of packets, from the start of the array
+	 */
+	public void handleBatch(NetworkElement source_, Packet[] packets_, int count_) {
+		for (int i = 0; i < count_; i++) {
+			handle(source_, packets_[i]);
+		}
+	}
+
 	/**
 	 * Getter method.
 	 * @return the simulator runtime environment
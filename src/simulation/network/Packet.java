@@ -6,6 +6,8 @@
  */
 package simulation.network;
 
+import java.io.Serializable;
+
 import simulation.network.NetworkElement;
 
 /**
@@ -13,14 +15,18 @@ import simulation.network.NetworkElement;
  * 
  * @author Ivan Marsic
  */
-public class Packet implements Cloneable {
+public class Packet implements Cloneable, Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/**
-	 * Destination address, to which this packet is sent.
+	 * The identifier of the destination ({@link NetworkElement#getId()}),
+	 * by which routers forward this packet, or <code>-1</code> if there is none.
 	 */
-	public NetworkElement destinationAddr = null;
+	public int destination = -1;
 
 	/**
-	 * The data payload carried in this packet, if any.
+	 * The data payload carried in this packet, if any; <code>null</code>
+	 * for a packet with a virtual payload, which has only a {@link #length}.
 	 */
 	public byte[] dataPayload = null;
 
@@ -40,15 +46,28 @@ public class Packet implements Cloneable {
 
 	/**
 	 * Constructor.
-	 * @param destinationAddr_ the destination address to which this packet is sent
+	 * @param destination_ the identifier of the destination to which this packet is sent,
+	 * or <code>-1</code> if there is none (see {@link NetworkElement#getId()})
 	 * @param dataPayload_ the data payload to be carried by this packet, if any
 	 */
-	public Packet(NetworkElement destinationAddr_, byte[] dataPayload_) {
-		this.destinationAddr = destinationAddr_;
+	public Packet(int destination_, byte[] dataPayload_) {
+		this.destination = destination_;
 		this.dataPayload = dataPayload_;
 		this.length = (dataPayload_ != null) ? dataPayload_.length : 0;
 	}
 
+	/**
+	 * Constructor for a packet with a virtual payload, of which
+	 * only the length is known.
+	 * @param destination_ the identifier of the destination to which this packet is sent,
+	 * or <code>-1</code> if there is none (see {@link NetworkElement#getId()})
+	 * @param length_ the length of the data payload carried by this packet [in bytes]
+	 */
+	public Packet(int destination_, int length_) {
+		this.destination = destination_;
+		this.length = length_;
+	}
+
 	/**
 	 * Makes a clone object of this data packet.<BR>
 	 * This method is part of the java.lang.Cloneable interface.
@@ -72,4 +91,15 @@ public class Packet implements Cloneable {
 	public String toString() {
 		return identifier;
 	}
+
+	/**
+	 * Prints out some basic information about this packet, for a simulation
+	 * with the given maximum segment size. Packets whose description does not
+	 * depend on the segment size print the same as {@link #toString()}.
+	 * @param mss_ the maximum segment size of the simulation [in bytes]
+	 * @return the description of this packet
+	 */
+	public String toString(int mss_) {
+		return toString();
+	}
 }
\ No newline at end of file
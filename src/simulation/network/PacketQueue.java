@@ -0,0 +1,143 @@
+/*
+ * Rutgers University, Department of Electrical and Computer Engineering
+ * <P> Copyright (c) 2005-2013 Rutgers University
+ */
+package simulation.network;
+
+import java.io.Serializable;
+
+/**
+ * A first-in-first-out queue of packets, optionally each with a time stamp,
+ * kept in a ring buffer of primitive arrays that grows as needed.
+ * Adding a packet at the tail and removing one from the head take
+ * constant time, and no elements are ever shifted.</p>
+ *
+ * <p>A {@link Link} stamps each packet with the absolute time when it
+ * arrives at the other end of the link, so delivery pops packets from the
+ * head for as long as their arrival time has passed. The output ports
+ * of a {@link Router} need no time stamps and use a plain queue.</p>
+ *
+ * @see Link
+ */
+final class PacketQueue implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The capacity of a new queue. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The packets, from {@link #head} on, wrapping around the end of the array. */
+	private Packet[] packets = new Packet[INITIAL_CAPACITY];
+
+	/** The time stamps of the packets, at the same positions,
+	 * or <code>null</code> if the packets are not stamped. */
+	private long[] times = null;
+
+	/** The position of the first packet. */
+	private int head = 0;
+
+	/** The number of packets in the queue. */
+	private int size = 0;
+
+	/**
+	 * Constructor for a plain queue, without time stamps.
+	 */
+	PacketQueue() {
+	}
+
+	/**
+	 * Constructor.
+	 * @param stamped_ <code>true</code> if each packet is added with a time stamp
+	 */
+	PacketQueue(boolean stamped_) {
+		if (stamped_) {
+			times = new long[INITIAL_CAPACITY];
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if there are no packets in the queue
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the number of packets in the queue
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a packet at the tail of a plain queue.
+	 * @param packet_ the packet
+	 */
+	void add(Packet packet_) {
+		if (size == packets.length) {
+			grow();
+		}
+		packets[(head + size) & (packets.length - 1)] = packet_;
+		size++;
+	}
+
+	/**
+	 * Adds a packet at the tail of a queue with time stamps.
+	 * @param packet_ the packet
+	 * @param time_ the time stamp of the packet
+	 */
+	void add(Packet packet_, long time_) {
+		if (size == packets.length) {
+			grow();
+		}
+		int tail_ = (head + size) & (packets.length - 1);
+		packets[tail_] = packet_;
+		times[tail_] = time_;
+		size++;
+	}
+
+	/**
+	 * @return the time stamp of the first packet; the queue must not be empty
+	 */
+	long headTime() {
+		return times[head];
+	}
+
+	/**
+	 * @return the time stamp of the last packet; the queue must not be empty
+	 */
+	long tailTime() {
+		return times[(head + size - 1) & (packets.length - 1)];
+	}
+
+	/**
+	 * Removes the first packet of the queue.
+	 * @return the packet; the queue must not be empty
+	 */
+	Packet remove() {
+		Packet packet_ = packets[head];
+		packets[head] = null;	// let the packet be collected
+		head = (head + 1) & (packets.length - 1);
+		size--;
+		return packet_;
+	}
+
+	/**
+	 * Helper method to double the capacity of the queue,
+	 * unwrapping the packets to the start of the new arrays.
+	 */
+	private void grow() {
+		int capacity_ = packets.length;
+		Packet[] packets_ = new Packet[capacity_ << 1];
+		int firstPart_ = capacity_ - head;
+		System.arraycopy(packets, head, packets_, 0, firstPart_);
+		System.arraycopy(packets, 0, packets_, firstPart_, head);
+		packets = packets_;
+		if (times != null) {
+			long[] times_ = new long[capacity_ << 1];
+			System.arraycopy(times, head, times_, 0, firstPart_);
+			System.arraycopy(times, 0, times_, firstPart_, head);
+			times = times_;
+		}
+		head = 0;
+	}
+}
@@ -7,12 +7,14 @@
 
 package simulation.network;
 
+import simulation.EventJournal;
+import simulation.SimulationEvent;
 import simulation.Simulator;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 /**
  * This class is a simple simulation of a network router. It is
@@ -32,7 +34,12 @@ import java.util.Iterator;
  * Every time this method is called, the router performs
  * the work allowed within the elapsed time.
  * Currently, this means that the router will hand over the queued
- * packets in {@link #packetBuffer} to their outgoing links ({@link #outputPorts}).</p>
+ * packets to their outgoing links ({@link #outputPorts}).</p>
+ * 
+ * <p>The packets are queued in the router memory, which all output ports
+ * share, but each port keeps its own first-in-first-out queue of the packets
+ * heading out on its link. The forwarding table is consulted only once, when
+ * a packet arrives, to choose the queue the packet joins.</p>
  * 
  * <p>Note that this class defines an inner class for output ports
  * (see {@link Router.OutputPort}).</p>
@@ -41,18 +48,33 @@ import java.util.Iterator;
  * @see simulation.Simulator
  */
 public class Router extends NetworkElement {
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Router's forwarding table maps the destination node
-	 * (found in the Packet header) to the outgoing link.
+	 * (found in the Packet header as {@link Packet#destination}) to the
+	 * index of the output port in {@link #ports}, or to <code>-1</code> if
+	 * there is no entry for the node. The table is indexed by the identifiers
+	 * of the nodes, so forwarding a packet takes a single array access.
+	 */
+	protected int[] nextPortByDestination = new int[0];
+
+	/**
+	 * Output ports associated with the router's links, in the order
+	 * the links were added, so that the ports are always served in the same order.
+	 * Only the first {@link #portCount} entries are in use; the array
+	 * doubles in size when it fills up.
 	 */
-	protected HashMap<NetworkElement, Link> forwardingTable =
-		new HashMap<NetworkElement, Link>();
+	protected OutputPort[] ports = new OutputPort[4];
+
+	/** The number of output ports in {@link #ports}. */
+	protected int portCount = 0;
 
 	/**
-	 * Output ports associated with the router's links.
+	 * The output ports by their links, for setting up the router.
 	 */
-	protected HashMap<Link, OutputPort> outputPorts =
-			new HashMap<Link, OutputPort>();
+	protected LinkedHashMap<Link, OutputPort> outputPorts =
+			new LinkedHashMap<Link, OutputPort>();
 
 	/** The router buffer capacity, in bytes. If more packets
 	 * arrive than the currently available buffer space allows for
@@ -64,15 +86,49 @@ public class Router extends NetworkElement {
 	/**
 	 * Current occupancy of the router memory is obtained as
 	 * a sum of the packet lengths for all packets currently
-	 * queued in the router memory {@link #packetBuffer}.
+	 * queued in the router memory, in the queues of all output ports
+	 * (see {@link Router.OutputPort#packetQueue}).
 	 */
 	private int currentBufferOccupancy = 0;
 
-	/** Router memory for buffered/queued packets.
-	 * Buffer capacity is represented by {@link #bufferCapacity}.
-	 * Current memory occupancy is represented by {@link #currentBufferOccupancy}.
+	/**
+	 * The part of the router memory occupied by the background traffic of a
+	 * hybrid simulation, which is represented as fluid rather than as packets
+	 * (see {@link simulation.FluidModel}). It is not available for queuing packets.
 	 */
-	private	ArrayList<Packet> packetBuffer = null;
+	private int fluidBufferOccupancy = 0;
+
+	/** The largest fraction of a link's capacity that fluid traffic may take,
+	 * so that the packets on the link are never stalled completely. */
+	private static final double MAX_FLUID_SHARE = 0.99;
+
+	/** Indicates that output ports or incoming links were added since the
+	 * mismatch ratios of the ports were last calculated (see {@link #updateMismatchRatios()}). */
+	private boolean mismatchRatiosStale = false;
+
+	/**
+	 * The class of each incoming link, indexed by the identifier of the link
+	 * ({@link NetworkElement#getId()}), or <code>-1</code> if the link is not
+	 * connected to this router. The links of a class have the same transmission
+	 * time, so they have the same mismatch ratios; a router has many links
+	 * but only a few distinct transmission times.
+	 */
+	private int[] linkClassById = new int[0];
+
+	/** The transmission time of each class of incoming links. */
+	private long[] linkClassTransmissionTimes = new long[0];
+
+	/**
+	 * The mismatch ratio of each output port to each class of incoming links
+	 * (see {@link Router.OutputPort#calculateMismatchRatio(long)}), indexed by
+	 * the port index and the link class, and the resulting decrement of the
+	 * port's {@link Router.OutputPort#mismatchCount} per arrival:
+	 * <code>maxMismatchRatio / mismatchRatio</code>.
+	 * The transmission times of the links never change, so the table is
+	 * calculated once, when the first packet arrives after the ports are set up.
+	 */
+	private double[][] mismatchRatios = new double[0][];
+	private double[][] mismatchDecrements = new double[0][];
 
 	/**
 	 * Constructor.
@@ -84,10 +140,6 @@ public class Router extends NetworkElement {
 	public Router(Simulator simulator_, String name_, int bufferSize_) {
 		super(simulator_, name_);
 		this.bufferCapacity = bufferSize_;
-
-		// The list will NOT be allowed to grow once
-		// the sum of packet lengths reaches "maxBufferSize"
-		packetBuffer = new ArrayList<Packet>(bufferSize_);
 	}
 
 	/**
@@ -101,6 +153,15 @@ public class Router extends NetworkElement {
 		return bufferCapacity;
 	}
 
+	/**
+	 * Accessor for the current occupancy of this router's memory.
+	 * 
+	 * @return the sum of the lengths of the queued packets [in bytes].
+	 */
+	public int getCurrentBufferOccupancy() {
+		return currentBufferOccupancy;
+	}
+
 	/**
 	 * Adds another entry into the router's forwarding table.
 	 * 
@@ -108,17 +169,80 @@ public class Router extends NetworkElement {
 	 * @param outgoingLink_ the outgoing link to be associated with the specified network node
 	 */
 	public void addForwardingTableEntry(NetworkElement node_, Link outgoingLink_) {
-		// Create the output port that will be associated with the new outgoing link:
-		OutputPort outputPort_ = new OutputPort(outgoingLink_);
+		// Create the output port that will be associated with a new outgoing link;
+		// many destinations may share the same outgoing link and its port:
+		OutputPort outputPort_ = outputPorts.get(outgoingLink_);
+		if (outputPort_ == null) {
+			outputPort_ = new OutputPort(outgoingLink_, portCount);
+			outputPorts.put(outgoingLink_, outputPort_);
+			if (portCount == ports.length) {
+				ports = Arrays.copyOf(ports, 2 * ports.length);
+			}
+			ports[portCount++] = outputPort_;
+
+			// The links carry packets both ways, so the link is also an incoming link:
+			addIncomingLink(outgoingLink_);
 
-		// Calculate the maximum mismatch ratio for the new outgoing link:
-		outputPort_.updateMaxMismatchRatios(forwardingTable.values());
+			// The mismatch ratios are recalculated when the next packet arrives:
+			mismatchRatiosStale = true;
+		}
 
-		// Add the new output port to the list:
-		outputPorts.put(outgoingLink_, outputPort_);
+		// Make room for the node's entry; the table covers all
+		// the nodes created so far, so it rarely needs to grow:
+		int destination_ = node_.getId();
+		if (destination_ >= nextPortByDestination.length) {
+			int length_ = nextPortByDestination.length;
+			nextPortByDestination = Arrays.copyOf(
+				nextPortByDestination, Math.max(destination_ + 1, getSimulator().getNetworkElementCount())
+			);
+			Arrays.fill(nextPortByDestination, length_, nextPortByDestination.length, -1);
+		}
 
 		// Add the new forwarding table entry:
-		forwardingTable.put(node_, outgoingLink_);
+		nextPortByDestination[destination_] = outputPort_.index;
+	}
+
+	/**
+	 * Sets the part of the router memory occupied by fluid background traffic.
+	 * 
+	 * @param occupancy_ the memory occupied by the fluid traffic [in bytes]
+	 */
+	public void setFluidBufferOccupancy(int occupancy_) {
+		this.fluidBufferOccupancy = occupancy_;
+	}
+
+	/**
+	 * Sets the fraction of the capacity of an outgoing link taken by fluid
+	 * background traffic. In the event-driven mode, the transmission of each
+	 * packet on the link takes correspondingly longer.
+	 * 
+	 * @param outgoingLink_ the outgoing link of one of the output ports
+	 * @param share_ the fraction of the link capacity, from <code>0.0</code> to below <code>1.0</code>
+	 */
+	public void setFluidShare(Link outgoingLink_, double share_) {
+		outputPorts.get(outgoingLink_).fluidShare = Math.max(0.0, Math.min(share_, MAX_FLUID_SHARE));
+	}
+
+	/**
+	 * Accessor for the packet traffic offered to an outgoing link.
+	 * 
+	 * @param outgoingLink_ the outgoing link of one of the output ports
+	 * @return the total length of the packets that arrived for the link so far,
+	 * including the dropped ones [in bytes]
+	 */
+	public long getArrivedBytes(Link outgoingLink_) {
+		return outputPorts.get(outgoingLink_).arrivedBytes;
+	}
+
+	/**
+	 * Looks up the outgoing link for packets heading to the given node.
+	 * 
+	 * @param node_ the destination node
+	 * @return the outgoing link from the forwarding table, or <code>null</code> if there is no entry for the node
+	 */
+	public Link getOutgoingLink(NetworkElement node_) {
+		int port_ = (node_.getId() < nextPortByDestination.length) ? nextPortByDestination[node_.getId()] : -1;
+		return (port_ < 0) ? null : ports[port_].outgoingLink;
 	}
 
 	/**
@@ -130,16 +254,16 @@ public class Router extends NetworkElement {
  	 * 
  	 * @param mode_ the processing mode, currently not used and ignored
  	 * @see Router.OutputPort#transmitPackets()
- 	 * @see simulation.Simulator#runDirectTopologySimulation(java.nio.ByteBuffer, int)
+ 	 * @see simulation.Simulator#runSimulation(int)
 	 */
 	@Override
 	public void process(int mode_) {
+		// In the event-driven mode the output ports clock themselves:
+		if (getSimulator().isEventDriven()) return;
+
 		// Send out the packets in transmission on ALL outgoing links:
-		Iterable<OutputPort> outputPorts_ = outputPorts.values();
-		Iterator<OutputPort> portItems_ = outputPorts_.iterator();
-		while (portItems_.hasNext()) {
-			OutputPort outgoingLink_ = portItems_.next();
-			outgoingLink_.transmitPackets();
+		for (int i = 0; i < portCount; i++) {
+			ports[i].transmitPackets();
 		}
 
 		// Update the last time this method was called, for future reference
@@ -168,19 +292,163 @@ public class Router extends NetworkElement {
 	 * @param source_ the immediate source of the arrived packet
 	 * @param receivedPacket_ the packet that arrived on an incoming link
 	 * 
-	 * @see Router.OutputPort#handleIncomingPacket(NetworkElement, Packet)
+	 * @see Router.OutputPort#handleIncomingPacket(int, Packet)
 	 * @see simulation.network.NetworkElement#handle(NetworkElement, simulation.network.Packet)
 	 */
 	@Override
 	public void handle(NetworkElement source_, Packet receivedPacket_) {
-		// Look-up the outgoing link for this packet:
-		Link outgoingLink_ = forwardingTable.get(receivedPacket_.destinationAddr);
+		int linkClass_ = incomingLinkClass(source_);
 
-		// Look-up the associated output port:
-		OutputPort outputPort_ =  outputPorts.get(outgoingLink_);
+		// Look-up the output port of the outgoing link for this packet:
+		OutputPort outputPort_ = ports[nextPortByDestination[receivedPacket_.destination]];
 
 		// Move the packet to the associated the output port:
-		outputPort_.handleIncomingPacket(source_, receivedPacket_);
+		outputPort_.handleIncomingPacket(linkClass_, receivedPacket_);
+	}
+
+
+	/**
+	 * Buffers several packets that arrived together on the same link.
+	 * Each packet is handled as by {@link #handle(NetworkElement, Packet)},
+	 * but the mismatch ratios are checked only once per batch.
+	 * 
+	 * @param source_ the immediate source of the arrived packets
+	 * @param packets_ the packets that arrived on an incoming link
+	 * @param count_ the number of packets, from the start of the array
+	 */
+	@Override
+	public void handleBatch(NetworkElement source_, Packet[] packets_, int count_) {
+		int linkClass_ = incomingLinkClass(source_);
+
+		int[] nextPortByDestination_ = nextPortByDestination;
+		for (int i = 0; i < count_; i++) {
+			Packet packet_ = packets_[i];
+			ports[nextPortByDestination_[packet_.destination]].handleIncomingPacket(linkClass_, packet_);
+		}
+	}
+
+	/**
+	 * Helper method to look up the class of the link through which packets arrived,
+	 * recalculating the mismatch ratios first if the router was changed.
+	 * 
+	 * @param source_ the link through which the packets arrived
+	 * @return the class of the link (see {@link #linkClassById})
+	 */
+	private int incomingLinkClass(NetworkElement source_) {
+		int id_ = source_.getId();
+		if (id_ >= linkClassById.length || linkClassById[id_] < 0) {
+			// Not a link of any output port; seen only in hand-built networks:
+			addIncomingLink((Link) source_);
+		}
+		if (mismatchRatiosStale) {
+			updateMismatchRatios();
+		}
+		return linkClassById[id_];
+	}
+
+	/**
+	 * Helper method to assign an incoming link to the class of the links with
+	 * the same transmission time, starting a new class if there is none.
+	 * 
+	 * @param link_ a link connected to this router
+	 */
+	private void addIncomingLink(Link link_) {
+		int id_ = link_.getId();
+		if (id_ >= linkClassById.length) {
+			int length_ = linkClassById.length;
+			linkClassById = Arrays.copyOf(
+				linkClassById, Math.max(id_ + 1, getSimulator().getNetworkElementCount())
+			);
+			Arrays.fill(linkClassById, length_, linkClassById.length, -1);
+		}
+		if (linkClassById[id_] >= 0) return;
+
+		long transmissionTime_ = link_.getTransmissionTime();
+		int linkClass_ = 0;
+		while (
+			linkClass_ < linkClassTransmissionTimes.length &&
+			linkClassTransmissionTimes[linkClass_] != transmissionTime_
+		) {
+			linkClass_++;
+		}
+		if (linkClass_ == linkClassTransmissionTimes.length) {
+			linkClassTransmissionTimes = Arrays.copyOf(linkClassTransmissionTimes, linkClass_ + 1);
+			linkClassTransmissionTimes[linkClass_] = transmissionTime_;
+			mismatchRatiosStale = true;
+		}
+		linkClassById[id_] = linkClass_;
+	}
+
+	/**
+	 * Calculates the maximum mismatch ratio of each output port relative
+	 * to the links of all other ports (see {@link Router.OutputPort#maxMismatchRatio}),
+	 * and then the table of the ratios of the ports to the classes of their incoming
+	 * links, which depend on it (see {@link #mismatchRatios}).<BR>
+	 * The largest ratio of a port is the one relative to the fastest of the other
+	 * links, so it is enough to find the two fastest links, instead of comparing
+	 * every pair of ports, which would be too slow for routers with many thousands of ports.
+	 */
+	private void updateMismatchRatios() {
+		// The two shortest non-zero transmission times, and the port with the shortest one:
+		OutputPort fastestPort_ = null;
+		long fastest_ = Long.MAX_VALUE;
+		long secondFastest_ = Long.MAX_VALUE;
+		Iterator<OutputPort> portItems_ = outputPorts.values().iterator();
+		while (portItems_.hasNext()) {
+			OutputPort outputPort_ = portItems_.next();
+			long transmissionTime_ = outputPort_.outgoingLink.getTransmissionTime();
+			if (transmissionTime_ == 0) continue;
+			if (transmissionTime_ < fastest_) {
+				secondFastest_ = fastest_;
+				fastest_ = transmissionTime_;
+				fastestPort_ = outputPort_;
+			} else if (transmissionTime_ < secondFastest_) {
+				secondFastest_ = transmissionTime_;
+			}
+		}
+
+		portItems_ = outputPorts.values().iterator();
+		while (portItems_.hasNext()) {
+			OutputPort outputPort_ = portItems_.next();
+			double transmissionTime_ = outputPort_.outgoingLink.getTransmissionTime();
+			long fastestOther_ = (outputPort_ == fastestPort_) ? secondFastest_ : fastest_;
+			// A link without a transmission time is never mismatched:
+			outputPort_.maxMismatchRatio = 1.0;
+			if (transmissionTime_ != 0.0 && fastestOther_ != Long.MAX_VALUE) {
+				outputPort_.maxMismatchRatio = Math.max(1.0, transmissionTime_ / fastestOther_);
+			}
+		}
+
+		int linkClasses_ = linkClassTransmissionTimes.length;
+		mismatchRatios = new double[portCount][linkClasses_];
+		mismatchDecrements = new double[portCount][linkClasses_];
+		for (int i = 0; i < portCount; i++) {
+			OutputPort outputPort_ = ports[i];
+			for (int c = 0; c < linkClasses_; c++) {
+				double mismatchRatio_ = outputPort_.calculateMismatchRatio(linkClassTransmissionTimes[c]);
+				mismatchRatios[i][c] = mismatchRatio_;
+				mismatchDecrements[i][c] = outputPort_.maxMismatchRatio / mismatchRatio_;
+			}
+		}
+		mismatchRatiosStale = false;
+	}
+
+	/**
+	 * @return <code>true</code> if this router has no packets in its memory
+	 * and no packets in transmission on any of its output ports
+	 */
+	public boolean isIdle() {
+		Iterator<OutputPort> portItems_ = outputPorts.values().iterator();
+		while (portItems_.hasNext()) {
+			OutputPort outputPort_ = portItems_.next();
+			if (
+				!outputPort_.packetQueue.isEmpty() ||
+				outputPort_.packetInTransmission != null || outputPort_.transmitting
+			) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 
@@ -188,10 +456,15 @@ public class Router extends NetworkElement {
 	/**
 	 * Inner class for router's output ports.
 	 */
-	protected class OutputPort {
+	protected class OutputPort implements Serializable {
+		private static final long serialVersionUID = 1L;
+
 		/** The outgoing link associated with this output port. */
 		Link outgoingLink = null;
 
+		/** The index of this output port in {@link Router#ports}. */
+		final int index;
+
 		/**
 		 * Holds the packet <em>currently</em> in transmission on the
 		 * outgoing link.
@@ -200,6 +473,12 @@ public class Router extends NetworkElement {
 		 */
 		Packet packetInTransmission = null;
 
+		/**
+		 * The packets queued in the router memory that are heading out
+		 * on this output port, in the order of their arrival.
+		 */
+		PacketQueue packetQueue = new PacketQueue();
+
 		/**
 		 * Mismatch ratio of transmission speeds between the input and
 		 * output links of this router.
@@ -217,16 +496,41 @@ public class Router extends NetworkElement {
 		 * Counts how many packets to receive before one can be sent
 		 * if the outgoing link is slower than incoming links.<BR>
 		 * Different increments may be associated with different incoming links.
-		 * @see #handleIncomingPacket(NetworkElement, Packet)
+		 * @see #handleIncomingPacket(int, Packet)
 		 */
 		double mismatchCount = 0.0;
 
+		/**
+		 * In the event-driven mode, indicates that the outgoing link is
+		 * still busy transmitting the packet that was last handed to it.
+		 */
+		boolean transmitting = false;
+
+		/**
+		 * In the event-driven mode, the event that signals the end of
+		 * the current packet's transmission; reused for all packets.
+		 */
+		TransmissionComplete transmissionComplete = new TransmissionComplete();
+
+		/**
+		 * The fraction of the outgoing link's capacity taken by fluid background traffic.
+		 * @see Router#setFluidShare(Link, double)
+		 */
+		double fluidShare = 0.0;
+
+		/**
+		 * The total length of the packets that arrived for this port so far.
+		 */
+		long arrivedBytes = 0;
+
 		/**
 		 * Constructor for the inner class.
 		 * @param outgoingLink_ the outgoing link with which this output port will be associated
+		 * @param index_ the index of this output port in {@link Router#ports}
 		 */
-		OutputPort(Link outgoingLink_) {
+		OutputPort(Link outgoingLink_, int index_) {
 			this.outgoingLink = outgoingLink_;
+			this.index = index_;
 		}
 
 		/**
@@ -238,12 +542,19 @@ public class Router extends NetworkElement {
 		 * Otherwise, the packet will be dropped. Therefore, this
 		 * method implements the <em>drop-tail queue management policy</em>.
 		 * 
-		 * @param source_ &nbsp;the communication link through which the packet arrived
+		 * @param linkClass_ &nbsp;the class of the link through which the packet arrived
+		 * (see {@link Router#linkClassById})
 		 * @param receivedPacket_ &nbsp;the packet that arrived on an incoming link
 		 */
-		void handleIncomingPacket(NetworkElement source_, Packet receivedPacket_) {
-			// Calculate the mismatch ratio:
-			double mismatchRatio_ = calculateMismatchRatio((Link) source_);
+		void handleIncomingPacket(int linkClass_, Packet receivedPacket_) {
+			arrivedBytes += receivedPacket_.length;
+			if (getSimulator().isEventDriven()) {
+				handleIncomingPacketEventDriven(receivedPacket_);
+				return;
+			}
+
+			// Look-up the mismatch ratio:
+			double mismatchRatio_ = mismatchRatios[index][linkClass_];
 
 			// If there is no packet currently in transmission on the outgoing link:
 			if (packetInTransmission == null) {
@@ -255,20 +566,13 @@ public class Router extends NetworkElement {
 					// Put the packet that just arrived into transmission:
 					packetInTransmission = receivedPacket_;
 					// Mark one arrival towards the mismatch ratio:
-					mismatchCount = maxMismatchRatio - (maxMismatchRatio / mismatchRatio_);
+					mismatchCount = maxMismatchRatio - mismatchDecrements[index][linkClass_];
 				}
 			} else {	// Try to buffer the incoming packet into router's memory:
 				// The router can buffer up to "maxBufferSize" packets,
 				// so all packets in excess of this value will be
 				// discarded.
-				if (currentBufferOccupancy + receivedPacket_.length <= bufferCapacity) {
-					packetBuffer.add(receivedPacket_);
-					currentBufferOccupancy += receivedPacket_.length;
-				} else if (	// This reporting is for debugging purposes only:
-				    (Simulator.currentReportingLevel & Simulator.REPORTING_ROUTERS) != 0
-				) {
-					System.out.println("\t  Router DROPS " + receivedPacket_.toString());
-				}
+				enqueue(receivedPacket_);
 
 				// Check if it's time to send one packet on the outgoing link:
 				if (mismatchCount < 1.0) {
@@ -277,26 +581,97 @@ public class Router extends NetworkElement {
 
 					// Retrieve the first packet from the router's memory that
 					// is heading out on this outgoing link:
-					Iterator<Packet> packetItems_ = packetBuffer.iterator();
-					while (packetItems_.hasNext()) {
-						Packet packet_ = packetItems_.next();
-						if (outgoingLink.equals(forwardingTable.get(packet_.destinationAddr))) {
-							// This now becomes the packet currently in transmission:
-							packetInTransmission = packet_;
-
-							packetItems_.remove();
-							// Indicate that a memory space has been vacated:
-							currentBufferOccupancy -= packet_.length;
-
-							// Break out of the loop -- we needed only the first such packet:
-							break;
-						}
+					if (!packetQueue.isEmpty()) {
+						// This now becomes the packet currently in transmission:
+						packetInTransmission = dequeue();
 					}
 					// Reset the mismatch ratio for the next buffered packet:
 					mismatchCount = maxMismatchRatio;
 				}
 				// Mark one arrival towards the mismatch ratio:
-				mismatchCount = mismatchCount - (maxMismatchRatio / mismatchRatio_);
+				mismatchCount = mismatchCount - mismatchDecrements[index][linkClass_];
+			}
+		}
+
+		/**
+		 * Handles an incoming packet in the event-driven mode.
+		 * If the outgoing link is idle, the packet is transmitted right away.
+		 * Otherwise, it is queued in the router's memory, if the space permits,
+		 * until the end of the current transmission
+		 * (again, the <em>drop-tail queue management policy</em>).
+		 * 
+		 * @param receivedPacket_ &nbsp;the packet that arrived on an incoming link
+		 */
+		void handleIncomingPacketEventDriven(Packet receivedPacket_) {
+			if (!transmitting) {
+				startTransmission(receivedPacket_);
+			} else {
+				enqueue(receivedPacket_);
+			}
+		}
+
+		/**
+		 * Queues a packet in the router's memory, at the tail of this port's
+		 * queue, if the space shared by all ports permits. Otherwise, the
+		 * packet will be dropped.
+		 * 
+		 * @param packet_ &nbsp;the packet to queue
+		 */
+		void enqueue(Packet packet_) {
+			if (currentBufferOccupancy + fluidBufferOccupancy + packet_.length <= bufferCapacity) {
+				packetQueue.add(packet_);
+				currentBufferOccupancy += packet_.length;
+			} else {
+				dropPacket(packet_);
+			}
+		}
+
+		/**
+		 * Removes the packet at the head of this port's queue
+		 * and vacates its space in the router's memory.
+		 * The queue must not be empty.
+		 * 
+		 * @return the first queued packet
+		 */
+		Packet dequeue() {
+			Packet packet_ = packetQueue.remove();
+			currentBufferOccupancy -= packet_.length;
+			return packet_;
+		}
+
+		/**
+		 * Discards a packet for which there is no space in the router's memory.
+		 * 
+		 * @param droppedPacket_ &nbsp;the packet to discard
+		 */
+		void dropPacket(Packet droppedPacket_) {
+			EventJournal journal_ = getSimulator().getJournal();
+			if (journal_ != null) {
+				journal_.packetDropped(Router.this, droppedPacket_);
+			}
+			getSimulator().getTracer().packetDropped(Router.this, droppedPacket_);
+		}
+
+		/**
+		 * Hands over a packet to the outgoing link and, in the
+		 * event-driven mode, marks the link busy for the duration
+		 * of the packet's transmission.
+		 * 
+		 * @param packet_ the packet to transmit
+		 */
+		void startTransmission(Packet packet_) {
+			outgoingLink.send(Router.this, packet_);
+
+			long transmissionTime_ = outgoingLink.getTransmissionTime();
+			if (fluidShare > 0.0) {
+				// The fluid traffic takes its share of the link:
+				transmissionTime_ = Math.round(transmissionTime_ / (1.0 - fluidShare));
+			}
+			if (transmissionTime_ > 0) {
+				transmitting = true;
+				getSimulator().scheduleEvent(
+					transmissionComplete, getSimulator().getCurrentTime() + transmissionTime_
+				);
 			}
 		}
 
@@ -314,7 +689,7 @@ public class Router extends NetworkElement {
 
 			// How much time is available for transmitting packets
 			// queued in router's memory for this outgoing link, if any:
-			double transmitTimeBudget_ = getSimulator().getCurrentTime() - lastTimeProcessCalled;
+			long transmitTimeBudget_ = getSimulator().getCurrentTime() - lastTimeProcessCalled;
 
 			// Send out the packet in transmission on the outgoing link:
 			outgoingLink.send(Router.this, packetInTransmission);
@@ -322,49 +697,12 @@ public class Router extends NetworkElement {
 
 			// Check also whether any queued packets that are
 			// heading out on this outgoing link can also go now:
-			Iterator<Packet> packetItems_ = packetBuffer.iterator();
-			while (packetItems_.hasNext() && transmitTimeBudget_ > 0.0) {
-				Packet packet_ = packetItems_.next();
-				if (outgoingLink.equals(forwardingTable.get(packet_.destinationAddr))) {
-					// Hand over the packet to its outgoing link:
-					outgoingLink.send(Router.this, packet_);
-
-					packetItems_.remove();
-					// Indicate that a memory space has been vacated:
-					currentBufferOccupancy -= packet_.length;
+			while (!packetQueue.isEmpty() && transmitTimeBudget_ > 0) {
+				// Hand over the packet to its outgoing link:
+				outgoingLink.send(Router.this, dequeue());
 
-					// Update the remaining transmission time budget for this link
-					transmitTimeBudget_ -= outgoingLink.getTransmissionTime();
-				}	
-			}
-		}
-
-		/**
-		 * Calculates the maximum mismatch ratio for the associated
-		 * outgoing link relative to all other (incoming) links.
-		 * @param allLinks_ the list of all other incoming links
-		 */
-		void updateMaxMismatchRatios(Collection<Link> allLinks_) {
-			Iterator<Link> linkItems_ = allLinks_.iterator();
-			while (linkItems_.hasNext()) {
-				Link incomingLink_ = linkItems_.next();
-
-				// In case our outgoing link is already in the collection, skip it:
-				if (outgoingLink.equals(incomingLink_)) continue;
-
-				OutputPort itsOutputPort_ = outputPorts.get(incomingLink_);
-
-				// First calculate the mismatch ratio relative to this "incomingLink_":
-				double mismatchRatio_ = calculateMismatchRatio(incomingLink_);
-				// If the old mismatch ratio is smaller than the new one, replace it:
-				if (maxMismatchRatio < mismatchRatio_) {
-					maxMismatchRatio = mismatchRatio_;
-				}
-
-				// Also check for the "incomingLink_" if its max ratio changed:
-				if (itsOutputPort_.maxMismatchRatio < (1.0 / mismatchRatio_)) {
-					itsOutputPort_.maxMismatchRatio = 1.0 / mismatchRatio_;
-				}
+				// Update the remaining transmission time budget for this link
+				transmitTimeBudget_ -= outgoingLink.getTransmissionTime();
 			}
 		}
 
@@ -372,11 +710,10 @@ public class Router extends NetworkElement {
 		 * Helper method to calculate the mismatch ratio of an
 		 * incoming and the outgoing link as:<BR>
 		 * <pre> outgoingLinkTransmissionTime / incomingLinkTransmissionTime </pre>
-		 * @param incomingLink_ incoming link to compare to
+		 * @param incomingLinkTransmissionTime_ the transmission time of the incoming link to compare to
 		 * @return the calculated mismatch ratio
 		 */
-		protected double calculateMismatchRatio(Link incomingLink_) {
-			double incomingLinkTransmissionTime_ = incomingLink_.getTransmissionTime();
+		protected double calculateMismatchRatio(double incomingLinkTransmissionTime_) {
 			double outgoingLinkTransmissionTime_ = outgoingLink.getTransmissionTime();
 			// assume no mismatch, meaning that packets simply pass through without buffering
 			double mismatchRatio_ = 1.0;
@@ -388,5 +725,25 @@ public class Router extends NetworkElement {
 			}
 			return mismatchRatio_;
 		}
+
+		/**
+		 * Event of the event-driven mode: the outgoing link finished
+		 * transmitting a packet, so the next queued packet heading out on
+		 * this output port, if any, can start its transmission.
+		 */
+		class TransmissionComplete extends SimulationEvent {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void fire() {
+				transmitting = false;
+
+				// Retrieve the first packet from the router's memory that
+				// is heading out on this outgoing link:
+				if (!packetQueue.isEmpty()) {
+					startTransmission(dequeue());
+				}
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -13,6 +13,8 @@ import java.util.Set;
  * client and the router, and a link between the router and the servers.
  */
 public class CloudTopology extends Topology {
+    private static final long serialVersionUID = 1L;
+
     /**
      * Constructs the cloud network topology with the some {@link simulation.network.Endpoint}s,
      * {@link simulation.network.Router}(s), and {@link simulation.network.Link}s
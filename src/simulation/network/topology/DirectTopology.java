@@ -14,6 +14,8 @@ import java.util.Set;
  * endpoint and the router.
  */
 public class DirectTopology extends Topology {
+    private static final long serialVersionUID = 1L;
+
     /**
      * Constructs the direct topology with the some {@link simulation.network.Endpoint}s,
      * {@link simulation.network.Router}(s), and {@link simulation.network.Link}s
@@ -47,6 +49,9 @@ public class DirectTopology extends Topology {
 
             senderEndpoint.setRemoteTCPendpoint(receiverEndpoint);
 
+            // Add the sender receiver mapping
+            this.getEndpointNameMappings().put("sender", "receiver");
+
             Router router;
             Link link;
             for (int i = 0; i < numRouters; i++) {
@@ -0,0 +1,278 @@
+package simulation.network.topology;
+
+import simulation.network.NetworkElement;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The order in which the {@link simulation.Simulator} signals the passage of time
+ * to the {@link NetworkElement}s of a {@link Topology} in every clock tick.
+ * The schedule is a flat list of steps; each step calls
+ * {@link NetworkElement#process(int)} on one element with one processing mode.
+ * It is compiled once from the topology by {@link Topology#compileSchedule()}
+ * and then replayed in every tick, without any look-ups or allocations.
+ * <p>
+ * A step may be tagged with the flow whose private state it touches. A run of
+ * consecutive tagged steps forms a phase in which the steps of different flows
+ * are independent, so {@link #replay(ForkJoinPool)} can run the flows of such
+ * a phase in parallel. Untagged steps, such as the routers shared by all flows,
+ * always run sequentially, after every flow of the preceding phase has finished.
+ *
+ * @author Tom Carroll
+ */
+public class ProcessingSchedule implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The flow tag of the steps that touch state shared by several flows
+     */
+    public static final int SHARED = -1;
+
+    /**
+     * The number of flows below which a parallel phase is not split any further
+     */
+    private static final int FLOWS_PER_TASK = 4;
+
+    /**
+     * The network element to process in each step
+     */
+    private NetworkElement[] elements = new NetworkElement[16];
+
+    /**
+     * The processing mode for each step
+     */
+    private int[] modes = new int[16];
+
+    /**
+     * The flow tag for each step, or {@link #SHARED}
+     */
+    private int[] flows = new int[16];
+
+    /**
+     * The number of steps in this schedule
+     */
+    private int length = 0;
+
+    /**
+     * The phases of this schedule, split up for parallel replay;
+     * compiled on the first call to {@link #replay(ForkJoinPool)}
+     */
+    private transient Phase[] phases = null;
+
+    /**
+     * Appends a step that touches state shared by several flows to this schedule
+     * @param element The network element to process
+     * @param mode The processing mode passed to {@link NetworkElement#process(int)}
+     */
+    public void add(NetworkElement element, int mode) {
+        add(element, mode, SHARED);
+    }
+
+    /**
+     * Appends a step to this schedule
+     * @param element The network element to process
+     * @param mode The processing mode passed to {@link NetworkElement#process(int)}
+     * @param flow The flow whose private state the step touches, or {@link #SHARED}
+     */
+    public void add(NetworkElement element, int mode, int flow) {
+        if (length == elements.length) {
+            NetworkElement[] largerElements = new NetworkElement[length << 1];
+            int[] largerModes = new int[length << 1];
+            int[] largerFlows = new int[length << 1];
+            System.arraycopy(elements, 0, largerElements, 0, length);
+            System.arraycopy(modes, 0, largerModes, 0, length);
+            System.arraycopy(flows, 0, largerFlows, 0, length);
+            elements = largerElements;
+            modes = largerModes;
+            flows = largerFlows;
+        }
+        elements[length] = element;
+        modes[length] = mode;
+        flows[length] = flow;
+        length++;
+        phases = null;
+    }
+
+    /**
+     * Processes all steps of this schedule in order, which amounts to one clock tick
+     */
+    public void replay() {
+        for (int i = 0; i < length; i++) {
+            elements[i].process(modes[i]);
+        }
+    }
+
+    /**
+     * Processes all steps of this schedule, which amounts to one clock tick,
+     * running the flows of each parallel phase on the given pool.
+     * The effect is the same as that of {@link #replay()}.
+     * @param pool The pool that runs the flows of the parallel phases
+     */
+    public void replay(ForkJoinPool pool) {
+        if (phases == null) {
+            phases = compilePhases();
+        }
+        for (Phase phase : phases) {
+            if (phase.flowSteps == null) {
+                for (int i = phase.start; i < phase.end; i++) {
+                    elements[i].process(modes[i]);
+                }
+            } else {
+                // Returns only when all flows are done, so that the
+                // next phase sees everything this phase has sent
+                pool.invoke(new FlowRange(phase.flowSteps, 0, phase.flowSteps.length));
+            }
+        }
+    }
+
+    /**
+     * Gets the number of steps in this schedule
+     * @return The number of steps
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the network element processed in the given step
+     * @param step The index of the step
+     * @return The network element
+     */
+    public NetworkElement getElement(int step) {
+        return elements[step];
+    }
+
+    /**
+     * Gets the processing mode of the given step
+     * @param step The index of the step
+     * @return The processing mode
+     */
+    public int getMode(int step) {
+        return modes[step];
+    }
+
+    /**
+     * Gets the flow tag of the given step
+     * @param step The index of the step
+     * @return The flow whose private state the step touches, or {@link #SHARED}
+     */
+    public int getFlow(int step) {
+        return flows[step];
+    }
+
+    /**
+     * Splits the steps of this schedule into phases. Each maximal run of tagged steps
+     * becomes a parallel phase, unless it contains a single flow only or some
+     * network element appears in more than one of its flows; all others run sequentially.
+     * @return The phases, in order
+     */
+    private Phase[] compilePhases() {
+        List<Phase> compiled = new ArrayList<Phase>();
+        int start = 0;
+        while (start < length) {
+            int end = start + 1;
+            while (end < length && (flows[end] == SHARED) == (flows[start] == SHARED)) {
+                end++;
+            }
+
+            Phase phase = new Phase(start, end);
+            if (flows[start] != SHARED) {
+                Map<Integer, List<Integer>> stepsByFlow = new LinkedHashMap<Integer, List<Integer>>();
+                Map<NetworkElement, Integer> flowByElement = new IdentityHashMap<NetworkElement, Integer>();
+                boolean independent = true;
+                for (int i = start; i < end; i++) {
+                    Integer owner = flowByElement.put(elements[i], flows[i]);
+                    if (owner != null && owner != flows[i]) {
+                        independent = false;
+                    }
+                    List<Integer> steps = stepsByFlow.get(flows[i]);
+                    if (steps == null) {
+                        steps = new ArrayList<Integer>();
+                        stepsByFlow.put(flows[i], steps);
+                    }
+                    steps.add(i);
+                }
+
+                if (independent && stepsByFlow.size() > 1) {
+                    phase.flowSteps = new int[stepsByFlow.size()][];
+                    int flow = 0;
+                    for (List<Integer> steps : stepsByFlow.values()) {
+                        phase.flowSteps[flow] = new int[steps.size()];
+                        for (int j = 0; j < steps.size(); j++) {
+                            phase.flowSteps[flow][j] = steps.get(j);
+                        }
+                        flow++;
+                    }
+                }
+            }
+            compiled.add(phase);
+            start = end;
+        }
+        return compiled.toArray(new Phase[compiled.size()]);
+    }
+
+    /**
+     * A run of consecutive steps of this schedule
+     */
+    private static class Phase {
+        /**
+         * The first step of this phase
+         */
+        final int start;
+
+        /**
+         * The step after the last step of this phase
+         */
+        final int end;
+
+        /**
+         * The steps of each flow, in order, if the flows of this phase
+         * can run in parallel; otherwise <code>null</code>
+         */
+        int[][] flowSteps = null;
+
+        Phase(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Processes the steps of a range of flows from a parallel phase,
+     * splitting the range in halves until it is small enough
+     */
+    private class FlowRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] flowSteps;
+        private final int from;
+        private final int to;
+
+        FlowRange(int[][] flowSteps, int from, int to) {
+            this.flowSteps = flowSteps;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FLOWS_PER_TASK) {
+                for (int flow = from; flow < to; flow++) {
+                    for (int step : flowSteps[flow]) {
+                        elements[step].process(modes[step]);
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new FlowRange(flowSteps, from, middle), new FlowRange(flowSteps, middle, to));
+            }
+        }
+    }
+}
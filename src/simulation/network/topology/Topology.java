@@ -2,8 +2,10 @@ package simulation.network.topology;
 
 import simulation.network.Endpoint;
 import simulation.network.Link;
+import simulation.network.NetworkElement;
 import simulation.network.Router;
 
+import java.io.Serializable;
 import java.util.*;
 
 /**
@@ -13,9 +15,12 @@ import java.util.*;
  *
  * @author Tom Carroll
  */
-public abstract class Topology {
+public abstract class Topology implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     /**
-     * The set of endpoints in this topology
+     * The set of endpoints in this topology, in the order they were added, so that
+     * every run iterates over them, and creates the flows, in the same order
      */
     private Set<Endpoint> endpoints;
 
@@ -34,11 +39,28 @@ public abstract class Topology {
      */
     private List<Router> routers;
 
+    /**
+     * Index of the endpoints by name, built on demand by {@link #getEndpointWithName(String)}
+     */
+    private transient Map<String, Endpoint> endpointsByName;
+
+    /**
+     * The sending endpoints, built on demand by {@link #getSenderEndpoints()}
+     */
+    private transient List<Endpoint> senderEndpoints;
+
+    /**
+     * The numbers of the endpoint name mappings and of the endpoints when
+     * {@link #senderEndpoints} was built, to notice when they were changed directly
+     */
+    private transient int senderEndpointsMappingCount;
+    private transient int senderEndpointsEndpointCount;
+
     /**
      * Default constructor
      */
     public Topology () {
-        this(new HashSet<Endpoint>(), new HashSet<Link>(), new ArrayList<Router>());
+        this(new LinkedHashSet<Endpoint>(), new LinkedHashSet<Link>(), new ArrayList<Router>());
     }
 
     /**
@@ -48,7 +70,7 @@ public abstract class Topology {
      * @param routers The set of routers in this topology
      */
     public Topology(Set<Endpoint> endpoints, Set<Link> links, List<Router> routers) {
-        this(endpoints, links, routers, new HashMap<String, String>());
+        this(endpoints, links, routers, new LinkedHashMap<String, String>());
     }
 
     /**
@@ -65,6 +87,288 @@ public abstract class Topology {
         this.endpointNameMappings = endpointNameMappings;
     }
 
+    /**
+     * Gets the sending {@link Endpoint}(s) in this topology, i.e., the ones named
+     * as senders in the {@link #getEndpointNameMappings()}. The list is built once
+     * and kept until the mappings or the endpoints are replaced, or their numbers change.
+     * @return The unmodifiable list of sending endpoint(s)
+     */
+    public List<Endpoint> getSenderEndpoints() {
+        if (senderEndpoints == null ||
+                senderEndpointsMappingCount != this.getEndpointNameMappings().size() ||
+                senderEndpointsEndpointCount != this.getEndpoints().size()) {
+            List<Endpoint> senders = new ArrayList<Endpoint>();
+            Iterator<String> senderNameIterator = this.getEndpointNameMappings().keySet().iterator();
+            while (senderNameIterator.hasNext()) {
+                senders.add(getEndpointWithName(senderNameIterator.next()));
+            }
+            senderEndpoints = Collections.unmodifiableList(senders);
+            senderEndpointsMappingCount = this.getEndpointNameMappings().size();
+            senderEndpointsEndpointCount = this.getEndpoints().size();
+        }
+
+        return senderEndpoints;
+    }
+
+    /**
+     * Gets the receiving {@link Endpoint}(s) in this topology, i.e., the remote endpoints
+     * of the {@link #getSenderEndpoints()}, in the same order.
+     * @return The list of receiving endpoint(s)
+     */
+    public List<Endpoint> getReceiverEndpoints() {
+        List<Endpoint> receivers = new ArrayList<Endpoint>();
+        List<Endpoint> senders = getSenderEndpoints();
+        for (int i = 0; i < senders.size(); i++) {
+            receivers.add(senders.get(i).getRemoteTCPendpoint());
+        }
+
+        return receivers;
+    }
+
+    /**
+     * Compiles the order in which the network elements of this topology are processed
+     * in every clock tick. The schedule is derived from the structure of the topology:
+     * the sending endpoints and their links, the chain of {@link #getRouters()},
+     * and the receiving endpoints and their links. Each tick, data segments move from the
+     * senders through the routers to the receivers, and then acknowledgments
+     * move back through the routers towards the senders. The steps that touch only one
+     * endpoint and its access link are tagged with the endpoint's flow, so that
+     * {@link ProcessingSchedule#replay(java.util.concurrent.ForkJoinPool)} may run them in parallel.
+     * @return The compiled schedule, to be replayed once per clock tick
+     * @throws IllegalStateException If two consecutive routers are not connected by a {@link Link}
+     */
+    public ProcessingSchedule compileSchedule() {
+        ProcessingSchedule schedule = new ProcessingSchedule();
+        List<Endpoint> senders = getSenderEndpoints();
+        List<Endpoint> receivers = getReceiverEndpoints();
+        List<Router> routers = getRouters();
+
+        // The links between consecutive routers; the first entry is unused
+        Link[] routerLinks = new Link[routers.size()];
+        for (int i = 1; i < routers.size(); i++) {
+            routerLinks[i] = getLinkBetween(routers.get(i - 1), routers.get(i));
+        }
+
+        // The senders handle the ACKs received in the previous tick and send more data
+        // (each of these steps touches only its own flow's endpoint and access link)
+        for (int i = 0; i < senders.size(); i++) {
+            schedule.add(senders.get(i).getLink(), senders.get(i).getLink().getModeToward(senders.get(i)), i);
+        }
+        for (int i = 0; i < senders.size(); i++) {
+            schedule.add(senders.get(i), 1, i);
+        }
+        for (int i = 0; i < senders.size(); i++) {
+            schedule.add(senders.get(i).getLink(), senders.get(i).getLink().getModeAwayFrom(senders.get(i)));
+        }
+
+        // The routers relay the packets towards the receivers
+        for (int i = 0; i < routers.size(); i++) {
+            if (i > 0) {
+                schedule.add(routerLinks[i], routerLinks[i].getModeToward(routers.get(i - 1)));
+            }
+
+            schedule.add(routers.get(i), 0);
+
+            if (i > 0 && i < routers.size() - 1) {
+                schedule.add(routerLinks[i], routerLinks[i].getModeToward(routers.get(i)));
+            }
+        }
+
+        // The receivers process the data segments and generate ACKs
+        for (int i = 0; i < receivers.size(); i++) {
+            schedule.add(receivers.get(i).getLink(), receivers.get(i).getLink().getModeToward(receivers.get(i)), i);
+        }
+        for (int i = 0; i < receivers.size(); i++) {
+            schedule.add(receivers.get(i), 2, i);
+        }
+        for (int i = 0; i < receivers.size(); i++) {
+            schedule.add(receivers.get(i).getLink(), receivers.get(i).getLink().getModeAwayFrom(receivers.get(i)));
+        }
+
+        // The routers relay the packets back towards the senders
+        for (int i = routers.size() - 1; i >= 0; i--) {
+            schedule.add(routers.get(i), 0);
+
+            if (i > 0) {
+                schedule.add(routerLinks[i], routerLinks[i].getModeToward(routers.get(i)));
+            } else {
+                for (int j = 0; j < senders.size(); j++) {
+                    schedule.add(senders.get(j).getLink(), senders.get(j).getLink().getModeAwayFrom(senders.get(j)));
+                }
+            }
+        }
+
+        return schedule;
+    }
+
+    /**
+     * Checks whether this topology is quiescent: no packets are travelling through
+     * any {@link Link}, no packets are queued or in transmission in any {@link Router},
+     * and none of the sending endpoints has anything to send right now.
+     * Nothing will happen in a quiescent topology until a timer expires.
+     * @return true if the topology is quiescent, false otherwise
+     */
+    public boolean isQuiescent() {
+        Iterator<Link> linkIterator = this.getLinks().iterator();
+        while (linkIterator.hasNext()) {
+            if (!linkIterator.next().isIdle()) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < this.getRouters().size(); i++) {
+            if (!this.getRouters().get(i).isIdle()) {
+                return false;
+            }
+        }
+
+        List<Endpoint> senders = getSenderEndpoints();
+        for (int i = 0; i < senders.size(); i++) {
+            if (!senders.get(i).getSender().isIdle()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the average number of packets that the links of this topology delivered at once
+     * in the round-based mode
+     * @return the average batch size over all links, or zero if no packets were delivered in batches
+     * @see Link#getAverageBatchSize()
+     */
+    public double getAverageBatchSize() {
+        long batches = 0;
+        long packets = 0;
+        Iterator<Link> linkIterator = this.getLinks().iterator();
+        while (linkIterator.hasNext()) {
+            Link link = linkIterator.next();
+            batches += link.getBatchesDelivered();
+            packets += link.getPacketsDelivered();
+        }
+        return (batches == 0) ? 0.0 : (double) packets / batches;
+    }
+
+    /**
+     * Notifies all network elements in this topology that the simulator
+     * skipped the clock ticks up to and including the given time
+     * @param time The time of the last skipped clock tick, in the simulator time units
+     * @see NetworkElement#skipIdleTime(long)
+     */
+    public void skipIdleTime(long time) {
+        Iterator<Endpoint> endpointIterator = this.getEndpoints().iterator();
+        while (endpointIterator.hasNext()) {
+            endpointIterator.next().skipIdleTime(time);
+        }
+
+        Iterator<Link> linkIterator = this.getLinks().iterator();
+        while (linkIterator.hasNext()) {
+            linkIterator.next().skipIdleTime(time);
+        }
+
+        for (int i = 0; i < this.getRouters().size(); i++) {
+            this.getRouters().get(i).skipIdleTime(time);
+        }
+    }
+
+    /**
+     * Partitions the endpoints and routers of this topology into at most the given number
+     * of parts, for the partitioned event-driven engine. The elements are taken in order
+     * from the senders through the chain of routers to the receivers, and split into
+     * consecutive parts of about the same size, so that a long chain of routers is cut
+     * into consecutive segments. Elements connected by a {@link Link} without any delay
+     * are always kept in the same part, since such a link provides no lookahead.
+     * @param parts The maximum number of parts
+     * @return The parts, each listing its endpoints and routers; none of them is empty
+     */
+    public List<List<NetworkElement>> partition(int parts) {
+        List<NetworkElement> elements = new ArrayList<NetworkElement>();
+        elements.addAll(getSenderEndpoints());
+        elements.addAll(getRouters());
+        elements.addAll(getReceiverEndpoints());
+
+        // Group the elements that cannot be separated:
+        Map<NetworkElement, NetworkElement> groups = new IdentityHashMap<NetworkElement, NetworkElement>();
+        Iterator<Link> linkIterator = this.getLinks().iterator();
+        while (linkIterator.hasNext()) {
+            Link currentLink = linkIterator.next();
+            if (currentLink.getTransmissionTime() + currentLink.getPropagationTime() == 0) {
+                NetworkElement group1 = findGroup(groups, currentLink.getNode1());
+                NetworkElement group2 = findGroup(groups, currentLink.getNode2());
+                if (group1 != group2) {
+                    groups.put(group2, group1);
+                }
+            }
+        }
+
+        // Split the elements into consecutive parts, keeping the groups together:
+        int partSize = (elements.size() + parts - 1) / parts;
+        List<List<NetworkElement>> partition = new ArrayList<List<NetworkElement>>();
+        Map<NetworkElement, List<NetworkElement>> groupParts = new IdentityHashMap<NetworkElement, List<NetworkElement>>();
+        Set<NetworkElement> assigned = Collections.newSetFromMap(new IdentityHashMap<NetworkElement, Boolean>());
+        List<NetworkElement> currentPart = null;
+        for (int i = 0; i < elements.size(); i++) {
+            NetworkElement element = elements.get(i);
+            if (!assigned.add(element)) {
+                continue;
+            }
+
+            NetworkElement group = findGroup(groups, element);
+            List<NetworkElement> part = groupParts.get(group);
+            if (part == null) {
+                if (currentPart == null || currentPart.size() >= partSize) {
+                    currentPart = new ArrayList<NetworkElement>();
+                    partition.add(currentPart);
+                }
+                part = currentPart;
+                groupParts.put(group, part);
+            }
+            part.add(element);
+        }
+
+        return partition;
+    }
+
+    /**
+     * Helper method to find the representative of the group of the given element
+     * @param groups The parent of each grouped element; a representative is its own parent
+     * @param element The element
+     * @return The representative of the element's group
+     */
+    private static NetworkElement findGroup(Map<NetworkElement, NetworkElement> groups, NetworkElement element) {
+        NetworkElement parent = groups.get(element);
+        if (parent == null) {
+            groups.put(element, element);
+            return element;
+        }
+        while (parent != element) {
+            element = parent;
+            parent = groups.get(element);
+        }
+        return element;
+    }
+
+    /**
+     * Gets the {@link Link} that connects the two specified network elements
+     * @param element1 One of the connected network elements
+     * @param element2 The other connected network element
+     * @return The {@link Link} between the two elements
+     * @throws IllegalStateException If the elements are not connected by a {@link Link}
+     */
+    public Link getLinkBetween(NetworkElement element1, NetworkElement element2) {
+        Iterator<Link> linkIterator = this.getLinks().iterator();
+        while (linkIterator.hasNext()) {
+            Link currentLink = linkIterator.next();
+            if ((currentLink.getNode1() == element1 && currentLink.getNode2() == element2) ||
+                    (currentLink.getNode1() == element2 && currentLink.getNode2() == element1)) {
+                return currentLink;
+            }
+        }
+
+        throw new IllegalStateException("Unable to find a Link between " + element1.getName() + " and " + element2.getName());
+    }
+
     /**
      * Gets the {@link Endpoint} with the specified name
      * @param name The name of the {@link Endpoint} to search for
@@ -72,15 +376,25 @@ public abstract class Topology {
      * @throws IllegalStateException If no {@link Endpoint} exists with that name
      */
     public Endpoint getEndpointWithName(String name) {
-        Iterator<Endpoint> endpointIterator = this.getEndpoints().iterator();
-        while (endpointIterator.hasNext()) {
-            Endpoint currentEndpoint = endpointIterator.next();
-            if (currentEndpoint.getName().equals(name)) {
-                return currentEndpoint;
+        // The set of endpoints may be changed directly, so the index is
+        // rebuilt whenever it misses or finds an endpoint no longer in the set
+        Endpoint endpoint = (endpointsByName == null) ? null : endpointsByName.get(name);
+        if (endpoint == null || !this.getEndpoints().contains(endpoint)) {
+            endpointsByName = new HashMap<String, Endpoint>();
+            Iterator<Endpoint> endpointIterator = this.getEndpoints().iterator();
+            while (endpointIterator.hasNext()) {
+                Endpoint currentEndpoint = endpointIterator.next();
+                if (!endpointsByName.containsKey(currentEndpoint.getName())) {
+                    endpointsByName.put(currentEndpoint.getName(), currentEndpoint);
+                }
             }
+            endpoint = endpointsByName.get(name);
         }
 
-        throw new IllegalStateException("Unable to find specified Endpoint with name " + name);
+        if (endpoint == null) {
+            throw new IllegalStateException("Unable to find specified Endpoint with name " + name);
+        }
+        return endpoint;
     }
 
     /**
@@ -90,7 +404,7 @@ public abstract class Topology {
      * @throws IllegalStateException If no {@link Endpoint} exists with that name
      */
     public Set<Endpoint> getEndpointsContainingName(String name) {
-        Set<Endpoint> endpointSet = new HashSet<Endpoint>();
+        Set<Endpoint> endpointSet = new LinkedHashSet<Endpoint>();
         Iterator<Endpoint> endpointIterator = this.getEndpoints().iterator();
         while (endpointIterator.hasNext()) {
             Endpoint currentEndpoint = endpointIterator.next();
@@ -161,7 +475,7 @@ public abstract class Topology {
      * @throws IllegalStateException If no {@link Link} exists with that name
      */
     public Set<Link> getLinksContainingName(String name) {
-        Set<Link> linkSet = new HashSet<Link>();
+        Set<Link> linkSet = new LinkedHashSet<Link>();
         Iterator<Link> linkIterator = this.getLinks().iterator();
         while (linkIterator.hasNext()) {
             Link currentLink = linkIterator.next();
@@ -179,6 +493,7 @@ public abstract class Topology {
 
     public void setEndpoints(Set<Endpoint> endpoints) {
         this.endpoints = endpoints;
+        this.senderEndpoints = null;
     }
 
     public Map<String, String> getEndpointNameMappings() {
@@ -187,6 +502,7 @@ public abstract class Topology {
 
     public void setEndpointNameMappings(Map<String, String> endpointNameMappings) {
         this.endpointNameMappings = endpointNameMappings;
+        this.senderEndpoints = null;
     }
 
     public Set<Link> getLinks() {
@@ -6,7 +6,8 @@
  */
 package simulation.tcp;
 
-import simulation.Simulator;
+import java.io.Serializable;
+
 
 /**
  * This class performs ongoing estimation of the TCP retransmission
@@ -52,7 +53,9 @@ import simulation.Simulator;
  * 
  * @author Ivan Marsic
  */
-public class RTOEstimator {
+public class RTOEstimator implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Binary exponent of "alpha" weight for updating of
 	 *  the estimated RTT {@link #estimatedRTT}.
 	 *  That is, 2^{@value} = 8 = 1/alpha. */
@@ -105,16 +108,16 @@ public class RTOEstimator {
 
 	/** Current estimated RTT value (in simulator clock ticks)<BR>
 	 * (shifted by {@link #alphaShift}) */
-	transient protected int estimatedRTT = 0;
+	protected int estimatedRTT = 0;
 
 	/** Current estimated RTT deviation (shifted by {@link #betaShift}) */
-	transient protected int devRTT = 0;
+	protected int devRTT = 0;
 
 	/** Current RTO timer value (in simulator clock ticks). */
-	transient protected double timeoutInterval = maxTimeoutInterval;
+	protected double timeoutInterval = maxTimeoutInterval;
 
     /** Current RTO timer backoff value (unitless number). */
-	transient protected int backoff = 1;
+	protected int backoff = 1;
 
 	/** Default constructor calls the other constructor
 	 * with the initial values of the input parameters:
@@ -251,16 +254,6 @@ public class RTOEstimator {
 		//
 		if (timeoutInterval < 1.0) timeoutInterval = 1.0;
 		timeoutInterval *= tickDuration;
-
-		if (
-			(Simulator.currentReportingLevel & Simulator.REPORTING_RTO_ESTIMATE) != 0
-		) {
-			System.out.println(
-				"RTT UPDATE:  (sampleRTT=" + sampleRTT + ", estimatedRTT=" +
-				 estimatedRTT + ", devRTT=" + devRTT + ", timeoutInterval=" +
-				timeoutInterval + ", backoff=" + backoff +")"
-			);
-		}
 	}
 
 	/**
@@ -272,11 +265,6 @@ public class RTOEstimator {
 	protected void timerBackoff() {
 		if (timeoutInterval < maxTimeoutInterval) {
 			 backoff <<= 1;	// double the backoff
-			if (
-				(Simulator.currentReportingLevel & Simulator.REPORTING_RTO_ESTIMATE) != 0
-			) {
-				System.out.println("TIMEOUT: timer backoff to " + backoff + " times");
-			}
 		}
 	}
 
@@ -6,6 +6,7 @@
  */
 package simulation.tcp;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 
@@ -29,7 +30,9 @@ import simulation.TimerSimulated;
  * @see Simulator
  * @author Ivan Marsic
  */
-public class Receiver implements TimedComponent {
+public class Receiver implements TimedComponent, Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Local endpoint that contains this receiver object. */
 	Endpoint localEndpoint = null;
 
@@ -46,18 +49,15 @@ public class Receiver implements TimedComponent {
 	 * 500 ms of the arrival of the first unacknowledged packet.
 	 * Therefore, the receiver can send an ACK for no more than
 	 * two data packets arriving in-order. See more information
-	 * related to {@link #cumulativeACK}. */
+	 * related to {@link #cumulativeACK}.</p>
+	 * <p>The timer is registered with the simulator directly
+	 * (see {@link simulation.Simulator#reschedule(TimerSimulated, long)}),
+	 * so it can be cancelled without a separate handle. Recall that,
+	 * if the receiver receives an out-of-order segment, it is obliged
+	 * to send a (duplicate) ACK immediately. However, if this timer has
+	 * not yet expired, it must be cancelled first. */
 	protected TimerSimulated delayedACKtimer = null;
 
-	/**
-	 * Handle returned by the simulator, in case {@link #delayedACKtimer}
-	 * needs to be canceled. Recall that, if the receiver receives
-	 * an out-of-order segment, it is obliged to send a (duplicate)
-	 * ACK immediately. However, if {@link #delayedACKtimer} has
-	 * not yet expired, it must be cancelled first.
-	 */
-	protected TimerSimulated delayedACKtimerHandle = null;
-
 	/** Maximum receive window size, in bytes. This is how
 	 * much memory this receiver allocated for a temporary
 	 * storage ("buffer") for holding out-of-order segments. */
@@ -110,6 +110,9 @@ public class Receiver implements TimedComponent {
 	 * number of the first byte is zero, etc. */
 	protected int nextByteExpected = 0;
 
+	/** Indicates that a batch of segments is being handled, see {@link #handleBatch(Segment[], int)}. */
+	private transient boolean handlingBatch = false;
+
 	/**
 	 * Constructor.
 	 * @param localTCPendpoint_ The local TCP endpoint object that contains
@@ -125,7 +128,7 @@ public class Receiver implements TimedComponent {
 
 		// Delayed ACK timer for cumulative ACKs, created but not activated
 		delayedACKtimer = new TimerSimulated(
-			this, 2 /* type equals "2" */, 0.0
+			this, 2 /* type equals "2" */, 0
 		);
 	}
 
@@ -134,6 +137,14 @@ public class Receiver implements TimedComponent {
 		return currentRcvWindow;
 	}
 
+	/**
+	 * Accessor for the endpoint on which this receiver runs.
+	 * @return the local endpoint
+	 */
+	public Endpoint getLocalEndpoint() {
+		return localEndpoint;
+	}
+
 	/**
 	 * Callback method to call when a simulated timer expires. </p>
 	 * 
@@ -146,7 +157,6 @@ public class Receiver implements TimedComponent {
 	 */
 	@Override
 	public void timerExpired(int timerType_) {
-		delayedACKtimerHandle = null;	// clear the timer handle
 		sendCumulativeAcknowledgement();
 	}
 
@@ -159,14 +169,7 @@ public class Receiver implements TimedComponent {
 	 */
 	protected void sendCumulativeAcknowledgement() {
 		// first cancel the delayed-ACK timer if it's still running
-		if (delayedACKtimerHandle != null) {
-			try {
-				localEndpoint.getSimulator().cancelTimeout(delayedACKtimerHandle);
-			} catch (Exception ex) {
-				ex.printStackTrace();
-			}
-			delayedACKtimerHandle = null;	// clear the timer handle
-		}
+		localEndpoint.getSimulator().cancel(delayedACKtimer);
 		if (cumulativeACK != null) {
 			// Hand the cumulative ACK down to the network layer for transmission
 			localEndpoint.getNetworkLayerProtocol().send(localEndpoint, cumulativeACK);
@@ -232,7 +235,7 @@ public class Receiver implements TimedComponent {
 			// was filled.
 			if (cumulativeACK == null) {
 				cumulativeACK =	new Segment(
-					localEndpoint.getRemoteTCPendpoint(),
+					localEndpoint.getRemoteTCPendpoint().getId(),
 					currentRcvWindow, nextByteExpected
 				);	// ACK segment with zero-length data
 				// Bounce back the timestamp of the received data segment
@@ -243,13 +246,9 @@ public class Receiver implements TimedComponent {
 				// simulator works and when it fires the expired timers.
 				// That is, the Simulator clock tick equals one RTT and
 				// it checks for expired timers at the end of an RTT period.
-				delayedACKtimer.setTime(localEndpoint.getSimulator().getCurrentTime());
-				try {
-					delayedACKtimerHandle =
-						localEndpoint.getSimulator().setTimeoutAt(delayedACKtimer);
-				} catch (Exception ex) {
-					ex.printStackTrace();
-				}
+				localEndpoint.getSimulator().reschedule(
+					delayedACKtimer, localEndpoint.getSimulator().getCurrentTime()
+				);
 			} else {
 				// There is already a cumulative ACK waiting
 				// just update its parameters.
@@ -271,17 +270,40 @@ public class Receiver implements TimedComponent {
 			);
 			// This must be a duplicate ACK !!!
 		}
-		// Display the relevant receiver's parameters.
-		if (		// Debugging reporting:
-			(Simulator.currentReportingLevel  & Simulator.REPORTING_RECEIVERS) != 0
-		) {
-			System.out.println(
-				"RECEIVER:\tlastByteRecvd="+lastByteRecvd + "\t" + "nextByteExpected="+nextByteExpected +
-				"\t" + "currentRcvWindow="+currentRcvWindow
-			);
+		if (!handlingBatch) {
+			reportState();
 		}
 	}
 
+	/**
+	 * Receives several data segments that arrived together, in the order
+	 * of their arrival. Each segment is processed as by {@link #handle(Segment)},
+	 * and the receiver's parameters are reported only once, after the last one.
+	 * 
+	 * @param segments_ the received segments (with non-zero data payload)
+	 * @param count_ the number of segments, from the start of the array
+	 */
+	public void handleBatch(Segment[] segments_, int count_) {
+		handlingBatch = true;
+		try {
+			for (int i = 0; i < count_; i++) {
+				handle(segments_[i]);
+			}
+		} finally {
+			handlingBatch = false;
+		}
+		reportState();
+	}
+
+	/**
+	 * Helper method to report the relevant receiver's parameters to the simulator's tracer.
+	 */
+	private void reportState() {
+		localEndpoint.getSimulator().getTracer().receiverState(
+			this, lastByteRecvd, nextByteExpected, currentRcvWindow
+		);
+	}
+
 	/**
 	 * Helper method to handle out-of-sequence segments.
 	 * Such segments are buffered in the {@link #rcvBuffer}.
@@ -292,10 +314,11 @@ public class Receiver implements TimedComponent {
 	 * @return Returns the acknowledgment segment for the input data segment.
 	 */
 	protected Segment handleOutOfSequenceSegment(Segment segment_) {
-		// Buffer an out-of-sequence segment.
+		// Buffer an out-of-sequence segment. Nobody changes a segment
+		// after it is delivered, so the segment itself is kept, not a copy.
 		// Note that we do NOT assume that currently buffered segments
 		// are ordered in the ascending order of their sequence number.
-		Segment outOfOrderSeg_ = (Segment) segment_.clone();
+		Segment outOfOrderSeg_ = segment_;
 		rcvBuffer.add(outOfOrderSeg_);
 
 		// Also, we CANNOT assume that all currently buffered segments
@@ -315,7 +338,7 @@ public class Receiver implements TimedComponent {
 		// Generate a duplicate ACK, to be transmitted immediately !!!
 		// Note that by default, the timestamp of this segment will be "-1"
 		return new Segment(
-			localEndpoint.getRemoteTCPendpoint(),
+			localEndpoint.getRemoteTCPendpoint().getId(),
 			currentRcvWindow, nextByteExpected
 		);
 	}
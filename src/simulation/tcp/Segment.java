@@ -6,11 +6,13 @@
  */
 package simulation.tcp;
 
-import simulation.network.NetworkElement;
+import simulation.SimulationConfig;
 import simulation.network.Packet;
 
 /**
  * TCP segment, which could carry either data, ACK, or both.<BR>
+ * The data are virtual: a segment carries only the sequence number
+ * and the length of its data, because the simulator never looks at the bytes.<BR>
  * Note that this class implements java.lang.Comparable so that
  * TCP segments can be compared (and sorted) by their sequence
  * number.
@@ -18,6 +20,7 @@ import simulation.network.Packet;
  * @author Ivan Marsic
  */
 public class Segment extends Packet implements Comparable<Segment> {
+	private static final long serialVersionUID = 1L;
 
 	/** Sequence number of this segment, which is the sequence
 	 * number of the <i>first byte</i> of data carried in this
@@ -52,40 +55,35 @@ public class Segment extends Packet implements Comparable<Segment> {
 	 * 
 	 * <p>This field should be set to <code>-1</code> if the segment is 
 	 * a retransmitted segment, and no RTT estimation should be performed 
-	 * for retransmitted segments. */
-	public int timestamp = -1;
-
-	/** Ordinal number of this segment. This is only for tracking
-	 * purposes and this field is <i>not</i> present in actual
-	 * TCP segments.<BR>
-	 * Note: The value is computed assuming that {@link #dataSequenceNumber}
-	 * starts at zero. */
-	int ordinalNum;
-	/** Similar to {@link #ordinalNum} */
-	int ordinalNumAck;
+	 * for retransmitted segments.</p>
+	 * 
+	 * <p>The time is given in the simulator time units, without truncation. */
+	public long timestamp = -1;
 
 	/**
 	 * Constructor for data-only segments.
 	 * 
+	 * @param destination_ the identifier of the destination endpoint
 	 * @param rcvWindow_  the current receive window size of the sender of this segment
 	 * @param seqNum_ the sequence number for the data payload.
-	 * @param dataPayload_ the data payload contained in this segment
+	 * @param length_ the length of the data payload contained in this segment [in bytes]
 	 */
 	public Segment(
-		NetworkElement destinationAddr_, int rcvWindow_, int seqNum_, byte[] dataPayload_
+		int destination_, int rcvWindow_, int seqNum_, int length_
 	) {
-		this(destinationAddr_, rcvWindow_, seqNum_, dataPayload_, -1);
+		this(destination_, rcvWindow_, seqNum_, length_, -1);
 	}
 
 	/**
 	 * Constructor for acknowledgment-only segments (zero data payload).
+	 * @param destination_ the identifier of the destination endpoint
 	 * @param rcvWindow_ the current receive window size of the sender of this segment
 	 * @param ackSeqNum_ the acknowledgment sequence number of this segment
 	 */
 	public Segment(
-		NetworkElement destinationAddr_, int rcvWindow_, int ackSeqNum_
+		int destination_, int rcvWindow_, int ackSeqNum_
 	) {
-		this(destinationAddr_, rcvWindow_, -1, null, ackSeqNum_);
+		this(destination_, rcvWindow_, -1, 0, ackSeqNum_);
 	}
 
 	/**
@@ -93,48 +91,68 @@ public class Segment extends Packet implements Comparable<Segment> {
 	 * i.e., an acknowledgment is piggybacked on a data segment
 	 * going to the same destination.
 	 * 
+	 * @param destination_ the identifier of the destination endpoint
 	 * @param rcvWindow_ the current receive window size of the sender of this segment
 	 * @param seqNum_ the sequence number of this segment
-	 * @param dataPayload_ the data payload, if any
+	 * @param length_ the length of the data payload, if any [in bytes]
 	 * @param ackSeqNum_ the acknowledgment sequence number, if any
 	 */
 	public Segment(
-		NetworkElement destinationAddr_, int rcvWindow_,
-		int seqNum_, byte[] dataPayload_, int ackSeqNum_
+		int destination_, int rcvWindow_,
+		int seqNum_, int length_, int ackSeqNum_
 	) {
-		super(destinationAddr_, dataPayload_);
+		super(destination_, length_);
 		this.rcvWindow = rcvWindow_;
 		this.dataSequenceNumber = seqNum_;
 		this.ackSequenceNumber = ackSeqNum_;
 		this.isAck = (ackSeqNum_ >= 0);
+	}
 
+	/**
+	 * Helper method to compute the ordinal number of the segment with the given
+	 * sequence number. This is only for tracking purposes and is <i>not</i>
+	 * present in actual TCP segments, so it is computed only for reporting.<BR>
+	 * Note: The value is computed assuming that the sequence numbers start at zero.
+	 * 
+	 * @param sequenceNumber_ the data or acknowledgment sequence number
+	 * @param mss_ the maximum segment size of the simulation
+	 * @return the ordinal number of the segment
+	 */
+	private static int ordinalOf(int sequenceNumber_, int mss_) {
 		//TODO NOTE: This must be corrected because currently we assume that any
 		// segments smaller than 1xMSS are 1-byte persist-timer segments.
 		// However, this ignores a possibility that Nagle's algorithm is implemented!!
-		this.ordinalNum =
-				dataSequenceNumber / Sender.MSS +	// how many full MSS segments were created
-				dataSequenceNumber % Sender.MSS +	// how many 1-byte segments (for persist timer)
-				1;	// add one because this is the ordinal number
-		this.ordinalNumAck =
-				ackSequenceNumber / Sender.MSS +	// how many full MSS segments were created
-				ackSequenceNumber % Sender.MSS +	// how many 1-byte segments (for persist timer)
-				1;	// add one because this is the ordinal number
+		return
+			sequenceNumber_ / mss_ +	// how many full MSS segments were created
+			sequenceNumber_ % mss_ +	// how many 1-byte segments (for persist timer)
+			1;	// add one because this is the ordinal number
 	}
 
 	/**
-	 * Prints out some basic information about this TCP segment.
-	 * It is used mostly for reporting/debugging purposes.
+	 * Prints out some basic information about this TCP segment,
+	 * numbered for the default maximum segment size.
 	 * This method is part of the java.lang.Object interface.
+	 * @see #toString(int)
 	 */
 	@Override
 	public String toString() {
+		return toString(SimulationConfig.DEFAULT_MSS);
+	}
+
+	/**
+	 * Prints out some basic information about this TCP segment.
+	 * It is used mostly for reporting/debugging purposes.
+	 * @param mss_ the maximum segment size of the simulation [in bytes]
+	 */
+	@Override
+	public String toString(int mss_) {
 		if (isAck) {
-			identifier = "ACK # " + Integer.toString(ordinalNumAck);
+			identifier = "ACK # " + Integer.toString(ordinalOf(ackSequenceNumber, mss_));
 		}
 		// Note that an ACK can be piggybacked on a data segment.
 		if (length > 0) {
 		identifier =
-			"segment # " + Integer.toString(ordinalNum)
+			"segment # " + Integer.toString(ordinalOf(dataSequenceNumber, mss_))
 //			+ " (" + Integer.toString(length) + ")  "
 			;
 		}
@@ -168,15 +186,10 @@ public class Segment extends Packet implements Comparable<Segment> {
 	/**
 	 * Attribute setter for the acknowledgment sequence number.
 	 * Defined because {@link Receiver#handle(Segment)}
-	 * resets the ACK sequence number for cumulative ACKs,
-	 * but then we need to recompute {@link #ordinalNumAck} as well.
+	 * resets the ACK sequence number for cumulative ACKs.
 	 * @param ackSequenceNumber_ the acknowledgment sequence number to set
 	 */
 	public void setAckSequenceNumber(int ackSequenceNumber_) {
 		this.ackSequenceNumber = ackSequenceNumber_;
-		this.ordinalNumAck =
-			ackSequenceNumber / Sender.MSS +	// how many full MSS segments were created
-			ackSequenceNumber % Sender.MSS +	// how many 1-byte segments (for persist timer)
-			1;	// add one because this is the ordinal number
 	}
 }
\ No newline at end of file
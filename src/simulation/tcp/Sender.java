@@ -7,9 +7,10 @@
 
 package simulation.tcp;
 
-import java.nio.ByteBuffer;
+import java.io.Serializable;
 
 import simulation.network.Endpoint;
+import simulation.EventJournal;
 import simulation.Simulator;
 import simulation.TimedComponent;
 import simulation.TimerSimulated;
@@ -38,17 +39,24 @@ import simulation.TimerSimulated;
  * @see SenderNewReno
  * @author Ivan Marsic
  */
-public abstract class Sender implements TimedComponent {
-	/** Maximum segment size, in bytes. Same for both sending/receiving endpoints. */
-	public static final int MSS = 1024;
+public abstract class Sender implements TimedComponent, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Maximum segment size, in bytes. Same for both sending/receiving endpoints.
+	 * Taken from the simulator's configuration (see {@link simulation.SimulationConfig#getMSS()}). */
+	protected final int MSS;
 
 	/** Local endpoint that contains this sender object. */
 	Endpoint localEndpoint = null;
 
 	/**
-	 * TCP bytestream to send to the receiver endpoint.
+	 * The number of bytes of the TCP bytestream that are still to be sent
+	 * to the receiver endpoint. The contents of the bytestream are never
+	 * looked at, so the sender keeps only its length and tracks what was sent
+	 * by the sequence numbers, e.g., {@link #lastByteSent}; the segments
+	 * carry no payload, only their sequence number and length.
 	 */
-	protected java.nio.ByteBuffer bytestream = null;
+	protected int unsentBytes = 0;
 
  	/** Pointer to the last byte sent so far.
 	 * Recall that the bytes are numbered from zero, so the sequence
@@ -81,7 +89,7 @@ public abstract class Sender implements TimedComponent {
  	/** Current congestion window size, in bytes.
      * (Note the package visibility, needed for the TCPSenderState object
      * to access and modify this attribute.) */
- 	int congWindow = MSS;
+ 	int congWindow;
 
  	/** The Slow-Start threshold is a dynamically-set value indicating
 	 * an upper bound on the congestion window above which a
@@ -105,12 +113,13 @@ public abstract class Sender implements TimedComponent {
  	 * When all outstanding segments are acknowledged, the timer is
  	 * deactivated.  When a <i>regular</i> acknowledgment is received
  	 * <b>and</b> there are still outstanding, non-acknowledged segments,
- 	 * the timer should be <b>re-started</b>. */
+ 	 * the timer should be <b>re-started</b>.</p>
+ 	 * 
+ 	 * <p>The timer object is registered with the simulator directly
+ 	 * and restarted in place by {@link Simulator#reschedule(TimerSimulated, long)},
+ 	 * so it is also its own handle. */
  	TimerSimulated rtoTimer = null;
 
- 	/** Handle to a running RTO timer ({@link #rtoTimer}), so it can be canceled, if needed. */
- 	protected TimerSimulated rtoTimerHandle = null;
-
  	/**
  	 * This is a TCP connection "inactivity-timeout" timer.
  	 * Both <a href="http://www.apps.ietf.org/rfc/rfc2581.html" target="page">RFC 2581</a>
@@ -125,10 +134,6 @@ public abstract class Sender implements TimedComponent {
  	 */
  	TimerSimulated idleConnectionTimer = null;
 
- 	/** Handle to a running "idle-connection" timer ({@link #idleConnectionTimer}),
- 	 * so it can be canceled, if needed. */
- 	protected TimerSimulated idleConnectionTimerHandle = null;
-
  	/** The threshold number of duplicate acknowledgments after which
  	 * the TCP sender will assume that the oldest outstanding segment
  	 * is lost and perform <em>Fast Retransmit</em>.
@@ -157,30 +162,51 @@ public abstract class Sender implements TimedComponent {
      */
     protected int timeoutCounter = 0;
 
+ 	/** The simulation time at which all the data of this sender
+ 	 * were acknowledged (see {@link #isComplete()}), in time units,
+ 	 * or a negative value if this has not happened yet. */
+ 	protected long completionTime = -1;
+
+	/** Indicates that a batch of ACKs is being handled, see {@link #handleBatch(Segment[], int)},
+	 * so that the RTO timer is started or cancelled only once, at the end of the batch. */
+	private transient boolean handlingBatch = false;
+
+	/** The last change to the RTO timer requested while handling a batch of ACKs:
+	 * one of {@link #RTO_UNCHANGED}, {@link #RTO_START} or {@link #RTO_CANCEL}. */
+	private transient int pendingRTOtimer = RTO_UNCHANGED;
+
+	/** The expiration time of the RTO timer requested while handling a batch of ACKs,
+	 * if {@link #pendingRTOtimer} is {@link #RTO_START}. */
+	private transient long pendingRTOtime = 0L;
+
+	/** Values of {@link #pendingRTOtimer}: leave the RTO timer as it is, start (or move) it, or cancel it. */
+	private static final int RTO_UNCHANGED = 0, RTO_START = 1, RTO_CANCEL = 2;
+
     /**
  	 * Base class constructor; not public.
  	 */
  	protected Sender(Endpoint localTCPendpoint_) {
 		this.localEndpoint = localTCPendpoint_;
+		this.MSS = localTCPendpoint_.getSimulator().getConfig().getMSS();
+		this.congWindow = MSS;
 
-		// Initialize the buffer stream; to be grown as needed
-		bytestream = ByteBuffer.allocate(MSS);
+		// Initialize the bytestream with one segment; to be grown as needed
+		unsentBytes = MSS;
 
-		// start the retransmission timeout (RTO) estimation
-		rtoEstimator = new RTOEstimator(
-			localEndpoint.getSimulator().getTimeIncrement()
-		);
+		// start the retransmission timeout (RTO) estimation,
+		// which works in the simulation clock ticks
+		rtoEstimator = new RTOEstimator(1.0);
 
 		// create the RTO timer but do not start it up
 		// because initially there are no outstanding segments
 		rtoTimer = new TimerSimulated(
-			this, 1 /* type equals "1" */, 0.0 /* inactive */
+			this, 1 /* type equals "1" */, 0 /* inactive */
 		);
 
 		// create the inactivity timer, to be started
 		// if the sender becomes idle
 		idleConnectionTimer = new TimerSimulated(
-			this, 2 /* type equals "2" */, 0.0 /* inactive */
+			this, 2 /* type equals "2" */, 0 /* inactive */
 		);
  	}
  
@@ -201,63 +227,81 @@ public abstract class Sender implements TimedComponent {
 	@Override
 	public void timerExpired(int timerType_) {
 		if (timerType_ == 1) {
-			if (
-				(Simulator.currentReportingLevel  & Simulator.REPORTING_SENDERS) != 0
-			) {
-				System.out.println(" ***** RTO timer timeout! *****");
-                timeoutCounter++;
-			}
+			timeoutCounter++;
+			localEndpoint.getSimulator().getTracer().timerExpired(this, timerType_);
 	
 			// If RTO timeout occurred, handle it:
-			rtoTimerHandle = null;	// clear the timer handle
 			// Send out the oldest unacknowledged segment, assuming that
 			// all TCP senders react in the same way to an RTO timeout
 	
 			// The oldest unacknowledged segment will be sent from the current state object
-			currentState = currentState.handleRTOtimeout(
+			enterState(currentState.handleRTOtimeout(
 				getOldestUnacknowledgedSegment()
-			);
+			));
 		} else if (timerType_ == 2) {
-			if (
-				(Simulator.currentReportingLevel  & Simulator.REPORTING_SENDERS) != 0
-			) {
-				System.out.println(" %%%%% Idle-connection timer timeout! %%%%%");
-			}
+			localEndpoint.getSimulator().getTracer().timerExpired(this, timerType_);
 
 			// If idle-connection timeout occurred, handle it:
-			idleConnectionTimerHandle = null;	// clear the timer handle
 			// Reset the sender to begin in the slow-start state
 			resetParametersToSlowStart();
-			currentState = currentState.slowStartState;
+			enterState(currentState.slowStartState);
 		}
 	} //TODO: Else ????
 
+	/**
+	 * Helper method to switch this sender to the state returned by
+	 * the current state object, and to record the transition
+	 * in the simulator's event journal, if one is kept, and trace.
+	 * @param nextState_ the state to switch to
+	 */
+	private void enterState(SenderState nextState_) {
+		if (nextState_ != currentState) {
+			EventJournal journal_ = localEndpoint.getSimulator().getJournal();
+			if (journal_ != null) {
+				journal_.stateChanged(this, nextState_);
+			}
+			localEndpoint.getSimulator().getTracer().stateChanged(this, nextState_);
+		}
+		currentState = nextState_;
+	}
+
 	/**
 	 * Helper method, called from derived classes to start up
 	 * the retransmission (RTO) timer countdown.
 	 * @see #rtoTimer
 	 */
 	void startRTOtimer() {
-		// if this timer is already running, cancel it first
-		if (rtoTimerHandle != null) {
-			cancelRTOtimer();
+		long time_ =
+			localEndpoint.getSimulator().getCurrentTime() +
+			localEndpoint.getSimulator().toTimeUnits(rtoEstimator.getTimeoutInterval());
+		if (handlingBatch) {
+			// Only the last restart in a batch of ACKs counts:
+			pendingRTOtimer = RTO_START;
+			pendingRTOtime = time_;
+			return;
 		}
+		restartRTOtimer(time_);
+	}
 
-		// Set the future time to fire the RTO timer.
-		rtoTimer.setTime(localEndpoint.getSimulator().getCurrentTime() + rtoEstimator.getTimeoutInterval());
-		try {
-			rtoTimerHandle = localEndpoint.getSimulator().setTimeoutAt(rtoTimer);
-		} catch (Exception ex) {
-			ex.printStackTrace();
-		}
+	/**
+	 * Helper method to set the future time to fire the RTO timer;
+	 * if this timer is already running, it is simply moved.
+	 */
+	private void restartRTOtimer(long time_) {
+		localEndpoint.getSimulator().reschedule(rtoTimer, time_);
 
-		if (
-			(Simulator.currentReportingLevel  & Simulator.REPORTING_SENDERS) != 0
-		) {
-			System.out.println(
-				"\t^^^^^^^ RTO Timer started to fire at the _start_ of RTT #" + (int)rtoTimer.getTime()
-			);
-		}
+		localEndpoint.getSimulator().getTracer().timerStarted(this, rtoTimer.type, rtoTimer.getTime());
+	}
+
+	/**
+	 * Helper method to report the current retransmission timeout
+	 * to the simulator's tracer, after the RTO estimator has changed it.
+	 */
+	void traceTimeoutInterval() {
+		localEndpoint.getSimulator().getTracer().timeoutUpdated(
+			this, rtoEstimator.estimatedRTT, rtoEstimator.devRTT,
+			rtoEstimator.timeoutInterval, rtoEstimator.backoff
+		);
 	}
 
 	/**
@@ -266,14 +310,11 @@ public abstract class Sender implements TimedComponent {
 	 * more unacknowledged segments.
 	 */
 	void cancelRTOtimer() {
-		if (rtoTimerHandle != null) {
-			try {
-				localEndpoint.getSimulator().cancelTimeout(rtoTimerHandle);
-			} catch (Exception ex) {
-				ex.printStackTrace();
-			}
-			rtoTimerHandle = null;	// clear the timer handle
+		if (handlingBatch) {
+			pendingRTOtimer = RTO_CANCEL;
+			return;
 		}
+		localEndpoint.getSimulator().cancel(rtoTimer);
 	}
 
 	/**
@@ -287,20 +328,21 @@ public abstract class Sender implements TimedComponent {
 		// Do nothing if this timer is already running
 		// or the sender is still not done:
 		if (
-			(idleConnectionTimerHandle != null) ||
+			idleConnectionTimer.isRunning() ||
 			(lastByteAcked < lastByteSent)
 		) {
 			return;
 		}
 
 		// Set the future time to fire the inactivity-timeout timer.
-		idleConnectionTimer.setTime(localEndpoint.getSimulator().getCurrentTime() + rtoEstimator.getTimeoutInterval());
-		try {
-			idleConnectionTimerHandle =
-				localEndpoint.getSimulator().setTimeoutAt(idleConnectionTimer);
-		} catch (Exception ex) {
-			ex.printStackTrace();
-		}
+		localEndpoint.getSimulator().reschedule(
+			idleConnectionTimer,
+			localEndpoint.getSimulator().getCurrentTime() +
+			localEndpoint.getSimulator().toTimeUnits(rtoEstimator.getTimeoutInterval())
+		);
+		localEndpoint.getSimulator().getTracer().timerStarted(
+			this, idleConnectionTimer.type, idleConnectionTimer.getTime()
+		);
 	}
 
 	/**
@@ -364,28 +406,82 @@ public abstract class Sender implements TimedComponent {
     }
 
 	/**
-	 * Helper method to extract the oldest unacknowledged segment
-	 * from the input bytestream.
-	 * @return Returns the oldest currently unacknowledged segment.
+	 * Checks whether this sender has completed its transfer, i.e.,
+	 * all the data it can send were sent and acknowledged.</p>
+	 * 
+	 * <p>Note that the sender transmits only full-size segments
+	 * (see {@link #send(int)}), so a tail of the bytestream shorter
+	 * than {@link #MSS} is never sent and does not count here.
+	 * 
+	 * @return <code>true</code> if all data that can be sent were acknowledged
 	 */
-	Segment getOldestUnacknowledgedSegment() {
-		// Extract the oldest segment segment from the input bytestream
-		int currentPosition_ = bytestream.position();
-		// Shouldn't the current position be <code>lastByteSent</code> ?!?!?
+	public boolean isComplete() {
+		return (lastByteSent >= 0) &&
+			(lastByteAcked >= lastByteSent) &&
+			(unsentBytes < MSS);
+	}
+
+	/**
+	 * Accessor for the time at which this sender completed its transfer.
+	 * 
+	 * @return the simulation time (in time units) when all data were acknowledged,
+	 * or a negative value if the transfer has not completed yet
+	 * @see #isComplete()
+	 */
+	public long getCompletionTime() {
+		return completionTime;
+	}
+
+	/**
+	 * Accessor for the endpoint on which this sender runs.
+	 * @return the local endpoint
+	 */
+	public Endpoint getLocalEndpoint() {
+		return localEndpoint;
+	}
 
-		// bring the buffer position backward to the "last byte acknowledged"
-		bytestream.position(currentPosition_ - (lastByteSent - lastByteAcked));
+	/**
+	 * Accessor for the maximum segment size.
+	 * @return the maximum segment size, in bytes
+	 */
+	public int getMSS() {
+		return MSS;
+	}
+
+	/**
+	 * Accessor for the current congestion window.
+	 * @return the congestion window size, in bytes
+	 */
+	public int getCongWindow() {
+		return congWindow;
+	}
 
-		byte[] segment_ = new byte[MSS];
-		bytestream.get(segment_, 0, segment_.length);
+	/**
+	 * Accessor for the current slow start threshold.
+	 * @return the slow start threshold, in bytes
+	 */
+	public int getSSThresh() {
+		return SSThresh;
+	}
 
-		// bring the buffer position forward to the "last byte sent"
-		bytestream.position(currentPosition_);
+	/**
+	 * Accessor for the amount of data sent but not yet acknowledged.
+	 * @return the flight size, in bytes
+	 */
+	public int getFlightSize() {
+		return lastByteSent - lastByteAcked;
+	}
 
+	/**
+	 * Helper method to make the oldest unacknowledged segment again,
+	 * starting right after the last byte acknowledged.
+	 * @return Returns the oldest currently unacknowledged segment.
+	 */
+	Segment getOldestUnacknowledgedSegment() {
 		// The oldest unacknowledged segment will be sent from the current state object
 		return new Segment(
-			localEndpoint.getRemoteTCPendpoint(),
-			localEndpoint.getLocalRcvWindow(), lastByteAcked + 1, segment_
+			localEndpoint.getRemoteTCPendpoint().getId(),
+			localEndpoint.getLocalRcvWindow(), lastByteAcked + 1, MSS
 		);
 	}
 
@@ -398,43 +494,29 @@ public abstract class Sender implements TimedComponent {
  	 * sending parameters will be set, that are used in this
  	 * <code>send()</code> method.
  	 * 
- 	 * @param newData_ The new message to send
+ 	 * @param newBytes_ The length of the new message to send, or zero if there is none
  	 */
- 	public void send(byte[] newData_) {
- 		if (newData_ == null && !bytestream.hasRemaining()) {
- 			System.out.println("tcp.Sender.send():  Input bytestream empty -- nothing left to send");
+ 	public void send(int newBytes_) {
+ 		if (newBytes_ == 0 && unsentBytes == 0) {
+ 			localEndpoint.getSimulator().getTracer().dataExhausted(this, 0);
 
  			startIdleConnectionTimer();
  			return;		// Bail out -- there is NO data to send ...
  		}				// ... so, wait until the next invocation
 
- 		// Enlarge the existing bytestream (if any) and add to it the new data
- 		if (newData_ != null) {
+ 		// Enlarge the existing bytestream (if any) by the new data
+ 		if (newBytes_ > 0) {
  			// Cancel the inactivity-timeout timer if it's running:
- 			if (idleConnectionTimerHandle != null) {
- 				try {
- 					localEndpoint.getSimulator().cancelTimeout(idleConnectionTimerHandle);
- 				} catch (Exception ex) {
- 					ex.printStackTrace();
- 				}
- 				idleConnectionTimerHandle = null;	// clear the timer handle
- 			}
-
- 			byte[] previousData_ = new byte[bytestream.remaining()];
- 			bytestream.get(previousData_);	// Temporarily store the previous bytestream
-
- 			// allocate new buffer space
- 			bytestream = ByteBuffer.allocate(previousData_.length + newData_.length);
- 			bytestream.put(previousData_);	// Put back the old data at the beginning
- 			bytestream.put(newData_);		// Append the new data (after the old data)
- 			bytestream.rewind();			// Rewind the buffer
+ 			localEndpoint.getSimulator().cancel(idleConnectionTimer);
+
+ 			unsentBytes += newBytes_;	// Append the new data (after the old data)
  		}
 
- 		if (bytestream.remaining() < MSS) {
+ 		if (unsentBytes < MSS) {
  	 		// NOTE: we start up the inactivity-timeout timer
  	 		// *only* if *zero* bytes are remaining, not here!!
 
- 			System.out.println("tcp.Sender.send():  Insufficient data to send");
+ 			localEndpoint.getSimulator().getTracer().dataExhausted(this, unsentBytes);
  			return;		// Bail out -- there isn't enough data to send a full-size segment
  		}				// ... so, wait until the next invocation
 
@@ -447,20 +529,10 @@ public abstract class Sender implements TimedComponent {
 		if (effectiveWindow_ < 0) {
 			effectiveWindow_ = 0;
 		}
-		// Display the relevant parameters for congestion control.
-		if (		// Debugging reporting:
-			(Simulator.currentReportingLevel  & Simulator.REPORTING_SENDERS) != 0
-		) {
-			System.out.println(
-				"SENDER:\t\tCongWin="+congWindow + "\t" + "EffectiveWin="+effectiveWindow_ +
-				"\t" + "FlightSize="+flightSize_ + "\t" + "SSThresh="+SSThresh
-			);
-		} else {	// Default reporting, always printed out:
-			System.out.println(
-				congWindow + "\t\t" + effectiveWindow_ +
-				"\t\t" + flightSize_ + "\t\t" + SSThresh
-			);
-		}
+		// Report the relevant parameters for congestion control.
+		localEndpoint.getSimulator().getTracer().windowSampled(
+			this, congWindow, effectiveWindow_, flightSize_, SSThresh
+		);
 
 		// Send only integer multiples of MSS segments,
 		// i.e., Nagle's algorithm is not employed here.
@@ -468,22 +540,21 @@ public abstract class Sender implements TimedComponent {
 		//
 		// Of course, we also need to check if there is any data left in the bytestream to send
 		int burst_size_ = Math.min(
-			effectiveWindow_ / MSS, bytestream.remaining() / MSS
+			effectiveWindow_ / MSS, unsentBytes / MSS
 		);
 
 		if (burst_size_ > 0) {
 			// Send the "burst_size_" worth of segments:
 			for (int seg_ = 0; seg_ < burst_size_; seg_++) {
-				// Extract one segment of data from the input bytestream
-				byte[] segPayload_ = new byte[MSS];
-				bytestream.get(segPayload_, 0, segPayload_.length);
+				// Take one segment of data from the input bytestream
+				unsentBytes -= MSS;
 
 				Segment segment_ = new Segment(
-					localEndpoint.getRemoteTCPendpoint(),
-					localEndpoint.getLocalRcvWindow(), lastByteSent + 1, segPayload_
+					localEndpoint.getRemoteTCPendpoint().getId(),
+					localEndpoint.getLocalRcvWindow(), lastByteSent + 1, MSS
 				);
 				// set the sending time
-				segment_.timestamp = (int) localEndpoint.getSimulator().getCurrentTime();
+				segment_.timestamp = localEndpoint.getSimulator().getCurrentTime();
 
 				// Hand the new segment down to the network layer for transmission
 				localEndpoint.getNetworkLayerProtocol().send(localEndpoint, segment_);
@@ -495,6 +566,27 @@ public abstract class Sender implements TimedComponent {
 		} // else send nothing
  	}
 
+	/**
+	 * Checks whether calling {@link #send(int)} without new data
+	 * would currently do nothing, i.e., neither transmit a segment
+	 * nor start the {@link #idleConnectionTimer}. Such a sender
+	 * will stay idle until it receives an ACK or one of its timers expires.
+	 * 
+	 * @return <code>true</code> if this sender has nothing to do now
+	 */
+	public boolean isIdle() {
+		if (unsentBytes == 0) {
+			// See startIdleConnectionTimer():
+			return idleConnectionTimer.isRunning() || (lastByteAcked < lastByteSent);
+		}
+		if (unsentBytes < MSS) {
+			return true;
+		}
+		int effectiveWindow_ =
+			Math.min(congWindow, rcvWindow) - (lastByteSent - lastByteAcked);
+		return Math.min(effectiveWindow_ / MSS, unsentBytes / MSS) <= 0;
+	}
+
 	/**
  	 * Processes ACKs received from the receiver.
  	 * Checks for duplicate ACKs and dispatches them
@@ -502,7 +594,7 @@ public abstract class Sender implements TimedComponent {
  	 * If a new ACK is received (acknowledging previously
  	 * unacknowledged data), the sender's window may have
 	 * opened to send some more segments, so this method
-	 * will call {@link #send(byte[])}.
+	 * will call {@link #send(int)}.
 	 *
  	 * @param ack_ An acknowledgment received from the receiver.
  	 */
@@ -513,23 +605,57 @@ public abstract class Sender implements TimedComponent {
 		// Is this a newly acknowledged segment (i.e., not a duplicate ACK)?
 		if (ack_.ackSequenceNumber > (lastByteAcked + 1)) {
 			// Let the current state process a "new" acknowledgment
-			currentState = currentState.handleNewACK(ack_);
+			enterState(currentState.handleNewACK(ack_));
 
 	    	// If all outstanding data at "dupACKthreshold" dupACKs have been ACK-ed,
 	    	// then reset the indicator parameter.
 	    	if (lastByteSentBefore3xDupAcksRecvd <= lastByteAcked) {
 	    		lastByteSentBefore3xDupAcksRecvd = -1;
 	    	}
+
+	    	// Remember when the last of our data was acknowledged:
+	    	if (completionTime < 0 && isComplete()) {
+	    		completionTime = localEndpoint.getSimulator().getCurrentTime();
+	    		localEndpoint.getSimulator().senderCompleted();
+	    	}
 		} else {	// duplicate ACK
 			// Let the current state process a "duplicate" acknowledgment
 			try {
-				currentState = currentState.handleDupACK(ack_);
+				enterState(currentState.handleDupACK(ack_));
 			} catch (Exception ex_) {
 				System.out.println("tcp.Sender.handle(): " + ex_.toString());
 			}
 		}
  	}
 
+	/**
+	 * Processes several ACKs that arrived together, in the order of their arrival.
+	 * Each ACK is processed as by {@link #handle(Segment)}, so the congestion
+	 * window still grows per ACK, but the RTO timer is re-armed (or cancelled)
+	 * only once, after the last ACK, instead of after every new ACK.
+	 *
+	 * @param acks_ acknowledgments received from the receiver
+	 * @param count_ the number of acknowledgments, from the start of the array
+	 */
+	public void handleBatch(Segment[] acks_, int count_) {
+		handlingBatch = true;
+		try {
+			for (int i = 0; i < count_; i++) {
+				handle(acks_[i]);
+			}
+		} finally {
+			handlingBatch = false;
+		}
+
+		int pending_ = pendingRTOtimer;
+		pendingRTOtimer = RTO_UNCHANGED;
+		if (pending_ == RTO_START) {
+			restartRTOtimer(pendingRTOtime);
+		} else if (pending_ == RTO_CANCEL) {
+			localEndpoint.getSimulator().cancel(rtoTimer);
+		}
+	}
+
 	/** This method provides a single location to reset
 	 * the congestion parameters when the sender needs
 	 * to transition to the slow start state from another state.</p>
@@ -547,4 +673,4 @@ public abstract class Sender implements TimedComponent {
 		// Reset this param as well, just in case...
 		lastByteSentBefore3xDupAcksRecvd = -1;
 	}
-}
\ No newline at end of file
+}
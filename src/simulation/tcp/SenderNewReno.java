@@ -27,6 +27,7 @@ import simulation.network.Endpoint;
  * @author Ivan Marsic
  */
 public class SenderNewReno extends SenderReno {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Constructor.
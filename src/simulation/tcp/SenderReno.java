@@ -19,6 +19,7 @@ import simulation.network.Endpoint;
  * @author Ivan Marsic
  */
 public class SenderReno extends Sender {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Constructor.
@@ -66,6 +67,7 @@ public class SenderReno extends Sender {
 
 		// Perform the exponential backoff for the RTO timeout interval 
 		rtoEstimator.timerBackoff();
+		traceTimeoutInterval();
 		// and re-start the timer, for the outstanding segments.
 		startRTOtimer();
 
@@ -111,7 +113,7 @@ public class SenderReno extends Sender {
 	    Segment oldestSegment_ = getOldestUnacknowledgedSegment();
 
         // Add the retransmitted bytes to the retransmitByteCounter for statistics
-        retransmitByteCounter += oldestSegment_.dataPayload.length;
+        retransmitByteCounter += oldestSegment_.length;
 
 		// The timestamp of retransmitted segments should be set to "-1"
 	    // to avoid performing RTT estimation based on retransmitted segments:
@@ -6,7 +6,8 @@
  */
 package simulation.tcp;
 
-import simulation.Simulator;
+import java.io.Serializable;
+
 
 /**
  * This abstract class provides the TCP sender state interface.<BR>
@@ -24,7 +25,9 @@ import simulation.Simulator;
  * @author Ivan Marsic
  *
  */
-public abstract class SenderState {
+public abstract class SenderState implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** TCP sender.
 	 * Represents the context object for this state.
 	 * Several attributes (congWindow, SSThresh) of the sender are accessed
@@ -71,10 +74,14 @@ public abstract class SenderState {
 
 		// Every time we receive a new ACK:
     	// Update the running estimate of the RTO timer interval:
+    	// (the estimator works in the clock ticks)
     	sender.rtoEstimator.updateRTT(
-        	sender.localEndpoint.getSimulator().getCurrentTime(),
-        	ack_.timestamp
+        	sender.localEndpoint.getSimulator().toTicks(sender.localEndpoint.getSimulator().getCurrentTime()),
+        	sender.localEndpoint.getSimulator().toTicks(ack_.timestamp)
         );
+    	if (ack_.timestamp >= 0) {
+    		sender.traceTimeoutInterval();
+    	}
 
     	// Update the Last-Byte-Acked param, but remember the previous value
     	int lastByteAckedPrevious = sender.lastByteAcked;
@@ -115,13 +122,7 @@ public abstract class SenderState {
 		// Note: Tahoe ignores additional dupACKs over and above the first three.
 		// Reno doesn't ignore -- see TCPSenderStateFastRecovery#handleDupACK()
 		if (sender.dupACKcount > 2) {
-			if (
-				(Simulator.currentReportingLevel  & Simulator.REPORTING_SENDERS) != 0
-			) {
-				System.out.println(
-					" ..... Three (or more) duplicate ACKs received! ....."
-				);
-			}
+			sender.localEndpoint.getSimulator().getTracer().fastRetransmit(sender);
 
 			// Perform the necessary actions, depending on the type of
 			//   TCP sender (Tahoe, Reno, etc.)
@@ -129,12 +130,6 @@ public abstract class SenderState {
 
 		    // Transition into the state that comes after 3 x duplicate ACKs
 		    // depending  on the type of TCP sender (Tahoe, Reno, etc.)
-    		if (
-    			(Simulator.currentReportingLevel & Simulator.REPORTING_SENDERS) != 0
-        		&& after3xDupACKstate instanceof SenderStateFastRecovery
-			) {
-				System.out.println("############## Sender entering fast recovery.");
-			}
 	    	return after3xDupACKstate;
 
 		} else {
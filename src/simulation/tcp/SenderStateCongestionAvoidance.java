@@ -6,7 +6,6 @@
  */
 package simulation.tcp;
 
-import simulation.Simulator;
 
 /**
  * This class defines how a TCP sender behaves in
@@ -25,6 +24,7 @@ import simulation.Simulator;
  *
  */
 public class SenderStateCongestionAvoidance extends SenderState {
+	private static final long serialVersionUID = 1L;
 
     /**
      * Constructor for the congestion avoidance state of a TCP sender.
@@ -88,9 +88,9 @@ public class SenderStateCongestionAvoidance extends SenderState {
 	) {
 		int congWindowNew_ = sender.congWindow;
 		if ((ackSequenceNumber_ - lastByteAcked_) >= congWindowNew_) {
-			congWindowNew_ += Sender.MSS;
+			congWindowNew_ += sender.MSS;
 		} else {
-			congWindowNew_ += ((Sender.MSS * Sender.MSS) / congWindowNew_);
+			congWindowNew_ += ((sender.MSS * sender.MSS) / congWindowNew_);
 		}
 		return congWindowNew_;
 	}
@@ -106,11 +106,7 @@ public class SenderStateCongestionAvoidance extends SenderState {
     	// Check if the congestion window fell below the slow-start-threshold;
 		// If YES, change the sender's mode to "slow start"
     	if (sender.congWindow < sender.SSThresh) {
-    		if (	// this can never happen, but just in case ...
-        			(Simulator.currentReportingLevel & Simulator.REPORTING_SENDERS) != 0
-    			) {
-    				System.out.println("############## Sender entering slow start.");
-    			}
+    		// this can never happen, but just in case ...
     		sender.resetParametersToSlowStart();
     		return slowStartState;	// transition to the slow start state
     	} else {
@@ -7,7 +7,6 @@
 
 package simulation.tcp;
 
-import simulation.Simulator;
 
 /**
  * TCP Reno sender's state Fast Recovery.
@@ -23,6 +22,7 @@ import simulation.Simulator;
  *
  */
 public class SenderStateFastRecovery extends SenderState {
+	private static final long serialVersionUID = 1L;
 
 	/**
      * Constructor for the fast recovery state of a TCP Reno sender.
@@ -108,11 +108,11 @@ public class SenderStateFastRecovery extends SenderState {
     		int newlyAcked = ackSequenceNumber_ - lastByteAcked_;
     		// 2.a) Deflate the congestion window by the amount of new data acknowledged
     		int congWindowTemp = sender.congWindow - newlyAcked;
-    		if (newlyAcked >= Sender.MSS) {
+    		if (newlyAcked >= sender.MSS) {
     			// 2.b) If the partial ACK acknowledges at least one MSS of new data
     			// then add back MSS bytes to the congestion window
     			// to reflect the segment that has left the network
-    			congWindowTemp += Sender.MSS;
+    			congWindowTemp += sender.MSS;
     		}
 			return congWindowTemp;
     	} else {	// "full ACK" received
@@ -148,11 +148,6 @@ public class SenderStateFastRecovery extends SenderState {
     	} else {	// "full ACK" received
 	    	// All outstanding data at 3x dupACKs have been ACK-ed,
 	    	// so transition to the congestion avoidance state.
-			if (	// For debugging purposes only...
-	    		(Simulator.currentReportingLevel & Simulator.REPORTING_SENDERS) != 0
-			) {
-				System.out.println("############## End of Fast Recovery; sender entering Congestion Avoidance.");
-			}
 	    	return congestionAvoidanceState;
     	}
 	}
@@ -176,7 +171,7 @@ public class SenderStateFastRecovery extends SenderState {
 		// Increase the congestion window by one full MSS.
 		// This inflates the congestion window for the
 	    //  additional segment that has left the network.
-		sender.congWindow += Sender.MSS;
+		sender.congWindow += sender.MSS;
 
 		return this;	// remain in the fast recovery state
     }
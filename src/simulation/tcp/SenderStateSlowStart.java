@@ -7,7 +7,6 @@
 
 package simulation.tcp;
 
-import simulation.Simulator;
 
 /**
  * This class defines how a TCP sender behaves in the slow start state.
@@ -16,6 +15,7 @@ import simulation.Simulator;
  *
  */
 public class SenderStateSlowStart extends SenderState {
+	private static final long serialVersionUID = 1L;
 
 	/**
      * Constructor for the slow start state of a TCP sender.
@@ -82,7 +82,7 @@ public class SenderStateSlowStart extends SenderState {
     		// and before the sender has acknowledged all the segments
     		// that were outstanding at the time 3x dupACKs were received,
     		// the sender counts cumulative ACKs as worth a single MSS.
-    		return sender.congWindow + Sender.MSS;
+    		return sender.congWindow + sender.MSS;
     	}
 	}
 
@@ -99,11 +99,6 @@ public class SenderStateSlowStart extends SenderState {
     	if (sender.congWindow < sender.SSThresh) {
     		return this;	// remain in the slow start state
     	} else {
-    		if (
-    			(Simulator.currentReportingLevel & Simulator.REPORTING_SENDERS) != 0
-			) {
-				System.out.println("############## Sender entering congestion avoidance.");
-			}
     		// transition to the congestion avoidance state
     		return congestionAvoidanceState;
     	}
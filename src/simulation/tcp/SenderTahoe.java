@@ -29,6 +29,7 @@ import simulation.network.Endpoint;
  * @author Ivan Marsic
  */
 public class SenderTahoe extends Sender {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Constructor.
@@ -66,6 +67,7 @@ public class SenderTahoe extends Sender {
 
 		// Perform the exponential backoff for the RTO timeout interval 
 		rtoEstimator.timerBackoff();
+		traceTimeoutInterval();
 		// and re-start the timer, for the outstanding segments.
 		startRTOtimer();
 
@@ -105,7 +107,7 @@ public class SenderTahoe extends Sender {
 		Segment oldestSegment_ = getOldestUnacknowledgedSegment();
 
         // Add the retransmitted bytes to the retransmitByteCounter for statistics
-        retransmitByteCounter += oldestSegment_.dataPayload.length;
+        retransmitByteCounter += oldestSegment_.length;
 
 		// the timestamp of retransmitted segments should be set to "-1"
 		oldestSegment_.timestamp = -1;